@@ -0,0 +1,98 @@
+package com.parking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// compares two JMH result files (-rf json) and fails if any benchmark got slower than the threshold allows
+// run with: ./gradlew jmhCompare -Pjmh.baseline=old-results.json [-Pjmh.threshold=0.10]
+public final class BenchmarkRegressions {
+
+    // JMH writes one "key" : value per line, which is all this needs to read back
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*\"?([^\",{\\[]*)\"?,?\\s*$");
+
+    private record Score(String mode, double value) {
+    }
+
+    private BenchmarkRegressions() {
+        // static entry point only
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args[1].isEmpty()) {
+            System.err.println("Usage: BenchmarkRegressions <results.json> <baseline.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        Map<String, Score> current = read(Paths.get(args[0]));
+        Map<String, Score> baseline = read(Paths.get(args[1]));
+        int regressions = 0;
+        for (Map.Entry<String, Score> result : current.entrySet()) {
+            Score before = baseline.get(result.getKey());
+            if (before == null || before.value() == 0) {
+                continue;
+            }
+            double change = (result.getValue().value() - before.value()) / before.value();
+            // average time gets worse going up, throughput going down
+            double worse = "thrpt".equals(result.getValue().mode()) ? -change : change;
+            if (worse > threshold) {
+                regressions++;
+                System.out.printf("REGRESSION %s: %.2f -> %.2f (%+.1f%%)%n",
+                        result.getKey(), before.value(), result.getValue().value(), change * 100);
+            }
+        }
+        System.out.printf("%d regression(s) in %d benchmarks against %s%n", regressions, current.size(), args[1]);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // benchmark;param=value;...;threads=N -> primary score
+    static Map<String, Score> read(Path resultsFile) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        String benchmark = null;
+        String mode = "";
+        String threads = "";
+        Map<String, String> params = new TreeMap<>();
+        boolean inParams = false;
+        boolean inPrimary = false;
+        for (String line : Files.readAllLines(resultsFile)) {
+            String trimmed = line.trim();
+            if (inParams && trimmed.startsWith("}")) {
+                inParams = false;
+                continue;
+            }
+            Matcher field = FIELD.matcher(trimmed);
+            if (trimmed.startsWith("\"params\"")) {
+                inParams = true;
+            } else if (trimmed.startsWith("\"primaryMetric\"")) {
+                inPrimary = true;
+            } else if (field.matches()) {
+                String name = field.group(1);
+                String value = field.group(2).trim();
+                if (inParams) {
+                    params.put(name, value);
+                } else if ("benchmark".equals(name)) {
+                    benchmark = value;
+                    params.clear();
+                } else if ("mode".equals(name)) {
+                    mode = value;
+                } else if ("threads".equals(name)) {
+                    threads = value;
+                } else if (inPrimary && "score".equals(name) && benchmark != null) {
+                    StringBuilder key = new StringBuilder(benchmark);
+                    params.forEach((param, setting) -> key.append(';').append(param).append('=').append(setting));
+                    scores.put(key.append(";threads=").append(threads).toString(), new Score(mode, Double.parseDouble(value)));
+                    inPrimary = false;
+                }
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,162 @@
+package com.parking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// park/remove and the read paths gates and signage hit, on in-memory lots of a few sizes and fill levels
+// run with: ./gradlew jmh -Pjmh.include=LotBenchmarks
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LotBenchmarks {
+
+    // a power of two, so the cursors wrap with a mask
+    static final int VEHICLES = 256;
+
+    /**
+     * A lot filled to {@code occupancy} percent before the trial, plus cars that aren't in it yet.
+     */
+    @State(Scope.Benchmark)
+    public static class FilledLot {
+        @Param({"1000", "100000"})
+        int spots;
+
+        @Param({"0", "50", "95"})
+        int occupancy;
+
+        ParkingLot lot;
+        Vehicle[] arrivals;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            lot = ParkingLot.createEphemeralLot(spots);
+            prefill(lot, spots, occupancy);
+            arrivals = vehicles("PR");
+        }
+    }
+
+    /**
+     * Half full, for the lookups that need cars to find.
+     */
+    @State(Scope.Benchmark)
+    public static class HalfFullLot {
+        @Param({"1000", "100000"})
+        int spots;
+
+        ParkingLot lot;
+        OccupancySnapshot snapshot = new OccupancySnapshot();
+        SpotStateSnapshot states = new SpotStateSnapshot();
+        // "look-7" style input on purpose, so the separator skipping is in the number
+        String[] typed = new String[1_024];
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            lot = ParkingLot.createEphemeralLot(spots);
+            prefill(lot, spots, 50);
+            for (int i = 0; i < typed.length; i++) {
+                typed[i] = "fill-" + (i * 7 % (spots / 2));
+            }
+        }
+    }
+
+    /**
+     * The lot every lane of the contended mix shares.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedLot {
+        final AtomicInteger lanes = new AtomicInteger();
+        ParkingLot lot;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            lot = ParkingLot.createEphemeralLot(10_000);
+            prefill(lot, 10_000, 50);
+        }
+    }
+
+    /**
+     * One gate lane: its own cars, so lanes contend on the lot but never on a plate.
+     */
+    @State(Scope.Thread)
+    public static class Lane {
+        Vehicle[] vehicles;
+        boolean[] parked = new boolean[VEHICLES];
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void assign(SharedLot shared) {
+            vehicles = vehicles("CM" + shared.lanes.getAndIncrement() + "X");
+        }
+    }
+
+    @Benchmark
+    public boolean parkRemove(FilledLot state) {
+        Vehicle vehicle = state.arrivals[state.cursor++ & (VEHICLES - 1)];
+        state.lot.parkVehicle(vehicle);
+        return state.lot.removeVehicle(vehicle.getLicensePlate());
+    }
+
+    // every lane flips its own cars in and out; -t overrides the lane count
+    @Benchmark
+    @Threads(4)
+    public boolean contendedMix(SharedLot shared, Lane lane) {
+        int index = lane.cursor++ & (VEHICLES - 1);
+        Vehicle vehicle = lane.vehicles[index];
+        if (lane.parked[index]) {
+            lane.parked[index] = false;
+            return shared.lot.removeVehicle(vehicle.getLicensePlate());
+        }
+        lane.parked[index] = shared.lot.parkVehicle(vehicle);
+        return lane.parked[index];
+    }
+
+    // what a signage poller pays per refresh; should stay flat as the lot grows
+    @Benchmark
+    public int snapshot(HalfFullLot state) {
+        return state.lot.snapshot(state.snapshot).getFree();
+    }
+
+    // a whole-lot consistent copy: grows with the lot, unlike snapshot, but never holds a gate up
+    @Benchmark
+    public int spotStates(HalfFullLot state) {
+        return state.lot.spotStates(state.states).getOccupied();
+    }
+
+    // a gate asking where a plate is: pack the typed text, probe the index
+    @Benchmark
+    public ParkingSpot plateLookup(HalfFullLot state) {
+        return state.lot.findSpotByPlate(state.typed[state.cursor++ & 1_023]);
+    }
+
+    static void prefill(ParkingLot lot, int spots, int occupancyPercent) {
+        int target = (int) ((long) spots * occupancyPercent / 100);
+        for (int i = 0; i < target; i++) {
+            lot.parkVehicle(new Car("FILL" + i));
+        }
+    }
+
+    static Vehicle[] vehicles(String prefix) {
+        Vehicle[] vehicles = new Vehicle[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            vehicles[i] = new Car(prefix + i);
+        }
+        return vehicles;
+    }
+}
@@ -0,0 +1,77 @@
+package com.parking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// park/remove with each state store attached, and a full checkpoint — what persistCurrentState used to do on every
+// change, now only on compaction and shutdown
+// run with: ./gradlew jmh -Pjmh.include=PersistenceBenchmarks
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PersistenceBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class PersistentLot {
+        @Param({"journal", "mapped"})
+        String store;
+
+        @Param({"10000"})
+        int spots;
+
+        @Param({"50"})
+        int occupancy;
+
+        Path scratch;
+        ParkingLot lot;
+        Vehicle[] arrivals;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            scratch = Files.createTempDirectory("parking-bench-" + store);
+            if ("mapped".equals(store)) {
+                // a state file already there is what makes the lot pick the mapped store
+                MappedLotState.open(scratch.resolve(MappedLotState.FILE_NAME), spots).close();
+            }
+            lot = ParkingLot.createPersistentLot(spots, scratch, LotJournal.Settings.defaults());
+            LotBenchmarks.prefill(lot, spots, occupancy);
+            arrivals = LotBenchmarks.vehicles("PS");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            lot.shutdownPersistence();
+            TicketBenchmarks.deleteRecursively(scratch);
+        }
+    }
+
+    @Benchmark
+    public boolean persistedParkRemove(PersistentLot state) {
+        Vehicle vehicle = state.arrivals[state.cursor++ & (LotBenchmarks.VEHICLES - 1)];
+        state.lot.parkVehicle(vehicle);
+        return state.lot.removeVehicle(vehicle.getLicensePlate());
+    }
+
+    @Benchmark
+    public void checkpointState(PersistentLot state) {
+        state.lot.checkpointState();
+    }
+}
@@ -0,0 +1,78 @@
+package com.parking;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// rough startup-time comparison between the text snapshot and the mapped binary state
+// a single cold start per size, which is what it measures, so it stays a plain main rather than a JMH benchmark
+// run with: gradle jmhClasses, then java -cp build/classes/java/main:build/classes/java/jmh com.parking.StateStartupBenchmark [spotCount ...]
+public final class StateStartupBenchmark {
+
+    private static final double OCCUPANCY = 0.8;
+    private static final int ROUNDS = 3;
+
+    private StateStartupBenchmark() {
+        // static entry point only
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0
+                ? new int[] {10_000, 100_000, 1_000_000}
+                : Stream.of(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%10s %14s %14s %14s%n", "spots", "text ms", "convert ms", "binary ms");
+        for (int spotCount : sizes) {
+            Path textDir = Files.createTempDirectory("startup-text");
+            Path binaryDir = Files.createTempDirectory("startup-binary");
+            try {
+                writeTextState(textDir.resolve("lot_state.txt"), spotCount);
+                long convertStart = System.nanoTime();
+                MappedLotState.convertFromText(textDir.resolve("lot_state.txt"),
+                        textDir.resolve("lot_journal.txt"),
+                        binaryDir.resolve(MappedLotState.FILE_NAME),
+                        spotCount);
+                long convertNanos = System.nanoTime() - convertStart;
+
+                // best of a few rounds so the first one's class loading doesn't dominate the small sizes
+                long textNanos = Long.MAX_VALUE;
+                long binaryNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    textNanos = Math.min(textNanos, timeStartup(spotCount, textDir));
+                    binaryNanos = Math.min(binaryNanos, timeStartup(spotCount, binaryDir));
+                }
+                System.out.printf("%10d %14.1f %14.1f %14.1f%n",
+                        spotCount, textNanos / 1e6, convertNanos / 1e6, binaryNanos / 1e6);
+            } finally {
+                deleteRecursively(textDir);
+                deleteRecursively(binaryDir);
+            }
+        }
+    }
+
+    private static long timeStartup(int spotCount, Path resourcesDir) {
+        long start = System.nanoTime();
+        ParkingLot lot = ParkingLot.createPersistentLot(spotCount, resourcesDir, LotJournal.Settings.defaults());
+        long elapsed = System.nanoTime() - start;
+        lot.shutdownPersistence();
+        return elapsed;
+    }
+
+    private static void writeTextState(Path stateFile, int spotCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(stateFile)) {
+            int occupied = (int) (spotCount * OCCUPANCY);
+            for (int spot = 1; spot <= occupied; spot++) {
+                writer.write(spot + "|Car|BENCH" + spot);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
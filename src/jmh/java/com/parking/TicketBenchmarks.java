@@ -0,0 +1,91 @@
+package com.parking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// pricing a ticket on exit and writing it to the ledger
+// run with: ./gradlew jmh -Pjmh.include=TicketBenchmarks
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TicketBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Tariffs {
+        final Vehicle vehicle = new Car("TICKETBENCH");
+        // a peak window and a cap, so multi-day stays do real work
+        final TariffEngine engine = TariffEngine.standard()
+                .with(VehicleType.CAR, Tariff.flat(400).withRate(8, 18, 700).withDailyCap(3_000));
+        final long[] stays = {45, 130, 600, 3 * 24 * 60 + 17};
+        int cursor;
+    }
+
+    /**
+     * A ledger in a scratch directory, quiet and never rotating by day, so only the write itself is measured.
+     */
+    @State(Scope.Benchmark)
+    public static class Ledger {
+        final Vehicle vehicle = new Car("LEDGERBENCH");
+        Path scratch;
+        TicketLedger ledger;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            scratch = Files.createTempDirectory("parking-bench-ledger");
+            ledger = new TicketLedger(scratch.resolve("tickets.txt"),
+                    new TicketLedger.Settings(64L * 1024 * 1024, false, 32, 1_000, false));
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            ledger.close();
+            deleteRecursively(scratch);
+        }
+    }
+
+    // the whole exit: open a ticket, price it with the default tariffs
+    @Benchmark
+    public long closeTicket(Tariffs state) {
+        return Ticket.generateTicket(state.vehicle).closeTicketCents();
+    }
+
+    // just the table lookups
+    @Benchmark
+    public long tariffPrice(Tariffs state) {
+        int index = state.cursor++;
+        long entryMinute = 28_000_000L + index % 1_440;
+        return state.engine.priceCents(VehicleType.CAR, entryMinute, entryMinute + state.stays[index & 3]);
+    }
+
+    // what saveToFile does, against a scratch ledger instead of src/resources/tickets.txt
+    @Benchmark
+    public void saveToFile(Ledger state) {
+        Ticket ticket = Ticket.generateTicket(state.vehicle);
+        ticket.closeTicket();
+        ticket.saveTo(state.ledger);
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// logs.txt used to be opened, appended and closed on every single event from inside the park/remove path
+// now callers just drop an event into a bounded ring buffer and one writer thread drains it in batches
+public class AuditLogger implements Closeable {
+
+    /**
+     * What {@link #log} does when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        // wait for the writer to catch up — nothing is lost, but a slow disk can reach the caller again
+        BLOCK,
+        // throw the event away and count it — callers never wait
+        DROP
+    }
+
+    private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int MAX_BATCH = 512;
+    // how long a BLOCK caller waits on a full buffer before checking the writer is still there to empty it
+    private static final long BLOCK_RECHECK_MILLIS = 100;
+
+    private final Path logFile;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<Event> buffer;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private final Object progress = new Object();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private long written;
+    private long droppedReported;
+    private volatile boolean running = true;
+
+    public AuditLogger(Path logFile, int capacity, OverflowPolicy overflowPolicy) {
+        this.logFile = logFile;
+        this.overflowPolicy = overflowPolicy;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drainLoop, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one log line. Formatting happens on the writer thread, so the arguments should be
+     * immutable values (plates, ids, amounts).
+     */
+    public void log(String action, String format, Object... args) {
+        log(System.currentTimeMillis(), action, format, args);
+    }
+
+    /**
+     * Same as {@link #log(String, String, Object...)} but stamped with the caller's clock rather than the system's.
+     * After {@link #close()} events are counted as dropped, whatever the policy.
+     */
+    public void log(long epochMillis, String action, String format, Object... args) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Event event = new Event(epochMillis, action, format, args);
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            if (buffer.offer(event)) {
+                enqueued.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            // a close() racing this call stops the writer, and nothing would ever make room again
+            while (!buffer.offer(event, BLOCK_RECHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+            enqueued.incrementAndGet();
+        } catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    /**
+     * How long each batch took to reach the file.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Blocks until everything queued before this call has been written out.
+     */
+    public void flush() {
+        long target = enqueued.get();
+        synchronized (progress) {
+            while (written < target && writer.isAlive()) {
+                try {
+                    progress.wait(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder text = new StringBuilder(MAX_BATCH * 64);
+        FileChannel channel = null;
+        try {
+            while (running || !buffer.isEmpty()) {
+                Event first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, MAX_BATCH - 1);
+                if (channel == null) {
+                    channel = openChannel();
+                }
+                writeBatch(channel, batch, text);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(channel);
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+
+    private void writeBatch(FileChannel channel, List<Event> batch, StringBuilder text) {
+        text.setLength(0);
+        long droppedSoFar = dropped.get();
+        if (droppedSoFar > droppedReported) {
+            // leaving a marker in the file itself so gaps in the audit trail are visible later
+            appendLine(text, System.currentTimeMillis(), "AUDIT",
+                    (droppedSoFar - droppedReported) + " events dropped, buffer was full");
+            droppedReported = droppedSoFar;
+        }
+        for (Event event : batch) {
+            appendLine(text, event.epochMillis(), event.action(), String.format(event.format(), event.args()));
+        }
+        if (channel != null) {
+            long start = System.nanoTime();
+            try {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                writeLatency.recordSince(start);
+            } catch (IOException ioException) {
+                System.err.println("Unable to append to log file: " + ioException.getMessage());
+            }
+        }
+        synchronized (progress) {
+            written += batch.size();
+            progress.notifyAll();
+        }
+    }
+
+    private static void appendLine(StringBuilder text, long epochMillis, String action, String message) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        text.append(LOG_TIME.format(time)).append(" | ").append(action).append(" | ").append(message).append(System.lineSeparator());
+    }
+
+    private FileChannel openChannel() {
+        try {
+            Path parent = logFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return FileChannel.open(logFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException ioException) {
+            // keep draining so callers in BLOCK mode don't hang; the lines are just lost
+            System.err.println("Unable to open log file: " + ioException.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing useful to do if closing the log fails on the way out
+        }
+    }
+
+    private record Event(long epochMillis, String action, String format, Object[] args) {
+    }
+}
@@ -4,6 +4,6 @@ package com.parking;
 public class Bike extends Vehicle {
 
     public Bike(String licensePlate) {
-        super(licensePlate, "Bike");
+        super(licensePlate, VehicleType.BIKE);
     }
 }
@@ -0,0 +1,151 @@
+package com.parking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// layered bitset: level 0 has one bit per slot, each level above has one bit per non-empty word below
+// so finding the lowest free slot is one trailing-zero count per level (4 levels covers ~16M spots)
+// growing copies the bottom level a word at a time and rebuilds the summary levels above it, so it costs about one
+// operation per 64 slots and never touches the slots themselves
+// not thread-safe on its own — ParkingLot guards it
+public class BitSetFreeSpotIndex implements FreeSpotIndex {
+
+    private int capacity;
+    private long[][] levels;
+    private int freeCount;
+
+    /**
+     * Builds an index where every slot starts out free.
+     */
+    public BitSetFreeSpotIndex(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative.");
+        }
+        this.capacity = capacity;
+        this.levels = buildLevels(new long[0], 0, capacity);
+        this.freeCount = capacity;
+    }
+
+    @Override
+    public void grow(int newCapacity) {
+        if (newCapacity < capacity) {
+            throw new IllegalArgumentException("Cannot shrink the index from " + capacity + " to " + newCapacity);
+        }
+        if (newCapacity == capacity) {
+            return;
+        }
+        levels = buildLevels(levels[0], capacity, newCapacity);
+        freeCount += newCapacity - capacity;
+        capacity = newCapacity;
+    }
+
+    @Override
+    public int claimLowest() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int slot = 0;
+        for (int level = levels.length - 1; level >= 0; level--) {
+            slot = (slot << 6) + Long.numberOfTrailingZeros(levels[level][slot]);
+        }
+        clearBit(slot);
+        return slot;
+    }
+
+    @Override
+    public boolean claim(int slot) {
+        if (!isFree(slot)) {
+            return false;
+        }
+        clearBit(slot);
+        return true;
+    }
+
+    @Override
+    public void release(int slot) {
+        checkSlot(slot);
+        if (isFree(slot)) {
+            return;
+        }
+        // walk upward only while a word flips from empty to non-empty
+        int index = slot;
+        for (long[] level : levels) {
+            long before = level[index >>> 6];
+            level[index >>> 6] = before | (1L << (index & 63));
+            if (before != 0) {
+                break;
+            }
+            index >>>= 6;
+        }
+        freeCount++;
+    }
+
+    @Override
+    public boolean isFree(int slot) {
+        checkSlot(slot);
+        return (levels[0][slot >>> 6] & (1L << (slot & 63))) != 0;
+    }
+
+    @Override
+    public int freeCount() {
+        return freeCount;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    // keeps the first oldCapacity bits of oldLeaf, marks everything from there up to capacity free, and rebuilds the
+    // levels above from the new bottom level
+    private static long[][] buildLevels(long[] oldLeaf, int oldCapacity, int capacity) {
+        List<long[]> built = new ArrayList<>();
+        int bits = Math.max(capacity, 1);
+        do {
+            int words = (bits + 63) >>> 6;
+            built.add(new long[words]);
+            bits = words;
+        } while (bits > 1);
+        long[][] levels = built.toArray(new long[0][]);
+
+        long[] leaf = levels[0];
+        System.arraycopy(oldLeaf, 0, leaf, 0, (oldCapacity + 63) >>> 6);
+        for (int slot = oldCapacity; slot < capacity; ) {
+            int word = slot >>> 6;
+            int end = Math.min(capacity, (word + 1) << 6);
+            long bitsFromSlot = -1L << (slot & 63);
+            long bitsBeforeEnd = (end & 63) == 0 ? -1L : (1L << (end & 63)) - 1;
+            leaf[word] |= bitsFromSlot & bitsBeforeEnd;
+            slot = end;
+        }
+        for (int level = 1; level < levels.length; level++) {
+            long[] below = levels[level - 1];
+            long[] current = levels[level];
+            for (int word = 0; word < below.length; word++) {
+                if (below[word] != 0) {
+                    current[word >>> 6] |= 1L << (word & 63);
+                }
+            }
+        }
+        return levels;
+    }
+
+    private void clearBit(int slot) {
+        int index = slot;
+        for (long[] level : levels) {
+            long after = level[index >>> 6] & ~(1L << (index & 63));
+            level[index >>> 6] = after;
+            if (after != 0) {
+                break;
+            }
+            index >>>= 6;
+        }
+        freeCount--;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " is outside 0.." + (capacity - 1));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.parking;
+
+import java.util.Arrays;
+
+// how many bookings of one spot class overlap each time slot, as a segment tree with lazy range adds
+// booking, cancelling and "most overlapping bookings anywhere in this window" are all O(log slots), so an
+// availability check costs the same with ten bookings or fifty thousand
+//
+// slot 0 is the origin the owning ReservationBook picked; it only ever moves forward (see rebase)
+// not thread-safe: ReservationBook keeps one per spot size behind that size's lock
+final class BookingTimeline {
+
+    private final int slots;
+    private final int leaves;
+    // max[node] = highest count anywhere under node, including adds still parked in pending[] above it
+    private final int[] max;
+    private final int[] pending;
+
+    BookingTimeline(int slots) {
+        this.slots = slots;
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        this.leaves = size;
+        this.max = new int[2 * size];
+        this.pending = new int[2 * size];
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    /**
+     * Adds {@code delta} bookings to every slot in [from, to).
+     */
+    void add(int from, int to, int delta) {
+        if (from < to) {
+            add(1, 0, leaves, Math.max(from, 0), Math.min(to, slots), delta);
+        }
+    }
+
+    /**
+     * Most bookings overlapping any single slot in [from, to), or 0 for an empty range.
+     */
+    int maxOver(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        return maxOver(1, 0, leaves, Math.max(from, 0), Math.min(to, slots));
+    }
+
+    void clear() {
+        Arrays.fill(max, 0);
+        Arrays.fill(pending, 0);
+    }
+
+    // node covers [low, high); adds that cover a whole node stop there instead of walking down to the leaves
+    private void add(int node, int low, int high, int from, int to, int delta) {
+        if (to <= low || high <= from) {
+            return;
+        }
+        if (from <= low && high <= to) {
+            max[node] += delta;
+            pending[node] += delta;
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        add(2 * node, low, middle, from, to, delta);
+        add(2 * node + 1, middle, high, from, to, delta);
+        max[node] = pending[node] + Math.max(max[2 * node], max[2 * node + 1]);
+    }
+
+    private int maxOver(int node, int low, int high, int from, int to) {
+        if (to <= low || high <= from) {
+            return Integer.MIN_VALUE;
+        }
+        if (from <= low && high <= to) {
+            return max[node];
+        }
+        int middle = (low + high) >>> 1;
+        int below = Math.max(maxOver(2 * node, low, middle, from, to), maxOver(2 * node + 1, middle, high, from, to));
+        return below + pending[node];
+    }
+}
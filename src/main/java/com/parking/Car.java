@@ -4,6 +4,6 @@ package com.parking;
 public class Car extends Vehicle {
 
     public Car(String licensePlate) {
-        super(licensePlate, "Car");
+        super(licensePlate, VehicleType.CAR);
     }
 }
@@ -0,0 +1,182 @@
+package com.parking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// walks the " | " separated fields of one line straight out of a byte buffer
+// the ledger and the audit log are all ASCII, so timestamps, amounts and vehicle types can be read off the bytes
+// without ever making a String — one cursor per thread is reused for every line it scans
+final class FieldCursor {
+
+    private static final byte SEPARATOR = '|';
+    private static final byte[][] TYPE_NAMES = OccupancySnapshot.VEHICLE_TYPES.stream()
+            .map(name -> name.getBytes(StandardCharsets.US_ASCII))
+            .toArray(byte[][]::new);
+
+    private ByteBuffer buffer;
+    private int lineEnd;
+    private int next;
+    private int fieldStart;
+    private int fieldEnd;
+
+    /**
+     * Points the cursor at {@code [lineStart, lineEnd)} of the buffer (absolute indices, no line break included).
+     */
+    void reset(ByteBuffer buffer, int lineStart, int lineEnd) {
+        this.buffer = buffer;
+        this.lineEnd = lineEnd;
+        this.next = lineStart;
+        this.fieldStart = lineStart;
+        this.fieldEnd = lineStart;
+    }
+
+    /**
+     * Moves to the next field, trimmed of the spaces around the separator.
+     *
+     * @return false once the line has no fields left.
+     */
+    boolean nextField() {
+        if (next > lineEnd) {
+            return false;
+        }
+        int start = next;
+        int end = start;
+        while (end < lineEnd && buffer.get(end) != SEPARATOR) {
+            end++;
+        }
+        next = end + 1;
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        fieldStart = start;
+        fieldEnd = end;
+        return true;
+    }
+
+    int length() {
+        return fieldEnd - fieldStart;
+    }
+
+    boolean equalsAscii(byte[] ascii) {
+        if (length() != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (buffer.get(fieldStart + i) != ascii[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a "yyyy-MM-dd HH:mm:ss" field as seconds since 1970-01-01 00:00 on the same wall clock.
+     * The files hold local times, so differences are right except across a daylight saving change.
+     *
+     * @return the seconds, or -1 if the field isn't a timestamp.
+     */
+    long wallClockSeconds() {
+        if (length() != 19) {
+            return -1;
+        }
+        int year = digits(0, 4);
+        int month = digits(5, 2);
+        int day = digits(8, 2);
+        int hour = digits(11, 2);
+        int minute = digits(14, 2);
+        int second = digits(17, 2);
+        if ((year | month | day | hour | minute | second) < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return -1;
+        }
+        return epochDay(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+    }
+
+    /**
+     * Reads "$12.34" (or "12.34", "12") as cents.
+     *
+     * @return the cents, or -1 if the field isn't an amount.
+     */
+    long cents() {
+        int i = fieldStart;
+        if (i < fieldEnd && buffer.get(i) == '$') {
+            i++;
+        }
+        if (i == fieldEnd) {
+            return -1;
+        }
+        long whole = 0;
+        for (; i < fieldEnd && buffer.get(i) != '.'; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            whole = whole * 10 + digit;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < fieldEnd) {
+            for (i++; i < fieldEnd; i++, fractionDigits++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || fractionDigits == 2) {
+                    return -1;
+                }
+                fraction = fraction * 10 + digit;
+            }
+        }
+        return whole * 100 + (fractionDigits == 1 ? fraction * 10 : fraction);
+    }
+
+    /**
+     * Matches the field's first word against {@link OccupancySnapshot#VEHICLE_TYPES}, ignoring case.
+     *
+     * @return the type's slot, with anything unknown (including an empty field) in the "Other" slot.
+     */
+    int typeSlot() {
+        int wordEnd = fieldStart;
+        while (wordEnd < fieldEnd && buffer.get(wordEnd) != ' ') {
+            wordEnd++;
+        }
+        int wordLength = wordEnd - fieldStart;
+        for (int slot = 0; slot < TYPE_NAMES.length; slot++) {
+            byte[] name = TYPE_NAMES[slot];
+            if (name.length == wordLength && matchesIgnoreCase(name)) {
+                return slot;
+            }
+        }
+        return OccupancySnapshot.TYPE_SLOTS - 1;
+    }
+
+    private boolean matchesIgnoreCase(byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if ((buffer.get(fieldStart + i) | 0x20) != (name[i] | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int digits(int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buffer.get(fieldStart + offset + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // days since 1970-01-01 for a proleptic Gregorian date (Howard Hinnant's days_from_civil)
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+}
@@ -0,0 +1,83 @@
+package com.parking;
+
+// decides which spot sizes a vehicle type may use, best fit first
+// e.g. a bike tries bike bays, then overflows into compact, then large — but only once the smaller ones are full
+public final class FittingPolicy {
+
+    private static final SpotSize[] UNKNOWN_TYPE = {SpotSize.LARGE};
+
+    // indexed by VehicleType.ordinal(), so the lookup on the hot path is one array read
+    private final SpotSize[][] preferences;
+
+    private FittingPolicy(SpotSize[][] preferences) {
+        this.preferences = preferences;
+    }
+
+    /**
+     * Smallest fitting size first, then anything bigger once that runs out.
+     */
+    public static FittingPolicy bestFitWithOverflow() {
+        return new FittingPolicy(new SpotSize[VehicleType.count()][])
+                .with(VehicleType.BIKE, SpotSize.BIKE, SpotSize.COMPACT, SpotSize.LARGE)
+                .with(VehicleType.CAR, SpotSize.COMPACT, SpotSize.LARGE)
+                .with(VehicleType.TRUCK, SpotSize.LARGE);
+    }
+
+    /**
+     * Every vehicle type only ever gets its own size.
+     */
+    public static FittingPolicy strict() {
+        return new FittingPolicy(new SpotSize[VehicleType.count()][])
+                .with(VehicleType.BIKE, SpotSize.BIKE)
+                .with(VehicleType.CAR, SpotSize.COMPACT)
+                .with(VehicleType.TRUCK, SpotSize.LARGE);
+    }
+
+    /**
+     * Returns a copy where the given vehicle type tries the sizes in the given order.
+     */
+    public FittingPolicy with(VehicleType vehicleType, SpotSize... preferenceOrder) {
+        if (preferenceOrder.length == 0) {
+            throw new IllegalArgumentException("A vehicle type needs at least one spot size.");
+        }
+        SpotSize[][] copy = preferences.clone();
+        copy[vehicleType.ordinal()] = preferenceOrder.clone();
+        return new FittingPolicy(copy);
+    }
+
+    /**
+     * Same as {@link #with(VehicleType, SpotSize...)} with the type given by name.
+     *
+     * @throws IllegalArgumentException for a type name the lot doesn't know.
+     */
+    public FittingPolicy with(String vehicleType, SpotSize... preferenceOrder) {
+        VehicleType type = VehicleType.parse(vehicleType);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown vehicle type: " + vehicleType);
+        }
+        return with(type, preferenceOrder);
+    }
+
+    // callers must not modify the returned array
+    SpotSize[] preferencesFor(VehicleType vehicleType) {
+        SpotSize[] sizes = preferences[vehicleType.ordinal()];
+        return sizes == null ? UNKNOWN_TYPE : sizes;
+    }
+
+    public boolean fits(VehicleType vehicleType, SpotSize size) {
+        for (SpotSize allowed : preferencesFor(vehicleType)) {
+            if (allowed == size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unknown type names only fit large spots, same as a type the policy has no preferences for.
+     */
+    public boolean fits(String vehicleType, SpotSize size) {
+        VehicleType type = VehicleType.parse(vehicleType);
+        return type == null ? size == SpotSize.LARGE : fits(type, size);
+    }
+}
@@ -0,0 +1,36 @@
+package com.parking;
+
+// pulled this out of ParkingLot so the "which spot is free next" question stops being a full scan
+// slots are zero-based positions; whoever owns the index maps them back to spot ids
+public interface FreeSpotIndex {
+
+    /**
+     * Claims the lowest free slot.
+     *
+     * @return the claimed slot, or -1 when everything is taken.
+     */
+    int claimLowest();
+
+    /**
+     * Claims a specific slot (used when reloading saved state).
+     *
+     * @return true if the slot was free and is now claimed.
+     */
+    boolean claim(int slot);
+
+    /**
+     * Hands a slot back so it can be claimed again.
+     */
+    void release(int slot);
+
+    boolean isFree(int slot);
+
+    /**
+     * Adds slots {@code capacity()..newCapacity-1}, all free. Slots already there keep their state.
+     */
+    void grow(int newCapacity);
+
+    int freeCount();
+
+    int capacity();
+}
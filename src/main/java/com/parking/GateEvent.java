@@ -0,0 +1,53 @@
+package com.parking;
+
+// one read from an entry or exit gate: which gate, when, and which vehicle
+// recorded feeds are one event per line: KIND|epochMillis|gate|vehicleType|plate (type is empty for exits)
+public record GateEvent(Kind kind, String licensePlate, String vehicleType, String gateId, long epochMillis) {
+
+    public enum Kind {
+        ENTER,
+        EXIT
+    }
+
+    public GateEvent {
+        if (kind == null || licensePlate == null || licensePlate.isBlank()) {
+            throw new IllegalArgumentException("Gate events need a kind and a plate.");
+        }
+        if (kind == Kind.ENTER && (vehicleType == null || vehicleType.isBlank())) {
+            throw new IllegalArgumentException("Entry events need a vehicle type.");
+        }
+        // plates that PlateCodec can't pack still make an event, so the ingestor can report them
+        String packable = PlateCodec.normalize(licensePlate);
+        licensePlate = packable != null ? packable : licensePlate.trim().toUpperCase();
+    }
+
+    public static GateEvent enter(String gateId, String vehicleType, String licensePlate, long epochMillis) {
+        return new GateEvent(Kind.ENTER, licensePlate, vehicleType, gateId, epochMillis);
+    }
+
+    public static GateEvent exit(String gateId, String licensePlate, long epochMillis) {
+        return new GateEvent(Kind.EXIT, licensePlate, "", gateId, epochMillis);
+    }
+
+    /**
+     * Reads one line of a recorded feed.
+     *
+     * @throws IllegalArgumentException if the line isn't a gate event.
+     */
+    public static GateEvent parse(String line) {
+        String[] parts = line.trim().split("\\|", -1);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Gate events look like KIND|epochMillis|gate|type|plate: " + line);
+        }
+        return new GateEvent(Kind.valueOf(parts[0].trim().toUpperCase()),
+                parts[4],
+                parts[3].trim(),
+                parts[2].trim(),
+                Long.parseLong(parts[1].trim()));
+    }
+
+    public String toLine() {
+        return kind + "|" + epochMillis + "|" + (gateId == null ? "" : gateId) + "|"
+                + (vehicleType == null ? "" : vehicleType) + "|" + licensePlate;
+    }
+}
@@ -0,0 +1,240 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// programmatic way in for gate feeds: any number of gate threads submit events, one worker applies them to the lot
+// the queue is bounded so a burst can't eat the heap, and the worker drains it in batches so a busy feed
+// costs one wakeup per batch instead of one per car
+//
+// events are applied in submission order, so an ENTER followed by an EXIT for the same plate always lands in that order
+public class GateEventIngestor implements Closeable {
+
+    /**
+     * @param queueCapacity events that may wait for the worker before submissions get rejected
+     * @param maxBatch      most events the worker takes off the queue in one go
+     */
+    public record Settings(int queueCapacity, int maxBatch) {
+
+        public Settings {
+            if (queueCapacity <= 0 || maxBatch <= 0) {
+                throw new IllegalArgumentException("Ingestor queue capacity and batch size must be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(65_536, 256);
+        }
+    }
+
+    public enum Outcome {
+        PARKED,
+        // ENTER for a plate that's already inside
+        ALREADY_PARKED,
+        LOT_FULL,
+        CHECKED_OUT,
+        // EXIT for a plate the lot doesn't know
+        NOT_PARKED,
+        // the event itself was bad (unknown vehicle type or gate)
+        REJECTED
+    }
+
+    /**
+     * What applying one event did. {@code spotId} is set for PARKED and CHECKED_OUT, {@code ticket} (already closed
+     * at the event's timestamp) for CHECKED_OUT, and {@code detail} explains a REJECTED event.
+     */
+    public record Result(GateEvent event, Outcome outcome, int spotId, Ticket ticket, String detail) {
+    }
+
+    private record Pending(GateEvent event, CompletableFuture<Result> future) {
+    }
+
+    private final ParkingLot lot;
+    private final TariffEngine tariffEngine;
+    private final Settings settings;
+    private final BlockingQueue<Pending> queue;
+    private final Thread worker;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private volatile boolean running = true;
+    private volatile boolean drained;
+
+    public GateEventIngestor(ParkingLot lot, TariffEngine tariffEngine, Settings settings) {
+        this.lot = lot;
+        this.tariffEngine = tariffEngine;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.queueCapacity());
+        LotMetrics metrics = lot.getMetrics();
+        metrics.register("ingest.batch", batchLatency);
+        metrics.gauge("ingest.queue_depth", this::getQueueDepth);
+        metrics.gauge("ingest.processed", this::getProcessedCount);
+        metrics.gauge("ingest.rejected", this::getRejectedCount);
+        this.worker = new Thread(this::drainLoop, "gate-event-ingestor");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues the event without waiting. If the queue is full (or the ingestor is closed) the returned future
+     * fails straight away with a {@link RejectedExecutionException}, so the gate can back off or retry.
+     * <p>
+     * Futures are completed on the worker thread; chain with the *Async methods for anything slow.
+     */
+    public CompletableFuture<Result> submit(GateEvent event) {
+        Pending pending = new Pending(event, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            return reject(pending);
+        }
+        return afterEnqueue(pending);
+    }
+
+    /**
+     * Like {@link #submit(GateEvent)} but waits up to {@code timeout} for room in the queue.
+     */
+    public CompletableFuture<Result> submit(GateEvent event, long timeout, TimeUnit unit) {
+        Pending pending = new Pending(event, new CompletableFuture<>());
+        try {
+            if (!running || !queue.offer(pending, timeout, unit)) {
+                return reject(pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return reject(pending);
+        }
+        return afterEnqueue(pending);
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking new events, applies everything already queued, then stops the worker.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Result> afterEnqueue(Pending pending) {
+        // close() may have finished its last drain between our running check and the offer;
+        // if so nobody is coming for this event, so take it back out and fail it
+        if (drained && queue.remove(pending)) {
+            return reject(pending);
+        }
+        return pending.future();
+    }
+
+    private CompletableFuture<Result> reject(Pending pending) {
+        rejected.incrementAndGet();
+        pending.future().completeExceptionally(new RejectedExecutionException(
+                running ? "Gate event queue is full" : "Gate event ingestor is closed"));
+        return pending.future();
+    }
+
+    private void drainLoop() {
+        List<Pending> batch = new ArrayList<>(settings.maxBatch());
+        try {
+            while (running || !queue.isEmpty()) {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, settings.maxBatch() - 1);
+                applyBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            drained = true;
+            // anything that slipped in while we were shutting down still gets applied
+            queue.drainTo(batch);
+            applyBatch(batch);
+        }
+    }
+
+    private void applyBatch(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (Pending pending : batch) {
+            Result result;
+            try {
+                result = apply(pending.event());
+            } catch (RuntimeException ex) {
+                // one broken event must not take the whole feed down
+                pending.future().completeExceptionally(ex);
+                continue;
+            }
+            processed.incrementAndGet();
+            pending.future().complete(result);
+        }
+        batches.incrementAndGet();
+        batchLatency.recordSince(start);
+        batch.clear();
+    }
+
+    private Result apply(GateEvent event) {
+        long epochSecond = Math.floorDiv(event.epochMillis(), 1000);
+        if (event.kind() == GateEvent.Kind.EXIT) {
+            Ticket ticket = lot.checkOut(event.licensePlate(), tariffEngine);
+            if (ticket == null) {
+                return new Result(event, Outcome.NOT_PARKED, 0, null, null);
+            }
+            ticket.closeTicketCents(LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()));
+            return new Result(event, Outcome.CHECKED_OUT, ticket.getSpotId(), ticket, null);
+        }
+
+        VehicleType vehicleType = VehicleType.parse(event.vehicleType());
+        if (vehicleType == null) {
+            return new Result(event, Outcome.REJECTED, 0, null, "Unknown vehicle type " + event.vehicleType());
+        }
+        if (!PlateCodec.isValid(event.licensePlate())) {
+            return new Result(event, Outcome.REJECTED, 0, null, "Unusable plate " + event.licensePlate());
+        }
+        Vehicle vehicle = vehicleType.newVehicle(event.licensePlate());
+        String gateId = event.gateId() == null || event.gateId().isBlank() ? lot.getDefaultGate() : event.gateId();
+        ParkingSpot spot;
+        try {
+            spot = lot.park(vehicle, gateId, epochSecond);
+        } catch (IllegalArgumentException unknownGate) {
+            return new Result(event, Outcome.REJECTED, 0, null, unknownGate.getMessage());
+        }
+        if (spot != null) {
+            return new Result(event, Outcome.PARKED, spot.getId(), null, null);
+        }
+        Outcome outcome = lot.findSpotByPlate(event.licensePlate()) != null ? Outcome.ALREADY_PARKED : Outcome.LOT_FULL;
+        return new Result(event, outcome, 0, null, null);
+    }
+}
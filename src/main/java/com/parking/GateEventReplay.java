@@ -0,0 +1,186 @@
+package com.parking;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// load-testing tool: feeds a recorded gate event file through a GateEventIngestor on a throwaway lot
+// and reports throughput, outcomes and submit-to-applied latency
+//
+// replay:   java -cp out com.parking.GateEventReplay events.txt [--spots 1000 | --config config.txt] [--speed 0] [--queue 65536] [--batch 256]
+// generate: java -cp out com.parking.GateEventReplay --generate events.txt 100000 [--seed 42]
+//
+// --speed 0 replays as fast as the ingestor takes events; --speed 60 plays an hour of recorded traffic in a minute
+public final class GateEventReplay {
+
+    private static final String[] VEHICLE_TYPES = {"Car", "Car", "Car", "Bike", "Truck"};
+
+    private GateEventReplay() {
+        // command line tool only
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: GateEventReplay <events file> [--spots N | --config file] [--speed X] [--queue N] [--batch N]");
+            System.err.println("   or: GateEventReplay --generate <events file> <count> [--seed N]");
+            return;
+        }
+        if ("--generate".equals(args[0])) {
+            long seed = args.length > 4 && "--seed".equals(args[3]) ? Long.parseLong(args[4]) : 42L;
+            int written = generate(Paths.get(args[1]), Integer.parseInt(args[2]), seed);
+            System.out.printf("Wrote %d gate events to %s%n", written, args[1]);
+            return;
+        }
+
+        Path eventsFile = Paths.get(args[0]);
+        LotConfig config = LotConfig.defaults(1_000);
+        double speed = 0;
+        GateEventIngestor.Settings settings = GateEventIngestor.Settings.defaults();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--spots" -> config = LotConfig.defaults(Integer.parseInt(args[++i]));
+                case "--config" -> {
+                    LotConfig loaded = LotConfig.load(Paths.get(args[++i]));
+                    if (loaded != null) {
+                        config = loaded;
+                    }
+                }
+                case "--speed" -> speed = Double.parseDouble(args[++i]);
+                case "--queue" -> settings = new GateEventIngestor.Settings(Integer.parseInt(args[++i]), settings.maxBatch());
+                case "--batch" -> settings = new GateEventIngestor.Settings(settings.queueCapacity(), Integer.parseInt(args[++i]));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        List<GateEvent> events = read(eventsFile);
+        ParkingLot lot = ParkingLot.createEphemeralLot(config);
+        GateEventIngestor ingestor = new GateEventIngestor(lot, TariffEngine.getDefault(), settings);
+        Report report = replay(events, ingestor, speed);
+        ingestor.close();
+        report.print(ingestor);
+    }
+
+    /**
+     * Submits every event (pacing them by their timestamps unless {@code speed} is 0) and waits for all results.
+     */
+    static Report replay(List<GateEvent> events, GateEventIngestor ingestor, double speed) {
+        long[] latencyNanos = new long[events.size()];
+        List<CompletableFuture<GateEventIngestor.Result>> futures = new ArrayList<>(events.size());
+        long firstMillis = events.isEmpty() ? 0 : events.get(0).epochMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < events.size(); i++) {
+            GateEvent event = events.get(i);
+            if (speed > 0) {
+                long dueNanos = start + (long) ((event.epochMillis() - firstMillis) * 1_000_000L / speed);
+                long wait = dueNanos - System.nanoTime();
+                if (wait > 0) {
+                    sleepNanos(wait);
+                }
+            }
+            int index = i;
+            long submitted = System.nanoTime();
+            // waiting for room rather than failing keeps a fast replay from just measuring rejections
+            // joining the whenComplete stage (not the raw future) guarantees the latency is written before we read it
+            futures.add(ingestor.submit(event, 10, TimeUnit.SECONDS)
+                    .whenComplete((result, failure) -> latencyNanos[index] = System.nanoTime() - submitted));
+        }
+        Map<GateEventIngestor.Outcome, Integer> outcomes = new EnumMap<>(GateEventIngestor.Outcome.class);
+        int failed = 0;
+        for (CompletableFuture<GateEventIngestor.Result> future : futures) {
+            try {
+                outcomes.merge(future.join().outcome(), 1, Integer::sum);
+            } catch (RuntimeException ex) {
+                failed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Report(events.size(), elapsed, outcomes, failed, latencyNanos);
+    }
+
+    record Report(int events, long elapsedNanos, Map<GateEventIngestor.Outcome, Integer> outcomes, int failed,
+                  long[] latencyNanos) {
+
+        void print(GateEventIngestor ingestor) {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%d events in %.3f s (%.0f events/s), %d batches%n",
+                    events, seconds, events / Math.max(seconds, 1e-9), ingestor.getBatchCount());
+            outcomes.forEach((outcome, count) -> System.out.printf("  %-15s %d%n", outcome, count));
+            if (failed > 0) {
+                System.out.printf("  %-15s %d%n", "FAILED", failed);
+            }
+            long[] sorted = latencyNanos.clone();
+            Arrays.sort(sorted);
+            if (sorted.length > 0) {
+                System.out.printf("latency p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                        percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.99) / 1e3, sorted[sorted.length - 1] / 1e3);
+            }
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+        }
+    }
+
+    static List<GateEvent> read(Path eventsFile) throws IOException {
+        List<GateEvent> events = new ArrayList<>();
+        for (String line : Files.readAllLines(eventsFile)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                events.add(GateEvent.parse(trimmed));
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Skipping malformed gate event: " + trimmed);
+            }
+        }
+        return events;
+    }
+
+    // a plausible day at the gates: mostly arrivals early on, exits of plates that are actually inside, ~1 event/s
+    static int generate(Path eventsFile, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<String> inside = new ArrayList<>();
+        long clock = System.currentTimeMillis();
+        int nextPlate = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(eventsFile)) {
+            for (int i = 0; i < count; i++) {
+                clock += random.nextInt(2_000);
+                GateEvent event;
+                if (!inside.isEmpty() && random.nextInt(100) < 45) {
+                    // swap-remove keeps picking a random leaver O(1)
+                    int leaver = random.nextInt(inside.size());
+                    String plate = inside.get(leaver);
+                    inside.set(leaver, inside.get(inside.size() - 1));
+                    inside.remove(inside.size() - 1);
+                    event = GateEvent.exit("", plate, clock);
+                } else {
+                    String plate = "GEN" + nextPlate++;
+                    inside.add(plate);
+                    event = GateEvent.enter("", VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)], plate, clock);
+                }
+                writer.write(event.toLine());
+                writer.newLine();
+            }
+        }
+        return count;
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
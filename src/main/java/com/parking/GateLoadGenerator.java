@@ -0,0 +1,189 @@
+package com.parking;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// loopback load generator for GateServer: opens N kiosk connections at once, keeps them all open,
+// and has each one run park -> exit -> pay rounds with think time in between, like a slow human at a kiosk
+//
+// java -cp out com.parking.GateLoadGenerator [--sessions 2000] [--rounds 3] [--think-ms 200] [--gateway-ms 50] [--port P]
+// without --port it starts its own server on a throwaway lot with one spot per session, paying through a simulated
+// gateway that takes --gateway-ms per charge
+public final class GateLoadGenerator {
+
+    private GateLoadGenerator() {
+        // command line tool only
+    }
+
+    /**
+     * What one run measured; latencies are per request, in nanoseconds, sorted.
+     */
+    record Report(int sessions, long requests, int errors, long elapsedNanos, long[] sortedLatencyNanos) {
+
+        long percentileNanos(double fraction) {
+            if (sortedLatencyNanos.length == 0) {
+                return 0;
+            }
+            return sortedLatencyNanos[Math.min(sortedLatencyNanos.length - 1, (int) (sortedLatencyNanos.length * fraction))];
+        }
+
+        void print() {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%d sessions, %d requests in %.2f s (%.0f req/s), %d errors%n",
+                    sessions, requests, seconds, requests / Math.max(seconds, 1e-9), errors);
+            System.out.printf("request latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    percentileNanos(0.50) / 1e6, percentileNanos(0.99) / 1e6, percentileNanos(1.0) / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int sessions = 2_000;
+        int rounds = 3;
+        int thinkMillis = 200;
+        int port = -1;
+        int gatewayMillis = 50;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions" -> sessions = Integer.parseInt(args[++i]);
+                case "--rounds" -> rounds = Integer.parseInt(args[++i]);
+                case "--think-ms" -> thinkMillis = Integer.parseInt(args[++i]);
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--gateway-ms" -> gatewayMillis = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("Session threads: %s%n", GateServer.virtualThreadsAvailable() ? "virtual" : "platform");
+        if (port >= 0) {
+            run(port, sessions, rounds, thinkMillis).print();
+            return;
+        }
+        ParkingLot lot = ParkingLot.createEphemeralLot(sessions);
+        PaymentPipeline.Settings defaults = PaymentPipeline.Settings.defaults();
+        try (PaymentPipeline payments = new PaymentPipeline(lot, null,
+                new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.steady(gatewayMillis, gatewayMillis / 2)),
+                new PaymentPipeline.Settings(defaults.queueCapacity(), 64, defaults.attemptTimeoutMillis(),
+                        defaults.maxAttempts(), defaults.retryBackoffMillis(), defaults.settledRetentionMillis(),
+                        defaults.maxSettled()));
+             GateServer server = new GateServer(lot, TariffEngine.standard(), payments,
+                     new GateServer.Settings(0, sessions, 60_000))) {
+            run(server.getPort(), sessions, rounds, thinkMillis).print();
+            System.out.printf("server handled %d requests, %d payments approved%n",
+                    server.getRequestCount(), payments.getApprovedCount());
+        }
+    }
+
+    /**
+     * Connects every session first, then releases them together so they really are concurrent.
+     */
+    static Report run(int port, int sessions, int rounds, int thinkMillis) {
+        long[][] latencies = new long[sessions][];
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(sessions);
+        ExecutorService kiosks = GateServer.newSessionExecutor("kiosk");
+        for (int session = 0; session < sessions; session++) {
+            int id = session;
+            kiosks.execute(() -> {
+                try {
+                    latencies[id] = kiosk(port, "LOAD" + id, rounds, thinkMillis, connected, go);
+                } catch (IOException | RuntimeException ex) {
+                    errors.incrementAndGet();
+                    latencies[id] = new long[0];
+                    connected.countDown();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        long start;
+        try {
+            connected.await();
+            start = System.nanoTime();
+            go.countDown();
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kiosks.shutdownNow();
+            return new Report(sessions, 0, errors.get(), 0, new long[0]);
+        }
+        long elapsed = System.nanoTime() - start;
+        kiosks.shutdown();
+        try {
+            kiosks.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        return new Report(sessions, all.length, errors.get(), elapsed, all);
+    }
+
+    private static long[] kiosk(int port, String plate, int rounds, int thinkMillis,
+                                CountDownLatch connected, CountDownLatch go) throws IOException {
+        long[] latencies = new long[rounds * 3];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            connected.countDown();
+            await(go);
+            int request = 0;
+            for (int round = 0; round < rounds; round++) {
+                latencies[request++] = call(in, out, "PARK " + plate + " Car", "OK PARKED");
+                think(thinkMillis);
+                latencies[request++] = call(in, out, "EXIT " + plate, "OK DUE");
+                think(thinkMillis);
+                latencies[request++] = call(in, out, "PAY CARD", "OK PAID");
+            }
+            call(in, out, "QUIT", "BYE");
+        }
+        return latencies;
+    }
+
+    private static long call(BufferedReader in, Writer out, String request, String expectedPrefix) throws IOException {
+        long start = System.nanoTime();
+        out.write(request);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        long elapsed = System.nanoTime() - start;
+        if (reply == null || !reply.startsWith(expectedPrefix)) {
+            throw new IOException("'" + request + "' got '" + reply + "'");
+        }
+        return elapsed;
+    }
+
+    // spread the think time a little so thousands of kiosks don't all fire on the same tick
+    private static void think(int thinkMillis) {
+        if (thinkMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(thinkMillis / 2 + (long) (Math.random() * thinkMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
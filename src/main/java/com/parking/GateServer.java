@@ -0,0 +1,428 @@
+package com.parking;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// kiosk/gate server: every TCP connection gets its own session thread running the park/exit/pay conversation
+// against one shared ParkingLot, so a driver fumbling for a card only ever holds up their own kiosk
+//
+// line protocol, one request and one reply per line:
+//   PARK <plate> <Car|Bike|Truck> [gate]  -> OK PARKED <spot> | ERR FULL | ERR ALREADY_PARKED <spot> | ERR BAD_TYPE | ERR BAD_PLATE
+//                                         | ERR BAD_GATE
+//   WAIT <plate> <type> [gate] [priority] -> like PARK, but a full lot puts the car on the waitlist and the reply comes
+//                                            once a spot is handed over: OK PARKED <spot> | ERR WAIT_TIMEOUT | (PARK's errors)
+//   EXIT <plate>                          -> OK DUE <cents> | ERR NOT_PARKED | ERR UNPAID   (vehicle leaves, ticket waits for PAY)
+//   PAY <CASH|CARD>                       -> OK PAID <cents> | ERR DECLINED | ERR PAYMENT_FAILED | ERR NOTHING_DUE | ERR BAD_METHOD
+//   STATUS                                -> OK FREE <free> <capacity>
+//   WHERE <plate>                         -> OK SPOT <spot> | ERR NOT_PARKED | ERR BAD_PLATE
+//   QUIT                                  -> BYE
+// on a follower's lot (see LotFollower) PARK, WAIT, EXIT and PAY answer ERR READ_ONLY; STATUS and WHERE still work
+public class GateServer implements Closeable {
+
+    /**
+     * @param port              TCP port on loopback; 0 picks a free one
+     * @param maxSessions       connections beyond this get "ERR BUSY" and are closed
+     * @param idleTimeoutMillis a session that sends nothing for this long is dropped
+     */
+    public record Settings(int port, int maxSessions, int idleTimeoutMillis) {
+
+        public Settings {
+            if (port < 0 || maxSessions <= 0 || idleTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("Gate server port must be >= 0, session limit and idle timeout positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(7070, 10_000, 300_000);
+        }
+    }
+
+    // the commands a follower's lot has to turn away
+    private static final Set<String> WRITES = Set.of("PARK", "WAIT", "EXIT", "PAY");
+
+    private final ParkingLot lot;
+    private final TariffEngine tariffEngine;
+    private final PaymentPipeline payments;
+    private final Settings settings;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Thread acceptor;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final LongAdder requests;
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private volatile boolean running = true;
+
+    /**
+     * Binds the port and starts accepting right away.
+     *
+     * @param payments settles PAY requests; it records paid tickets, so the server itself never touches the ledger.
+     */
+    public GateServer(ParkingLot lot, TariffEngine tariffEngine, PaymentPipeline payments, Settings settings) throws IOException {
+        this.lot = lot;
+        this.tariffEngine = tariffEngine;
+        this.payments = payments;
+        this.settings = settings;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), settings.port()), 1_024);
+        this.sessions = newSessionExecutor("gate-session");
+        LotMetrics metrics = lot.getMetrics();
+        metrics.register("gate.request", requestLatency);
+        metrics.gauge("gate.active_sessions", this::getActiveSessions);
+        this.requests = metrics.counter("gate.requests");
+        this.acceptor = new Thread(this::acceptLoop, "gate-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * One virtual thread per task where the JDK has them (21+), otherwise a daemon platform thread per task.
+     * Looked up reflectively so the code still builds and runs on 17.
+     */
+    static ExecutorService newSessionExecutor(String threadName) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException unavailable) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, threadName + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException unavailable) {
+            return false;
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Requests answered by every gate server on this lot.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+        // closing the sockets is what wakes sessions blocked in readLine
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Usage: {@code GateServer [port] [metricsPort]} — serves the configured lot until the process is stopped,
+     * with its metrics on {@code http://127.0.0.1:metricsPort/metrics} (9100 unless given). Edits to config.txt
+     * are applied to the lot while it runs.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Settings.defaults().port();
+        int metricsPort = args.length > 1 ? Integer.parseInt(args[1]) : 9_100;
+        Settings defaults = Settings.defaults();
+        GateServer server = new GateServer(ParkingLot.getInstance(), TariffEngine.getDefault(), PaymentPipeline.getDefault(),
+                new Settings(port, defaults.maxSessions(), defaults.idleTimeoutMillis()));
+        MetricsExporter metrics = MetricsExporter.http(ParkingLot.getInstance().getMetrics(), metricsPort);
+        Main.watchConfig();
+        System.out.printf("Gate server listening on 127.0.0.1:%d (%s threads), metrics on port %d%n",
+                server.getPort(), virtualThreadsAvailable() ? "virtual" : "platform", metrics.getPort());
+        // all server threads are daemons, so park the main thread until the acceptor stops
+        server.awaitClose();
+    }
+
+    /**
+     * Blocks until {@link #close()} has stopped the acceptor.
+     */
+    public void awaitClose() throws InterruptedException {
+        acceptor.join();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ioException) {
+                if (running) {
+                    System.err.println("Gate server accept failed: " + ioException.getMessage());
+                }
+                continue;
+            }
+            if (!running) {
+                closeQuietly(socket);
+                break;
+            }
+            if (activeSessions.incrementAndGet() > settings.maxSessions()) {
+                activeSessions.decrementAndGet();
+                reject(socket);
+                continue;
+            }
+            openSockets.add(socket);
+            try {
+                sessions.execute(() -> serve(socket));
+            } catch (RuntimeException shuttingDown) {
+                openSockets.remove(socket);
+                activeSessions.decrementAndGet();
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Session session = new Session();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setSoTimeout(settings.idleTimeoutMillis());
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                requests.increment();
+                long start = System.nanoTime();
+                String reply = session.handle(line.trim());
+                requestLatency.recordSince(start);
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+                if ("BYE".equals(reply)) {
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException idle) {
+            // the kiosk went quiet; drop it so it doesn't hold a session slot forever
+        } catch (SocketException closed) {
+            // client hung up or the server is closing
+        } catch (IOException ioException) {
+            System.err.println("Gate session failed: " + ioException.getMessage());
+        } finally {
+            session.abandon();
+            openSockets.remove(socket);
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    // one kiosk's conversation; only ever touched by that connection's thread
+    private final class Session {
+        private Ticket due;
+
+        String handle(String line) {
+            String[] words = line.split("\\s+");
+            String command = words[0].toUpperCase();
+            if (lot.isReadOnly() && WRITES.contains(command)) {
+                return "ERR READ_ONLY";
+            }
+            return switch (command) {
+                case "PARK" -> words.length < 3 ? "ERR USAGE PARK <plate> <type> [gate]" : park(words);
+                case "WAIT" -> words.length < 3 ? "ERR USAGE WAIT <plate> <type> [gate] [priority]" : waitForSpot(words);
+                case "EXIT" -> words.length < 2 ? "ERR USAGE EXIT <plate>" : exit(words[1]);
+                case "PAY" -> words.length < 2 ? "ERR USAGE PAY <CASH|CARD>" : pay(words[1]);
+                case "STATUS" -> status();
+                case "WHERE" -> words.length < 2 ? "ERR USAGE WHERE <plate>" : where(words[1]);
+                case "QUIT" -> "BYE";
+                default -> "ERR UNKNOWN_COMMAND";
+            };
+        }
+
+        private String park(String[] words) {
+            VehicleType vehicleType = VehicleType.parse(words[2]);
+            if (vehicleType == null) {
+                return "ERR BAD_TYPE";
+            }
+            if (!PlateCodec.isValid(words[1])) {
+                return "ERR BAD_PLATE";
+            }
+            Vehicle vehicle = vehicleType.newVehicle(words[1]);
+            String gateId = words.length > 3 ? words[3] : lot.getDefaultGate();
+            ParkingSpot spot;
+            try {
+                spot = lot.park(vehicle, gateId, lot.nowEpochSecond());
+            } catch (IllegalArgumentException unknownGate) {
+                return "ERR BAD_GATE";
+            }
+            if (spot != null) {
+                return "OK PARKED " + spot.getId();
+            }
+            ParkingSpot existing = lot.findSpotByPlate(vehicle.getLicensePlate());
+            return existing != null ? "ERR ALREADY_PARKED " + existing.getId() : "ERR FULL";
+        }
+
+        // blocks only this session; gives up after the idle timeout, the same patience a silent kiosk gets
+        private String waitForSpot(String[] words) {
+            VehicleType vehicleType = VehicleType.parse(words[2]);
+            if (vehicleType == null) {
+                return "ERR BAD_TYPE";
+            }
+            if (!PlateCodec.isValid(words[1])) {
+                return "ERR BAD_PLATE";
+            }
+            Vehicle vehicle = vehicleType.newVehicle(words[1]);
+            String gateId = words.length > 3 ? words[3] : lot.getDefaultGate();
+            int priority;
+            try {
+                priority = words.length > 4 ? Integer.parseInt(words[4]) : 0;
+            } catch (NumberFormatException badPriority) {
+                return "ERR USAGE WAIT <plate> <type> [gate] [priority]";
+            }
+            ParkingSpot spot;
+            try {
+                spot = lot.park(vehicle, gateId, lot.nowEpochSecond());
+            } catch (IllegalArgumentException unknownGate) {
+                return "ERR BAD_GATE";
+            }
+            if (spot != null) {
+                return "OK PARKED " + spot.getId();
+            }
+            ParkingSpot existing = lot.findSpotByPlate(vehicle.getLicensePlate());
+            if (existing != null) {
+                return "ERR ALREADY_PARKED " + existing.getId();
+            }
+            return awaitHandOff(lot.joinWaitlist(vehicle, gateId, priority));
+        }
+
+        private String awaitHandOff(Waitlist.Entry entry) {
+            ParkingSpot spot;
+            try {
+                spot = entry.getSpot().get(settings.idleTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | InterruptedException gaveUp) {
+                if (gaveUp instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                if (entry.cancel()) {
+                    return "ERR WAIT_TIMEOUT";
+                }
+                // losing this race means a spot was handed over just now, and it's ours
+                spot = entry.getSpot().join();
+            } catch (ExecutionException parkedMeanwhile) {
+                ParkingSpot existing = lot.findSpotByPlate(entry.getVehicle().getLicensePlate());
+                return existing != null ? "ERR ALREADY_PARKED " + existing.getId() : "ERR WAIT_TIMEOUT";
+            }
+            return "OK PARKED " + spot.getId();
+        }
+
+        private String exit(String plate) {
+            if (due != null) {
+                // one car at a time per kiosk, same as the console flow
+                return "ERR UNPAID";
+            }
+            Ticket ticket = lot.checkOut(plate, tariffEngine);
+            if (ticket == null) {
+                return "ERR NOT_PARKED";
+            }
+            due = ticket;
+            return "OK DUE " + ticket.closeTicketCents();
+        }
+
+        private String pay(String method) {
+            if (due == null) {
+                return "ERR NOTHING_DUE";
+            }
+            PaymentRequest.Method parsed = PaymentRequest.Method.parse(method);
+            if (parsed == null) {
+                return "ERR BAD_METHOD";
+            }
+            // waiting here only holds up this kiosk; the pipeline does the timeouts, retries and recording
+            PaymentPipeline.Settlement settlement;
+            try {
+                settlement = payments.submit(due, parsed).join();
+            } catch (CompletionException rejected) {
+                return "ERR PAYMENT_FAILED";
+            }
+            return switch (settlement.status()) {
+                case APPROVED -> {
+                    Ticket paid = due;
+                    due = null;
+                    yield "OK PAID " + paid.getCostCents();
+                }
+                // the ticket stays due; paying again, by either method, retries the same ticket
+                case DECLINED -> "ERR DECLINED";
+                case FAILED -> "ERR PAYMENT_FAILED";
+            };
+        }
+
+        private String status() {
+            OccupancySnapshot snapshot = lot.snapshot();
+            return "OK FREE " + snapshot.getFree() + " " + snapshot.getCapacity();
+        }
+
+        private String where(String plate) {
+            if (!PlateCodec.isValid(plate)) {
+                return "ERR BAD_PLATE";
+            }
+            ParkingSpot spot = lot.findSpotByPlate(plate);
+            return spot == null ? "ERR NOT_PARKED" : "OK SPOT " + spot.getId();
+        }
+
+        // the car is already out of the lot; at least leave a trace that it never paid
+        void abandon() {
+            if (due != null) {
+                System.err.printf("Kiosk session ended with %s unpaid (%d cents)%n", due.getLicensePlate(), due.getCostCents());
+                lot.logPaymentFailure(due.getLicensePlate(), due.getCost(), "kiosk disconnected before paying");
+            }
+        }
+    }
+
+    private static void reject(Socket socket) {
+        try (socket) {
+            socket.getOutputStream().write("ERR BUSY\n".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ignored) {
+            // they were getting turned away anyway
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing to do about a socket that won't close
+        }
+    }
+}
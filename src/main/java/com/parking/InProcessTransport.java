@@ -0,0 +1,36 @@
+package com.parking;
+
+import java.io.IOException;
+
+// a follower and its primary in the same JVM: a fetch is a plain call into the log
+// disconnect() makes every fetch fail the way a dead primary's would, so failover can be tried out on one machine
+public final class InProcessTransport implements ReplicationTransport {
+
+    private final ReplicationLog log;
+    private volatile boolean connected = true;
+
+    public InProcessTransport(ReplicationLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public ReplicationLog.Batch fetch(long logId, long afterSequence, int maxRecords, long waitMillis)
+            throws IOException, InterruptedException {
+        if (!connected) {
+            throw new IOException("primary unreachable");
+        }
+        return log.fetch(logId, afterSequence, maxRecords, waitMillis);
+    }
+
+    /**
+     * Cuts the follower off from the primary for good, as if the primary's box had died.
+     */
+    public void disconnect() {
+        connected = false;
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+}
@@ -0,0 +1,162 @@
+package com.parking;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// HdrHistogram-style latency recorder: every power of two is split into 32 linear sub-buckets, so any value is
+// reported within ~3% of what was recorded, from 1 ns up to centuries, in a fixed 15 KB of counters
+// recording is a bucket index from the leading-zero count plus one atomic increment — no locks, no allocation,
+// cheap enough to leave on in production; the clock reads around it are what cost (~25-40 ns each on a VM), so
+// the hottest paths time a random 1 in N calls instead (see startSample) and keep exact counts in plain counters
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS get one bucket each, then 32 per power of two up to 2^62
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final int sampleMask;
+
+    public LatencyHistogram() {
+        this(1);
+    }
+
+    /**
+     * @param sampleEvery time roughly one call in this many (a power of two); 1 times every call.
+     */
+    public LatencyHistogram(int sampleEvery) {
+        if (sampleEvery <= 0 || Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("Sampling rate must be a power of two.");
+        }
+        this.sampleMask = sampleEvery - 1;
+    }
+
+    /**
+     * Starts timing a call if it falls in the sample: a {@link System#nanoTime()} reading, or 0 for a call that
+     * isn't timed. Hand the result to {@link #recordSince(long)} either way.
+     */
+    public long startSample() {
+        if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds one observation. Negative values (a clock that stepped back) count as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        // only racing threads with a new maximum ever loop here
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (a {@link System#nanoTime()} reading); a 0 from
+     * {@link #startSample()} means the call wasn't sampled and nothing is recorded.
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Copies the counters out so percentiles can be read without recorders seeing any of it.
+     * Taken while recording goes on, the copy may be off by the few observations in flight.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            copy[bucket] = counts.get(bucket);
+            total += copy[bucket];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Point-in-time view of a histogram.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * The value {@code fraction} (0..1) of all observations are at or below, as the top of its bucket
+         * (never above the recorded maximum).
+         */
+        public long valueAt(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestInBucket(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
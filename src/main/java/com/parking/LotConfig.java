@@ -0,0 +1,130 @@
+package com.parking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// what config.txt describes: the lot's topology and its fitting policy
+//
+// a plain number still works (that many large spots in one zone), otherwise key=value lines:
+//   bike=4 / compact=20 / large=6                single-zone lot
+//   zone.L1.A=bike:4,compact:20,large:6          one line per zone, in spot id order
+//   gate.NORTH=L1.A                              entry gate placed at a zone
+//   fitting=overflow|strict
+public final class LotConfig {
+
+    private final LotTopology topology;
+    private final FittingPolicy fittingPolicy;
+
+    public LotConfig(LotTopology topology, FittingPolicy fittingPolicy) {
+        this.topology = topology;
+        this.fittingPolicy = fittingPolicy;
+    }
+
+    public static LotConfig defaults(int spotCount) {
+        return new LotConfig(LotTopology.singleZone(SpotLayout.uniform(spotCount)), FittingPolicy.bestFitWithOverflow());
+    }
+
+    /**
+     * Reads the config file, or returns null when it doesn't exist or is empty.
+     */
+    public static LotConfig load(Path configPath) throws IOException {
+        if (Files.notExists(configPath)) {
+            return null;
+        }
+        return parse(Files.readString(configPath));
+    }
+
+    /**
+     * @return the parsed config, or null when the text holds no settings at all.
+     * @throws IllegalArgumentException if a value can't be parsed.
+     */
+    public static LotConfig parse(String text) {
+        String rawValue = text.trim();
+        if (rawValue.isEmpty()) {
+            return null;
+        }
+        if (!rawValue.contains("=")) {
+            int configured = Integer.parseInt(rawValue);
+            if (configured <= 0) {
+                throw new IllegalArgumentException("Spot count must be positive: " + configured);
+            }
+            return defaults(configured);
+        }
+
+        SpotLayout flatLayout = SpotLayout.of(0, 0, 0);
+        LotTopology zoned = LotTopology.empty();
+        FittingPolicy fittingPolicy = FittingPolicy.bestFitWithOverflow();
+        List<String[]> gateLines = new ArrayList<>();
+        for (String line : rawValue.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] keyValue = trimmed.split("=", 2);
+            String key = keyValue[0].trim();
+            String value = keyValue.length > 1 ? keyValue[1].trim() : "";
+            String lowerKey = key.toLowerCase();
+            if (lowerKey.startsWith("zone.")) {
+                String[] names = key.substring("zone.".length()).split("\\.", 2);
+                if (names.length != 2) {
+                    throw new IllegalArgumentException("Zone keys look like zone.<level>.<zone>: " + key);
+                }
+                zoned = zoned.withZone(names[0], names[1], parseLayout(value));
+            } else if (lowerKey.startsWith("gate.")) {
+                // gates can only be placed once every zone is known
+                gateLines.add(new String[] {key.substring("gate.".length()), value});
+            } else {
+                switch (lowerKey) {
+                    case "bike" -> flatLayout = flatLayout.with(SpotSize.BIKE, Integer.parseInt(value));
+                    case "compact" -> flatLayout = flatLayout.with(SpotSize.COMPACT, Integer.parseInt(value));
+                    case "large" -> flatLayout = flatLayout.with(SpotSize.LARGE, Integer.parseInt(value));
+                    case "fitting" -> fittingPolicy = "strict".equalsIgnoreCase(value)
+                            ? FittingPolicy.strict()
+                            : FittingPolicy.bestFitWithOverflow();
+                    default -> System.err.println("Ignoring unknown config key: " + key);
+                }
+            }
+        }
+
+        LotTopology topology;
+        if (zoned.totalSpots() > 0) {
+            topology = zoned;
+        } else if (flatLayout.totalSpots() > 0) {
+            topology = LotTopology.singleZone(flatLayout);
+        } else {
+            return null;
+        }
+        for (String[] gate : gateLines) {
+            String[] names = gate[1].split("\\.", 2);
+            if (names.length != 2) {
+                throw new IllegalArgumentException("Gate " + gate[0] + " should point at <level>.<zone>, got " + gate[1]);
+            }
+            topology = topology.withGate(gate[0], names[0], names[1]);
+        }
+        return new LotConfig(topology, fittingPolicy);
+    }
+
+    public LotTopology getTopology() {
+        return topology;
+    }
+
+    public FittingPolicy getFittingPolicy() {
+        return fittingPolicy;
+    }
+
+    // "bike:4,compact:20,large:6"
+    private static SpotLayout parseLayout(String value) {
+        SpotLayout layout = SpotLayout.of(0, 0, 0);
+        for (String part : value.split(",")) {
+            String[] sizeCount = part.trim().split(":", 2);
+            if (sizeCount.length != 2) {
+                throw new IllegalArgumentException("Zone sizes look like size:count, got " + part);
+            }
+            layout = layout.with(SpotSize.valueOf(sizeCount[0].trim().toUpperCase()), Integer.parseInt(sizeCount[1].trim()));
+        }
+        return layout;
+    }
+}
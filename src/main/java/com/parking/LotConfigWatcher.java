@@ -0,0 +1,166 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+// watches config.txt and applies every saved edit to the running lot (see ParkingLot.applyLayout), so bays can be
+// added, closed or repainted without a restart
+// editors save in bursts (truncate, write, sometimes a rename), so the file is only read once it has been quiet for a
+// moment; a file that doesn't parse, or is empty, is reported and the lot keeps the layout it has
+public final class LotConfigWatcher implements Closeable {
+
+    /**
+     * @param quietMillis how long the file has to go without changes before it's read
+     */
+    public record Settings(long quietMillis) {
+
+        public Settings {
+            if (quietMillis < 0) {
+                throw new IllegalArgumentException("Quiet period cannot be negative.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(250);
+        }
+    }
+
+    private final ParkingLot lot;
+    private final Path configFile;
+    private final Settings settings;
+    private final WatchService watchService;
+    private final Thread watcher;
+    private volatile boolean running = true;
+    // the text the lot's layout currently comes from, so saving the file without changing it does nothing
+    private String appliedText;
+    private volatile int applied;
+
+    private LotConfigWatcher(ParkingLot lot, Path configFile, Settings settings) throws IOException {
+        this.lot = lot;
+        this.configFile = configFile.toAbsolutePath();
+        this.settings = settings;
+        this.appliedText = readText();
+        Path directory = this.configFile.getParent();
+        Files.createDirectories(directory);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.watcher = new Thread(this::watchLoop, "lot-config-watcher");
+        this.watcher.setDaemon(true);
+    }
+
+    /**
+     * Starts watching {@code configFile}; the lot is assumed to be running the layout the file holds right now.
+     */
+    public static LotConfigWatcher start(ParkingLot lot, Path configFile, Settings settings) throws IOException {
+        LotConfigWatcher watcher = new LotConfigWatcher(lot, configFile, settings);
+        watcher.watcher.start();
+        return watcher;
+    }
+
+    public static LotConfigWatcher start(ParkingLot lot, Path configFile) throws IOException {
+        return start(lot, configFile, Settings.defaults());
+    }
+
+    /**
+     * How many edits have been applied to the lot so far.
+     */
+    public int getAppliedCount() {
+        return applied;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException ioException) {
+            System.err.println("Could not close the config watcher: " + ioException.getMessage());
+        }
+        watcher.interrupt();
+    }
+
+    private void watchLoop() {
+        try {
+            while (running) {
+                if (!touchesConfig(watchService.take())) {
+                    continue;
+                }
+                // keep swallowing events until the file has been left alone for the whole quiet period
+                WatchKey more;
+                while ((more = watchService.poll(settings.quietMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    touchesConfig(more);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException stopped) {
+            // close() was called
+        }
+    }
+
+    // drains the key's events and re-arms it; true if any of them was about the config file
+    private boolean touchesConfig(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // an overflow means events were lost, so the file may well have changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || configFile.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+
+    // watcher thread only
+    void reload() {
+        String text;
+        try {
+            text = readText();
+        } catch (IOException ioException) {
+            System.err.println("Could not read " + configFile + ", keeping the current layout: " + ioException.getMessage());
+            return;
+        }
+        if (text == null || text.equals(appliedText)) {
+            return;
+        }
+        LotConfig config;
+        try {
+            config = LotConfig.parse(text);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Config change not applied, keeping the current layout: " + ex.getMessage());
+            return;
+        }
+        if (config == null) {
+            System.err.println(configFile + " has no settings, keeping the current layout.");
+            return;
+        }
+        ParkingLot.LayoutChange change;
+        try {
+            change = lot.applyLayout(config);
+        } catch (IllegalStateException readOnly) {
+            // a follower's lot takes its layout from the primary
+            System.err.println("Config change not applied: " + readOnly.getMessage());
+            return;
+        }
+        appliedText = text;
+        applied++;
+        System.out.printf("Layout reloaded from %s: %d spots added, %d reopened, %d repainted, %d closed (%d draining).%n",
+                configFile.getFileName(), change.added(), change.reopened(), change.retyped(), change.closed(), change.draining());
+    }
+
+    // null while the file doesn't exist, e.g. between an editor deleting it and writing it back
+    private String readText() throws IOException {
+        return Files.exists(configFile) ? Files.readString(configFile) : null;
+    }
+}
@@ -0,0 +1,204 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+// keeps a lot in step with a primary's ReplicationLog: one daemon thread pulls batches through the transport and
+// applies them in order, while the lot answers occupancy and plate lookups from its own copy. the lot is read-only
+// the whole time (parks, exits, waitlist joins and layout changes are refused) until promote() makes it the primary
+//
+// shipping is asynchronous: whatever the primary took after the follower's last fetch is lost if the primary dies,
+// so promote() first pulls whatever the old primary will still hand over. keeping the old primary from coming back
+// and taking parks of its own is up to whoever calls promote()
+public final class LotFollower implements Closeable {
+
+    /**
+     * @param batchSize       most records applied per fetch
+     * @param pollMillis      how long a fetch waits on the primary when there's nothing new
+     * @param retryMillis     pause between fetches while the primary can't be reached
+     */
+    public record Settings(int batchSize, long pollMillis, long retryMillis) {
+
+        public Settings {
+            if (batchSize <= 0 || pollMillis < 0 || retryMillis <= 0) {
+                throw new IllegalArgumentException("Batch size and retry pause must be positive, poll time not negative.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(1_024, 500, 1_000);
+        }
+    }
+
+    private final ParkingLot lot;
+    private final Settings settings;
+    private final Thread follower;
+    private final LatencyHistogram applyLatency;
+    private final LongAdder applied;
+    private final LongAdder snapshots;
+    private final LongAdder fetchFailures;
+    private volatile ReplicationTransport transport;
+    private volatile boolean running = true;
+    private volatile boolean connected = true;
+    // only the follow thread writes these, and promote() after it has stopped
+    private volatile long logId;
+    private volatile long appliedSequence;
+    private volatile long headSequence;
+
+    private LotFollower(ParkingLot lot, ReplicationTransport transport, Settings settings) {
+        this.lot = lot;
+        this.transport = transport;
+        this.settings = settings;
+        LotMetrics metrics = lot.getMetrics();
+        this.applyLatency = metrics.histogram("replication.apply");
+        this.applied = metrics.counter("replication.applied");
+        this.snapshots = metrics.counter("replication.snapshots_applied");
+        this.fetchFailures = metrics.counter("replication.fetch_failures");
+        metrics.gauge("replication.lag_records", this::getLagRecords);
+        this.follower = new Thread(this::followLoop, "lot-follower");
+        follower.setDaemon(true);
+    }
+
+    /**
+     * Makes {@code lot} a read-only copy of whatever primary {@code transport} reaches. The lot's current cars and
+     * layout are replaced by the primary's on the first fetch.
+     *
+     * @throws IllegalStateException if the lot is itself replicating to followers.
+     */
+    public static LotFollower start(ParkingLot lot, ReplicationTransport transport, Settings settings) {
+        lot.becomeFollower();
+        LotFollower lotFollower = new LotFollower(lot, transport, settings);
+        lotFollower.follower.start();
+        return lotFollower;
+    }
+
+    public static LotFollower start(ParkingLot lot, ReplicationTransport transport) {
+        return start(lot, transport, Settings.defaults());
+    }
+
+    public ParkingLot getLot() {
+        return lot;
+    }
+
+    /**
+     * The primary's sequence number this lot is up to date with.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * How many records the primary had that this lot hadn't applied, as of the last fetch.
+     */
+    public long getLagRecords() {
+        return Math.max(0, headSequence - appliedSequence);
+    }
+
+    /**
+     * Whether the last fetch reached the primary.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Starts following another primary, e.g. a follower promoted after this one's primary died. The first fetch
+     * from it is a snapshot, since its log has nothing to do with the old one.
+     */
+    public void switchPrimary(ReplicationTransport newTransport) {
+        ReplicationTransport old = transport;
+        transport = newTransport;
+        old.close();
+        // wakes a fetch that's waiting on the old primary
+        follower.interrupt();
+    }
+
+    /**
+     * Stops following and turns the lot into a primary that takes parks and exits. Whatever the old primary still
+     * hands over is applied first; if it can't be reached, the lot carries on from the last batch it got.
+     *
+     * @return the lot, now writable; call {@link ParkingLot#startReplication} on it for other followers to follow.
+     */
+    public ParkingLot promote() throws InterruptedException {
+        stop();
+        try {
+            ReplicationLog.Batch batch;
+            do {
+                batch = transport.fetch(logId, appliedSequence, settings.batchSize(), 0);
+                apply(batch);
+            } while (!batch.records().isEmpty() && batch.lastSequence() < batch.headSequence());
+        } catch (IOException ioException) {
+            System.err.println("Promoting without the old primary's last records: " + ioException.getMessage());
+        }
+        transport.close();
+        lot.promote();
+        return lot;
+    }
+
+    @Override
+    public void close() {
+        try {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.close();
+    }
+
+    private void stop() throws InterruptedException {
+        running = false;
+        follower.interrupt();
+        follower.join();
+    }
+
+    private void followLoop() {
+        while (running) {
+            ReplicationTransport current = transport;
+            ReplicationLog.Batch batch;
+            try {
+                batch = current.fetch(logId, appliedSequence, settings.batchSize(), settings.pollMillis());
+            } catch (InterruptedException interrupted) {
+                // stop() or switchPrimary(); the loop condition tells which
+                continue;
+            } catch (IOException ioException) {
+                fetchFailures.increment();
+                if (connected) {
+                    System.err.println("Lost the primary, retrying: " + ioException.getMessage());
+                    connected = false;
+                }
+                try {
+                    Thread.sleep(settings.retryMillis());
+                } catch (InterruptedException interrupted) {
+                    // same as above
+                }
+                continue;
+            }
+            if (current != transport) {
+                // switched while this fetch was in flight; its records belong to the old primary
+                continue;
+            }
+            if (!connected) {
+                System.err.println("Reached the primary again.");
+                connected = true;
+            }
+            apply(batch);
+        }
+    }
+
+    // follow thread, or promote() once that has stopped
+    private void apply(ReplicationLog.Batch batch) {
+        long start = System.nanoTime();
+        if (batch.snapshot()) {
+            lot.applyReplicaSnapshot(batch.records());
+            snapshots.increment();
+        } else {
+            lot.applyReplicated(batch.records());
+        }
+        applied.add(batch.records().size());
+        logId = batch.logId();
+        appliedSequence = batch.lastSequence();
+        headSequence = batch.headSequence();
+        applyLatency.recordSince(start);
+    }
+}
@@ -0,0 +1,359 @@
+package com.parking;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// append-only PARK/REMOVE log so a park doesn't have to rewrite the whole state file anymore
+// records pile up in memory and get written + fsynced together by one background thread, and every so often the
+// lot is dumped into the old lot_state.txt snapshot and the journal starts over
+//
+// park/remove don't wait for that write: a record is only on disk after the next flush, at most flushIntervalMillis
+// later (sooner once flushBatchSize records are queued), and a crash before then loses it. a caller that needs its
+// record durable before going on calls flush(). a batch that fails to write goes back to the front of the queue and
+// is tried again on the next flush, so nothing is skipped over; journal.flush_failures counts the failed tries
+public class LotJournal implements LotStateStore {
+
+    /**
+     * Knobs for the group commit and compaction cadence.
+     *
+     * @param flushIntervalMillis how long a record may sit in memory before it is written out
+     * @param flushBatchSize      pending records that trigger an early flush
+     * @param compactionThreshold flushed records after which the journal is folded into the snapshot
+     */
+    public record Settings(long flushIntervalMillis, int flushBatchSize, int compactionThreshold) {
+
+        public Settings {
+            if (flushIntervalMillis <= 0 || flushBatchSize <= 0 || compactionThreshold <= 0) {
+                throw new IllegalArgumentException("Journal settings must all be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(200, 64, 5_000);
+        }
+    }
+
+    // compaction asks the owner to dump its current state in the snapshot format
+    interface SnapshotWriter {
+        void writeSnapshot(Writer writer) throws IOException;
+    }
+
+    private static final String PARK = "PARK";
+    private static final String REMOVE = "REMOVE";
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Settings settings;
+    private final SnapshotWriter snapshotWriter;
+    private final FileChannel channel;
+    private final ScheduledExecutorService flusher;
+    // flushes and compactions must not interleave, appends only need the journal's own monitor
+    private final Object flushLock = new Object();
+    private final CRC32 checksum = new CRC32();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final LongAdder flushFailures;
+    private StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    private boolean earlyFlushQueued;
+    private int recordsSinceCompaction;
+    // only logged when a run of failed flushes starts and ends, not on every retry
+    private boolean failing;
+
+    LotJournal(Path journalFile, Path snapshotFile, Settings settings, SnapshotWriter snapshotWriter,
+               LotMetrics metrics) throws IOException {
+        this.journalFile = journalFile;
+        this.snapshotFile = snapshotFile;
+        this.settings = settings;
+        this.snapshotWriter = snapshotWriter;
+        this.flushFailures = metrics.counter("journal.flush_failures");
+        metrics.gauge("journal.pending_records", this::getPendingRecords);
+        this.channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lot-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndMaybeCompact,
+                settings.flushIntervalMillis(),
+                settings.flushIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a PARK record; it's durable once the next flush has run (see the class comment). Callers should hold
+     * whatever makes the spot change itself atomic, so records for the same spot land in the journal in the order
+     * they happened.
+     */
+    @Override
+    public void recordPark(int spotId, Vehicle vehicle, long entryEpochSecond) {
+        append(PARK + "|" + spotId + "|" + vehicle.getVehicleType() + "|" + vehicle.getLicensePlate() + "|" + entryEpochSecond);
+    }
+
+    /**
+     * Queues a REMOVE record (same ordering rule as {@link #recordPark}).
+     */
+    @Override
+    public void recordRemove(int spotId, String licensePlate) {
+        append(REMOVE + "|" + spotId + "|" + licensePlate);
+    }
+
+    /**
+     * Writes and fsyncs everything queued so far, for a caller that can't go on until its records are on disk.
+     *
+     * @return false if the write failed; the records stay queued and the flusher keeps trying.
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            return flushLocked();
+        }
+    }
+
+    /**
+     * Records queued but not yet on disk, including any whose write failed.
+     */
+    public synchronized int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    @Override
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    @Override
+    public void checkpoint() {
+        compact();
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot and truncates it.
+     */
+    public void compact() {
+        synchronized (flushLock) {
+            flushLocked();
+            Path tempSnapshot = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempSnapshot,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+                    snapshotWriter.writeSnapshot(writer);
+                }
+                try (FileChannel snapshotChannel = FileChannel.open(tempSnapshot, StandardOpenOption.WRITE)) {
+                    snapshotChannel.force(true);
+                }
+                Files.move(tempSnapshot, snapshotFile,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                // only safe to drop the journal once the snapshot that covers it is in place
+                channel.truncate(0);
+                channel.force(true);
+                recordsSinceCompaction = 0;
+            } catch (IOException ioException) {
+                System.err.println("Journal compaction failed, keeping the journal as is: " + ioException.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flush()) {
+            System.err.println(getPendingRecords() + " journal records could not be written before closing and are lost");
+        }
+        try {
+            channel.close();
+        } catch (IOException ioException) {
+            System.err.println("Could not close journal: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Replays every intact record in the journal. A torn or corrupt record ends the replay and the
+     * file is cut back to the last good record, since nothing after it can be trusted.
+     *
+     * @return how many records were applied.
+     */
+    static int replay(Path journalFile, ReplayHandler handler) throws IOException {
+        if (Files.notExists(journalFile)) {
+            return 0;
+        }
+        byte[] content = Files.readAllBytes(journalFile);
+        CRC32 crc = new CRC32();
+        int applied = 0;
+        int lineStart = 0;
+        int goodLength = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == content.length) {
+                System.err.println("Dropping torn journal record at byte " + lineStart);
+                break;
+            }
+            String line = new String(content, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            if (!applyRecord(line, crc, handler)) {
+                System.err.println("Dropping corrupt journal record at byte " + lineStart + ": " + line);
+                break;
+            }
+            applied++;
+            lineStart = lineEnd + 1;
+            goodLength = lineStart;
+        }
+        if (goodLength < content.length) {
+            try (FileChannel truncating = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                truncating.truncate(goodLength);
+                truncating.force(true);
+            }
+        }
+        return applied;
+    }
+
+    private static boolean applyRecord(String line, CRC32 crc, ReplayHandler handler) {
+        int checksumStart = line.lastIndexOf('|');
+        if (checksumStart < 0) {
+            return false;
+        }
+        String body = line.substring(0, checksumStart);
+        long expected;
+        try {
+            expected = Long.parseLong(line.substring(checksumStart + 1), 16);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        if (checksumOf(body, crc) != expected) {
+            return false;
+        }
+        String[] parts = body.split("\\|");
+        try {
+            // journals from before entry times were recorded have no fifth field
+            if (PARK.equals(parts[0]) && (parts.length == 4 || parts.length == 5)) {
+                long entryEpochSecond = parts.length == 5 ? Long.parseLong(parts[4]) : 0;
+                VehicleType vehicleType = VehicleType.parse(parts[2]);
+                // the record itself is intact, so the rest of the journal is still good
+                if (vehicleType == null) {
+                    System.err.println("Skipping journal record with unknown vehicle type: " + body);
+                    return true;
+                }
+                handler.park(Integer.parseInt(parts[1]), vehicleType, parts[3], entryEpochSecond);
+                return true;
+            }
+            if (REMOVE.equals(parts[0]) && parts.length == 3) {
+                handler.remove(Integer.parseInt(parts[1]), parts[2]);
+                return true;
+            }
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        return false;
+    }
+
+    private static long checksumOf(String body, CRC32 crc) {
+        crc.reset();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private synchronized void append(String body) {
+        pending.append(body).append('|').append(Long.toHexString(checksumOf(body, checksum))).append('\n');
+        pendingRecords++;
+        if (pendingRecords >= settings.flushBatchSize() && !earlyFlushQueued) {
+            // don't write from the caller's thread (it may be holding a plate lock), just nudge the flusher
+            earlyFlushQueued = true;
+            flusher.execute(this::flushAndMaybeCompact);
+        }
+    }
+
+    private void flushAndMaybeCompact() {
+        try {
+            synchronized (flushLock) {
+                flushLocked();
+                if (recordsSinceCompaction >= settings.compactionThreshold()) {
+                    compact();
+                }
+            }
+        } catch (RuntimeException ex) {
+            // the scheduled task dies silently on an exception, so log it and keep going
+            System.err.println("Journal flush failed: " + ex.getMessage());
+        }
+    }
+
+    // caller holds flushLock; false if the batch couldn't be written and went back in the queue
+    private boolean flushLocked() {
+        StringBuilder batch;
+        int batchRecords;
+        synchronized (this) {
+            earlyFlushQueued = false;
+            if (pendingRecords == 0) {
+                return true;
+            }
+            batch = pending;
+            batchRecords = pendingRecords;
+            pending = new StringBuilder(batch.capacity());
+            pendingRecords = 0;
+        }
+        long start = System.nanoTime();
+        long goodLength = -1;
+        try {
+            goodLength = channel.size();
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(batch.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException ioException) {
+            requeue(batch, batchRecords, goodLength, ioException);
+            return false;
+        }
+        flushLatency.recordSince(start);
+        recordsSinceCompaction += batchRecords;
+        if (failing) {
+            System.err.println("Journal writes to " + journalFile + " are going through again.");
+            failing = false;
+        }
+        return true;
+    }
+
+    // puts a failed batch back in front of whatever was queued since, so the retry keeps the records in order
+    private void requeue(StringBuilder batch, int batchRecords, long goodLength, IOException failure) {
+        flushFailures.increment();
+        if (!failing) {
+            System.err.println("Failed to write journal batch to " + journalFile + ", will retry: " + failure);
+            failing = true;
+        }
+        if (goodLength >= 0) {
+            // a partly written batch would be written twice, the first copy torn; replay stops at a torn record
+            try {
+                channel.truncate(goodLength);
+            } catch (IOException truncateFailure) {
+                System.err.println("Could not cut the journal back after a failed write: " + truncateFailure.getMessage());
+            }
+        }
+        synchronized (this) {
+            pending = batch.append(pending);
+            pendingRecords += batchRecords;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.parking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// named counters, gauges and latency histograms for one lot and whatever runs around it (gates, payments, ledger)
+// components look their instruments up once and keep the reference, so the hot path never touches these maps;
+// a gauge is just a callback, so queue depths and free spots cost nothing until someone reads them
+//
+// names are dotted ("lot.park"); render() turns them into Prometheus text ("parking_lot_park_ns")
+public final class LotMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    /**
+     * The histogram with that name, created on first use.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Like {@link #histogram(String)}, but a newly created one only times about one call in {@code sampleEvery}.
+     */
+    public LatencyHistogram histogram(String name, int sampleEvery) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram(sampleEvery));
+    }
+
+    /**
+     * Publishes a histogram some component already owns under {@code name}, replacing whatever had that name.
+     */
+    public void register(String name, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    /**
+     * The counter with that name, created on first use.
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Publishes a value that is read only when the metrics are rendered, replacing whatever had that name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * Everything as Prometheus text exposition: counters and gauges as single values, histograms as summaries
+     * in nanoseconds with a few quantiles, a count, a sum and the maximum.
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4_096);
+        counters.forEach((name, counter) -> {
+            String metric = metricName(name) + "_total";
+            out.append("# TYPE ").append(metric).append(" counter\n");
+            out.append(metric).append(' ').append(counter.sum()).append('\n');
+        });
+        gauges.forEach((name, gauge) -> {
+            String metric = metricName(name);
+            long value;
+            try {
+                value = gauge.getAsLong();
+            } catch (RuntimeException ex) {
+                // one broken gauge shouldn't take the whole page down
+                return;
+            }
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            out.append(metric).append(' ').append(value).append('\n');
+        });
+        histograms.forEach((name, histogram) -> {
+            String metric = metricName(name) + "_ns";
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            out.append("# TYPE ").append(metric).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(metric).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(snapshot.valueAt(quantile)).append('\n');
+            }
+            out.append(metric).append("_count ").append(snapshot.getCount()).append('\n');
+            out.append(metric).append("_sum ").append(snapshot.getSum()).append('\n');
+            out.append(metric).append("_max ").append(snapshot.getMax()).append('\n');
+        });
+        return out.toString();
+    }
+
+    private static String metricName(String name) {
+        StringBuilder metric = new StringBuilder("parking_");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            metric.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : '_');
+        }
+        return metric.toString();
+    }
+}
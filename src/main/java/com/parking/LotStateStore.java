@@ -0,0 +1,44 @@
+package com.parking;
+
+import java.io.Closeable;
+
+// whatever keeps the lot's occupancy on disk — the text snapshot + journal, or the mapped binary file
+// ParkingLot calls the record methods from inside the plate's compute, so they have to stay cheap
+public interface LotStateStore extends Closeable {
+
+    /**
+     * @param entryEpochSecond when the vehicle's ticket was opened, so open tickets survive a restart.
+     */
+    void recordPark(int spotId, Vehicle vehicle, long entryEpochSecond);
+
+    void recordRemove(int spotId, String licensePlate);
+
+    /**
+     * Makes room for spot ids up to {@code spotCount} before the lot hands any of them out. Stores that don't care
+     * how many spots there are (the journal) ignore it.
+     */
+    default void ensureCapacity(int spotCount) {
+    }
+
+    /**
+     * Makes everything recorded so far durable in the store's compact form.
+     */
+    void checkpoint();
+
+    /**
+     * How long each background write/force of the store has taken.
+     */
+    LatencyHistogram getFlushLatency();
+
+    @Override
+    void close();
+
+    // whoever reloads saved state decides what PARK/REMOVE mean; keeps the stores ignorant of ParkingLot
+    // entryEpochSecond is 0 for records written before entry times were saved; records with a vehicle type this
+    // version doesn't know never reach the handler
+    interface ReplayHandler {
+        void park(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond);
+
+        void remove(int spotId, String licensePlate);
+    }
+}
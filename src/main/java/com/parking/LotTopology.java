@@ -0,0 +1,84 @@
+package com.parking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// lot -> level -> zone -> spot, plus where the entry gates are
+// levels and zones keep the order they were added in; that order is also the spot id order
+public final class LotTopology {
+
+    public static final String DEFAULT_GATE = "MAIN";
+
+    record ZoneSpec(String levelId, String zoneId, SpotLayout layout) {
+        String qualifiedId() {
+            return levelId + "." + zoneId;
+        }
+    }
+
+    record GateSpec(String gateId, String levelId, String zoneId) {
+    }
+
+    private final List<ZoneSpec> zones;
+    private final Map<String, GateSpec> gates;
+
+    private LotTopology(List<ZoneSpec> zones, Map<String, GateSpec> gates) {
+        this.zones = zones;
+        this.gates = gates;
+    }
+
+    public static LotTopology empty() {
+        return new LotTopology(List.of(), Map.of());
+    }
+
+    /**
+     * The flat lot we always had: one level, one zone, one gate.
+     */
+    public static LotTopology singleZone(SpotLayout layout) {
+        return empty().withZone("L1", "A", layout).withGate(DEFAULT_GATE, "L1", "A");
+    }
+
+    public LotTopology withZone(String levelId, String zoneId, SpotLayout layout) {
+        String qualified = levelId + "." + zoneId;
+        for (ZoneSpec zone : zones) {
+            if (zone.qualifiedId().equals(qualified)) {
+                throw new IllegalArgumentException("Zone " + qualified + " is defined twice.");
+            }
+        }
+        List<ZoneSpec> copy = new ArrayList<>(zones);
+        copy.add(new ZoneSpec(levelId, zoneId, layout));
+        return new LotTopology(copy, gates);
+    }
+
+    public LotTopology withGate(String gateId, String levelId, String zoneId) {
+        if (zones.stream().noneMatch(zone -> zone.levelId().equals(levelId) && zone.zoneId().equals(zoneId))) {
+            throw new IllegalArgumentException("Gate " + gateId + " points at unknown zone " + levelId + "." + zoneId);
+        }
+        Map<String, GateSpec> copy = new LinkedHashMap<>(gates);
+        copy.put(gateId, new GateSpec(gateId, levelId, zoneId));
+        return new LotTopology(zones, copy);
+    }
+
+    public int totalSpots() {
+        int total = 0;
+        for (ZoneSpec zone : zones) {
+            total += zone.layout().totalSpots();
+        }
+        return total;
+    }
+
+    List<ZoneSpec> getZones() {
+        return Collections.unmodifiableList(zones);
+    }
+
+    // a lot with no gates configured gets a MAIN gate at its first zone
+    Map<String, GateSpec> getGates() {
+        if (gates.isEmpty() && !zones.isEmpty()) {
+            ZoneSpec first = zones.get(0);
+            return Map.of(DEFAULT_GATE, new GateSpec(DEFAULT_GATE, first.levelId(), first.zoneId()));
+        }
+        return Collections.unmodifiableMap(gates);
+    }
+}
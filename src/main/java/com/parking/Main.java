@@ -1,7 +1,11 @@
 package com.parking;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Scanner;
 
 // writing a tiny console UI so I can manually test without spinning up a GUI
@@ -10,27 +14,42 @@ public class Main {
     private final ParkingLot parkingLot = ParkingLot.getInstance();
     private final Scanner scanner = new Scanner(System.in);
     private final Payment payment = new Payment(scanner);
-    private final Map<String, Ticket> activeTickets = new HashMap<>();
+    private final PaymentPipeline payments = PaymentPipeline.getDefault();
+    private static final DateTimeFormatter RESERVATION_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
     public static void main(String[] args) {
+        // rewritten every few seconds so there's something to look at while the console is in use
+        MetricsExporter.toFile(ParkingLot.getInstance().getMetrics(), Paths.get("src", "resources", "metrics.txt"), 10_000);
+        watchConfig();
         new Main().run();
     }
 
+    // edits to config.txt reshape the lot while the menu is up; without a watcher it just keeps its startup layout
+    static void watchConfig() {
+        try {
+            LotConfigWatcher.start(ParkingLot.getInstance(), Paths.get("src", "resources", "config.txt"));
+        } catch (IOException ioException) {
+            System.err.println("Not watching config.txt for changes: " + ioException.getMessage());
+        }
+    }
+
     private void run() {
         System.out.println("Welcome to the Smart Parking Management System!");
         boolean exit = false;
 
         while (!exit) {
-            // looping until user bails out — no background threads so this is fine
+            // looping until user bails out; this is the only thread reading the console, while payments settle and the
+            // journal, audit log, ledger and state flush on their own threads, drained by shutdown hooks on exit
             printMenu();
-            int choice = readIntInput("Choose an option (1-4): ");
+            int choice = readIntInput("Choose an option (1-5): ");
 
             switch (choice) {
                 case 1 -> parkVehicleFlow();
                 case 2 -> removeVehicleFlow();
-                case 3 -> parkingLot.displayStatus();
-                case 4 -> exit = true;
-                default -> System.out.println("Please choose a valid option (1-4).");
+                case 3 -> displayStatusFlow();
+                case 4 -> reserveSpotFlow();
+                case 5 -> exit = true;
+                default -> System.out.println("Please choose a valid option (1-5).");
             }
         }
 
@@ -45,12 +64,31 @@ public class Main {
                 1. Park a vehicle
                 2. Remove a vehicle
                 3. Display parking lot status
-                4. Exit
+                4. Reserve a spot
+                5. Exit
                 ------------------------------""");
     }
 
+    private void displayStatusFlow() {
+        parkingLot.displayStatus();
+        int pages = parkingLot.getStatusPageCount();
+        // big lots get paged instead of scrolling thousands of lines past the menu
+        while (pages > 1) {
+            int page = readIntInput("Page to show (1-" + pages + ", 0 to go back): ");
+            if (page == 0) {
+                return;
+            }
+            parkingLot.displayStatus(page);
+        }
+    }
+
     private void parkVehicleFlow() {
-        String licensePlate = readStringInput("Enter vehicle license plate: ");
+        String licensePlate = readPlateInput("Enter vehicle license plate: ");
+        ParkingSpot existing = parkingLot.findSpotByPlate(licensePlate);
+        if (existing != null) {
+            System.out.printf("That plate is already parked in spot %d.%n", existing.getId());
+            return;
+        }
         Vehicle vehicle = chooseVehicleType(licensePlate);
 
         boolean parked;
@@ -62,46 +100,118 @@ public class Main {
         }
 
         if (parked) {
-            Ticket ticket = Ticket.generateTicket(vehicle);
-            activeTickets.put(vehicle.getLicensePlate(), ticket);
+            // the lot keeps the open ticket now, so it's still there after a restart
+            Ticket ticket = parkingLot.findOpenTicket(vehicle.getLicensePlate());
             System.out.println("Vehicle parked successfully!");
-            // stashing the ticket so we can settle payment when the driver heads out
-            System.out.printf("Entry time recorded at %s%n", ticket.getEntryTime());
+            if (ticket != null) {
+                System.out.printf("Entry time recorded at %s%n", ticket.getEntryTime());
+            }
+        } else {
+            String answer = readStringInput("Parking lot is full. Join the waitlist? (y/n): ");
+            if (!answer.equalsIgnoreCase("y")) {
+                System.out.println("No problem. Please try again later.");
+                return;
+            }
+            // the first spot that frees up for this vehicle comes straight to it, so there's nothing to retry
+            Waitlist.Entry entry = parkingLot.joinWaitlist(vehicle, parkingLot.getDefaultGate(), 0);
+            if (!entry.getSpot().isDone()) {
+                System.out.printf("You're on the waitlist (%d waiting). We'll call you up when a spot frees.%n",
+                        parkingLot.getWaitlist().size());
+            }
+            entry.getSpot().whenComplete((spot, failure) -> reportWaitlist(vehicle.getLicensePlate(), spot, failure));
+        }
+    }
+
+    private static void reportWaitlist(String plate, ParkingSpot spot, Throwable failure) {
+        if (failure != null) {
+            System.out.printf("%n%s left the waitlist: %s%n", plate, failure.getMessage());
+        } else {
+            System.out.printf("%nSpot %d is now held for %s off the waitlist. Head on in!%n", spot.getId(), plate);
+        }
+    }
+
+    private void reserveSpotFlow() {
+        String licensePlate = readPlateInput("Enter vehicle license plate: ");
+        SpotSize size = chooseSpotSize();
+        LocalDateTime start;
+        while (true) {
+            String text = readStringInput("Start time (yyyy-MM-dd HH:mm): ");
+            try {
+                start = LocalDateTime.parse(text, RESERVATION_TIME);
+                break;
+            } catch (DateTimeParseException ex) {
+                System.out.println("Couldn't read that time. Something like 2025-06-01 14:00 works.");
+            }
+        }
+        int hours = Math.max(1, readIntInput("How many hours? "));
+        long startEpochSecond = start.atZone(ZoneId.systemDefault()).toEpochSecond();
+
+        Reservation reservation;
+        try {
+            reservation = parkingLot.getReservations().reserve(licensePlate, size, startEpochSecond, startEpochSecond + hours * 3_600L);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            return;
+        }
+        if (reservation == null) {
+            System.out.println("No " + size.name().toLowerCase() + " spot is free for that whole window (or that plate already has a booking).");
         } else {
-            // future idea: offer to join a waitlist instead of just printing this
-            System.out.println("Parking lot is full. Please try again later.");
+            System.out.printf("Reserved a %s spot for %s from %s, booking #%d.%n",
+                    size.name().toLowerCase(), reservation.licensePlate(), start.format(RESERVATION_TIME), reservation.id());
+        }
+    }
+
+    private SpotSize chooseSpotSize() {
+        while (true) {
+            System.out.println("""
+                    Select spot size:
+                    1. Bike
+                    2. Compact
+                    3. Large""");
+            int choice = readIntInput("Enter size number: ");
+            if (choice >= 1 && choice <= SpotSize.values().length) {
+                return SpotSize.values()[choice - 1];
+            }
+            System.out.println("Invalid spot size. Let's try that again.");
         }
     }
 
     private void removeVehicleFlow() {
-        String licensePlate = readStringInput("Enter license plate to remove: ");
+        String licensePlate = readPlateInput("Enter license plate to remove: ");
         // not doing fancy lookup — just asking for plate and letting the lot handle it
-        String normalizedPlate = licensePlate.trim().toUpperCase();
-        boolean removed;
+        Ticket ticket;
         try {
-            removed = parkingLot.removeVehicle(normalizedPlate);
+            ticket = parkingLot.checkOut(licensePlate);
         } catch (Exception ex) {
             System.out.println("Could not complete the removal right now. Please try again in a moment.");
             return;
         }
 
-        if (removed) {
-            Ticket ticket = activeTickets.remove(normalizedPlate);
-            if (ticket == null) {
-                System.out.println("Vehicle removed, but no ticket data was tracked (probably a manual override).");
-                return;
-            }
+        if (ticket != null) {
             double cost = ticket.closeTicket();
-            System.out.printf("Parking duration cost for %s: $%.2f%n", normalizedPlate, cost);
-            // piping the total over to the Payment helper so the user can settle up right away
-            payment.processPayment(cost, normalizedPlate);
-            ticket.saveToFile();
+            System.out.printf("Parking duration cost for %s: $%.2f%n", licensePlate, cost);
+            PaymentRequest.Method method = payment.choosePaymentMethod();
+            // the spot is already free; the charge settles in the background so a slow terminal
+            // doesn't keep this lane (or the menu) waiting
+            payments.submit(ticket, method).whenComplete((settlement, failure) -> reportSettlement(licensePlate, method, settlement, failure));
             System.out.println("Vehicle removed. Spot is now available.");
         } else {
             System.out.println("Vehicle not found. Please verify the license plate.");
         }
     }
 
+    private static void reportSettlement(String plate, PaymentRequest.Method method,
+                                         PaymentPipeline.Settlement settlement, Throwable failure) {
+        if (failure != null) {
+            System.out.printf("%nPayment for %s couldn't be queued (%s). Please see the attendant.%n", plate, failure.getMessage());
+        } else if (settlement.status() == PaymentPipeline.Status.APPROVED) {
+            System.out.printf("%n%s payment for %s confirmed. Thanks for your business!%n", Payment.displayName(method), plate);
+        } else {
+            System.out.printf("%n%s payment for %s did not go through (%s). Please see the attendant.%n",
+                    Payment.displayName(method), plate, settlement.detail());
+        }
+    }
+
     private Vehicle chooseVehicleType(String licensePlate) {
         while (true) {
             System.out.println("""
@@ -155,4 +265,16 @@ public class Main {
             return input;
         }
     }
+
+    // plates are letters and digits (spaces and hyphens are fine, they get dropped), see PlateCodec
+    private String readPlateInput(String prompt) {
+        while (true) {
+            String input = readStringInput(prompt);
+            String plate = PlateCodec.normalize(input);
+            if (plate != null) {
+                return plate;
+            }
+            System.out.printf("A plate is 1-%d letters and digits. Please try again.%n", PlateCodec.MAX_LENGTH);
+        }
+    }
 }
@@ -0,0 +1,348 @@
+package com.parking;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// fixed-width binary alternative to lot_state.txt: one 32-byte slot per spot id, mapped straight into memory
+// a park/remove is a couple of puts into the slot, and a restart is one pass over the slots with no parsing
+//
+// layout: 16-byte header (magic, version, slot count, slot size), then slot N-1 for spot N:
+//   byte 0      vehicle type code, VehicleType.getCode() (0 = empty)
+//   byte 1      0xFF once the slot is in the version 2 layout
+//   bytes 8-15  plate, PlateCodec low half
+//   bytes 16-23 plate, PlateCodec high half
+//   bytes 24-31 ticket entry time, epoch seconds (0 = unknown; files from before this field have zero here)
+// version 1 kept the plate as ASCII (byte 1 length, bytes 2-23 text); open() converts such a file in place, slot by
+// slot, marking each converted slot so a crash halfway through resumes where it stopped, and bumps the header
+// version last
+public class MappedLotState implements LotStateStore {
+
+    public static final String FILE_NAME = "lot_state.bin";
+
+    static final int HEADER_BYTES = 16;
+    static final int SLOT_BYTES = 32;
+    private static final int V1_MAX_PLATE_BYTES = 22;
+    private static final int CONVERTED_OFFSET = 1;
+    private static final byte CONVERTED = (byte) 0xFF;
+    private static final int PLATE_LOW_OFFSET = 8;
+    private static final int PLATE_HIGH_OFFSET = 16;
+    private static final int ENTRY_OFFSET = 24;
+    private static final int MAGIC = 0x4C4F5453; // "LOTS"
+    private static final int VERSION = 2;
+    private static final long FORCE_INTERVAL_MILLIS = 200;
+
+    private final Path file;
+    private final FileChannel channel;
+    // replaced by a bigger mapping when the lot grows; both map the same file, so a force through either covers it
+    private volatile MappedByteBuffer slots;
+    private volatile int slotCount;
+    private final ScheduledExecutorService forcer;
+    private final LatencyHistogram forceLatency = new LatencyHistogram();
+    private volatile boolean dirty;
+
+    private MappedLotState(Path file, FileChannel channel, MappedByteBuffer slots, int slotCount) {
+        this.file = file;
+        this.channel = channel;
+        this.slots = slots;
+        this.slotCount = slotCount;
+        this.forcer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lot-state-forcer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // msync on every event would undo the point, so dirty pages get pushed out on a short timer
+        forcer.scheduleWithFixedDelay(this::forceIfDirty, FORCE_INTERVAL_MILLIS, FORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Maps the state file, creating it or growing it so it has at least {@code minimumSlots} slots.
+     * A file with more slots than asked for keeps them, so nothing saved is lost.
+     */
+    public static MappedLotState open(Path file, int minimumSlots) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            int slotCount = minimumSlots;
+            int fileVersion = VERSION;
+            if (channel.size() >= HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                fileVersion = header.getInt(4);
+                if (header.getInt(0) != MAGIC || fileVersion < 1 || fileVersion > VERSION || header.getInt(12) != SLOT_BYTES) {
+                    throw new IOException(file + " is not a version 1-" + VERSION + " lot state file");
+                }
+                slotCount = Math.max(slotCount, header.getInt(8));
+            }
+            // mapping past the end grows the file; new slots read back as zero, i.e. empty
+            MappedByteBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+            slots.putInt(0, MAGIC);
+            slots.putInt(8, slotCount);
+            slots.putInt(12, SLOT_BYTES);
+            if (fileVersion == 1) {
+                upgradeFromVersion1(file, slots, slotCount);
+            }
+            slots.putInt(4, VERSION);
+            return new MappedLotState(file, channel, slots, slotCount);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Hands every occupied slot to the handler, in spot id order.
+     *
+     * @return how many occupied slots were found.
+     */
+    public int load(ReplayHandler handler) {
+        int occupied = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            byte code = slots.get(offset);
+            if (code == 0) {
+                continue;
+            }
+            VehicleType vehicleType = VehicleType.fromCode(code);
+            long plateLow = slots.getLong(offset + PLATE_LOW_OFFSET);
+            long plateHigh = slots.getLong(offset + PLATE_HIGH_OFFSET);
+            if (vehicleType == null || plateLow <= 0 || plateHigh < 0) {
+                System.err.println("Skipping unreadable slot for spot " + (slot + 1) + " in " + file);
+                continue;
+            }
+            handler.park(slot + 1, vehicleType, PlateCodec.decode(plateLow, plateHigh), slots.getLong(offset + ENTRY_OFFSET));
+            occupied++;
+        }
+        return occupied;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    @Override
+    public synchronized void recordPark(int spotId, Vehicle vehicle, long entryEpochSecond) {
+        if (!inRange(spotId)) {
+            System.err.println("Cannot store spot " + spotId + " (" + vehicle.getLicensePlate() + ") in " + file);
+            return;
+        }
+        // the vehicle carries its plate packed already, so this is a few puts and no encoding
+        int offset = HEADER_BYTES + (spotId - 1) * SLOT_BYTES;
+        slots.put(offset + CONVERTED_OFFSET, CONVERTED);
+        slots.putLong(offset + PLATE_LOW_OFFSET, vehicle.plateLow());
+        slots.putLong(offset + PLATE_HIGH_OFFSET, vehicle.plateHigh());
+        slots.putLong(offset + ENTRY_OFFSET, entryEpochSecond);
+        // type byte goes last so a half-written slot still reads back as empty
+        slots.put(offset, vehicle.getType().getCode());
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void recordRemove(int spotId, String licensePlate) {
+        if (!inRange(spotId)) {
+            return;
+        }
+        slots.put(HEADER_BYTES + (spotId - 1) * SLOT_BYTES, (byte) 0);
+        dirty = true;
+    }
+
+    // the old mapping stays valid until it's collected, so nothing written through it is lost
+    @Override
+    public synchronized void ensureCapacity(int spotCount) {
+        if (spotCount <= slotCount) {
+            return;
+        }
+        try {
+            MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) spotCount * SLOT_BYTES);
+            grown.putInt(8, spotCount);
+            slots = grown;
+            slotCount = spotCount;
+            dirty = true;
+        } catch (IOException ioException) {
+            System.err.println("Could not grow " + file + " to " + spotCount + " spots, new spots won't be saved: "
+                    + ioException.getMessage());
+        }
+    }
+
+    @Override
+    public LatencyHistogram getFlushLatency() {
+        return forceLatency;
+    }
+
+    @Override
+    public void checkpoint() {
+        slots.force();
+        dirty = false;
+    }
+
+    @Override
+    public void close() {
+        forcer.shutdown();
+        try {
+            forcer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        forceIfDirty();
+        try {
+            channel.close();
+        } catch (IOException ioException) {
+            System.err.println("Could not close lot state file: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Builds a binary state file out of the text snapshot plus whatever the journal has on top of it.
+     *
+     * @return how many occupied spots ended up in the binary file.
+     */
+    public static int convertFromText(Path snapshotFile, Path journalFile, Path binaryFile, int minimumSlots) throws IOException {
+        int highestSpot = minimumSlots;
+        if (Files.exists(snapshotFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.trim().split("\\|");
+                    if (parts.length == 3 || parts.length == 4) {
+                        try {
+                            highestSpot = Math.max(highestSpot, Integer.parseInt(parts[0].trim()));
+                        } catch (NumberFormatException ignored) {
+                            // malformed lines get reported below when they're actually converted
+                        }
+                    }
+                }
+            }
+        }
+
+        MappedLotState state = open(binaryFile, highestSpot);
+        try {
+            ReplayHandler writer = new ReplayHandler() {
+                @Override
+                public void park(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+                    if (!PlateCodec.isValid(licensePlate)) {
+                        System.err.println("Skipping record with an unusable plate: " + spotId + "|" + licensePlate);
+                        return;
+                    }
+                    state.recordPark(spotId, vehicleType.newVehicle(licensePlate), entryEpochSecond);
+                }
+
+                @Override
+                public void remove(int spotId, String licensePlate) {
+                    state.recordRemove(spotId, licensePlate);
+                }
+            };
+            if (Files.exists(snapshotFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(snapshotFile)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String trimmed = line.trim();
+                        if (trimmed.isEmpty()) {
+                            continue;
+                        }
+                        String[] parts = trimmed.split("\\|");
+                        try {
+                            long entryEpochSecond = parts.length > 3 ? Long.parseLong(parts[3].trim()) : 0;
+                            VehicleType vehicleType = VehicleType.parse(parts[1]);
+                            if (vehicleType == null) {
+                                throw new IllegalArgumentException("Unknown vehicle type " + parts[1]);
+                            }
+                            writer.park(Integer.parseInt(parts[0].trim()), vehicleType, parts[2].trim(), entryEpochSecond);
+                        } catch (RuntimeException ex) {
+                            System.err.println("Skipping malformed parking record: " + trimmed);
+                        }
+                    }
+                }
+            }
+            LotJournal.replay(journalFile, writer);
+            return state.countOccupied();
+        } finally {
+            state.close();
+        }
+    }
+
+    /**
+     * Usage: {@code MappedLotState [resourcesDir] [minimumSlots]} — converts lot_state.txt + lot_journal.txt
+     * in that directory into lot_state.bin, which ParkingLot picks up on its next start.
+     */
+    public static void main(String[] args) throws IOException {
+        Path resourcesDir = args.length > 0 ? Paths.get(args[0]) : Paths.get("src", "resources");
+        int minimumSlots = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        Path binaryFile = resourcesDir.resolve(FILE_NAME);
+        int occupied = convertFromText(resourcesDir.resolve("lot_state.txt"),
+                resourcesDir.resolve("lot_journal.txt"),
+                binaryFile,
+                minimumSlots);
+        System.out.printf("Wrote %d occupied spots to %s. The text state files are no longer read while it exists.%n",
+                occupied, binaryFile);
+    }
+
+    private int countOccupied() {
+        int occupied = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slots.get(HEADER_BYTES + slot * SLOT_BYTES) != 0) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    private boolean inRange(int spotId) {
+        return spotId >= 1 && spotId <= slotCount;
+    }
+
+    private void forceIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        long start = System.nanoTime();
+        slots.force();
+        forceLatency.recordSince(start);
+    }
+
+    // version 1 slots kept the plate as ASCII in bytes 2-23, right where the packed halves go now; the type codes
+    // were the same 1/2/3, so only the plate moves
+    private static void upgradeFromVersion1(Path file, MappedByteBuffer slots, int slotCount) {
+        byte[] plate = new byte[V1_MAX_PLATE_BYTES];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            if (slots.get(offset + CONVERTED_OFFSET) == CONVERTED) {
+                continue;
+            }
+            int length = Math.min(slots.get(offset + 1), V1_MAX_PLATE_BYTES);
+            slots.get(offset + 2, plate, 0, Math.max(length, 0));
+            String text = new String(plate, 0, Math.max(length, 0), StandardCharsets.US_ASCII);
+            long plateLow = PlateCodec.low(text);
+            if (slots.get(offset) != 0 && plateLow == PlateCodec.INVALID) {
+                System.err.println("Dropping spot " + (slot + 1) + " with unusable plate '" + text + "' from " + file);
+            }
+            byte code = plateLow == PlateCodec.INVALID ? 0 : slots.get(offset);
+            // emptied first, so a crash mid-slot loses that one car instead of leaving a half-converted plate
+            slots.put(offset, (byte) 0);
+            for (int at = CONVERTED_OFFSET; at < ENTRY_OFFSET; at++) {
+                slots.put(offset + at, (byte) 0);
+            }
+            if (code != 0) {
+                slots.putLong(offset + PLATE_LOW_OFFSET, plateLow);
+                slots.putLong(offset + PLATE_HIGH_OFFSET, PlateCodec.high(text));
+            }
+            slots.put(offset + CONVERTED_OFFSET, CONVERTED);
+            slots.put(offset, code);
+        }
+        slots.force();
+    }
+}
@@ -0,0 +1,101 @@
+package com.parking;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// gets LotMetrics out of the process: either a text file rewritten on a timer (tail it, ship it, diff it)
+// or GET /metrics on a loopback HTTP port for a scraper; both render the same Prometheus text
+public final class MetricsExporter implements Closeable {
+
+    private final ScheduledExecutorService writer;
+    private final ExecutorService httpWorker;
+    private final HttpServer httpServer;
+
+    private MetricsExporter(ScheduledExecutorService writer, ExecutorService httpWorker, HttpServer httpServer) {
+        this.writer = writer;
+        this.httpWorker = httpWorker;
+        this.httpServer = httpServer;
+    }
+
+    /**
+     * Rewrites {@code file} with the current metrics every {@code intervalMillis}. Each write goes to a temp file
+     * that is moved into place, so readers never see half a snapshot.
+     */
+    public static MetricsExporter toFile(LotMetrics metrics, Path file, long intervalMillis) {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> writeSnapshot(metrics, file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return new MetricsExporter(writer, null, null);
+    }
+
+    /**
+     * Serves {@code GET /metrics} on loopback. Port 0 picks a free one (see {@link #getPort()}).
+     */
+    public static MetricsExporter http(LotMetrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 16);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        // one thread is plenty for a scraper every few seconds
+        ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(worker);
+        server.start();
+        return new MetricsExporter(null, worker, server);
+    }
+
+    public int getPort() {
+        return httpServer == null ? -1 : httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpWorker.shutdown();
+        }
+    }
+
+    static void writeSnapshot(LotMetrics metrics, Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, metrics.render());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioException) {
+            System.err.println("Unable to write metrics snapshot: " + ioException.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.parking;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// closest zone to the gate that still has room, breaking ties by whichever zone has more free spots
+// distance is 10 per level changed plus 1 per zone walked along a level, which is crude but predictable
+public final class NearestAvailableRouter implements ZoneRouter {
+
+    private static final int LEVEL_DISTANCE = 10;
+
+    // per gate: every zone, pre-sorted by distance, and the matching distances
+    private final Map<String, ParkingZone[]> zonesByGate = new HashMap<>();
+    private final Map<String, int[]> distancesByGate = new HashMap<>();
+
+    NearestAvailableRouter(List<ParkingZone> zones, Map<String, LotTopology.GateSpec> gates) {
+        for (LotTopology.GateSpec gate : gates.values()) {
+            ParkingZone gateZone = zones.stream()
+                    .filter(zone -> zone.getId().equals(gate.levelId() + "." + gate.zoneId()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Gate " + gate.gateId() + " has no zone"));
+            ParkingZone[] ordered = zones.toArray(new ParkingZone[0]);
+            Arrays.sort(ordered, Comparator.comparingInt(zone -> distance(gateZone, zone)));
+            int[] distances = new int[ordered.length];
+            for (int i = 0; i < ordered.length; i++) {
+                distances[i] = distance(gateZone, ordered[i]);
+            }
+            zonesByGate.put(gate.gateId(), ordered);
+            distancesByGate.put(gate.gateId(), distances);
+        }
+    }
+
+    @Override
+    public ParkingZone[] route(String gateId, SpotSize size) {
+        ParkingZone[] ordered = zonesByGate.get(gateId);
+        if (ordered == null) {
+            throw new IllegalArgumentException("Unknown gate: " + gateId);
+        }
+        int[] distances = distancesByGate.get(gateId);
+        ParkingZone[] candidates = new ParkingZone[ordered.length];
+        int[] candidateDistances = new int[ordered.length];
+        int count = 0;
+        for (int i = 0; i < ordered.length; i++) {
+            if (ordered[i].freeCount(size) > 0) {
+                candidates[count] = ordered[i];
+                candidateDistances[count] = distances[i];
+                count++;
+            }
+        }
+        // insertion sort inside each equal-distance run: more free spots first, stable otherwise
+        for (int i = 1; i < count; i++) {
+            ParkingZone zone = candidates[i];
+            int j = i - 1;
+            while (j >= 0 && candidateDistances[j] == candidateDistances[i]
+                    && candidates[j].freeCount(size) < zone.freeCount(size)) {
+                candidates[j + 1] = candidates[j];
+                j--;
+            }
+            candidates[j + 1] = zone;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private static int distance(ParkingZone from, ParkingZone to) {
+        return Math.abs(from.getLevelOrdinal() - to.getLevelOrdinal()) * LEVEL_DISTANCE
+                + Math.abs(from.getPositionOnLevel() - to.getPositionOnLevel());
+    }
+}
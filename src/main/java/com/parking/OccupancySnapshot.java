@@ -0,0 +1,152 @@
+package com.parking;
+
+import java.util.Arrays;
+import java.util.List;
+
+// point-in-time occupancy numbers for signage/pollers: totals, per spot size, per vehicle type, per zone
+// meant to be reused: ParkingLot.snapshot(into) overwrites the arrays in place, so polling allocates nothing
+// the counts come from per-zone counters read one after another, so they're not one atomic cut of the lot
+public final class OccupancySnapshot {
+
+    /**
+     * Vehicle types with their own counter, in {@link VehicleType} order; anything else is counted under
+     * {@link #OTHER_TYPE}.
+     */
+    public static final List<String> VEHICLE_TYPES = Arrays.stream(VehicleType.values()).map(VehicleType::getDisplayName).toList();
+    public static final String OTHER_TYPE = "Other";
+
+    static final int TYPE_SLOTS = VEHICLE_TYPES.size() + 1;
+    // values() clones its array on every call, which would undo the allocation-free part
+    private static final SpotSize[] SPOT_SIZES = SpotSize.values();
+    private static final int SIZES = SPOT_SIZES.length;
+
+    private String[] zoneIds = new String[0];
+    // flattened [zone][size] and [zone][type] tables
+    private int[] capacityByZoneSize = new int[0];
+    private int[] freeByZoneSize = new int[0];
+    private int[] occupiedByZoneType = new int[0];
+    private final int[] capacityBySize = new int[SIZES];
+    private final int[] freeBySize = new int[SIZES];
+    private final int[] occupiedByType = new int[TYPE_SLOTS];
+    private int capacity;
+    private int free;
+    private int occupied;
+    private long takenAtMillis;
+
+    // counter slot for a vehicle; the slots follow VehicleType's ordinals
+    static int typeSlot(VehicleType vehicleType) {
+        return vehicleType.ordinal();
+    }
+
+    // counter slot for a type name a caller asked about
+    static int typeSlot(String vehicleType) {
+        VehicleType type = VehicleType.parse(vehicleType);
+        return type == null ? TYPE_SLOTS - 1 : typeSlot(type);
+    }
+
+    // only reallocates when the lot's zone count differs from the last fill
+    void reset(int zoneCount, long takenAtMillis) {
+        if (zoneIds.length != zoneCount) {
+            zoneIds = new String[zoneCount];
+            capacityByZoneSize = new int[zoneCount * SIZES];
+            freeByZoneSize = new int[zoneCount * SIZES];
+            occupiedByZoneType = new int[zoneCount * TYPE_SLOTS];
+        }
+        Arrays.fill(capacityBySize, 0);
+        Arrays.fill(freeBySize, 0);
+        Arrays.fill(occupiedByType, 0);
+        capacity = 0;
+        free = 0;
+        occupied = 0;
+        this.takenAtMillis = takenAtMillis;
+    }
+
+    void setZone(int zone, ParkingZone source) {
+        zoneIds[zone] = source.getId();
+        for (SpotSize size : SPOT_SIZES) {
+            int cell = zone * SIZES + size.ordinal();
+            capacityByZoneSize[cell] = source.capacity(size);
+            freeByZoneSize[cell] = source.freeCount(size);
+            capacityBySize[size.ordinal()] += capacityByZoneSize[cell];
+            freeBySize[size.ordinal()] += freeByZoneSize[cell];
+            capacity += capacityByZoneSize[cell];
+            free += freeByZoneSize[cell];
+        }
+        for (int type = 0; type < TYPE_SLOTS; type++) {
+            int count = source.occupiedCount(type);
+            occupiedByZoneType[zone * TYPE_SLOTS + type] = count;
+            occupiedByType[type] += count;
+            occupied += count;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFree() {
+        return free;
+    }
+
+    public int getOccupied() {
+        return occupied;
+    }
+
+    public int getCapacity(SpotSize size) {
+        return capacityBySize[size.ordinal()];
+    }
+
+    public int getFree(SpotSize size) {
+        return freeBySize[size.ordinal()];
+    }
+
+    /**
+     * Vehicles of that type currently parked; unknown type names share the "Other" counter.
+     */
+    public int getOccupied(String vehicleType) {
+        return occupiedByType[typeSlot(vehicleType)];
+    }
+
+    public int getZoneCount() {
+        return zoneIds.length;
+    }
+
+    /**
+     * @param zone index in {@link ParkingLot#getZones()} order.
+     */
+    public String getZoneId(int zone) {
+        return zoneIds[zone];
+    }
+
+    public int getFree(int zone) {
+        int zoneFree = 0;
+        for (int size = 0; size < SIZES; size++) {
+            zoneFree += freeByZoneSize[zone * SIZES + size];
+        }
+        return zoneFree;
+    }
+
+    public int getCapacity(int zone) {
+        int zoneCapacity = 0;
+        for (int size = 0; size < SIZES; size++) {
+            zoneCapacity += capacityByZoneSize[zone * SIZES + size];
+        }
+        return zoneCapacity;
+    }
+
+    public int getFree(int zone, SpotSize size) {
+        return freeByZoneSize[zone * SIZES + size.ordinal()];
+    }
+
+    public int getCapacity(int zone, SpotSize size) {
+        return capacityByZoneSize[zone * SIZES + size.ordinal()];
+    }
+
+    public int getOccupied(int zone, String vehicleType) {
+        return occupiedByZoneType[zone * TYPE_SLOTS + typeSlot(vehicleType)];
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+}
@@ -0,0 +1,66 @@
+package com.parking;
+
+import java.util.Arrays;
+
+// open tickets as a flat array instead of a HashMap<String, Ticket> full of LocalDateTimes
+// a parked plate is already interned to a small dense id — its spot id — and the plate and vehicle type live on the
+// spot, so the only per-ticket field left is the entry time: 8 bytes per spot and nothing for the GC to chase
+//
+// every write for a spot happens inside that plate's compute in ParkingLot (or during single-threaded restore),
+// which is also what orders the reads that follow, so a plain array is enough here
+//
+// the array comes in chunks of 1024 spots so the lot can grow while cars come and go: growing copies only the
+// chunk table, and the chunks already in use stay where they are, so a write racing the resize can't be lost
+final class OpenTicketStore {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private volatile long[][] chunks;
+
+    OpenTicketStore(int spotCount) {
+        this.chunks = new long[0][];
+        ensureCapacity(spotCount);
+    }
+
+    // one thread at a time (the lot's layout lock); new spot ids only become claimable after this returns
+    void ensureCapacity(int spotCount) {
+        int needed = (spotCount + CHUNK_MASK) >>> CHUNK_BITS;
+        long[][] current = chunks;
+        if (needed <= current.length) {
+            return;
+        }
+        long[][] grown = Arrays.copyOf(current, needed);
+        for (int chunk = current.length; chunk < needed; chunk++) {
+            grown[chunk] = new long[1 << CHUNK_BITS];
+        }
+        chunks = grown;
+    }
+
+    void open(int spotId, long entryEpochSecond) {
+        chunkOf(spotId)[(spotId - 1) & CHUNK_MASK] = entryEpochSecond;
+    }
+
+    /**
+     * Clears the spot's ticket.
+     *
+     * @return the entry time it had, or 0 if no ticket was open.
+     */
+    long close(int spotId) {
+        long[] chunk = chunkOf(spotId);
+        long entry = chunk[(spotId - 1) & CHUNK_MASK];
+        chunk[(spotId - 1) & CHUNK_MASK] = 0;
+        return entry;
+    }
+
+    /**
+     * @return the entry time of the spot's open ticket, or 0 if there is none.
+     */
+    long entryEpochSecond(int spotId) {
+        return chunkOf(spotId)[(spotId - 1) & CHUNK_MASK];
+    }
+
+    private long[] chunkOf(int spotId) {
+        return chunks[(spotId - 1) >>> CHUNK_BITS];
+    }
+}
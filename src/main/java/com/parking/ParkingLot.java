@@ -3,126 +3,813 @@ package com.parking;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 // keeping this as a singleton so the CLI always talks to the same parking lot instance
+// no lot-wide monitor anymore: spots are claimed with a CAS, each zone/size pool has its own tiny lock,
+// and the plate index is striped (see PlateIndex), so file I/O happens after the spot is already settled
+// the lot is split into zones (see LotTopology); a ZoneRouter decides which zones an arrival tries
+// persistence is lot_state.txt as a snapshot plus lot_journal.txt for everything since (see LotJournal),
+// or lot_state.bin when that exists (see MappedLotState)
+// whole-lot readers (status pages, snapshots for the journal) go through SpotStateTable, which hands out a
+// consistent copy of every spot without making park/remove wait
+// advance bookings live in a ReservationBook; once a booking starts, walk-ins can't take the spots it holds
+// drivers turned away can join the Waitlist; a remove hands its spot straight to the first waiting car that fits
+// every timestamp (entry times, exits, audit lines, reservation windows) comes from the lot's Clock, so a
+// VirtualClock can run a simulated day at full speed (see ParkingSimulator)
+// every lot carries its own LotMetrics: park/remove latency, pool lock waits, store and audit I/O, queue depths
+// the layout can change while the lot runs (applyLayout, fed by LotConfigWatcher): bays are added, closed or
+// repainted one pool at a time, spot ids are never reused for a different bay while a car could still be in it, and
+// a closed bay with a car in it drains instead of evicting anyone; lot_layout.txt remembers which id is which bay
+// a lot can ship every change to read-only followers on other lots (startReplication, LotFollower); a follower's lot
+// serves occupancy and plate lookups from its own copy and takes over as the primary once promoted
 public class ParkingLot {
 
     private static final int DEFAULT_SPOT_COUNT = 10;
     private static final Path RESOURCES_DIR = Paths.get("src", "resources");
-    private static final Path STATE_FILE = RESOURCES_DIR.resolve("lot_state.txt");
-    private static final Path LOG_FILE = RESOURCES_DIR.resolve("logs.txt");
-    private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    // eager initialization is overkill but avoids null checks all over the place
-    private static final ParkingLot INSTANCE = new ParkingLot(resolveConfiguredCapacity());
+    // big enough to ride out a rush of gate events while the writer thread catches up
+    private static final int AUDIT_BUFFER_SIZE = 8192;
+    private static final int TIMING_SAMPLE_EVERY = 16;
 
-    private final List<ParkingSpot> parkingSpots;
-    private final boolean persistenceEnabled;
+    // the shared lot is built on the first getInstance(), not when ParkingLot loads, so tests and benchmarks that
+    // only use the factories below never open (or create) the files in src/resources
+    private static final class Holder {
+        static final ParkingLot INSTANCE = createConfiguredLot();
+
+        static {
+            // flush whatever the state store still has queued when the JVM goes down
+            Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::shutdownPersistence, "parking-lot-shutdown"));
+        }
+    }
 
-    private ParkingLot(int numberOfSpots) {
-        this(numberOfSpots, true);
+    // spot id - 1 -> the spot, the zone/size pool that owns it and its position inside that pool; a layout change
+    // publishes a new directory before any new spot can be claimed, so park/remove need one volatile read for all three
+    private record SpotDirectory(ParkingSpot[] spots, SpotPool[] pools, int[] slots) {
     }
 
-    private ParkingLot(int numberOfSpots, boolean persistenceEnabled) {
-        this.persistenceEnabled = persistenceEnabled;
-        this.parkingSpots = new ArrayList<>();
-        for (int i = 1; i <= numberOfSpots; i++) {
-            parkingSpots.add(new ParkingSpot(i));
+    private volatile SpotDirectory directory = new SpotDirectory(new ParkingSpot[0], new SpotPool[0], new int[0]);
+    // replaced, never modified, so iterating it needs no lock
+    private volatile List<ParkingZone> zones = List.of();
+    // level ids in the order they first appeared, for routing distances; guarded by layoutLock
+    private final List<String> levels = new ArrayList<>();
+    private final ReentrantLock layoutLock = new ReentrantLock();
+    private volatile FittingPolicy fittingPolicy;
+    private volatile ZoneRouter router;
+    private volatile String defaultGate;
+    private volatile Map<String, LotTopology.GateSpec> gates = Map.of();
+    private static final int STATUS_PAGE_SIZE = 50;
+    // keyed by the packed plate (see PlateCodec), so a gate lookup never hashes or compares a String
+    private final PlateIndex<ParkingSpot> spotsByPlate;
+    private final OpenTicketStore openTickets;
+    private final SpotStateTable spotStates;
+    private final ReservationBook reservations;
+    private final Waitlist waitlist = new Waitlist();
+    private final Clock clock;
+    private final long restoredAtEpochSecond;
+    private final boolean persistenceEnabled;
+    private final Path resourcesDir;
+    private final Path stateFile;
+    private final Path journalFile;
+    private final Path logFile;
+    private final AuditLogger auditLogger;
+    private final LotMetrics metrics = new LotMetrics();
+    // park/remove take a few hundred ns, so timing every one would double the cost; the counters below stay exact
+    private final LatencyHistogram parkLatency = metrics.histogram("lot.park", TIMING_SAMPLE_EVERY);
+    private final LatencyHistogram removeLatency = metrics.histogram("lot.remove", TIMING_SAMPLE_EVERY);
+    private final LatencyHistogram stateRecordLatency = metrics.histogram("state.record", TIMING_SAMPLE_EVERY);
+    private final LatencyHistogram auditEnqueueLatency = metrics.histogram("audit.enqueue", TIMING_SAMPLE_EVERY);
+    private final LongAdder parked = metrics.counter("lot.parked");
+    private final LongAdder parkRejected = metrics.counter("lot.park_rejected");
+    private final LongAdder removed = metrics.counter("lot.removed");
+    private final LongAdder removeMissed = metrics.counter("lot.remove_missed");
+    private final LatencyHistogram spotStatesRead = metrics.histogram("spot_states.read");
+    // join to parked, for every car that came in off the waitlist
+    private final LatencyHistogram waitlistWait = metrics.histogram("waitlist.wait");
+    private final LongAdder waitlistJoined = metrics.counter("waitlist.joined");
+    private final LongAdder waitlistAdmitted = metrics.counter("waitlist.admitted");
+    private final LongAdder layoutChanges = metrics.counter("layout.changes");
+    private final LatencyHistogram layoutApply = metrics.histogram("layout.apply");
+    private final Path spotMapFile;
+    private LotStateStore stateStore;
+    // set once this lot starts shipping its changes to followers; null on every other lot
+    private volatile ReplicationLog replication;
+    // a follower's lot: only its LotFollower changes it, until it's promoted
+    private volatile boolean readOnly;
+
+    // a null directory means nothing touches the disk at all
+    private ParkingLot(LotConfig config, Path resourcesDir, LotJournal.Settings journalSettings, Clock clock) {
+        this.clock = clock;
+        this.restoredAtEpochSecond = clock.millis() / 1000;
+        this.persistenceEnabled = resourcesDir != null;
+        this.resourcesDir = resourcesDir;
+        this.stateFile = persistenceEnabled ? resourcesDir.resolve("lot_state.txt") : null;
+        this.journalFile = persistenceEnabled ? resourcesDir.resolve("lot_journal.txt") : null;
+        this.logFile = persistenceEnabled ? resourcesDir.resolve("logs.txt") : null;
+        this.auditLogger = persistenceEnabled
+                ? new AuditLogger(logFile, AUDIT_BUFFER_SIZE, AuditLogger.OverflowPolicy.BLOCK)
+                : null;
+        this.spotMapFile = persistenceEnabled ? resourcesDir.resolve(SpotMap.FILE_NAME) : null;
+        this.spotsByPlate = new PlateIndex<>();
+        this.openTickets = new OpenTicketStore(0);
+        this.spotStates = new SpotStateTable(0, metrics.counter("spot_states.read_retries"));
+        this.reservations = new ReservationBook(new int[SpotSize.values().length], this::getFreeSpotCount, this::admitWaiting,
+                ReservationBook.Settings.defaults(), metrics, clock);
+        // ids as the last run left them, if it left a map; config.txt then goes on top like any live change (on a
+        // fresh lot that's every bay, numbered zone by zone and bike, compact, large within a zone, as always)
+        restoreSpotMap();
+        layoutLock.lock();
+        try {
+            reshape(config);
+        } finally {
+            layoutLock.unlock();
         }
         // could load spot info from a config file later instead of hardcoding
         // ^ finally hooked into config.txt but leaving the reminder because there is still room for a richer schema
         if (this.persistenceEnabled) {
-            loadPersistedState();
+            Path binaryStateFile = resourcesDir.resolve(MappedLotState.FILE_NAME);
+            if (Files.exists(binaryStateFile)) {
+                openMappedState(binaryStateFile);
+            } else {
+                loadPersistedState();
+                openJournal(journalSettings);
+            }
+            // includes any closed spots the restore had to add for saved cars beyond the configured lot
+            saveSpotMap();
+        }
+        registerMetrics();
+    }
+
+    // only the instruments that aren't hot-path fields above; all of these are read when the metrics are rendered
+    private void registerMetrics() {
+        metrics.gauge("lot.capacity", this::getCapacity);
+        metrics.gauge("lot.draining_spots", this::getDrainingCount);
+        metrics.gauge("lot.free_spots", this::getFreeSpotCount);
+        metrics.gauge("lot.parked_vehicles", spotsByPlate::size);
+        metrics.gauge("waitlist.depth", waitlist::size);
+        if (stateStore != null) {
+            metrics.register("state.flush", stateStore.getFlushLatency());
+        }
+        if (auditLogger != null) {
+            metrics.register("audit.write", auditLogger.getWriteLatency());
+            metrics.gauge("audit.queue_depth", auditLogger::getQueueDepth);
+            metrics.gauge("audit.dropped", auditLogger::getDroppedCount);
         }
     }
 
+    /**
+     * Counters, gauges and latency histograms for this lot. Gate servers, ingestors and payment pipelines built
+     * on the lot publish theirs here too.
+     */
+    public LotMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Advance bookings for this lot. Holds that have started are honored by every park.
+     */
+    public ReservationBook getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Where the lot's entry times, exits and log timestamps come from.
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    long nowEpochSecond() {
+        return clock.millis() / 1000;
+    }
+
     public static ParkingLot getInstance() {
-        return INSTANCE;
+        return Holder.INSTANCE;
     }
 
     // building a throwaway factory so the SystemTest helper can spin up isolated lots without polluting files
     static ParkingLot createEphemeralLot(int numberOfSpots) {
-        return new ParkingLot(numberOfSpots, false);
+        return createEphemeralLot(LotConfig.defaults(numberOfSpots));
+    }
+
+    static ParkingLot createEphemeralLot(SpotLayout layout, FittingPolicy fittingPolicy) {
+        return createEphemeralLot(new LotConfig(LotTopology.singleZone(layout), fittingPolicy));
+    }
+
+    static ParkingLot createEphemeralLot(LotConfig config) {
+        return createEphemeralLot(config, Clock.systemDefaultZone());
+    }
+
+    // in-memory lot running on the given clock; with a VirtualClock nothing in it ever sleeps or reads the wall clock
+    static ParkingLot createEphemeralLot(LotConfig config, Clock clock) {
+        return new ParkingLot(config, null, null, clock);
+    }
+
+    // same idea but backed by real files in a scratch directory, for the crash-recovery checks
+    static ParkingLot createPersistentLot(int numberOfSpots, Path resourcesDir, LotJournal.Settings journalSettings) {
+        return createPersistentLot(LotConfig.defaults(numberOfSpots), resourcesDir, journalSettings);
+    }
+
+    static ParkingLot createPersistentLot(LotConfig config, Path resourcesDir, LotJournal.Settings journalSettings) {
+        return new ParkingLot(config, resourcesDir, journalSettings, Clock.systemDefaultZone());
     }
 
     /**
-     * Attempts to park the provided vehicle in the first available spot.
+     * What one layout change did. {@code closed} counts bays taken out of service; {@code draining} is how many of
+     * those still had a car in them, and they only retire once it leaves.
      */
-    public synchronized boolean parkVehicle(Vehicle vehicle) {
-        // scanning sequentially is fine for tiny lots; bigger setups probably need indexing
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.isAvailable() && spot.parkVehicle(vehicle)) {
-                persistCurrentState();
-                logAction("PARK", String.format("%s (%s) grabbed spot %d", vehicle.getVehicleType(), vehicle.getLicensePlate(), spot.getId()));
-                return true;
+    public record LayoutChange(int added, int reopened, int retyped, int closed, int draining) {
+
+        public boolean changedAnything() {
+            return added + reopened + retyped + closed > 0;
+        }
+    }
+
+    /**
+     * Reshapes the running lot to match {@code config}. Zones and bays the config adds appear right away, bays it
+     * drops are closed (free ones first, highest ids first), and when a zone trades one size for another its
+     * retired bays are repainted before any new spot ids are handed out. A closed bay with a car in it drains: the
+     * car stays and pays as usual, and the bay is retired once it leaves. The fitting policy and gates are
+     * replaced too.
+     * <p>
+     * Gates keep parking throughout: each pool is locked only while its own bays change, and new bays are
+     * published to the rest of the lot before they can be claimed. Waitlisted cars get first go at new bays.
+     */
+    public LayoutChange applyLayout(LotConfig config) {
+        checkWritable();
+        long start = System.nanoTime();
+        LayoutChange change;
+        layoutLock.lock();
+        try {
+            change = reshape(config);
+            if (persistenceEnabled) {
+                // under the lock, so two changes in a row can't save their maps in the wrong order
+                saveSpotMap();
             }
+        } finally {
+            layoutLock.unlock();
         }
-        return false;
+        layoutChanges.increment();
+        layoutApply.recordSince(start);
+        logAction("LAYOUT", "%d spots added, %d reopened, %d repainted, %d closed (%d draining)",
+                change.added(), change.reopened(), change.retyped(), change.closed(), change.draining());
+        if (change.added() + change.reopened() + change.retyped() > 0) {
+            admitWaiting();
+        }
+        return change;
+    }
+
+    /**
+     * Parks the vehicle as if it came through the lot's first gate.
+     */
+    public boolean parkVehicle(Vehicle vehicle) {
+        return parkVehicle(vehicle, defaultGate);
+    }
+
+    /**
+     * Attempts to park the provided vehicle in the best-fitting spot size the fitting policy allows,
+     * in the zone the router prefers for that gate, lowest spot id first within the zone.
+     * A plate that is already parked somewhere gets rejected.
+     *
+     * @throws IllegalArgumentException if the gate isn't part of this lot's topology.
+     * @throws IllegalStateException     on a follower's lot, which only changes through replication.
+     */
+    public boolean parkVehicle(Vehicle vehicle, String gateId) {
+        return park(vehicle, gateId, nowEpochSecond()) != null;
+    }
+
+    // same as parkVehicle but with the ticket's entry time supplied (gate feeds carry their own timestamps)
+    // and the spot handed back, or null when nothing was claimed
+    ParkingSpot park(Vehicle vehicle, String gateId, long entryEpochSecond) {
+        checkWritable();
+        long start = parkLatency.startSample();
+        // computeIfAbsent runs at most once per plate at a time, so the same plate can't claim two spots
+        ParkingSpot[] claimed = new ParkingSpot[1];
+        spotsByPlate.computeIfAbsent(vehicle.plateLow(), vehicle.plateHigh(),
+                () -> claimed[0] = claimFreeSpot(vehicle, gateId, entryEpochSecond));
+        ParkingSpot spot = claimed[0];
+        if (spot == null) {
+            parkRejected.increment();
+            parkLatency.recordSince(start);
+            return null;
+        }
+        logAction("PARK", "%s (%s) grabbed spot %d", vehicle.getVehicleType(), vehicle.getLicensePlate(), spot.getId());
+        parked.increment();
+        parkLatency.recordSince(start);
+        return spot;
+    }
+
+    /**
+     * The gate a plain {@link #parkVehicle(Vehicle)} arrives through.
+     */
+    public String getDefaultGate() {
+        return defaultGate;
     }
 
     /**
      * Removes a vehicle based on its license plate, freeing up the spot.
      */
-    public synchronized boolean removeVehicle(String licensePlate) {
-        for (ParkingSpot spot : parkingSpots) {
-            Vehicle parked = spot.getVehicle();
-            if (parked != null && parked.getLicensePlate().equalsIgnoreCase(licensePlate)) {
-                spot.removeVehicle();
-                persistCurrentState();
-                logAction("REMOVE", String.format("%s left spot %d", parked.getLicensePlate(), spot.getId()));
-                return true;
+    public boolean removeVehicle(String licensePlate) {
+        return depart(licensePlate) != null;
+    }
+
+    /**
+     * Removes the vehicle and hands back its ticket, ready to be closed and paid.
+     *
+     * @return the ticket, or null if the plate isn't in the lot.
+     */
+    public Ticket checkOut(String licensePlate, TariffEngine tariffEngine) {
+        Departure departure = depart(licensePlate);
+        if (departure == null) {
+            return null;
+        }
+        return Ticket.reopen(departure.vehicle(), departure.spot().getId(), departure.entryEpochSecond(), tariffEngine, clock);
+    }
+
+    public Ticket checkOut(String licensePlate) {
+        return checkOut(licensePlate, TariffEngine.getDefault());
+    }
+
+    // what a remove took out of the lot; the ticket's entry time has to be read in the same compute that clears it
+    private record Departure(ParkingSpot spot, Vehicle vehicle, long entryEpochSecond) {
+    }
+
+    private Departure depart(String licensePlate) {
+        checkWritable();
+        long start = removeLatency.startSample();
+        // clearing the spot inside computeIfPresent means a re-park of the same plate waits for it
+        // (an unusable plate packs to INVALID, which is never a key, so it just misses)
+        Departure[] departed = new Departure[1];
+        spotsByPlate.computeIfPresent(PlateCodec.low(licensePlate), PlateCodec.high(licensePlate), spot -> {
+            Vehicle vehicle = spot.removeVehicle();
+            spotStates.publishRemove(spot.getId());
+            zoneOf(spot).vehicleLeft(vehicle);
+            departed[0] = new Departure(spot, vehicle, openTickets.close(spot.getId()));
+            if (stateStore != null) {
+                long recordStart = stateRecordLatency.startSample();
+                stateStore.recordRemove(spot.getId(), vehicle.getLicensePlate());
+                stateRecordLatency.recordSince(recordStart);
+            }
+            ReplicationLog log = replication;
+            if (log != null) {
+                log.recordRemove(spot.getId(), vehicle.getLicensePlate());
             }
+            return null;
+        });
+        Departure departure = departed[0];
+        if (departure == null) {
+            removeMissed.increment();
+            removeLatency.recordSince(start);
+            return null;
         }
-        // maybe should use a map later if lookups by plate become hot paths
-        return false;
+        logAction("REMOVE", "%s left spot %d", departure.vehicle().getLicensePlate(), departure.spot().getId());
+        // the spot is already clear, so nobody can be handed a slot whose CAS would fail; a waiting car gets it
+        // without it ever going back into the free index
+        if (!handOff(departure.spot())) {
+            releaseToPool(departure.spot());
+        }
+        removed.increment();
+        removeLatency.recordSince(start);
+        return departure;
+    }
+
+    /**
+     * The open ticket for a parked plate, without removing anything.
+     *
+     * @return the ticket, or null if the plate isn't in the lot.
+     */
+    public Ticket findOpenTicket(String licensePlate) {
+        ParkingSpot spot = findSpotByPlate(licensePlate);
+        Vehicle vehicle = spot == null ? null : spot.getVehicle();
+        if (vehicle == null) {
+            return null;
+        }
+        return Ticket.reopen(vehicle, spot.getId(), openTickets.entryEpochSecond(spot.getId()), TariffEngine.getDefault(), clock);
+    }
+
+    /**
+     * Joins the waitlist for a vehicle that couldn't get in. Whenever a spot it fits frees up, it goes to the
+     * longest-waiting vehicle of the highest priority, and the entry's future completes with that spot.
+     *
+     * @param priority higher goes first; 0 for everyone without a permit.
+     */
+    public Waitlist.Entry joinWaitlist(Vehicle vehicle, String gateId, int priority) {
+        checkWritable();
+        Waitlist.Entry entry = waitlist.join(vehicle, gateId, priority);
+        waitlistJoined.increment();
+        // a spot may have come free between the failed park and joining, with nobody in line to hand it to
+        admitWaiting();
+        return entry;
+    }
+
+    public Waitlist getWaitlist() {
+        return waitlist;
+    }
+
+    /**
+     * Looks up where a plate is parked.
+     *
+     * @return the spot holding that plate, or null if it isn't in the lot.
+     */
+    public ParkingSpot findSpotByPlate(String licensePlate) {
+        return spotsByPlate.get(PlateCodec.low(licensePlate), PlateCodec.high(licensePlate));
+    }
+
+    // read-only view for the SystemTest invariant checks: every spot a car can be in, so retired ones are left out
+    List<ParkingSpot> getSpots() {
+        SpotDirectory current = directory;
+        List<ParkingSpot> spots = new ArrayList<>(current.spots().length);
+        for (int index = 0; index < current.spots().length; index++) {
+            if (!current.pools()[index].isRetired(current.slots()[index])) {
+                spots.add(current.spots()[index]);
+            }
+        }
+        return Collections.unmodifiableList(spots);
+    }
+
+    /**
+     * Flushes the state store and stops its background threads. The lot shouldn't be used afterwards.
+     */
+    void shutdownPersistence() {
+        if (stateStore != null) {
+            stateStore.close();
+        }
+        if (auditLogger != null) {
+            auditLogger.close();
+        }
+    }
+
+    // forces a full snapshot/flush right now; mostly for benchmarks and tests
+    void checkpointState() {
+        if (stateStore != null) {
+            stateStore.checkpoint();
+        }
+    }
+
+    /**
+     * Free spots across every zone. Reads each zone's published counts, so no shard gets locked.
+     */
+    public int getFreeSpotCount() {
+        int free = 0;
+        for (ParkingZone zone : zones) {
+            free += zone.freeCount();
+        }
+        return free;
+    }
+
+    public int getFreeSpotCount(SpotSize size) {
+        int free = 0;
+        for (ParkingZone zone : zones) {
+            free += zone.freeCount(size);
+        }
+        return free;
+    }
+
+    /**
+     * Spots open for parking, taken or not; closed bays don't count even while a car is still draining out of one.
+     */
+    public int getCapacity() {
+        int capacity = 0;
+        for (ParkingZone zone : zones) {
+            capacity += zone.capacity();
+        }
+        return capacity;
+    }
+
+    public int getCapacity(SpotSize size) {
+        int capacity = 0;
+        for (ParkingZone zone : zones) {
+            capacity += zone.capacity(size);
+        }
+        return capacity;
     }
 
     /**
-     * Displays the current state of all parking spots.
+     * Closed bays that still have a car in them.
+     */
+    public int getDrainingCount() {
+        int draining = 0;
+        for (ParkingZone zone : zones) {
+            draining += zone.drainingCount();
+        }
+        return draining;
+    }
+
+    public List<ParkingZone> getZones() {
+        return Collections.unmodifiableList(zones);
+    }
+
+    /**
+     * Copies the current occupancy counters into {@code into} and returns it. Cost depends on the number
+     * of zones, not spots, and nothing is allocated once the snapshot has been filled for this lot.
+     */
+    public OccupancySnapshot snapshot(OccupancySnapshot into) {
+        List<ParkingZone> current = zones;
+        into.reset(current.size(), clock.millis());
+        for (int zone = 0; zone < current.size(); zone++) {
+            into.setZone(zone, current.get(zone));
+        }
+        return into;
+    }
+
+    public OccupancySnapshot snapshot() {
+        return snapshot(new OccupancySnapshot());
+    }
+
+    /**
+     * Copies every spot's occupant and entry time into {@code into} as of one instant and returns it.
+     * Costs a copy of the whole lot (two array copies), but never blocks a park or remove.
+     */
+    public SpotStateSnapshot spotStates(SpotStateSnapshot into) {
+        long start = System.nanoTime();
+        spotStates.read(into, clock.millis());
+        spotStatesRead.recordSince(start);
+        return into;
+    }
+
+    public SpotStateSnapshot spotStates() {
+        return spotStates(new SpotStateSnapshot());
+    }
+
+    /**
+     * Prints the occupancy summary and the first page of spots.
      */
     public void displayStatus() {
-        System.out.println("\n--- Parking Lot Status ---");
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.isAvailable()) {
-                System.out.printf("Spot %d: Available%n", spot.getId());
+        displayStatus(1);
+    }
+
+    /**
+     * Prints the occupancy summary and one page of spots, built up front and written in one go.
+     */
+    public void displayStatus(int page) {
+        System.out.print(renderStatus(page, STATUS_PAGE_SIZE));
+    }
+
+    public int getStatusPageCount() {
+        return Math.max(1, (directory.spots().length + STATUS_PAGE_SIZE - 1) / STATUS_PAGE_SIZE);
+    }
+
+    // page is 1-based and clamped, so asking for page 999 just shows the last one
+    String renderStatus(int page, int pageSize) {
+        OccupancySnapshot summary = snapshot();
+        // the spot list comes from one consistent copy; the counters above are read separately, so on a busy
+        // lot the two can be a few parks apart
+        SpotStateSnapshot states = spotStates();
+        SpotDirectory spots = directory;
+        int pages = Math.max(1, (spots.spots().length + pageSize - 1) / pageSize);
+        int shownPage = Math.min(Math.max(page, 1), pages);
+        StringBuilder out = new StringBuilder(256 + pageSize * 48);
+        out.append("\n--- Parking Lot Status ---\n");
+        out.append(String.format("%d of %d spots free", summary.getFree(), summary.getCapacity()));
+        for (SpotSize size : SpotSize.values()) {
+            out.append(String.format(" | %s %d/%d", size, summary.getFree(size), summary.getCapacity(size)));
+        }
+        out.append('\n');
+        out.append("Parked:");
+        for (String type : OccupancySnapshot.VEHICLE_TYPES) {
+            out.append(String.format(" %s %d", type, summary.getOccupied(type)));
+        }
+        out.append('\n');
+        for (int zone = 0; zone < summary.getZoneCount(); zone++) {
+            out.append(String.format("Zone %s: %d of %d free%n",
+                    summary.getZoneId(zone), summary.getFree(zone), summary.getCapacity(zone)));
+        }
+        int first = (shownPage - 1) * pageSize;
+        int last = Math.min(first + pageSize, spots.spots().length);
+        for (int index = first; index < last; index++) {
+            ParkingSpot spot = spots.spots()[index];
+            String zoneId = spots.pools()[index].getZone().getId();
+            boolean closed = spots.pools()[index].isClosed(spots.slots()[index]);
+            // the spot states copy may predate spots added since, which just read as free
+            Vehicle vehicle = spot.getId() <= states.getSpotCount() ? states.getVehicle(spot.getId()) : null;
+            if (vehicle == null) {
+                out.append(String.format("Spot %d [%s] %s: %s%n", spot.getId(), spot.getSize(), zoneId, closed ? "Closed" : "Available"));
             } else {
-                Vehicle vehicle = spot.getVehicle();
-                System.out.printf("Spot %d: Occupied by %s (%s)%n",
+                out.append(String.format("Spot %d [%s] %s: Occupied by %s (%s)%s%n",
                         spot.getId(),
+                        spot.getSize(),
+                        zoneId,
                         vehicle.getVehicleType(),
-                        vehicle.getLicensePlate());
+                        vehicle.getLicensePlate(),
+                        closed ? ", closing" : ""));
             }
         }
-        System.out.println("--------------------------\n");
+        out.append(String.format("Page %d of %d%n", shownPage, pages));
+        out.append("--------------------------\n\n");
+        return out.toString();
     }
 
-    private static int resolveConfiguredCapacity() {
-        Path configPath = Paths.get("src", "resources", "config.txt");
+    // config.txt is either a plain spot count (every spot large, like before) or key=value lines:
+    //   bike=4 / compact=20 / large=6 / fitting=overflow|strict
+    private static ParkingLot createConfiguredLot() {
+        LotConfig config = null;
         try {
-            if (Files.exists(configPath)) {
-                String rawValue = Files.readString(configPath).trim();
-                if (!rawValue.isEmpty()) {
-                    int configured = Integer.parseInt(rawValue);
-                    if (configured > 0) {
-                        return configured;
-                    }
+            config = LotConfig.load(RESOURCES_DIR.resolve("config.txt"));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Config read failed, sticking with default size: " + ex.getMessage());
+        }
+        if (config == null) {
+            config = LotConfig.defaults(DEFAULT_SPOT_COUNT);
+        }
+        return new ParkingLot(config, RESOURCES_DIR, LotJournal.Settings.defaults(), Clock.systemDefaultZone());
+    }
+
+    public void logPaymentSuccess(String licensePlate, double amount) {
+        logAction("PAYMENT", "%s settled $%.2f", licensePlate == null ? "UNKNOWN" : licensePlate, amount);
+        ReplicationLog log = replication;
+        if (log != null) {
+            log.recordPayment(licensePlate == null ? "UNKNOWN" : licensePlate, Math.round(amount * 100), true, "");
+        }
+    }
+
+    public void logPaymentFailure(String licensePlate, double amount, String reason) {
+        logAction("PAYMENT_FAILED", "%s could not settle $%.2f: %s", licensePlate == null ? "UNKNOWN" : licensePlate, amount, reason);
+        ReplicationLog log = replication;
+        if (log != null) {
+            log.recordPayment(licensePlate == null ? "UNKNOWN" : licensePlate, Math.round(amount * 100), false, reason);
+        }
+    }
+
+    /**
+     * Starts recording every park, exit, payment and layout change for followers to pull (see {@link LotFollower}).
+     * Calling it again hands back the same log.
+     *
+     * @throws IllegalStateException on a follower's lot; promote it first.
+     */
+    public ReplicationLog startReplication(ReplicationLog.Settings settings) {
+        // under the layout lock so a change can't be half shipped; a follower starts from a snapshot either way
+        layoutLock.lock();
+        try {
+            checkWritable();
+            if (replication == null) {
+                replication = new ReplicationLog(settings, this::replicaSnapshot, metrics);
+            }
+            return replication;
+        } finally {
+            layoutLock.unlock();
+        }
+    }
+
+    /**
+     * True while this is a follower's lot: it answers lookups, but parks, exits, waitlist joins and layout changes
+     * throw {@link IllegalStateException}.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // LotFollower.start
+    void becomeFollower() {
+        if (replication != null) {
+            throw new IllegalStateException("A lot that ships its changes to followers can't follow another one.");
+        }
+        readOnly = true;
+    }
+
+    // LotFollower.promote, once the last batch is in
+    void promote() {
+        readOnly = false;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("This lot is a read-only follower; parks, exits and layout changes go to the primary.");
+        }
+    }
+
+    // the snapshot a follower starts from: the spot map, then every parked car; runs under the log's monitor, so no
+    // record is appended meanwhile. the cars are read first, so the map covers every spot id they're in
+    private List<String> replicaSnapshot() {
+        SpotStateSnapshot states = spotStates();
+        List<String> records = new ArrayList<>(states.getOccupied() + 1);
+        List<SpotMap.Run> runs = spotMapRuns();
+        records.add(ReplicationLog.layoutRecord(runs));
+        for (int spotId = 1; spotId <= states.getSpotCount(); spotId++) {
+            Vehicle vehicle = states.getVehicle(spotId);
+            if (vehicle != null) {
+                records.add(ReplicationLog.parkRecord(spotId, vehicle.getType(), vehicle.getLicensePlate(),
+                        states.getEntryEpochSecond(spotId)));
+            }
+        }
+        return records;
+    }
+
+    // LotFollower's thread; a record that can't be read is reported and skipped rather than stopping the follower
+    void applyReplicated(List<String> records) {
+        ReplicationLog.Handler handler = replicaHandler();
+        for (String record : records) {
+            try {
+                ReplicationLog.apply(record, handler);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Skipping bad replication record: " + ex.getMessage());
+            }
+        }
+    }
+
+    // a snapshot replaces everything: cars the primary no longer has leave first (so bays it has repainted are
+    // empty here too), then the map and the primary's cars go in like any other records
+    void applyReplicaSnapshot(List<String> records) {
+        Map<Integer, String> platesBySpot = new HashMap<>();
+        ReplicationLog.Handler parks = new ReplicationLog.Handler() {
+            @Override
+            public void park(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+                platesBySpot.put(spotId, licensePlate);
+            }
+
+            @Override
+            public void remove(int spotId, String licensePlate) {
+            }
+
+            @Override
+            public void payment(String licensePlate, long cents, boolean succeeded, String reason) {
+            }
+
+            @Override
+            public void layout(List<SpotMap.Run> runs) {
+            }
+        };
+        for (String record : records) {
+            try {
+                ReplicationLog.apply(record, parks);
+            } catch (IllegalArgumentException ex) {
+                // applyReplicated reports it below
+            }
+        }
+        SpotStateSnapshot states = spotStates();
+        for (int spotId = 1; spotId <= states.getSpotCount(); spotId++) {
+            Vehicle vehicle = states.getVehicle(spotId);
+            String kept = platesBySpot.get(spotId);
+            if (vehicle != null && (kept == null || !samePlate(vehicle, kept))) {
+                replicaRemove(spotId, vehicle.getLicensePlate());
+            }
+        }
+        applyReplicated(records);
+    }
+
+    private ReplicationLog.Handler replicaHandler() {
+        return new ReplicationLog.Handler() {
+            @Override
+            public void park(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+                replicaPark(spotId, vehicleType, licensePlate, entryEpochSecond);
+            }
+
+            @Override
+            public void remove(int spotId, String licensePlate) {
+                replicaRemove(spotId, licensePlate);
+            }
+
+            @Override
+            public void payment(String licensePlate, long cents, boolean succeeded, String reason) {
+                if (succeeded) {
+                    logPaymentSuccess(licensePlate, cents / 100.0);
+                } else {
+                    logPaymentFailure(licensePlate, cents / 100.0, reason);
                 }
             }
-        } catch (IOException | NumberFormatException ex) {
-            System.err.println("Config read failed, sticking with default size: " + ex.getMessage());
+
+            @Override
+            public void layout(List<SpotMap.Run> runs) {
+                mirrorLayout(runs);
+            }
+        };
+    }
+
+    // a car the snapshot already had in place is left alone; anything else goes in the way a restored car does,
+    // which also clears out whatever this lot still had in that spot or for that plate (last record wins)
+    private void replicaPark(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+        ParkingSpot spot = findSpotById(spotId);
+        Vehicle there = spot == null ? null : spot.getVehicle();
+        if (there != null && samePlate(there, licensePlate)) {
+            return;
+        }
+        restoreSpot(spotId, vehicleType, licensePlate, entryEpochSecond);
+        ParkingSpot placed = findSpotById(spotId);
+        Vehicle vehicle = placed == null ? null : placed.getVehicle();
+        if (stateStore != null && vehicle != null) {
+            stateStore.recordPark(spotId, vehicle, entryEpochSecond);
+        }
+    }
+
+    private void replicaRemove(int spotId, String licensePlate) {
+        if (restoreRemoval(spotId, licensePlate) && stateStore != null) {
+            stateStore.recordRemove(spotId, licensePlate);
         }
-        return DEFAULT_SPOT_COUNT;
     }
 
-    public synchronized void logPaymentSuccess(String licensePlate, double amount) {
-        logAction("PAYMENT", String.format("%s settled $%.2f", licensePlate == null ? "UNKNOWN" : licensePlate, amount));
+    private static boolean samePlate(Vehicle vehicle, String licensePlate) {
+        return vehicle.plateLow() == PlateCodec.low(licensePlate) && vehicle.plateHigh() == PlateCodec.high(licensePlate);
     }
 
     // trying to persist data so state isn't lost on exit, so this reloads whatever we stored previously
@@ -134,7 +821,7 @@ public class ParkingLot {
             return;
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(STATE_FILE)) {
+        try (BufferedReader reader = Files.newBufferedReader(stateFile)) {
             String line;
             while ((line = reader.readLine()) != null) {
                 String trimmed = line.trim();
@@ -142,35 +829,27 @@ public class ParkingLot {
                     continue;
                 }
                 String[] parts = trimmed.split("\\|");
-                if (parts.length != 3) {
+                // three fields is the format from before entry times were saved
+                if (parts.length != 3 && parts.length != 4) {
                     System.err.println("Skipping malformed parking record: " + trimmed);
                     continue;
                 }
 
                 int spotId;
+                long entryEpochSecond;
                 try {
                     spotId = Integer.parseInt(parts[0].trim());
+                    entryEpochSecond = parts.length == 4 ? Long.parseLong(parts[3].trim()) : 0;
                 } catch (NumberFormatException nfe) {
-                    System.err.println("Bad spot number in saved data: " + parts[0]);
+                    System.err.println("Bad numbers in saved data: " + trimmed);
                     continue;
                 }
-
-                Vehicle reconstructed = recreateVehicle(parts[1].trim(), parts[2].trim());
-                if (reconstructed == null) {
-                    System.err.println("Unknown vehicle type in saved data: " + parts[1]);
+                VehicleType vehicleType = VehicleType.parse(parts[1]);
+                if (vehicleType == null) {
+                    System.err.println("Unknown vehicle type in saved data: " + parts[1].trim());
                     continue;
                 }
-
-                ParkingSpot targetSpot = findSpotById(spotId);
-                if (targetSpot == null) {
-                    System.err.println("Saved spot " + spotId + " exceeds current lot size. Ignoring entry.");
-                    continue;
-                }
-                if (!targetSpot.isAvailable()) {
-                    // this shouldn't happen but I'd rather overwrite than leave the file inconsistent
-                    targetSpot.removeVehicle();
-                }
-                targetSpot.parkVehicle(reconstructed);
+                restoreSpot(spotId, vehicleType, parts[2].trim(), entryEpochSecond);
             }
         } catch (IOException ioException) {
             System.err.println("Could not read persisted parking data: " + ioException.getMessage());
@@ -178,48 +857,145 @@ public class ParkingLot {
         }
     }
 
-    // trying to persist data so state isn't lost on exit
-    private void persistCurrentState() {
-        if (!persistenceEnabled) {
+    // the replay half of the journal: snapshot first, then every record written since
+    private void openJournal(LotJournal.Settings journalSettings) {
+        int replayed;
+        LotJournal journal;
+        try {
+            replayed = LotJournal.replay(journalFile, restoreHandler());
+            journal = new LotJournal(journalFile, stateFile, journalSettings, this::writeSnapshot, metrics);
+        } catch (IOException ioException) {
+            // running without a journal beats refusing to open the gates
+            System.err.println("Could not open parking journal, changes won't be saved: " + ioException.getMessage());
             return;
         }
+        if (replayed > 0) {
+            // folding the replayed tail in right away keeps the next startup cheap
+            journal.compact();
+        }
+        stateStore = journal;
+    }
+
+    private void openMappedState(Path binaryStateFile) {
         try {
-            ensureStateFileReady();
-            try (BufferedWriter writer = Files.newBufferedWriter(
-                    STATE_FILE,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.WRITE)) {
-                for (ParkingSpot spot : parkingSpots) {
-                    if (spot.isAvailable()) {
-                        continue;
-                    }
-                    Vehicle vehicle = spot.getVehicle();
-                    // probably should refactor this if it grows bigger, but a simple pipe-delimited line works for now
-                    writer.write(String.format("%d|%s|%s%n",
-                            spot.getId(),
-                            vehicle.getVehicleType(),
-                            vehicle.getLicensePlate()));
-                }
-            }
+            MappedLotState mappedState = MappedLotState.open(binaryStateFile, directory.spots().length);
+            mappedState.load(restoreHandler());
+            stateStore = mappedState;
         } catch (IOException ioException) {
-            System.err.println("Failed to persist parking data: " + ioException.getMessage());
+            System.err.println("Could not open binary parking state, changes won't be saved: " + ioException.getMessage());
         }
     }
 
+    private LotStateStore.ReplayHandler restoreHandler() {
+        return new LotStateStore.ReplayHandler() {
+            @Override
+            public void park(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+                restoreSpot(spotId, vehicleType, licensePlate, entryEpochSecond);
+            }
+
+            @Override
+            public void remove(int spotId, String licensePlate) {
+                restoreRemoval(spotId, licensePlate);
+            }
+        };
+    }
+
+    // trying to persist data so state isn't lost on exit
+    // one consistent copy, so a car that moved mid-compaction is written in exactly one spot
+    private void writeSnapshot(Writer writer) throws IOException {
+        SpotStateSnapshot states = spotStates();
+        for (int spotId = 1; spotId <= states.getSpotCount(); spotId++) {
+            Vehicle vehicle = states.getVehicle(spotId);
+            if (vehicle == null) {
+                continue;
+            }
+            // probably should refactor this if it grows bigger, but a simple pipe-delimited line works for now
+            writer.write(String.format("%d|%s|%s|%d%n",
+                    spotId,
+                    vehicle.getVehicleType(),
+                    vehicle.getLicensePlate(),
+                    states.getEntryEpochSecond(spotId)));
+        }
+    }
+
+    // startup, or a follower applying its primary's records; no lanes run on the lot either way, so one thread
+    // changing it step by step is fine (the plate goes into the index last, so a lookup never finds a half-parked car)
+    private void restoreSpot(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+        if (!PlateCodec.isValid(licensePlate)) {
+            System.err.println("Unusable plate in saved data: " + licensePlate);
+            return;
+        }
+        Vehicle reconstructed = vehicleType.newVehicle(licensePlate);
+
+        if (spotId > directory.spots().length) {
+            System.err.println("Saved spot " + spotId + " is beyond the configured lot; keeping it as a closed spot until its car leaves.");
+            extendForRestore(spotId);
+        }
+        ParkingSpot targetSpot = findSpotById(spotId);
+        if (targetSpot == null) {
+            System.err.println("Saved spot " + spotId + " isn't a spot id. Ignoring entry.");
+            return;
+        }
+        if (!targetSpot.isAvailable()) {
+            // this shouldn't happen but I'd rather overwrite than leave the file inconsistent
+            Vehicle overwritten = targetSpot.removeVehicle();
+            spotStates.publishRemove(spotId);
+            zoneOf(targetSpot).vehicleLeft(overwritten);
+            spotsByPlate.remove(overwritten.plateLow(), overwritten.plateHigh());
+        }
+        ParkingSpot previousSpot = spotsByPlate.get(reconstructed.plateLow(), reconstructed.plateHigh());
+        if (previousSpot != null) {
+            // same plate saved twice — last record wins, same as the spot overwrite above
+            zoneOf(previousSpot).vehicleLeft(previousSpot.removeVehicle());
+            spotStates.publishRemove(previousSpot.getId());
+            openTickets.close(previousSpot.getId());
+            releaseToPool(previousSpot);
+        }
+        // not re-checking the fitting policy: whatever was parked before a layout change stays put
+        targetSpot.parkVehicle(reconstructed);
+        zoneOf(targetSpot).vehicleArrived(reconstructed);
+        // state saved before entry times existed gets the restart as its entry time rather than no ticket at all
+        long entry = entryEpochSecond > 0 ? entryEpochSecond : restoredAtEpochSecond;
+        openTickets.open(spotId, entry);
+        spotStates.publishPark(spotId, reconstructed, entry);
+        SpotDirectory current = directory;
+        current.pools()[spotId - 1].claim(current.slots()[spotId - 1]);
+        spotsByPlate.put(reconstructed.plateLow(), reconstructed.plateHigh(), targetSpot);
+    }
+
+    // true if the car was there and is gone now
+    private boolean restoreRemoval(int spotId, String licensePlate) {
+        ParkingSpot spot = findSpotById(spotId);
+        if (spot == null) {
+            return false;
+        }
+        Vehicle parked = spot.getVehicle();
+        // a snapshot taken mid-compaction may already reflect this removal, so mismatches are just skipped
+        if (parked != null && samePlate(parked, licensePlate)) {
+            spot.removeVehicle();
+            spotStates.publishRemove(spotId);
+            zoneOf(spot).vehicleLeft(parked);
+            openTickets.close(spotId);
+            spotsByPlate.remove(parked.plateLow(), parked.plateHigh());
+            releaseToPool(spot);
+            return true;
+        }
+        return false;
+    }
+
     private void ensureStateFileReady() throws IOException {
-        Files.createDirectories(RESOURCES_DIR);
-        if (Files.notExists(STATE_FILE)) {
-            Files.createFile(STATE_FILE);
+        Files.createDirectories(resourcesDir);
+        if (Files.notExists(stateFile)) {
+            Files.createFile(stateFile);
         }
-        if (Files.notExists(LOG_FILE)) {
-            Files.createFile(LOG_FILE);
+        if (Files.notExists(logFile)) {
+            Files.createFile(logFile);
         }
     }
 
     private void recreateStateFile() {
         try (BufferedWriter writer = Files.newBufferedWriter(
-                STATE_FILE,
+                stateFile,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING)) {
             writer.write("");
@@ -229,43 +1005,467 @@ public class ParkingLot {
     }
 
     private ParkingSpot findSpotById(int spotId) {
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.getId() == spotId) {
+        ParkingSpot[] spots = directory.spots();
+        if (spotId < 1 || spotId > spots.length) {
+            return null;
+        }
+        return spots[spotId - 1];
+    }
+
+    private ParkingSpot claimFreeSpot(Vehicle vehicle, String gateId, long entryEpochSecond) {
+        // a plate with an active hold goes straight to the size it booked; one read when nobody holds anything
+        ParkingSpot spot = null;
+        FittingPolicy policy = fittingPolicy;
+        SpotSize held = reservations.heldSize(vehicle);
+        if (held != null && policy.fits(vehicle.getType(), held)) {
+            spot = claimInSize(held, gateId, false);
+            if (spot != null) {
+                reservations.redeem(vehicle);
+            }
+        }
+        // size preference wins over distance: a bike walks one zone further before it takes a car bay
+        // each claim is one index lookup, so cost depends on zones x sizes, not on how big the lot is
+        if (spot == null) {
+            for (SpotSize size : policy.preferencesFor(vehicle.getType())) {
+                spot = claimInSize(size, gateId, true);
+                if (spot != null) {
+                    break;
+                }
+            }
+        }
+        if (spot == null) {
+            return null;
+        }
+        occupy(spot, vehicle, entryEpochSecond);
+        return spot;
+    }
+
+    // a claimed (or handed over) spot becomes the vehicle's; runs inside the plate's compute
+    private void occupy(ParkingSpot spot, Vehicle vehicle, long entryEpochSecond) {
+        // the entry time goes in before the CAS, so anyone who sees the spot occupied also sees its ticket
+        openTickets.open(spot.getId(), entryEpochSecond);
+        if (!spot.parkVehicle(vehicle)) {
+            // index and spot disagree — better to fail loudly than double-book
+            throw new IllegalStateException("Spot " + spot.getId() + " was handed out while still occupied.");
+        }
+        spotStates.publishPark(spot.getId(), vehicle, entryEpochSecond);
+        zoneOf(spot).vehicleArrived(vehicle);
+        // we're inside the plate's compute here, which keeps journal order per spot matching reality
+        if (stateStore != null) {
+            long recordStart = stateRecordLatency.startSample();
+            stateStore.recordPark(spot.getId(), vehicle, entryEpochSecond);
+            stateRecordLatency.recordSince(recordStart);
+        }
+        ReplicationLog log = replication;
+        if (log != null) {
+            log.recordPark(spot.getId(), vehicle, entryEpochSecond);
+        }
+    }
+
+    // the freed spot goes to the first waiting vehicle that fits it, unless active holds need it more or the spot
+    // was closed (then it retires)
+    private boolean handOff(ParkingSpot spot) {
+        if (waitlist.isEmpty() || isClosed(spot)) {
+            return false;
+        }
+        SpotSize size = spot.getSize();
+        if (reservations.hasActiveHolds(size) && reservations.blocksWalkIn(size, getFreeSpotCount(size))) {
+            return false;
+        }
+        long entryEpochSecond = nowEpochSecond();
+        Waitlist.Entry entry;
+        while ((entry = waitlist.takeFor(size, fittingPolicy)) != null) {
+            Vehicle vehicle = entry.getVehicle();
+            boolean[] placed = new boolean[1];
+            ParkingSpot current = spotsByPlate.computeIfAbsent(vehicle.plateLow(), vehicle.plateHigh(), () -> {
+                occupy(spot, vehicle, entryEpochSecond);
+                placed[0] = true;
                 return spot;
+            });
+            if (placed[0]) {
+                admitted(entry, spot);
+                return true;
             }
+            entry.getSpot().completeExceptionally(
+                    new IllegalStateException(vehicle.getLicensePlate() + " is already parked in spot " + current.getId()));
+        }
+        return false;
+    }
+
+    // the slow way in, for when spots free up without a remove (a no-show hold) or someone joins an idle line:
+    // every waiting vehicle, in order, tries the normal allocator once
+    private void admitWaiting() {
+        // a full lot at peak is the common case here, and then there's nothing to try
+        if (waitlist.isEmpty() || getFreeSpotCount() == 0) {
+            return;
+        }
+        long entryEpochSecond = nowEpochSecond();
+        for (Waitlist.Entry waiting : waitlist.inOrder()) {
+            Waitlist.Entry entry = waitlist.take(waiting);
+            if (entry == null) {
+                continue;
+            }
+            Vehicle vehicle = entry.getVehicle();
+            ParkingSpot[] claimed = new ParkingSpot[1];
+            ParkingSpot current = spotsByPlate.computeIfAbsent(vehicle.plateLow(), vehicle.plateHigh(),
+                    () -> claimed[0] = claimFreeSpot(vehicle, liveGate(entry.getGateId()), entryEpochSecond));
+            if (claimed[0] != null) {
+                admitted(entry, claimed[0]);
+            } else if (current != null) {
+                entry.getSpot().completeExceptionally(
+                        new IllegalStateException(vehicle.getLicensePlate() + " is already parked in spot " + current.getId()));
+            } else {
+                waitlist.putBack(entry);
+            }
+        }
+    }
+
+    // someone who joined at a gate a layout change has since removed is routed from the default gate instead
+    private String liveGate(String gateId) {
+        return gates.containsKey(gateId) ? gateId : defaultGate;
+    }
+
+    private void admitted(Waitlist.Entry entry, ParkingSpot spot) {
+        Vehicle vehicle = entry.getVehicle();
+        logAction("PARK", "%s (%s) got spot %d off the waitlist", vehicle.getVehicleType(), vehicle.getLicensePlate(), spot.getId());
+        parked.increment();
+        waitlistAdmitted.increment();
+        waitlistWait.recordSince(entry.getJoinedNanos());
+        entry.getSpot().complete(spot);
+    }
+
+    // nearest zone first; a walk-in that would leave fewer free spots than there are active holds gives its spot back
+    // (holds are lot-wide, so the other zones of that size are off limits too)
+    private ParkingSpot claimInSize(SpotSize size, String gateId, boolean walkIn) {
+        for (ParkingZone zone : router.route(gateId, size)) {
+            ParkingSpot spot = zone.pool(size).claimLowest();
+            if (spot == null) {
+                continue;
+            }
+            if (walkIn && reservations.hasActiveHolds(size)
+                    && reservations.blocksWalkIn(size, getFreeSpotCount(size))) {
+                releaseToPool(spot);
+                return null;
+            }
+            return spot;
         }
         return null;
     }
 
-    private Vehicle recreateVehicle(String type, String licensePlate) {
-        if (licensePlate == null || licensePlate.isBlank()) {
-            return null;
+    private ParkingZone zoneOf(ParkingSpot spot) {
+        return directory.pools()[spot.getId() - 1].getZone();
+    }
+
+    // a closed spot goes into retirement here instead of back into the free index
+    private void releaseToPool(ParkingSpot spot) {
+        SpotDirectory current = directory;
+        current.pools()[spot.getId() - 1].release(current.slots()[spot.getId() - 1]);
+    }
+
+    private boolean isClosed(ParkingSpot spot) {
+        SpotDirectory current = directory;
+        return current.pools()[spot.getId() - 1].isClosed(current.slots()[spot.getId() - 1]);
+    }
+
+    // the body of applyLayout (and of the constructor, starting from nothing); layoutLock held
+    private LayoutChange reshape(LotConfig config) {
+        LotTopology topology = config.getTopology();
+        Map<ParkingZone, SpotLayout> targets = new HashMap<>();
+        for (LotTopology.ZoneSpec spec : topology.getZones()) {
+            targets.put(zoneFor(spec.levelId(), spec.zoneId()), spec.layout());
         }
-        return switch (type.toLowerCase()) {
-            case "car" -> new Car(licensePlate);
-            case "bike" -> new Bike(licensePlate);
-            case "truck" -> new Truck(licensePlate);
-            default -> null;
-        };
+        fittingPolicy = config.getFittingPolicy();
+
+        // every shrink goes first, so a zone that trades compact bays for large ones already has retired compact bays
+        // to repaint when its large pool grows; zones missing from the config shrink to nothing
+        int closed = 0;
+        int draining = 0;
+        for (ParkingZone zone : zones) {
+            for (SpotSize size : SpotSize.values()) {
+                SpotPool pool = zone.pool(size);
+                int excess = pool.capacity() - targetCount(targets.get(zone), size);
+                if (excess > 0) {
+                    int drainingBefore = pool.drainingCount();
+                    closed += pool.close(excess);
+                    draining += pool.drainingCount() - drainingBefore;
+                }
+            }
+        }
+        if (closed > 0) {
+            shipLayout();
+        }
+
+        // then growth: closed bays of the same size come back first, then retired bays of a size the zone has
+        // too many of get repainted, and only what's still missing gets new spot ids
+        int added = 0;
+        int reopened = 0;
+        int retyped = 0;
+        for (ParkingZone zone : zones) {
+            SpotLayout target = targets.get(zone);
+            for (SpotSize size : SpotSize.values()) {
+                SpotPool pool = zone.pool(size);
+                int missing = targetCount(target, size) - pool.capacity();
+                if (missing <= 0) {
+                    continue;
+                }
+                int back = pool.reopen(missing);
+                reopened += back;
+                missing -= back;
+                List<ParkingSpot> adding = new ArrayList<>();
+                for (SpotSize other : SpotSize.values()) {
+                    SpotPool donor = zone.pool(other);
+                    if (other == size || donor.capacity() < targetCount(target, other)) {
+                        continue;
+                    }
+                    ParkingSpot repainted;
+                    while (adding.size() < missing && (repainted = donor.giveUpRetired()) != null) {
+                        adding.add(new ParkingSpot(repainted.getId(), size));
+                    }
+                }
+                retyped += adding.size();
+                int nextId = directory.spots().length + 1;
+                while (adding.size() < missing) {
+                    adding.add(new ParkingSpot(nextId++, size));
+                    added++;
+                }
+                addToPool(pool, adding.toArray(new ParkingSpot[0]));
+            }
+        }
+
+        if (reopened > 0) {
+            shipLayout();
+        }
+        for (SpotSize size : SpotSize.values()) {
+            reservations.setCapacity(size, getCapacity(size));
+        }
+        gates = topology.getGates();
+        router = new NearestAvailableRouter(zones, gates);
+        defaultGate = topology.getGates().keySet().iterator().next();
+        return new LayoutChange(added, reopened, retyped, closed, draining);
+    }
+
+    private static int targetCount(SpotLayout layout, SpotSize size) {
+        return layout == null ? 0 : layout.count(size);
+    }
+
+    // layoutLock held; a zone the lot hasn't seen yet goes after the others, at the far end of its level
+    private ParkingZone zoneFor(String levelId, String zoneId) {
+        String id = levelId + "." + zoneId;
+        for (ParkingZone zone : zones) {
+            if (zone.getId().equals(id)) {
+                return zone;
+            }
+        }
+        int levelOrdinal = levels.indexOf(levelId);
+        if (levelOrdinal < 0) {
+            levels.add(levelId);
+            levelOrdinal = levels.size() - 1;
+        }
+        int position = 0;
+        for (ParkingZone zone : zones) {
+            if (zone.getLevelId().equals(levelId)) {
+                position++;
+            }
+        }
+        ParkingZone zone = new ParkingZone(levelId, zoneId, levelOrdinal, position, metrics.histogram("lot.pool_lock_wait"));
+        List<ParkingZone> grown = new ArrayList<>(zones);
+        grown.add(zone);
+        zones = List.copyOf(grown);
+        return zone;
+    }
+
+    // layoutLock held; every per-spot array learns the new ids, then the directory, and only then can the pool
+    // hand them out, so nobody ever claims a spot the rest of the lot can't look up
+    private void addToPool(SpotPool pool, ParkingSpot[] added) {
+        if (added.length == 0) {
+            return;
+        }
+        SpotDirectory current = directory;
+        int length = current.spots().length;
+        for (ParkingSpot spot : added) {
+            length = Math.max(length, spot.getId());
+        }
+        openTickets.ensureCapacity(length);
+        spotStates.ensureCapacity(length);
+        if (stateStore != null) {
+            stateStore.ensureCapacity(length);
+        }
+        ParkingSpot[] spots = Arrays.copyOf(current.spots(), length);
+        SpotPool[] pools = Arrays.copyOf(current.pools(), length);
+        int[] slots = Arrays.copyOf(current.slots(), length);
+        int firstSlot = pool.slotCount();
+        for (int index = 0; index < added.length; index++) {
+            int spotIndex = added[index].getId() - 1;
+            spots[spotIndex] = added[index];
+            pools[spotIndex] = pool;
+            slots[spotIndex] = firstSlot + index;
+        }
+        directory = new SpotDirectory(spots, pools, slots);
+        // followers learn the new ids before any park into them can be shipped
+        shipLayout();
+        pool.add(added);
     }
 
-    private void logAction(String action, String message) {
+    // startup only; a map that can't be read is reported and the lot numbers its spots from config.txt instead
+    private void restoreSpotMap() {
         if (!persistenceEnabled) {
             return;
         }
+        List<SpotMap.Run> runs;
         try {
-            Files.createDirectories(RESOURCES_DIR);
-            String entry = String.format("%s | %s | %s%n",
-                    LOG_TIME.format(LocalDateTime.now()),
-                    action,
-                    message);
-            Files.writeString(
-                    LOG_FILE,
-                    entry,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND);
+            runs = SpotMap.read(spotMapFile);
         } catch (IOException ioException) {
-            System.err.println("Unable to append to log file: " + ioException.getMessage());
+            System.err.println("Could not read the saved spot layout, numbering spots from the config: " + ioException.getMessage());
+            return;
+        }
+        if (runs == null) {
+            return;
+        }
+        layoutLock.lock();
+        try {
+            for (SpotMap.Run run : runs) {
+                SpotPool pool = zoneFor(run.levelId(), run.zoneId()).pool(run.size());
+                ParkingSpot[] spots = new ParkingSpot[run.lastId() - run.firstId() + 1];
+                for (int index = 0; index < spots.length; index++) {
+                    spots[index] = new ParkingSpot(run.firstId() + index, run.size());
+                }
+                addToPool(pool, spots);
+                if (run.closed()) {
+                    // the new slots are the pool's highest and all free, so these are exactly the ones closed; a
+                    // saved car in one of them turns it back into a draining spot when it's restored
+                    pool.close(spots.length);
+                }
+            }
+        } finally {
+            layoutLock.unlock();
+        }
+    }
+
+    // a saved car in a spot id the lot doesn't have: rather than dropping it, the lot grows closed large spots in the
+    // last zone up to that id, so the car is kept (and billed) and the spot retires when it leaves; startup only
+    private void extendForRestore(int spotId) {
+        layoutLock.lock();
+        try {
+            List<ParkingZone> current = zones;
+            int length = directory.spots().length;
+            SpotPool pool = current.get(current.size() - 1).pool(SpotSize.LARGE);
+            ParkingSpot[] spots = new ParkingSpot[spotId - length];
+            for (int index = 0; index < spots.length; index++) {
+                spots[index] = new ParkingSpot(length + 1 + index, SpotSize.LARGE);
+            }
+            addToPool(pool, spots);
+            pool.close(spots.length);
+        } finally {
+            layoutLock.unlock();
+        }
+    }
+
+    private void saveSpotMap() {
+        try {
+            SpotMap.write(spotMapFile, spotMapRuns());
+        } catch (IOException ioException) {
+            System.err.println("Could not save the spot layout, spot ids may shift on the next start: " + ioException.getMessage());
+        }
+    }
+
+    private List<SpotMap.Run> spotMapRuns() {
+        SpotDirectory current = directory;
+        int length = current.spots().length;
+        boolean[] closed = new boolean[length];
+        for (int index = 0; index < length; index++) {
+            closed[index] = current.pools()[index].isClosed(current.slots()[index]);
+        }
+        List<SpotMap.Run> runs = new ArrayList<>();
+        int first = 0;
+        for (int index = 1; index <= length; index++) {
+            if (index < length && current.pools()[index] == current.pools()[first] && closed[index] == closed[first]) {
+                continue;
+            }
+            ParkingZone zone = current.pools()[first].getZone();
+            runs.add(new SpotMap.Run(first + 1, index, zone.getLevelId(), zone.getZoneId(), current.spots()[first].getSize(),
+                    closed[first]));
+            first = index;
+        }
+        return runs;
+    }
+
+    // layoutLock held; followers copy the map as it is right now (see mirrorLayout)
+    private void shipLayout() {
+        ReplicationLog log = replication;
+        if (log != null) {
+            log.recordLayout(spotMapRuns());
+        }
+    }
+
+    // the follower's side of a LAYOUT record: spot ids, sizes, zones and closed bays made to match the primary's map
+    // exactly. replaying its config instead wouldn't do, since which bays a live change closes or repaints depends on
+    // which ones were free at that moment. a bay the primary repainted was empty there, and its REMOVE came first
+    private void mirrorLayout(List<SpotMap.Run> runs) {
+        layoutLock.lock();
+        try {
+            int mapped = 0;
+            for (SpotMap.Run run : runs) {
+                SpotPool pool = zoneFor(run.levelId(), run.zoneId()).pool(run.size());
+                List<ParkingSpot> adding = new ArrayList<>();
+                for (int spotId = run.firstId(); spotId <= run.lastId(); spotId++) {
+                    SpotDirectory current = directory;
+                    if (spotId <= current.spots().length) {
+                        SpotPool had = current.pools()[spotId - 1];
+                        int slot = current.slots()[spotId - 1];
+                        if (had == pool) {
+                            pool.setClosed(slot, run.closed());
+                            continue;
+                        }
+                        if (had.giveUp(slot) == null) {
+                            System.err.println("Replicated layout moves spot " + spotId + " while a car is still in it here; leaving it as it is.");
+                            continue;
+                        }
+                    }
+                    adding.add(new ParkingSpot(spotId, run.size()));
+                }
+                addToPool(pool, adding.toArray(new ParkingSpot[0]));
+                if (run.closed()) {
+                    SpotDirectory current = directory;
+                    for (ParkingSpot spot : adding) {
+                        pool.setClosed(current.slots()[spot.getId() - 1], true);
+                    }
+                }
+                mapped = run.lastId();
+            }
+            // bays this lot's own config has beyond the primary's map stay shut
+            SpotDirectory current = directory;
+            for (int index = mapped; index < current.spots().length; index++) {
+                current.pools()[index].setClosed(current.slots()[index], true);
+            }
+            for (SpotSize size : SpotSize.values()) {
+                reservations.setCapacity(size, getCapacity(size));
+            }
+            router = new NearestAvailableRouter(zones, gates);
+            if (persistenceEnabled) {
+                saveSpotMap();
+            }
+        } finally {
+            layoutLock.unlock();
+        }
+    }
+
+    // null for an unknown type or a plate PlateCodec can't pack
+    static Vehicle recreateVehicle(String type, String licensePlate) {
+        VehicleType vehicleType = VehicleType.parse(type);
+        if (vehicleType == null || !PlateCodec.isValid(licensePlate)) {
+            return null;
+        }
+        return vehicleType.newVehicle(licensePlate);
+    }
+
+    // formatting and the file write both happen on the audit writer thread, not here
+    private void logAction(String action, String format, Object... args) {
+        if (auditLogger == null) {
+            return;
         }
+        // with the BLOCK policy this is where a backed-up log file would reach the caller
+        long start = auditEnqueueLatency.startSample();
+        auditLogger.log(clock.millis(), action, format, args);
+        auditEnqueueLatency.recordSince(start);
     }
 }
@@ -0,0 +1,572 @@
+package com.parking;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// reporting over the two append-only histories: revenue per day and vehicle type plus dwell times from tickets.txt,
+// peak occupancy per day from the PARK/REMOVE lines in logs.txt
+//
+// files are split by byte offset (snapped to line breaks) and scanned in parallel with fork-join; every leaf maps its
+// slice and walks it with a FieldCursor, so a multi-GB history costs a few mapped pages at a time, not its size in heap
+// totals only ever grow by day, which is a few hundred bytes per day of history
+//
+// TicketLedger rotates tickets.txt into tickets-<day>.<n>.txt, so each history is those rotated files oldest first
+// and then the live one (logs.txt too, if it's ever rotated the same way); --full reads all of them
+//
+// a checkpoint file remembers how far each of those files was read, by name, plus the totals so far, so the next run
+// only scans what was appended since. when the live file isn't the one read last time, the old one was rotated
+// away: it's found among the rotated files by its first bytes and finished from the saved offset, and the new live
+// file is read from the top. a file that got truncated underneath is read again from the top
+//
+// java -cp out com.parking.ParkingReport [--tickets tickets.txt] [--logs logs.txt] [--checkpoint file] [--full] [--parallelism N]
+public final class ParkingReport {
+
+    static final Path DEFAULT_TICKETS = Paths.get("src", "resources", "tickets.txt");
+    static final Path DEFAULT_LOGS = Paths.get("src", "resources", "logs.txt");
+    static final Path DEFAULT_CHECKPOINT = Paths.get("src", "resources", "report.checkpoint");
+
+    // slices bigger than this are split again; small enough that every core gets work on a single big file
+    private static final long LEAF_BYTES = 8L * 1024 * 1024;
+    private static final int FINGERPRINT_BYTES = 64;
+    private static final int TYPES = OccupancySnapshot.TYPE_SLOTS;
+    private static final byte[] PARK = {'P', 'A', 'R', 'K'};
+    private static final byte[] REMOVE = {'R', 'E', 'M', 'O', 'V', 'E'};
+
+    private ParkingReport() {
+        // command line tool only
+    }
+
+    private enum Source {
+        TICKETS,
+        LOGS
+    }
+
+    /**
+     * Everything the report needs, in a form where two slices can be combined without their lines.
+     * Slices of the audit log must be combined in file order ({@link #append}); ticket totals don't care.
+     */
+    static final class Totals {
+        // exit day -> [slot * 2] cents, [slot * 2 + 1] tickets
+        final TreeMap<Long, long[]> revenueByDay = new TreeMap<>();
+        final long[] dwellSeconds = new long[TYPES];
+        final long[] dwellTickets = new long[TYPES];
+        // day -> [0] net change over the day, [1] highest level reached, relative to where the day started
+        final TreeMap<Long, long[]> occupancyByDay = new TreeMap<>();
+        long lines;
+        long malformed;
+
+        void addTicket(long exitDay, int typeSlot, long cents, long dwell) {
+            long[] day = revenueByDay.computeIfAbsent(exitDay, key -> new long[TYPES * 2]);
+            day[typeSlot * 2] += cents;
+            day[typeSlot * 2 + 1]++;
+            dwellSeconds[typeSlot] += dwell;
+            dwellTickets[typeSlot]++;
+        }
+
+        void addOccupancy(long day, int delta) {
+            long[] totals = occupancyByDay.computeIfAbsent(day, key -> new long[2]);
+            totals[0] += delta;
+            totals[1] = Math.max(totals[1], totals[0]);
+        }
+
+        /**
+         * Folds in the totals of a slice that comes right after this one.
+         */
+        Totals append(Totals later) {
+            later.revenueByDay.forEach((day, values) -> {
+                long[] mine = revenueByDay.computeIfAbsent(day, key -> new long[TYPES * 2]);
+                for (int i = 0; i < mine.length; i++) {
+                    mine[i] += values[i];
+                }
+            });
+            for (int slot = 0; slot < TYPES; slot++) {
+                dwellSeconds[slot] += later.dwellSeconds[slot];
+                dwellTickets[slot] += later.dwellTickets[slot];
+            }
+            // the later slice's peak sits on top of wherever this slice left the day
+            later.occupancyByDay.forEach((day, values) -> {
+                long[] mine = occupancyByDay.get(day);
+                if (mine == null) {
+                    occupancyByDay.put(day, values.clone());
+                } else {
+                    mine[1] = Math.max(mine[1], mine[0] + values[1]);
+                    mine[0] += values[0];
+                }
+            });
+            lines += later.lines;
+            malformed += later.malformed;
+            return this;
+        }
+
+        /**
+         * Peak number of parked vehicles per day, carrying each day's closing level into the next.
+         */
+        Map<Long, Long> peakOccupancy() {
+            Map<Long, Long> peaks = new TreeMap<>();
+            long level = 0;
+            for (Map.Entry<Long, long[]> day : occupancyByDay.entrySet()) {
+                peaks.put(day.getKey(), level + day.getValue()[1]);
+                level += day.getValue()[0];
+            }
+            return peaks;
+        }
+
+        long revenueCents(long day, int typeSlot) {
+            long[] values = revenueByDay.get(day);
+            return values == null ? 0 : values[typeSlot * 2];
+        }
+
+        long averageDwellSeconds(int typeSlot) {
+            return dwellTickets[typeSlot] == 0 ? 0 : dwellSeconds[typeSlot] / dwellTickets[typeSlot];
+        }
+
+        void write(BufferedWriter writer) throws IOException {
+            writer.write("TOTALS|" + lines + "|" + malformed);
+            writer.newLine();
+            for (Map.Entry<Long, long[]> day : revenueByDay.entrySet()) {
+                writer.write("REVENUE|" + day.getKey() + "|" + join(day.getValue()));
+                writer.newLine();
+            }
+            writer.write("DWELL|" + join(dwellSeconds) + "|" + join(dwellTickets));
+            writer.newLine();
+            for (Map.Entry<Long, long[]> day : occupancyByDay.entrySet()) {
+                writer.write("OCCUPANCY|" + day.getKey() + "|" + join(day.getValue()));
+                writer.newLine();
+            }
+        }
+
+        // reads back what write() produced; false if the line isn't a totals line
+        boolean read(String[] parts) {
+            switch (parts[0]) {
+                case "TOTALS" -> {
+                    lines = Long.parseLong(parts[1]);
+                    malformed = Long.parseLong(parts[2]);
+                }
+                case "REVENUE" -> revenueByDay.put(Long.parseLong(parts[1]), longs(parts, 2, TYPES * 2));
+                case "DWELL" -> {
+                    System.arraycopy(longs(parts, 1, TYPES), 0, dwellSeconds, 0, TYPES);
+                    System.arraycopy(longs(parts, 1 + TYPES, TYPES), 0, dwellTickets, 0, TYPES);
+                }
+                case "OCCUPANCY" -> occupancyByDay.put(Long.parseLong(parts[1]), longs(parts, 2, 2));
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String join(long[] values) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                text.append(i == 0 ? "" : "|").append(values[i]);
+            }
+            return text.toString();
+        }
+
+        private static long[] longs(String[] parts, int from, int count) {
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = Long.parseLong(parts[from + i]);
+            }
+            return values;
+        }
+    }
+
+    // how far one file was read last time, and what its first bytes looked like so a rotated file can be told apart
+    private record Progress(long offset, int fingerprintLength, int fingerprint) {
+
+        static final Progress NONE = new Progress(0, 0, 0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path tickets = DEFAULT_TICKETS;
+        Path logs = DEFAULT_LOGS;
+        Path checkpoint = DEFAULT_CHECKPOINT;
+        boolean full = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tickets" -> tickets = Paths.get(args[++i]);
+                case "--logs" -> logs = Paths.get(args[++i]);
+                case "--checkpoint" -> checkpoint = Paths.get(args[++i]);
+                case "--full" -> full = true;
+                case "--parallelism" -> parallelism = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (full) {
+            Files.deleteIfExists(checkpoint);
+        }
+        long start = System.nanoTime();
+        Totals totals = run(tickets, logs, checkpoint, parallelism);
+        print(totals);
+        System.out.printf("%n%d lines counted, brought up to date in %.2f s, %d malformed%n", totals.lines, (System.nanoTime() - start) / 1e9, totals.malformed);
+    }
+
+    /**
+     * Brings the checkpointed totals up to date with whatever was appended to both files since, and saves the new
+     * checkpoint. With a null checkpoint both files are read in full and nothing is saved.
+     */
+    static Totals run(Path tickets, Path logs, Path checkpoint, int parallelism) throws IOException {
+        return run(tickets, logs, checkpoint, parallelism, LEAF_BYTES);
+    }
+
+    // leafBytes is only ever changed by tests, to get lots of slices out of a small file
+    static Totals run(Path tickets, Path logs, Path checkpoint, int parallelism, long leafBytes) throws IOException {
+        Map<Source, Path> files = new EnumMap<>(Source.class);
+        files.put(Source.TICKETS, tickets);
+        files.put(Source.LOGS, logs);
+        Totals totals = new Totals();
+        Map<Source, Map<String, Progress>> progress = new EnumMap<>(Source.class);
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            readCheckpoint(checkpoint, files, totals, progress);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Map.Entry<Source, Path> file : files.entrySet()) {
+                progress.put(file.getKey(), scanHistory(pool, file.getKey(), file.getValue(),
+                        progress.getOrDefault(file.getKey(), Map.of()), leafBytes, totals));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (checkpoint != null) {
+            writeCheckpoint(checkpoint, totals, progress);
+        }
+        return totals;
+    }
+
+    // the live file's rotated siblings oldest first, then the live file itself; returns how far each was read by name
+    private static Map<String, Progress> scanHistory(ForkJoinPool pool, Source source, Path live,
+                                                     Map<String, Progress> previous, long leafBytes,
+                                                     Totals totals) throws IOException {
+        Map<String, Progress> read = new LinkedHashMap<>();
+        String liveName = live.getFileName().toString();
+        Progress liveBefore = previous.getOrDefault(liveName, Progress.NONE);
+        // the file read as live last time is now the first rotated one this checkpoint hasn't seen with its head
+        boolean liveRotated = !continues(live, liveBefore);
+        Progress carried = liveRotated && liveBefore.offset() > 0 ? liveBefore : null;
+        for (Path file : TicketLedger.rotatedFiles(live)) {
+            String name = file.getFileName().toString();
+            Progress from = previous.get(name);
+            if (from == null && carried != null && continues(file, carried)) {
+                from = carried;
+                carried = null;
+            }
+            read.put(name, scan(pool, source, file, from == null ? Progress.NONE : from, leafBytes, totals));
+        }
+        if (Files.exists(live)) {
+            read.put(liveName, scan(pool, source, live, liveRotated ? Progress.NONE : liveBefore, leafBytes, totals));
+        }
+        return read;
+    }
+
+    // scans everything past the last run's offset up to the last complete line and folds it into the totals
+    private static Progress scan(ForkJoinPool pool, Source source, Path file, Progress previous, long leafBytes,
+                                 Totals totals) throws IOException {
+        if (!Files.exists(file)) {
+            return previous;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int fingerprintLength = (int) Math.min(FINGERPRINT_BYTES, size);
+            Progress start = previous;
+            if (!continues(channel, previous)) {
+                // not the file we were reading before, or cut short since: nothing of it can be trusted as counted
+                start = Progress.NONE;
+            }
+            // a line still being written gets picked up next time
+            long end = lastLineEnd(channel, start.offset(), size);
+            if (end > start.offset()) {
+                totals.append(pool.invoke(new ScanTask(channel, source, start.offset(), end, leafBytes)));
+            }
+            return new Progress(end, fingerprintLength, fingerprint(channel, fingerprintLength));
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<Totals> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Source source;
+        private final long start;
+        private final long end;
+        private final long leafBytes;
+
+        ScanTask(FileChannel channel, Source source, long start, long end, long leafBytes) {
+            this.channel = channel;
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            this.leafBytes = leafBytes;
+        }
+
+        @Override
+        protected Totals compute() {
+            try {
+                if (end - start > leafBytes) {
+                    long middle = nextLineStart(channel, start + (end - start) / 2, end);
+                    if (middle < end) {
+                        ScanTask left = new ScanTask(channel, source, start, middle, leafBytes);
+                        left.fork();
+                        Totals right = new ScanTask(channel, source, middle, end, leafBytes).compute();
+                        return left.join().append(right);
+                    }
+                }
+                return scanSlice();
+            } catch (IOException ioException) {
+                throw new IllegalStateException("Could not read " + source + ": " + ioException.getMessage(), ioException);
+            }
+        }
+
+        private Totals scanSlice() throws IOException {
+            Totals totals = new Totals();
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            FieldCursor cursor = new FieldCursor();
+            int lineStart = 0;
+            int limit = bytes.limit();
+            for (int i = 0; i < limit; i++) {
+                if (bytes.get(i) != '\n') {
+                    continue;
+                }
+                int lineEnd = i > lineStart && bytes.get(i - 1) == '\r' ? i - 1 : i;
+                if (lineEnd > lineStart) {
+                    cursor.reset(bytes, lineStart, lineEnd);
+                    totals.lines++;
+                    boolean understood = source == Source.TICKETS ? ticketLine(cursor, totals) : logLine(cursor, totals);
+                    if (!understood) {
+                        totals.malformed++;
+                    }
+                }
+                lineStart = i + 1;
+            }
+            return totals;
+        }
+    }
+
+    // PLATE | entry | exit | $cost [| type] — tickets written before the type was added count as "Other"
+    private static boolean ticketLine(FieldCursor cursor, Totals totals) {
+        if (!cursor.nextField() || !cursor.nextField()) {
+            return false;
+        }
+        long entry = cursor.wallClockSeconds();
+        if (entry < 0 || !cursor.nextField()) {
+            return false;
+        }
+        long exit = cursor.wallClockSeconds();
+        if (exit < 0 || !cursor.nextField()) {
+            return false;
+        }
+        long cents = cursor.cents();
+        if (cents < 0) {
+            return false;
+        }
+        int typeSlot = cursor.nextField() ? cursor.typeSlot() : TYPES - 1;
+        totals.addTicket(Math.floorDiv(exit, 86_400), typeSlot, cents, Math.max(0, exit - entry));
+        return true;
+    }
+
+    // time | ACTION | message — only PARK and REMOVE move the occupancy; every other action is fine to skip
+    private static boolean logLine(FieldCursor cursor, Totals totals) {
+        if (!cursor.nextField()) {
+            return false;
+        }
+        long time = cursor.wallClockSeconds();
+        if (time < 0 || !cursor.nextField()) {
+            return false;
+        }
+        if (cursor.equalsAscii(PARK)) {
+            totals.addOccupancy(Math.floorDiv(time, 86_400), 1);
+        } else if (cursor.equalsAscii(REMOVE)) {
+            totals.addOccupancy(Math.floorDiv(time, 86_400), -1);
+        }
+        return true;
+    }
+
+    static void print(Totals totals) {
+        List<String> types = OccupancySnapshot.VEHICLE_TYPES;
+        StringBuilder header = new StringBuilder(String.format("%-12s", "Revenue"));
+        for (String type : types) {
+            header.append(String.format("%12s", type));
+        }
+        header.append(String.format("%12s%12s", OccupancySnapshot.OTHER_TYPE, "Total"));
+        System.out.println(header);
+        long[] grand = new long[TYPES];
+        for (long day : totals.revenueByDay.keySet()) {
+            StringBuilder row = new StringBuilder(String.format("%-12s", LocalDate.ofEpochDay(day)));
+            long dayTotal = 0;
+            for (int slot = 0; slot < TYPES; slot++) {
+                long cents = totals.revenueCents(day, slot);
+                grand[slot] += cents;
+                dayTotal += cents;
+                row.append(String.format("%12s", dollars(cents)));
+            }
+            System.out.println(row.append(String.format("%12s", dollars(dayTotal))));
+        }
+        StringBuilder all = new StringBuilder(String.format("%-12s", "All days"));
+        for (long cents : grand) {
+            all.append(String.format("%12s", dollars(cents)));
+        }
+        System.out.println(all.append(String.format("%12s", dollars(Arrays.stream(grand).sum()))));
+
+        System.out.println();
+        System.out.println("Average dwell");
+        for (int slot = 0; slot < TYPES; slot++) {
+            if (totals.dwellTickets[slot] > 0) {
+                long seconds = totals.averageDwellSeconds(slot);
+                System.out.printf("  %-8s %3dh %02dm over %d tickets%n", slot < types.size() ? types.get(slot) : OccupancySnapshot.OTHER_TYPE,
+                        seconds / 3_600, seconds / 60 % 60, totals.dwellTickets[slot]);
+            }
+        }
+
+        System.out.println();
+        System.out.println("Peak occupancy");
+        totals.peakOccupancy().forEach((day, peak) -> System.out.printf("  %-12s %d%n", LocalDate.ofEpochDay(day), peak));
+    }
+
+    private static String dollars(long cents) {
+        return String.format("$%d.%02d", cents / 100, cents % 100);
+    }
+
+    // files names the live file of each source, which is what a checkpoint from before rotated files were read tracked
+    private static void readCheckpoint(Path checkpoint, Map<Source, Path> files, Totals totals,
+                                       Map<Source, Map<String, Progress>> progress) {
+        try {
+            for (String line : Files.readAllLines(checkpoint)) {
+                String[] parts = line.trim().split("\\|");
+                if (parts.length == 0 || parts[0].isEmpty() || parts[0].startsWith("#")) {
+                    continue;
+                }
+                if ("FILE".equals(parts[0]) && (parts.length == 5 || parts.length == 6)) {
+                    Source source = Source.valueOf(parts[1]);
+                    int at = parts.length - 3;
+                    String name = parts.length == 6 ? parts[2] : files.get(source).getFileName().toString();
+                    progress.computeIfAbsent(source, key -> new LinkedHashMap<>()).put(name,
+                            new Progress(Long.parseLong(parts[at]), Integer.parseInt(parts[at + 1]), Integer.parseInt(parts[at + 2])));
+                } else if (!totals.read(parts)) {
+                    System.err.println("Skipping unknown checkpoint line: " + line);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // a half-read checkpoint would double count; start over from the top instead
+            System.err.println("Ignoring unreadable report checkpoint, rescanning everything: " + ex.getMessage());
+            totals.revenueByDay.clear();
+            totals.occupancyByDay.clear();
+            Arrays.fill(totals.dwellSeconds, 0);
+            Arrays.fill(totals.dwellTickets, 0);
+            totals.lines = 0;
+            totals.malformed = 0;
+            progress.clear();
+        }
+    }
+
+    // written to a temp file and moved into place, so a crash mid-write leaves the previous checkpoint intact
+    private static void writeCheckpoint(Path checkpoint, Totals totals, Map<Source, Map<String, Progress>> progress)
+            throws IOException {
+        Path parent = checkpoint.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("# parking report checkpoint: FILE|source|name|offset|fingerprintLength|fingerprint, then totals");
+            writer.newLine();
+            for (Map.Entry<Source, Map<String, Progress>> source : progress.entrySet()) {
+                for (Map.Entry<String, Progress> file : source.getValue().entrySet()) {
+                    Progress read = file.getValue();
+                    writer.write("FILE|" + source.getKey() + "|" + file.getKey() + "|" + read.offset() + "|"
+                            + read.fingerprintLength() + "|" + read.fingerprint());
+                    writer.newLine();
+                }
+            }
+            totals.write(writer);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // whether the file still starts the way it did and is at least as long as what was read of it
+    private static boolean continues(Path file, Progress previous) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return continues(channel, previous);
+        }
+    }
+
+    private static boolean continues(FileChannel channel, Progress previous) throws IOException {
+        return channel.size() >= previous.offset()
+                && fingerprint(channel, previous.fingerprintLength()) == previous.fingerprint();
+    }
+
+    private static int fingerprint(FileChannel channel, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        ByteBuffer head = ByteBuffer.allocate(length);
+        readFully(channel, head, 0);
+        return Arrays.hashCode(head.array());
+    }
+
+    // position just past the last '\n' in [from, size), or from if there is none
+    private static long lastLineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4_096);
+        long blockEnd = size;
+        while (blockEnd > from) {
+            long blockStart = Math.max(from, blockEnd - block.capacity());
+            block.clear().limit((int) (blockEnd - blockStart));
+            readFully(channel, block, blockStart);
+            for (int i = block.limit() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+
+    // position just past the first '\n' at or after position, or end if there is none
+    private static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4_096);
+        while (position < end) {
+            block.clear().limit((int) Math.min(block.capacity(), end - position));
+            readFully(channel, block, position);
+            for (int i = 0; i < block.limit(); i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += block.limit();
+        }
+        return end;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer block, long position) throws IOException {
+        long at = position;
+        while (block.hasRemaining()) {
+            int read = channel.read(block, at);
+            if (read < 0) {
+                break;
+            }
+            at += read;
+        }
+    }
+}
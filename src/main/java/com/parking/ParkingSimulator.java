@@ -0,0 +1,451 @@
+package com.parking;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// discrete-event simulation of a lot: arrivals and departures come off one time-ordered queue, the lot runs on a
+// VirtualClock that jumps straight to the next event, so days of traffic take seconds and every run with the same
+// seed ends up exactly the same
+//
+// each vehicle type arrives as a Poisson process whose rate follows an hourly demand curve (thinned from the peak
+// rate) and stays for a dwell drawn from its own distribution; a car that finds the lot full either leaves or, with
+// a patience set, joins the waitlist and leaves when that runs out
+//
+// java -cp out com.parking.ParkingSimulator [--days 7] [--spots 500 | --config file] [--scale 1] [--seed 42]
+//      [--patience-min 0] [--tariffs file] [--min-throughput events/s]
+// --scale multiplies every arrival rate (and the default lot size); --min-throughput exits 1 when the run is
+// slower, so a build can catch a performance regression
+public final class ParkingSimulator {
+
+    public enum Distribution {
+        FIXED,
+        EXPONENTIAL,
+        LOGNORMAL
+    }
+
+    /**
+     * @param arrivalsPerHour  at a demand multiplier of 1.0
+     * @param dwellSigma       spread of the log of the dwell time; only used by LOGNORMAL
+     */
+    public record VehicleProfile(VehicleType vehicleType, double arrivalsPerHour, Distribution dwell, double meanDwellMinutes,
+                                 double dwellSigma) {
+
+        public VehicleProfile {
+            if (vehicleType == null || arrivalsPerHour < 0 || meanDwellMinutes <= 0 || dwellSigma < 0) {
+                throw new IllegalArgumentException("A profile needs a vehicle type, and its rates and dwell times can't be negative.");
+            }
+        }
+
+        VehicleProfile scaled(double factor) {
+            return new VehicleProfile(vehicleType, arrivalsPerHour * factor, dwell, meanDwellMinutes, dwellSigma);
+        }
+    }
+
+    /**
+     * @param hourlyDemand        24 multipliers on every arrival rate, one per hour of the day
+     * @param patienceMinutes     how long a turned-away driver waits on the waitlist; 0 means they just leave
+     * @param sampleMinutes       how often occupancy is recorded
+     */
+    public record Settings(List<VehicleProfile> profiles, double[] hourlyDemand, int days, long seed,
+                           int patienceMinutes, int sampleMinutes) {
+
+        public Settings {
+            if (profiles.isEmpty() || hourlyDemand.length != 24 || days <= 0 || patienceMinutes < 0 || sampleMinutes <= 0) {
+                throw new IllegalArgumentException("A simulation needs profiles, 24 hourly demand values and a positive length.");
+            }
+            profiles = List.copyOf(profiles);
+            hourlyDemand = hourlyDemand.clone();
+        }
+
+        /**
+         * A commuter lot: mostly cars staying a couple of hours, a morning and an evening peak.
+         */
+        public static Settings defaults() {
+            return new Settings(List.of(
+                    new VehicleProfile(VehicleType.CAR, 60, Distribution.LOGNORMAL, 150, 0.8),
+                    new VehicleProfile(VehicleType.BIKE, 10, Distribution.EXPONENTIAL, 60, 0),
+                    new VehicleProfile(VehicleType.TRUCK, 4, Distribution.LOGNORMAL, 45, 0.5)),
+                    new double[] {0.1, 0.05, 0.05, 0.05, 0.1, 0.3, 0.9, 2.2, 3.0, 2.4, 1.5, 1.4,
+                            1.8, 1.6, 1.3, 1.4, 1.9, 2.4, 1.8, 1.1, 0.8, 0.5, 0.3, 0.2},
+                    7, 42, 0, 15);
+        }
+
+        Settings withScale(double factor) {
+            List<VehicleProfile> scaled = new ArrayList<>();
+            for (VehicleProfile profile : profiles) {
+                scaled.add(profile.scaled(factor));
+            }
+            return new Settings(scaled, hourlyDemand, days, seed, patienceMinutes, sampleMinutes);
+        }
+    }
+
+    /**
+     * What a run produced. Occupancy samples are taken every {@code sampleMinutes} of simulated time.
+     */
+    public record Report(long events, long wallNanos, long arrivals, long parked, long rejected, long waitlisted,
+                         long abandoned, long departures, long revenueCents, int capacity, int sampleMinutes,
+                         int[] occupancySamples, long[] revenueCentsByDay) {
+
+        public double eventsPerSecond() {
+            return events / Math.max(wallNanos / 1e9, 1e-9);
+        }
+
+        /**
+         * Share of arrivals that never got a spot, waitlist or not.
+         */
+        public double rejectionRate() {
+            return arrivals == 0 ? 0 : (double) (rejected + abandoned) / arrivals;
+        }
+
+        public int peakOccupancy() {
+            return Arrays.stream(occupancySamples).max().orElse(0);
+        }
+
+        /**
+         * Average share of the lot in use for each hour of the day, across all simulated days.
+         */
+        public double[] occupancyByHourOfDay() {
+            double[] sums = new double[24];
+            int[] counts = new int[24];
+            for (int sample = 0; sample < occupancySamples.length; sample++) {
+                int hour = (int) ((long) sample * sampleMinutes / 60 % 24);
+                sums[hour] += occupancySamples[sample];
+                counts[hour]++;
+            }
+            for (int hour = 0; hour < 24; hour++) {
+                sums[hour] = counts[hour] == 0 ? 0 : sums[hour] / counts[hour] / capacity;
+            }
+            return sums;
+        }
+
+        public void print() {
+            System.out.printf("%d events in %.2f s (%.0f events/s)%n", events, wallNanos / 1e9, eventsPerSecond());
+            System.out.printf("%d arrivals: %d parked, %d turned away, %d waitlisted (%d gave up) -> %.1f%% rejected%n",
+                    arrivals, parked, rejected, waitlisted, abandoned, rejectionRate() * 100);
+            System.out.printf("%d departures, revenue $%d.%02d over %d days, peak occupancy %d of %d%n",
+                    departures, revenueCents / 100, revenueCents % 100, revenueCentsByDay.length, peakOccupancy(), capacity);
+            System.out.println("hour  occupancy");
+            double[] byHour = occupancyByHourOfDay();
+            for (int hour = 0; hour < 24; hour++) {
+                System.out.printf("%02d:00 %5.1f%% %s%n", hour, byHour[hour] * 100, "#".repeat((int) Math.round(byHour[hour] * 40)));
+            }
+            for (int day = 0; day < revenueCentsByDay.length; day++) {
+                System.out.printf("day %d revenue $%d.%02d%n", day + 1, revenueCentsByDay[day] / 100, revenueCentsByDay[day] % 100);
+            }
+        }
+    }
+
+    // event kinds live in the low bits of the queue payload, the vehicle type or slot above them
+    private static final int ARRIVAL = 0;
+    private static final int DEPARTURE = 1;
+    private static final int GIVE_UP = 2;
+    private static final int SAMPLE = 3;
+    private static final int KIND_BITS = 2;
+    private static final long START_EPOCH_MILLIS = LocalDate.of(2024, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private final Settings settings;
+    private final LotConfig lotConfig;
+    private final TariffEngine tariffEngine;
+    private final SplittableRandom random;
+    private final EventQueue queue = new EventQueue();
+    private final double peakDemand;
+    // vehicles in the lot or on the waitlist, by slot; slots are recycled so memory follows the lot, not the run
+    private Vehicle[] vehicles = new Vehicle[1_024];
+    private Waitlist.Entry[] waiting = new Waitlist.Entry[1_024];
+    private int[] freeSlots = new int[1_024];
+    private int freeSlotCount;
+    private int slotsUsed;
+    private long plates;
+
+    private VirtualClock clock;
+    private ParkingLot lot;
+    private long events;
+    private long arrivals;
+    private long parked;
+    private long rejected;
+    private long waitlisted;
+    private long abandoned;
+    private long departures;
+    private long revenueCents;
+
+    public ParkingSimulator(Settings settings, LotConfig lotConfig, TariffEngine tariffEngine) {
+        this.settings = settings;
+        this.lotConfig = lotConfig;
+        this.tariffEngine = tariffEngine;
+        this.random = new SplittableRandom(settings.seed());
+        this.peakDemand = Arrays.stream(settings.hourlyDemand()).max().orElse(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Settings settings = Settings.defaults();
+        int days = settings.days();
+        long seed = settings.seed();
+        int patience = settings.patienceMinutes();
+        int spots = 500;
+        double scale = 1;
+        double minThroughput = 0;
+        LotConfig config = null;
+        TariffEngine tariffs = TariffEngine.standard();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--days" -> days = Integer.parseInt(args[++i]);
+                case "--spots" -> spots = Integer.parseInt(args[++i]);
+                case "--config" -> config = LotConfig.load(Paths.get(args[++i]));
+                case "--scale" -> scale = Double.parseDouble(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--patience-min" -> patience = Integer.parseInt(args[++i]);
+                case "--tariffs" -> tariffs = TariffEngine.load(Paths.get(args[++i]));
+                case "--min-throughput" -> minThroughput = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (config == null) {
+            config = LotConfig.defaults((int) Math.round(spots * scale));
+        }
+        settings = new Settings(settings.profiles(), settings.hourlyDemand(), days, seed, patience, settings.sampleMinutes())
+                .withScale(scale);
+        Report report = new ParkingSimulator(settings, config, tariffs).run();
+        report.print();
+        if (report.eventsPerSecond() < minThroughput) {
+            System.err.printf("Throughput %.0f events/s is below the required %.0f%n", report.eventsPerSecond(), minThroughput);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the whole simulation on a fresh in-memory lot. A simulator is good for one run.
+     */
+    public Report run() {
+        clock = new VirtualClock(Instant.ofEpochMilli(START_EPOCH_MILLIS), ZoneOffset.UTC);
+        lot = ParkingLot.createEphemeralLot(lotConfig, clock);
+        long endMillis = START_EPOCH_MILLIS + settings.days() * 86_400_000L;
+        long sampleMillis = settings.sampleMinutes() * 60_000L;
+        int[] samples = new int[(int) ((endMillis - START_EPOCH_MILLIS) / sampleMillis)];
+        long[] revenueByDay = new long[settings.days()];
+        for (int type = 0; type < settings.profiles().size(); type++) {
+            scheduleArrival(type, START_EPOCH_MILLIS);
+        }
+        queue.push(START_EPOCH_MILLIS, SAMPLE);
+        int capacity = lot.getFreeSpotCount();
+
+        long started = System.nanoTime();
+        while (!queue.isEmpty() && queue.peekTime() < endMillis) {
+            long at = queue.peekTime();
+            int payload = queue.popPayload();
+            clock.advanceTo(at);
+            events++;
+            int target = payload >>> KIND_BITS;
+            switch (payload & ((1 << KIND_BITS) - 1)) {
+                case ARRIVAL -> {
+                    arrive(settings.profiles().get(target), at);
+                    scheduleArrival(target, at);
+                }
+                case DEPARTURE -> {
+                    long cents = depart(target);
+                    revenueByDay[(int) ((at - START_EPOCH_MILLIS) / 86_400_000L)] += cents;
+                }
+                case GIVE_UP -> giveUp(target);
+                default -> {
+                    samples[(int) ((at - START_EPOCH_MILLIS) / sampleMillis)] = capacity - lot.getFreeSpotCount();
+                    queue.push(at + sampleMillis, SAMPLE);
+                }
+            }
+        }
+        long wallNanos = System.nanoTime() - started;
+        return new Report(events, wallNanos, arrivals, parked, rejected, waitlisted, abandoned, departures, revenueCents,
+                capacity, settings.sampleMinutes(), samples, revenueByDay);
+    }
+
+    // thinning: candidates come at the peak rate and each is kept with probability demand(hour) / peak
+    private void scheduleArrival(int type, long fromMillis) {
+        double peakPerMilli = settings.profiles().get(type).arrivalsPerHour() * peakDemand / 3_600_000.0;
+        if (peakPerMilli <= 0) {
+            return;
+        }
+        long at = fromMillis;
+        do {
+            at += Math.max(1, (long) (-Math.log(1 - random.nextDouble()) / peakPerMilli));
+        } while (random.nextDouble() * peakDemand > settings.hourlyDemand()[(int) ((at - START_EPOCH_MILLIS) / 3_600_000L % 24)]);
+        queue.push(at, type << KIND_BITS | ARRIVAL);
+    }
+
+    private void arrive(VehicleProfile profile, long at) {
+        arrivals++;
+        Vehicle vehicle = profile.vehicleType().newVehicle("SIM" + plates++);
+        ParkingSpot spot = lot.park(vehicle, lot.getDefaultGate(), at / 1000);
+        if (spot != null) {
+            parked++;
+            int slot = takeSlot(vehicle);
+            queue.push(at + dwellMillis(profile), slot << KIND_BITS | DEPARTURE);
+            return;
+        }
+        if (settings.patienceMinutes() == 0) {
+            rejected++;
+            return;
+        }
+        waitlisted++;
+        int slot = takeSlot(vehicle);
+        Waitlist.Entry entry = lot.joinWaitlist(vehicle, lot.getDefaultGate(), 0);
+        waiting[slot] = entry;
+        // completes inside some later departure's remove, on this same thread, with the clock already at that time
+        entry.getSpot().thenAccept(handedOver -> {
+            waiting[slot] = null;
+            parked++;
+            queue.push(clock.millis() + dwellMillis(profile), slot << KIND_BITS | DEPARTURE);
+        });
+        if (!entry.getSpot().isDone()) {
+            queue.push(at + settings.patienceMinutes() * 60_000L, slot << KIND_BITS | GIVE_UP);
+        }
+    }
+
+    private long depart(int slot) {
+        Ticket ticket = lot.checkOut(vehicles[slot].getLicensePlate(), tariffEngine);
+        releaseSlot(slot);
+        if (ticket == null) {
+            return 0;
+        }
+        departures++;
+        long cents = ticket.closeTicketCents();
+        revenueCents += cents;
+        return cents;
+    }
+
+    private void giveUp(int slot) {
+        Waitlist.Entry entry = waiting[slot];
+        // already handed a spot (the departure event owns the slot now) or handed one at this very moment
+        if (entry == null || !entry.cancel()) {
+            return;
+        }
+        waiting[slot] = null;
+        abandoned++;
+        releaseSlot(slot);
+    }
+
+    private long dwellMillis(VehicleProfile profile) {
+        double minutes = switch (profile.dwell()) {
+            case FIXED -> profile.meanDwellMinutes();
+            case EXPONENTIAL -> -Math.log(1 - random.nextDouble()) * profile.meanDwellMinutes();
+            case LOGNORMAL -> {
+                double sigma = profile.dwellSigma();
+                double mu = Math.log(profile.meanDwellMinutes()) - sigma * sigma / 2;
+                yield Math.exp(mu + sigma * gaussian());
+            }
+        };
+        return Math.max(60_000L, (long) (minutes * 60_000));
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian on 17
+    private double gaussian() {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    private int takeSlot(Vehicle vehicle) {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = slotsUsed++;
+            if (slot == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, slot * 2);
+                waiting = Arrays.copyOf(waiting, slot * 2);
+                freeSlots = Arrays.copyOf(freeSlots, slot * 2);
+            }
+        }
+        vehicles[slot] = vehicle;
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        vehicles[slot] = null;
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    // binary min-heap on (time, insertion order) over parallel primitive arrays, so a million pending events
+    // are two arrays rather than a million objects; the sequence keeps same-millisecond events first-in first-out
+    private static final class EventQueue {
+        private long[] times = new long[1_024];
+        private long[] sequences = new long[1_024];
+        private int[] payloads = new int[1_024];
+        private int size;
+        private long nextSequence;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekTime() {
+            return times[0];
+        }
+
+        void push(long time, int payload) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+                payloads = Arrays.copyOf(payloads, size * 2);
+            }
+            int index = size++;
+            long sequence = nextSequence++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!before(time, sequence, parent)) {
+                    break;
+                }
+                move(parent, index);
+                index = parent;
+            }
+            set(index, time, sequence, payload);
+        }
+
+        int popPayload() {
+            int top = payloads[0];
+            size--;
+            long time = times[size];
+            long sequence = sequences[size];
+            int payload = payloads[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(times[child + 1], sequences[child + 1], child)) {
+                    child++;
+                }
+                if (!before(times[child], sequences[child], time, sequence)) {
+                    break;
+                }
+                move(child, index);
+                index = child;
+            }
+            set(index, time, sequence, payload);
+            return top;
+        }
+
+        private boolean before(long time, long sequence, int index) {
+            return before(time, sequence, times[index], sequences[index]);
+        }
+
+        private static boolean before(long time, long sequence, long otherTime, long otherSequence) {
+            return time < otherTime || time == otherTime && sequence < otherSequence;
+        }
+
+        private void move(int from, int to) {
+            set(to, times[from], sequences[from], payloads[from]);
+        }
+
+        private void set(int index, long time, long sequence, int payload) {
+            times[index] = time;
+            sequences[index] = sequence;
+            payloads[index] = payload;
+        }
+    }
+}
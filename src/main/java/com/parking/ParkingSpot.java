@@ -1,21 +1,35 @@
 package com.parking;
 
-// just a dumb spot right now — no notion of size or pricing tiers yet
+import java.util.concurrent.atomic.AtomicReference;
+
+// still a pretty dumb spot — it knows its size now, but no pricing tiers yet
 public class ParkingSpot {
 
     private final int id;
-    private Vehicle vehicle;
+    private final SpotSize size;
+    // CAS on the reference is what actually stops two lanes from landing in the same spot
+    private final AtomicReference<Vehicle> vehicle = new AtomicReference<>();
 
     public ParkingSpot(int id) {
+        // large fits everything, which matches how spots behaved before they had sizes
+        this(id, SpotSize.LARGE);
+    }
+
+    public ParkingSpot(int id, SpotSize size) {
         this.id = id;
+        this.size = size;
     }
 
     public int getId() {
         return id;
     }
 
+    public SpotSize getSize() {
+        return size;
+    }
+
     public boolean isAvailable() {
-        return vehicle == null;
+        return vehicle.get() == null;
     }
 
     /**
@@ -24,25 +38,19 @@ public class ParkingSpot {
      * @return true if parking succeeded, false otherwise.
      */
     public boolean parkVehicle(Vehicle vehicle) {
-        if (!isAvailable()) {
-            return false;
-        }
         // not cloning or validating vehicle type for now, assuming caller already checked that
-        this.vehicle = vehicle;
-        return true;
+        return this.vehicle.compareAndSet(null, vehicle);
     }
 
     /**
      * Removes the parked vehicle (if any) and returns it so callers can inspect it.
      */
     public Vehicle removeVehicle() {
-        Vehicle removed = this.vehicle;
         // clearing the reference immediately so the spot is marked free even if caller forgets
-        this.vehicle = null;
-        return removed;
+        return vehicle.getAndSet(null);
     }
 
     public Vehicle getVehicle() {
-        return vehicle;
+        return vehicle.get();
     }
 }
@@ -0,0 +1,119 @@
+package com.parking;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// one shard of the lot (a zone on a level): its own spots, its own per-size free indexes and locks
+// free counts are read without locking, so summing them across zones never stalls a gate
+public final class ParkingZone {
+
+    private final String levelId;
+    private final String zoneId;
+    private final String id;
+    private final int levelOrdinal;
+    private final int positionOnLevel;
+    private final Map<SpotSize, SpotPool> pools = new EnumMap<>(SpotSize.class);
+    // parked vehicles by OccupancySnapshot type slot, bumped on every park/remove so nobody has to count spots
+    private final AtomicIntegerArray occupiedByType = new AtomicIntegerArray(OccupancySnapshot.TYPE_SLOTS);
+
+    // starts out with no spots; ParkingLot adds them pool by pool, since it's the one handing out spot ids
+    // lockWait is shared by all of the zone's pools (and usually the whole lot) — see SpotPool
+    ParkingZone(String levelId, String zoneId, int levelOrdinal, int positionOnLevel, LatencyHistogram lockWait) {
+        this.levelId = levelId;
+        this.zoneId = zoneId;
+        this.id = levelId + "." + zoneId;
+        this.levelOrdinal = levelOrdinal;
+        this.positionOnLevel = positionOnLevel;
+        for (SpotSize size : SpotSize.values()) {
+            pools.put(size, new SpotPool(this, size, new ParkingSpot[0], lockWait));
+        }
+    }
+
+    /**
+     * Zone name including its level, e.g. "L1.A".
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getLevelId() {
+        return levelId;
+    }
+
+    /**
+     * Zone name without its level, e.g. "A".
+     */
+    public String getZoneId() {
+        return zoneId;
+    }
+
+    int getLevelOrdinal() {
+        return levelOrdinal;
+    }
+
+    int getPositionOnLevel() {
+        return positionOnLevel;
+    }
+
+    public int freeCount(SpotSize size) {
+        return pools.get(size).freeCount();
+    }
+
+    public int freeCount() {
+        int free = 0;
+        for (SpotPool pool : pools.values()) {
+            free += pool.freeCount();
+        }
+        return free;
+    }
+
+    /**
+     * Vehicles of the given type parked in this zone right now.
+     */
+    public int occupiedCount(String vehicleType) {
+        return occupiedByType.get(OccupancySnapshot.typeSlot(vehicleType));
+    }
+
+    int occupiedCount(int typeSlot) {
+        return occupiedByType.get(typeSlot);
+    }
+
+    void vehicleArrived(Vehicle vehicle) {
+        occupiedByType.incrementAndGet(OccupancySnapshot.typeSlot(vehicle.getType()));
+    }
+
+    void vehicleLeft(Vehicle vehicle) {
+        occupiedByType.decrementAndGet(OccupancySnapshot.typeSlot(vehicle.getType()));
+    }
+
+    public int capacity(SpotSize size) {
+        return pools.get(size).capacity();
+    }
+
+    /**
+     * Spots open for parking; bays closed by a layout change drop out right away, even while still occupied.
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (SpotPool pool : pools.values()) {
+            capacity += pool.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Closed bays that still have a car in them; each is retired when its car leaves.
+     */
+    public int drainingCount() {
+        int draining = 0;
+        for (SpotPool pool : pools.values()) {
+            draining += pool.drainingCount();
+        }
+        return draining;
+    }
+
+    SpotPool pool(SpotSize size) {
+        return pools.get(size);
+    }
+}
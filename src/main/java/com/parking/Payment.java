@@ -35,19 +35,29 @@ public class Payment {
 
     public void processPayment(double amount, String licensePlate) {
         System.out.printf("Amount due: $%.2f%n", amount);
+        PaymentRequest.Method method = choosePaymentMethod();
+        System.out.printf("%s payment confirmed. Thanks for your business!%n", displayName(method));
+        logPayment(licensePlate, amount);
+        // maybe add exception handling later when we integrate with a real payment gateway
+    }
+
+    /**
+     * Asks until the driver types Cash or Card. The exit flow uses this and hands the charge to a
+     * {@link PaymentPipeline} instead of confirming it on the spot.
+     */
+    public PaymentRequest.Method choosePaymentMethod() {
         while (true) {
             System.out.print("Select payment type (Cash/Card): ");
-            String choice = scanner.nextLine().trim().toLowerCase();
-            if ("cash".equals(choice) || "card".equals(choice)) {
-                // this part feels a bit repetitive, might refactor later with enums
-                System.out.printf("%s payment confirmed. Thanks for your business!%n",
-                        Character.toUpperCase(choice.charAt(0)) + choice.substring(1));
-                logPayment(licensePlate, amount);
-                break;
+            PaymentRequest.Method method = PaymentRequest.Method.parse(scanner.nextLine());
+            if (method != null) {
+                return method;
             }
             System.out.println("Invalid choice, please type Cash or Card.");
         }
-        // maybe add exception handling later when we integrate with a real payment gateway
+    }
+
+    static String displayName(PaymentRequest.Method method) {
+        return method == PaymentRequest.Method.CASH ? "Cash" : "Card";
     }
 
     private void logPayment(String licensePlate, double amount) {
@@ -55,7 +65,8 @@ public class Payment {
             return;
         }
         try {
-            parkingLot.logPaymentSuccess(licensePlate == null ? "UNKNOWN" : licensePlate.trim().toUpperCase(), amount);
+            String plate = PlateCodec.normalize(licensePlate);
+            parkingLot.logPaymentSuccess(plate == null ? "UNKNOWN" : plate, amount);
         } catch (Exception ignored) {
             // logging failure shouldn't block the driver from leaving, so swallowing it intentionally
         }
@@ -0,0 +1,24 @@
+package com.parking;
+
+import java.io.IOException;
+
+// whatever actually confirms money changed hands: card terminal, cash acceptor, a processor's API
+// PaymentPipeline owns timeouts and retries, so an implementation only has to make one attempt
+public interface PaymentGateway {
+
+    enum Decision {
+        APPROVED,
+        DECLINED
+    }
+
+    /**
+     * Makes one attempt at the charge. May block; the pipeline interrupts calls that run past its timeout.
+     * <p>
+     * Must be idempotent on {@link PaymentRequest#paymentId()}: a retry after a timeout can reach the gateway
+     * while the first attempt already went through, and has to get the approval back instead of charging again.
+     * A declined id moved no money, so it may be decided afresh — that's how a driver pays by another method.
+     *
+     * @throws IOException if the gateway couldn't be reached or didn't answer properly; the pipeline retries.
+     */
+    Decision charge(PaymentRequest request) throws IOException, InterruptedException;
+}
@@ -0,0 +1,326 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// settling a ticket used to sit right in the exit flow: prompt, confirm, log, save, and only then was the lane free
+// now the spot is released first and the charge is queued here; a few settlement workers talk to the gateway,
+// give each attempt a deadline, retry what failed, and record each payment exactly once
+//
+// recording is keyed by paymentId, which names the ticket: submitting it again while it's settling or once it was
+// approved (a kiosk retrying, a double tap, the other method) hands back the same future instead of starting a
+// second charge, and the ledger/audit writes happen once, when it settles. a DECLINED or FAILED ticket can be
+// submitted again, by either method, and that starts a new attempt under the same key
+//
+// settled tickets are remembered for settledRetentionMillis, or until maxSettled newer ones push them out, whichever
+// comes first; that's how long a duplicate is caught here. past it only the gateway's idempotency stands between a
+// resubmitted approved ticket and a second charge — the kiosk forgets a ticket as soon as it's paid, so nothing the
+// lot does resubmits one that late
+public class PaymentPipeline implements Closeable {
+
+    /**
+     * @param queueCapacity        payments that may wait for a worker before submissions get rejected
+     * @param workers              payments being worked on at once
+     * @param attemptTimeoutMillis longest one gateway attempt may take before it is abandoned and retried
+     * @param maxAttempts          attempts per payment before it is given up as FAILED
+     * @param retryBackoffMillis   pause before the first retry; doubles for each one after
+     * @param settledRetentionMillis how long a settled ticket is remembered, so resubmitting it is caught
+     * @param maxSettled           most settled tickets remembered at once; the oldest are forgotten first
+     */
+    public record Settings(int queueCapacity, int workers, int attemptTimeoutMillis, int maxAttempts,
+                           int retryBackoffMillis, long settledRetentionMillis, int maxSettled) {
+
+        public Settings {
+            if (queueCapacity <= 0 || workers <= 0 || attemptTimeoutMillis <= 0 || maxAttempts <= 0 || retryBackoffMillis < 0
+                    || settledRetentionMillis <= 0 || maxSettled <= 0) {
+                throw new IllegalArgumentException("Payment queue, workers, timeout, attempts and retention must be positive.");
+            }
+        }
+
+        // a day of settled tickets, up to a busy day's worth — a few hundred bytes each
+        public static Settings defaults() {
+            return new Settings(4_096, 8, 2_000, 3, 200, 24L * 60 * 60 * 1_000, 100_000);
+        }
+    }
+
+    public enum Status {
+        APPROVED,
+        DECLINED,
+        // the gateway never gave an answer; nothing was recorded and the same payment may be submitted again
+        FAILED
+    }
+
+    /**
+     * How a payment ended. {@code detail} says why for DECLINED and FAILED.
+     */
+    public record Settlement(PaymentRequest request, Status status, int attempts, String detail) {
+    }
+
+    private static PaymentPipeline defaultPipeline;
+
+    private final ParkingLot lot;
+    private final TicketLedger ledger;
+    private final PaymentGateway gateway;
+    private final Settings settings;
+    private final ThreadPoolExecutor workers;
+    // gateway calls run here so a worker can stop waiting on one that hangs; each worker has at most one attempt
+    // out at a time, plus any abandoned ones still winding down after being interrupted
+    private final ExecutorService calls;
+    // ticket -> its latest attempt, settling or settled; settled ones are dropped again by forgetSettled
+    private final Map<String, CompletableFuture<Settlement>> payments = new ConcurrentHashMap<>();
+    // the settled entries of payments, oldest settlement first; guarded by itself
+    private final LinkedHashMap<String, Settled> settled = new LinkedHashMap<>();
+    // the lot's counters, so they add up across every pipeline on it
+    private final LongAdder approved;
+    private final LongAdder declined;
+    private final LongAdder failed;
+    private final LongAdder retries;
+    // submit to settled, so it includes the time spent queued behind other payments
+    private final LatencyHistogram settleLatency = new LatencyHistogram();
+
+    private record Settled(CompletableFuture<Settlement> future, long settledNanos) {
+    }
+
+    /**
+     * @param ledger where approved tickets are written; null keeps them out of any file (load tests).
+     */
+    public PaymentPipeline(ParkingLot lot, TicketLedger ledger, PaymentGateway gateway, Settings settings) {
+        this.lot = lot;
+        this.ledger = ledger;
+        this.gateway = gateway;
+        this.settings = settings;
+        this.workers = new ThreadPoolExecutor(settings.workers(), settings.workers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.queueCapacity()), daemonThreads("payment-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.calls = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreads("payment-gateway-call"));
+        LotMetrics metrics = lot.getMetrics();
+        metrics.register("payments.settle", settleLatency);
+        metrics.gauge("payments.queue_depth", this::getQueueDepth);
+        metrics.gauge("payments.remembered", this::getRememberedCount);
+        this.approved = metrics.counter("payments.approved");
+        this.declined = metrics.counter("payments.declined");
+        this.failed = metrics.counter("payments.failed");
+        this.retries = metrics.counter("payments.retries");
+        if (ledger != null) {
+            metrics.register("ledger.flush", ledger.getFlushLatency());
+        }
+    }
+
+    /**
+     * The pipeline the console uses: the shared lot, the default ledger and a simulated gateway.
+     * Created on first use and drained on JVM exit.
+     */
+    public static synchronized PaymentPipeline getDefault() {
+        if (defaultPipeline == null) {
+            defaultPipeline = new PaymentPipeline(ParkingLot.getInstance(), TicketLedger.getDefault(),
+                    new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.defaults()), Settings.defaults());
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultPipeline::close, "payment-pipeline-shutdown"));
+        }
+        return defaultPipeline;
+    }
+
+    /**
+     * Queues the payment for a closed ticket and returns straight away. If that ticket is already queued, settling
+     * or approved, its existing future comes back instead, whatever the method; a declined or failed ticket is tried
+     * again. A full queue (or a closed pipeline) fails the future with a {@link RejectedExecutionException}.
+     * <p>
+     * Futures are completed on a payment worker; chain with the *Async methods for anything slow.
+     */
+    public CompletableFuture<Settlement> submit(Ticket ticket, PaymentRequest.Method method) {
+        PaymentRequest request = PaymentRequest.forTicket(ticket, method);
+        forgetSettled();
+        CompletableFuture<Settlement> fresh = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Settlement> existing = payments.putIfAbsent(request.paymentId(), fresh);
+            if (existing == null) {
+                break;
+            }
+            Settlement previous = existing.getNow(null);
+            if (previous == null || previous.status() == Status.APPROVED) {
+                return existing;
+            }
+            // declined or failed: this attempt takes its place, unless another submit got there first
+            if (payments.replace(request.paymentId(), existing, fresh)) {
+                break;
+            }
+        }
+        long submitted = System.nanoTime();
+        try {
+            workers.execute(() -> settle(request, ticket, fresh, submitted));
+        } catch (RejectedExecutionException full) {
+            payments.remove(request.paymentId(), fresh);
+            fresh.completeExceptionally(full);
+        }
+        return fresh;
+    }
+
+    public long getApprovedCount() {
+        return approved.sum();
+    }
+
+    public long getDeclinedCount() {
+        return declined.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * Settled tickets still remembered for catching duplicates.
+     */
+    public int getRememberedCount() {
+        synchronized (settled) {
+            return settled.size();
+        }
+    }
+
+    /**
+     * Stops taking payments and waits for the queued ones to settle.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            long worstCase = (long) settings.maxAttempts() * (settings.attemptTimeoutMillis() + settings.retryBackoffMillis());
+            workers.awaitTermination(Math.max(30_000, worstCase), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        calls.shutdownNow();
+    }
+
+    private void settle(PaymentRequest request, Ticket ticket, CompletableFuture<Settlement> future, long submittedNanos) {
+        Settlement settlement = attempt(request);
+        switch (settlement.status()) {
+            case APPROVED -> {
+                approved.increment();
+                lot.logPaymentSuccess(request.licensePlate(), request.amountCents() / 100.0);
+                if (ledger != null) {
+                    ticket.saveTo(ledger);
+                }
+            }
+            case DECLINED -> {
+                declined.increment();
+                lot.logPaymentFailure(request.licensePlate(), request.amountCents() / 100.0, settlement.detail());
+            }
+            case FAILED -> {
+                failed.increment();
+                // it can be submitted again; the gateway's own idempotency keeps that from charging twice if one of
+                // our abandoned attempts did get through
+                lot.logPaymentFailure(request.licensePlate(), request.amountCents() / 100.0, settlement.detail());
+            }
+        }
+        settleLatency.recordSince(submittedNanos);
+        synchronized (settled) {
+            // a retried ticket moves to the back, so its newest settlement is the one that ages
+            settled.remove(request.paymentId());
+            settled.put(request.paymentId(), new Settled(future, System.nanoTime()));
+        }
+        forgetSettled();
+        future.complete(settlement);
+    }
+
+    // drops settled tickets past the retention window or over the cap, oldest first
+    private void forgetSettled() {
+        long cutoff = System.nanoTime() - settings.settledRetentionMillis() * 1_000_000;
+        synchronized (settled) {
+            Iterator<Map.Entry<String, Settled>> oldest = settled.entrySet().iterator();
+            while (oldest.hasNext()) {
+                Map.Entry<String, Settled> entry = oldest.next();
+                if (settled.size() <= settings.maxSettled() && entry.getValue().settledNanos() - cutoff > 0) {
+                    break;
+                }
+                // a retry still settling has replaced the entry; that one stays
+                payments.remove(entry.getKey(), entry.getValue().future());
+                oldest.remove();
+            }
+        }
+    }
+
+    private Settlement attempt(PaymentRequest request) {
+        String lastError = "no attempt made";
+        long backoff = settings.retryBackoffMillis();
+        for (int attempt = 1; attempt <= settings.maxAttempts(); attempt++) {
+            if (attempt > 1) {
+                retries.increment();
+                if (!pause(backoff)) {
+                    return new Settlement(request, Status.FAILED, attempt - 1, "interrupted while retrying");
+                }
+                backoff *= 2;
+            }
+            Future<PaymentGateway.Decision> call;
+            try {
+                call = calls.submit(() -> gateway.charge(request));
+            } catch (RejectedExecutionException closing) {
+                return new Settlement(request, Status.FAILED, attempt - 1, "payment pipeline closed");
+            }
+            try {
+                PaymentGateway.Decision decision = call.get(settings.attemptTimeoutMillis(), TimeUnit.MILLISECONDS);
+                return decision == PaymentGateway.Decision.APPROVED
+                        ? new Settlement(request, Status.APPROVED, attempt, null)
+                        : new Settlement(request, Status.DECLINED, attempt, "declined by gateway");
+            } catch (TimeoutException slow) {
+                call.cancel(true);
+                lastError = "gateway timed out after " + settings.attemptTimeoutMillis() + " ms";
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (!(cause instanceof IOException)) {
+                    // a bug in the gateway, not a flaky network; retrying won't help
+                    return new Settlement(request, Status.FAILED, attempt, "gateway error: " + cause);
+                }
+                lastError = cause.getMessage();
+            } catch (InterruptedException e) {
+                call.cancel(true);
+                Thread.currentThread().interrupt();
+                return new Settlement(request, Status.FAILED, attempt, "interrupted waiting for gateway");
+            }
+        }
+        return new Settlement(request, Status.FAILED, settings.maxAttempts(), lastError);
+    }
+
+    private static boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.parking;
+
+import java.time.ZoneOffset;
+
+// one charge to settle a closed ticket; paymentId is the idempotency key, so asking twice never charges twice
+// the key names the ticket, not the method: a second try in cash after a declined card is the same payment
+public record PaymentRequest(String paymentId, String licensePlate, long amountCents, Method method) {
+
+    public enum Method {
+        CASH,
+        CARD;
+
+        /**
+         * @return the method for "cash"/"card" in any case, or null for anything else.
+         */
+        public static Method parse(String text) {
+            if (text == null) {
+                return null;
+            }
+            return switch (text.trim().toUpperCase()) {
+                case "CASH" -> CASH;
+                case "CARD" -> CARD;
+                default -> null;
+            };
+        }
+    }
+
+    public PaymentRequest {
+        if (paymentId == null || paymentId.isBlank() || method == null || amountCents < 0) {
+            throw new IllegalArgumentException("Payments need an id, a method and a non-negative amount.");
+        }
+    }
+
+    /**
+     * The request settling {@code ticket}, which must already be closed. A plate can only have one ticket open at a
+     * given entry time, so plate + entry names the charge whichever method pays it.
+     */
+    public static PaymentRequest forTicket(Ticket ticket, Method method) {
+        String paymentId = ticket.getLicensePlate() + "@" + ticket.getEntryTime().toEpochSecond(ZoneOffset.UTC);
+        return new PaymentRequest(paymentId, ticket.getLicensePlate(), ticket.getCostCents(), method);
+    }
+}
@@ -0,0 +1,144 @@
+package com.parking;
+
+// packs a licence plate into two longs so the lot can key, compare and store plates without touching Strings
+//
+// a plate is 1-24 letters and digits; case doesn't matter and spaces/hyphens are dropped, so "ab-123", "AB 123" and
+// "AB123" are the same plate. each character is a base-37 digit (1-10 for 0-9, 11-36 for A-Z, 0 never used), twelve
+// to a long: 37^12 < 2^63, so both halves stay positive and -1 can mean "not a plate". `low` holds characters 1-12,
+// `high` 13-24 (0 for shorter plates), most significant digit first in each
+//
+// no digit is 0, so a half's characters come back out by repeated division until it reaches 0 — the length
+// doesn't need storing anywhere
+public final class PlateCodec {
+
+    public static final int MAX_LENGTH = 24;
+    /**
+     * What {@link #low} and {@link #high} return for something that isn't a plate.
+     */
+    public static final long INVALID = -1L;
+
+    private static final int RADIX = 37;
+    private static final int CHARS_PER_LONG = 12;
+    private static final int SEPARATOR = 0;
+    private static final int BAD_CHARACTER = -1;
+    private static final char[] ALPHABET = "?0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private PlateCodec() {
+    }
+
+    /**
+     * Characters 1-12 of the normalized plate.
+     *
+     * @return the packed value (always positive), or {@link #INVALID}.
+     */
+    public static long low(CharSequence plate) {
+        return encode(plate, false);
+    }
+
+    /**
+     * Characters 13-24 of the normalized plate; 0 for plates of 12 characters or fewer.
+     *
+     * @return the packed value, or {@link #INVALID}.
+     */
+    public static long high(CharSequence plate) {
+        return encode(plate, true);
+    }
+
+    public static boolean isValid(CharSequence plate) {
+        return encode(plate, false) != INVALID;
+    }
+
+    /**
+     * The plate as the lot stores and prints it: uppercase, no separators. Hands back the same String when it is
+     * already in that form.
+     *
+     * @return the normalized plate, or null if it isn't a valid one.
+     */
+    public static String normalize(String plate) {
+        long low = low(plate);
+        if (low == INVALID) {
+            return null;
+        }
+        return isCanonical(plate) ? plate : decode(low, high(plate));
+    }
+
+    /**
+     * Turns a packed plate back into text; the one place plates become Strings again (display, text files).
+     */
+    public static String decode(long low, long high) {
+        if (low <= 0 || high < 0) {
+            throw new IllegalArgumentException("Not a packed plate: " + low + "/" + high);
+        }
+        char[] chars = new char[MAX_LENGTH];
+        int length = unpack(low, chars, 0);
+        length = unpack(high, chars, length);
+        return new String(chars, 0, length);
+    }
+
+    // writes the half's characters at `at`, returns where the next half starts
+    private static int unpack(long packed, char[] into, int at) {
+        int digits = 0;
+        for (long rest = packed; rest != 0; rest /= RADIX) {
+            digits++;
+        }
+        long rest = packed;
+        for (int index = at + digits - 1; index >= at; index--) {
+            into[index] = ALPHABET[(int) (rest % RADIX)];
+            rest /= RADIX;
+        }
+        return at + digits;
+    }
+
+    // one pass over the text; every character is checked even when only one half is wanted, so low() and high()
+    // agree on what's valid
+    private static long encode(CharSequence plate, boolean wantHigh) {
+        if (plate == null) {
+            return INVALID;
+        }
+        long low = 0;
+        long high = 0;
+        int length = 0;
+        for (int index = 0; index < plate.length(); index++) {
+            int digit = digitOf(plate.charAt(index));
+            if (digit == SEPARATOR) {
+                continue;
+            }
+            if (digit == BAD_CHARACTER || length == MAX_LENGTH) {
+                return INVALID;
+            }
+            if (length < CHARS_PER_LONG) {
+                low = low * RADIX + digit;
+            } else {
+                high = high * RADIX + digit;
+            }
+            length++;
+        }
+        if (length == 0) {
+            return INVALID;
+        }
+        return wantHigh ? high : low;
+    }
+
+    private static boolean isCanonical(String plate) {
+        for (int index = 0; index < plate.length(); index++) {
+            char c = plate.charAt(index);
+            if (!(c >= '0' && c <= '9' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digitOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 11;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 11;
+        }
+        return c == ' ' || c == '-' || c == '\t' ? SEPARATOR : BAD_CHARACTER;
+    }
+}
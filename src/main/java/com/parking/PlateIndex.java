@@ -0,0 +1,293 @@
+package com.parking;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// plate -> value map keyed by the two longs from PlateCodec, so a lookup hashes and compares two numbers instead
+// of a String (and nothing gets boxed or wrapped on the way)
+//
+// split into stripes, each an open-addressing table (linear probing, keys interleaved low/high in one long[]) behind
+// its own lock; writers lock their stripe, readers don't: a stripe's version is odd while a write is in progress,
+// and a read only counts if the version was even and unchanged around it — the same trick as SpotStateTable. after a
+// few failed tries a reader just takes the lock
+//
+// computeIfAbsent/computeIfPresent run their function under the stripe lock, like ConcurrentHashMap's do, which is
+// what ParkingLot relies on to keep one plate from parking twice; the lock is reentrant, so the function may touch
+// other plates of the same stripe
+final class PlateIndex<V> {
+
+    private static final int STRIPES = 64;
+    private static final int INITIAL_SLOTS = 16;
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+    // a low half is never 0 for a real plate, so 0 marks an empty slot
+    private static final long EMPTY = 0L;
+
+    // swapped as a whole on resize, so a reader can't pair old keys with new values
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int slots) {
+            this.keys = new long[slots * 2];
+            this.values = new Object[slots];
+            this.mask = slots - 1;
+        }
+    }
+
+    private static final class Stripe extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        Table table = new Table(INITIAL_SLOTS);
+        volatile int version;
+        volatile int size;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    PlateIndex() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            stripes[stripe] = new Stripe();
+        }
+    }
+
+    V get(long low, long high) {
+        if (low <= 0) {
+            return null;
+        }
+        long hash = hash(low, high);
+        Stripe stripe = stripeFor(hash);
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            int version = stripe.version;
+            if ((version & 1) == 0) {
+                Object found = find(stripe.table, low, high, hash);
+                // keeps the table reads above from drifting past the re-check
+                VarHandle.acquireFence();
+                if (stripe.version == version) {
+                    return cast(found);
+                }
+            }
+            Thread.onSpinWait();
+        }
+        stripe.lock();
+        try {
+            return cast(find(stripe.table, low, high, hash));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * The value for the plate; if there is none, {@code create} runs (under the stripe lock) and a non-null result
+     * is stored.
+     *
+     * @return the existing value, the new one, or null if {@code create} returned null.
+     */
+    V computeIfAbsent(long low, long high, Supplier<? extends V> create) {
+        long hash = hash(low, high);
+        Stripe stripe = stripeFor(hash);
+        stripe.lock();
+        try {
+            Object existing = find(stripe.table, low, high, hash);
+            if (existing != null) {
+                return cast(existing);
+            }
+            V created = create.get();
+            if (created != null) {
+                store(stripe, low, high, hash, created);
+            }
+            return created;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * If the plate has a value, replaces it with {@code remap}'s result (under the stripe lock); a null result
+     * removes the plate.
+     *
+     * @return the new value, or null if the plate was absent or got removed.
+     */
+    V computeIfPresent(long low, long high, UnaryOperator<V> remap) {
+        long hash = hash(low, high);
+        Stripe stripe = stripeFor(hash);
+        stripe.lock();
+        try {
+            Object existing = find(stripe.table, low, high, hash);
+            if (existing == null) {
+                return null;
+            }
+            V remapped = remap.apply(cast(existing));
+            if (remapped == null) {
+                delete(stripe, low, high, hash);
+            } else {
+                store(stripe, low, high, hash, remapped);
+            }
+            return remapped;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    V put(long low, long high, V value) {
+        long hash = hash(low, high);
+        Stripe stripe = stripeFor(hash);
+        stripe.lock();
+        try {
+            Object previous = find(stripe.table, low, high, hash);
+            store(stripe, low, high, hash, value);
+            return cast(previous);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    V remove(long low, long high) {
+        long hash = hash(low, high);
+        Stripe stripe = stripeFor(hash);
+        stripe.lock();
+        try {
+            return cast(delete(stripe, low, high, hash));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    // bounded by the table size, so a torn optimistic read can't spin forever
+    private static Object find(Table table, long low, long high, long hash) {
+        int slot = (int) hash & table.mask;
+        for (int probes = 0; probes <= table.mask; probes++) {
+            long key = table.keys[slot * 2];
+            if (key == EMPTY) {
+                return null;
+            }
+            if (key == low && table.keys[slot * 2 + 1] == high) {
+                return table.values[slot];
+            }
+            slot = (slot + 1) & table.mask;
+        }
+        return null;
+    }
+
+    // lock held; replaces in place or inserts, growing the table first so it stays at most half full
+    private static void store(Stripe stripe, long low, long high, long hash, Object value) {
+        if (low <= 0) {
+            throw new IllegalArgumentException("Not a packed plate: " + low);
+        }
+        beginWrite(stripe);
+        Table table = stripe.table;
+        if ((stripe.size + 1) * 2 > table.values.length) {
+            table = grow(table);
+            stripe.table = table;
+        }
+        int slot = (int) hash & table.mask;
+        while (table.keys[slot * 2] != EMPTY
+                && !(table.keys[slot * 2] == low && table.keys[slot * 2 + 1] == high)) {
+            slot = (slot + 1) & table.mask;
+        }
+        if (table.keys[slot * 2] == EMPTY) {
+            stripe.size++;
+        }
+        table.keys[slot * 2] = low;
+        table.keys[slot * 2 + 1] = high;
+        table.values[slot] = value;
+        endWrite(stripe);
+    }
+
+    // lock held; backward-shift delete, so probe chains stay unbroken without tombstones
+    private static Object delete(Stripe stripe, long low, long high, long hash) {
+        Table table = stripe.table;
+        int slot = (int) hash & table.mask;
+        while (true) {
+            long key = table.keys[slot * 2];
+            if (key == EMPTY) {
+                return null;
+            }
+            if (key == low && table.keys[slot * 2 + 1] == high) {
+                break;
+            }
+            slot = (slot + 1) & table.mask;
+        }
+        Object removed = table.values[slot];
+        beginWrite(stripe);
+        int hole = slot;
+        int next = (hole + 1) & table.mask;
+        while (table.keys[next * 2] != EMPTY) {
+            int home = (int) hash(table.keys[next * 2], table.keys[next * 2 + 1]) & table.mask;
+            // an entry can fill the hole if its home slot isn't cyclically inside (hole, next]
+            if (((next - home) & table.mask) >= ((next - hole) & table.mask)) {
+                table.keys[hole * 2] = table.keys[next * 2];
+                table.keys[hole * 2 + 1] = table.keys[next * 2 + 1];
+                table.values[hole] = table.values[next];
+                hole = next;
+            }
+            next = (next + 1) & table.mask;
+        }
+        table.keys[hole * 2] = EMPTY;
+        table.keys[hole * 2 + 1] = EMPTY;
+        table.values[hole] = null;
+        stripe.size--;
+        endWrite(stripe);
+        return removed;
+    }
+
+    private static Table grow(Table table) {
+        Table grown = new Table(table.values.length * 2);
+        for (int slot = 0; slot < table.values.length; slot++) {
+            long low = table.keys[slot * 2];
+            if (low == EMPTY) {
+                continue;
+            }
+            long high = table.keys[slot * 2 + 1];
+            int target = (int) hash(low, high) & grown.mask;
+            while (grown.keys[target * 2] != EMPTY) {
+                target = (target + 1) & grown.mask;
+            }
+            grown.keys[target * 2] = low;
+            grown.keys[target * 2 + 1] = high;
+            grown.values[target] = table.values[slot];
+        }
+        return grown;
+    }
+
+    // odd version first, and no table store may be seen before it
+    private static void beginWrite(Stripe stripe) {
+        stripe.version = stripe.version + 1;
+        VarHandle.releaseFence();
+    }
+
+    private static void endWrite(Stripe stripe) {
+        stripe.version = stripe.version + 1;
+    }
+
+    private Stripe stripeFor(long hash) {
+        // the top bits pick the stripe, the bottom bits the slot, so the two don't correlate
+        return stripes[(int) (hash >>> 58)];
+    }
+
+    // murmur3's finalizer over both halves; plates like SIM1, SIM2... differ only in the last digit
+    private static long hash(long low, long high) {
+        long h = low * 0x9E3779B97F4A7C15L ^ high;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+}
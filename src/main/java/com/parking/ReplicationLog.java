@@ -0,0 +1,235 @@
+package com.parking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// the primary's side of replication: every park, remove, payment and layout change the lot makes, in one order,
+// numbered from 1, kept in memory for followers to pull (see LotFollower)
+// ParkingLot appends from the same places it writes its state store — inside the plate's compute for park/remove —
+// so a spot's records come out in the order they happened, the same argument LotJournal makes for its file
+//
+// only the newest retainedRecords are kept; a follower that falls further behind than that, starts from nothing,
+// or was following some other log (a restarted or newly promoted primary) gets a snapshot instead: the current
+// spot map and every parked car, tagged with the last sequence number it covers. the snapshot is taken with
+// appends held off, but a change published just before its record was appended can still show up in it, so a
+// follower skips records the snapshot already reflects, the same way journal replay does after a compaction. a
+// snapshot is state only, so payments reach just the followers that were on the log when they were recorded
+//
+// records are single lines of text, '|'-separated like the journal's, so any transport that can move lines can
+// carry them:
+//   PARK|<spot>|<type>|<plate>|<entry second>
+//   REMOVE|<spot>|<plate>
+//   PAYMENT|<plate>|<cents>|OK      or      PAYMENT|<plate>|<cents>|FAILED|<reason>
+//   LAYOUT|<run>;<run>;...          (runs as in lot_layout.txt, see SpotMap)
+public final class ReplicationLog {
+
+    /**
+     * @param retainedRecords how many of the newest records stay available to followers that are catching up
+     */
+    public record Settings(int retainedRecords) {
+
+        public Settings {
+            if (retainedRecords <= 0) {
+                throw new IllegalArgumentException("Retained records must be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(65_536);
+        }
+    }
+
+    /**
+     * What one fetch returns.
+     *
+     * @param logId         which log the records come from; a follower hands it back on its next fetch
+     * @param lastSequence  the sequence number of the last record here, or the one asked after if there are none
+     * @param headSequence  the newest record the primary had at the time, for measuring how far behind a follower is
+     * @param snapshot      true if the records replace the follower's state instead of following on from it
+     */
+    public record Batch(long logId, long lastSequence, long headSequence, boolean snapshot, List<String> records) {
+    }
+
+    // the lot writes its current state as records (a LAYOUT, then one PARK per parked car) on request
+    interface SnapshotSource {
+        List<String> snapshotRecords();
+    }
+
+    // what a follower does with each record; park/remove follow the journal's replay handler
+    interface Handler extends LotStateStore.ReplayHandler {
+        void payment(String licensePlate, long cents, boolean succeeded, String reason);
+
+        void layout(List<SpotMap.Run> runs);
+    }
+
+    private static final String PARK = "PARK";
+    private static final String REMOVE = "REMOVE";
+    private static final String PAYMENT = "PAYMENT";
+    private static final String LAYOUT = "LAYOUT";
+
+    private final long logId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final String[] ring;
+    private final SnapshotSource snapshotSource;
+    private final LongAdder appended;
+    private final LongAdder snapshots;
+    // sequence number of the newest record; the ring holds (head - ring.length, head]
+    private long head;
+    private int waiting;
+
+    ReplicationLog(Settings settings, SnapshotSource snapshotSource, LotMetrics metrics) {
+        this.ring = new String[settings.retainedRecords()];
+        this.snapshotSource = snapshotSource;
+        this.appended = metrics.counter("replication.records");
+        this.snapshots = metrics.counter("replication.snapshots_served");
+        metrics.gauge("replication.head", this::getHeadSequence);
+    }
+
+    public long getLogId() {
+        return logId;
+    }
+
+    public synchronized long getHeadSequence() {
+        return head;
+    }
+
+    /**
+     * The records after {@code afterSequence}, waiting up to {@code waitMillis} for one to arrive if there are none
+     * yet. A follower that can't continue from there (see the class comment) gets a snapshot instead.
+     *
+     * @param logId         the log the follower's {@code afterSequence} refers to; anything else, e.g. 0 for a new
+     *                      follower, gets a snapshot
+     * @param afterSequence the last sequence number the follower has applied
+     */
+    public Batch fetch(long logId, long afterSequence, int maxRecords, long waitMillis) throws InterruptedException {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("A fetch has to allow at least one record.");
+        }
+        long deadline = System.nanoTime() + waitMillis * 1_000_000;
+        synchronized (this) {
+            if (logId != this.logId || afterSequence > head || afterSequence < head - ring.length) {
+                snapshots.increment();
+                return new Batch(this.logId, head, head, true, snapshotSource.snapshotRecords());
+            }
+            long remaining;
+            while (head == afterSequence && (remaining = deadline - System.nanoTime()) > 0) {
+                waiting++;
+                try {
+                    wait(Math.max(1, remaining / 1_000_000));
+                } finally {
+                    waiting--;
+                }
+            }
+            // a wait long enough for the ring to lap this follower leaves it nothing to continue from
+            if (afterSequence < head - ring.length) {
+                snapshots.increment();
+                return new Batch(this.logId, head, head, true, snapshotSource.snapshotRecords());
+            }
+            int count = (int) Math.min(maxRecords, head - afterSequence);
+            List<String> records = new ArrayList<>(count);
+            for (long sequence = afterSequence + 1; sequence <= afterSequence + count; sequence++) {
+                records.add(ring[(int) (sequence % ring.length)]);
+            }
+            return new Batch(this.logId, afterSequence + count, head, false, records);
+        }
+    }
+
+    void recordPark(int spotId, Vehicle vehicle, long entryEpochSecond) {
+        append(parkRecord(spotId, vehicle.getType(), vehicle.getLicensePlate(), entryEpochSecond));
+    }
+
+    void recordRemove(int spotId, String licensePlate) {
+        append(REMOVE + "|" + spotId + "|" + licensePlate);
+    }
+
+    void recordPayment(String licensePlate, long cents, boolean succeeded, String reason) {
+        append(PAYMENT + "|" + licensePlate + "|" + cents + (succeeded ? "|OK" : "|FAILED|" + reason.replace('\n', ' ')));
+    }
+
+    void recordLayout(List<SpotMap.Run> runs) {
+        append(layoutRecord(runs));
+    }
+
+    static String parkRecord(int spotId, VehicleType vehicleType, String licensePlate, long entryEpochSecond) {
+        return PARK + "|" + spotId + "|" + vehicleType.getDisplayName() + "|" + licensePlate + "|" + entryEpochSecond;
+    }
+
+    static String layoutRecord(List<SpotMap.Run> runs) {
+        StringBuilder record = new StringBuilder(LAYOUT).append('|');
+        for (int index = 0; index < runs.size(); index++) {
+            if (index > 0) {
+                record.append(';');
+            }
+            record.append(SpotMap.format(runs.get(index)));
+        }
+        return record.toString();
+    }
+
+    /**
+     * Hands one record to the handler.
+     *
+     * @throws IllegalArgumentException if it isn't a record this log writes.
+     */
+    static void apply(String record, Handler handler) {
+        String[] parts = record.split("\\|", 5);
+        try {
+            switch (parts[0]) {
+                case PARK -> {
+                    if (parts.length != 5) {
+                        break;
+                    }
+                    VehicleType vehicleType = VehicleType.parse(parts[2]);
+                    // a type this version doesn't know can't be placed, same as in the journal
+                    if (vehicleType == null) {
+                        System.err.println("Skipping replicated park with unknown vehicle type: " + record);
+                        return;
+                    }
+                    handler.park(Integer.parseInt(parts[1]), vehicleType, parts[3], Long.parseLong(parts[4]));
+                    return;
+                }
+                case REMOVE -> {
+                    if (parts.length != 3) {
+                        break;
+                    }
+                    handler.remove(Integer.parseInt(parts[1]), parts[2]);
+                    return;
+                }
+                case PAYMENT -> {
+                    if (parts.length < 4) {
+                        break;
+                    }
+                    boolean succeeded = "OK".equals(parts[3]);
+                    handler.payment(parts[1], Long.parseLong(parts[2]), succeeded, parts.length == 5 ? parts[4] : "");
+                    return;
+                }
+                case LAYOUT -> {
+                    String body = record.substring(LAYOUT.length() + 1);
+                    List<SpotMap.Run> runs = new ArrayList<>();
+                    for (String run : body.isEmpty() ? new String[0] : body.split(";")) {
+                        runs.add(SpotMap.parse(run));
+                    }
+                    handler.layout(runs);
+                    return;
+                }
+                default -> {
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            // falls through to the complaint below
+        }
+        throw new IllegalArgumentException("Not a replication record: " + record);
+    }
+
+    // built before taking the monitor, so the time appends hold it is one array store
+    private void append(String record) {
+        synchronized (this) {
+            head++;
+            ring[(int) (head % ring.length)] = record;
+            if (waiting > 0) {
+                notifyAll();
+            }
+        }
+        appended.increment();
+    }
+}
@@ -0,0 +1,22 @@
+package com.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// how a follower reaches the primary's ReplicationLog; followers pull, so the primary never waits on a slow or dead
+// follower, and all a transport has to carry is one request and its batch of text lines
+// InProcessTransport is the stand-in for tests and single-machine setups; one over a socket would send the four
+// arguments and get the batch back as lines
+public interface ReplicationTransport extends Closeable {
+
+    /**
+     * Same contract as {@link ReplicationLog#fetch}, on whichever primary this transport reaches.
+     *
+     * @throws IOException if the primary can't be reached.
+     */
+    ReplicationLog.Batch fetch(long logId, long afterSequence, int maxRecords, long waitMillis)
+            throws IOException, InterruptedException;
+
+    @Override
+    void close();
+}
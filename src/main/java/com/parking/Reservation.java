@@ -0,0 +1,10 @@
+package com.parking;
+
+// one advance booking: a spot of the given size held for a plate between two instants (epoch seconds)
+// it holds a size, not a particular spot — whichever spot of that size is free when the car shows up is its
+public record Reservation(long id, String licensePlate, SpotSize size, long startEpochSecond, long endEpochSecond) {
+
+    public boolean overlaps(long fromEpochSecond, long toEpochSecond) {
+        return startEpochSecond < toEpochSecond && fromEpochSecond < endEpochSecond;
+    }
+}
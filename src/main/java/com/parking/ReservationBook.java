@@ -0,0 +1,448 @@
+package com.parking;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+// advance bookings for one lot: "hold a compact spot for AB123 from 14:00 to 17:00"
+// every spot size gets a BookingTimeline, so "is there room for one more in this window" is a range max no matter how
+// many bookings exist; a booking only ever competes with other bookings there, since nobody knows when today's cars leave
+//
+// once a booking's start comes around it becomes an active hold: walk-ins can't take the last spots of that size
+// (see ParkingLot.claimFreeSpot) and the booked plate parks in one of them. a hold nobody claims within the grace
+// period is a no-show and goes back to the pool
+//
+// bookings move through their lifecycle on a shared sweeper thread that sleeps until the next start/no-show/end is
+// due, so an idle lot never wakes up to poll. on a VirtualClock there's nothing to sleep on, so whoever moves the
+// clock calls sweep() instead. bookings aren't persisted yet — a restart forgets them
+public final class ReservationBook {
+
+    /**
+     * @param slotSeconds        bookings are rounded out to whole slots of this length.
+     * @param maxAdvanceDays     how far ahead a booking may end.
+     * @param noShowGraceSeconds how long after its start a hold waits for its car.
+     */
+    public record Settings(int slotSeconds, int maxAdvanceDays, int noShowGraceSeconds) {
+
+        public Settings {
+            if (slotSeconds <= 0 || maxAdvanceDays <= 0 || noShowGraceSeconds < 0) {
+                throw new IllegalArgumentException("Reservation slots and horizon must be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(900, 14, 900);
+        }
+    }
+
+    private enum State {
+        PENDING,
+        ACTIVE,
+        REDEEMED,
+        RELEASED
+    }
+
+    // ties at the same second run in this order, so a zero-grace booking is activated before it can be a no-show
+    private enum EventKind {
+        ACTIVATE,
+        NO_SHOW,
+        END
+    }
+
+    private record Event(long atEpochSecond, EventKind kind, Booking booking) implements Comparable<Event> {
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(atEpochSecond, other.atEpochSecond);
+            return byTime != 0 ? byTime : kind.compareTo(other.kind);
+        }
+    }
+
+    private static final class Booking {
+        private final Reservation reservation;
+        private final long plateLow;
+        private final long plateHigh;
+        // only moved forward with compareAndSet, so cancel, no-show and a parking car can race safely;
+        // the move to RELEASED also happens under the size's timeline lock, so a rebase never counts it twice
+        private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+        private Booking(Reservation reservation) {
+            this.reservation = reservation;
+            this.plateLow = PlateCodec.low(reservation.licensePlate());
+            this.plateHigh = PlateCodec.high(reservation.licensePlate());
+        }
+    }
+
+    private static final SpotSize[] SIZES = SpotSize.values();
+    // one thread for every lot in the JVM; a sweep is a few map operations
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reservation-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Settings settings;
+    private final int[] capacityBySize;
+    private final ToIntFunction<SpotSize> freeSpots;
+    private final Runnable onHoldReleased;
+    private final Clock clock;
+    // per size: the timeline, the slot its index 0 stands for, guarded by the timeline itself
+    private final BookingTimeline[] timelines = new BookingTimeline[SIZES.length];
+    private final long[] originSlots = new long[SIZES.length];
+    private final Map<Long, Booking> bookings = new ConcurrentHashMap<>();
+    // a plate has at most one booking that hasn't started or hasn't been claimed yet
+    private final PlateIndex<Booking> openByPlate = new PlateIndex<>();
+    private final AtomicIntegerArray activeHolds = new AtomicIntegerArray(SIZES.length);
+    // lets a park skip every reservation check with one read while no hold is active anywhere
+    private final AtomicInteger activeHoldTotal = new AtomicInteger();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final LongAdder redeemed;
+    private final LongAdder noShows;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAtEpochSecond = Long.MAX_VALUE;
+
+    /**
+     * @param capacityBySize spots per {@link SpotSize}, indexed by ordinal.
+     * @param freeSpots      free spots of a size right now; used to refuse a booking that starts immediately.
+     * @param onHoldReleased runs after a hold is dropped without its car (no-show or cancel), since that frees
+     *                       spots for walk-ins without anything leaving the lot.
+     */
+    ReservationBook(int[] capacityBySize, ToIntFunction<SpotSize> freeSpots, Runnable onHoldReleased, Settings settings,
+                    LotMetrics metrics, Clock clock) {
+        this.clock = clock;
+        this.settings = settings;
+        this.capacityBySize = capacityBySize.clone();
+        this.freeSpots = freeSpots;
+        this.onHoldReleased = onHoldReleased;
+        // the horizon plus as much again behind it, so the origin only has to move every maxAdvanceDays or so
+        int slots = (int) (2L * settings.maxAdvanceDays() * 86_400 / settings.slotSeconds()) + 1;
+        for (SpotSize size : SIZES) {
+            timelines[size.ordinal()] = new BookingTimeline(slots);
+            originSlots[size.ordinal()] = -1;
+        }
+        this.redeemed = metrics.counter("reservations.redeemed");
+        this.noShows = metrics.counter("reservations.no_shows");
+        metrics.gauge("reservations.active_holds", activeHoldTotal::get);
+        metrics.gauge("reservations.booked", bookings::size);
+    }
+
+    /**
+     * Books a spot of {@code size} for the plate between the two instants (rounded out to whole slots).
+     *
+     * @return the reservation, or null if that size is fully booked somewhere in the window, or the plate already
+     * has a booking that hasn't been used yet.
+     * @throws IllegalArgumentException for an empty window, one already over, or one ending beyond the horizon.
+     */
+    public Reservation reserve(String licensePlate, SpotSize size, long startEpochSecond, long endEpochSecond) {
+        return reserve(licensePlate, size, startEpochSecond, endEpochSecond, clock.millis() / 1000);
+    }
+
+    Reservation reserve(String licensePlate, SpotSize size, long startEpochSecond, long endEpochSecond, long nowEpochSecond) {
+        String plate = PlateCodec.normalize(licensePlate);
+        if (plate == null || size == null || endEpochSecond <= startEpochSecond || endEpochSecond <= nowEpochSecond) {
+            throw new IllegalArgumentException("A reservation needs a plate, a size and a window that hasn't ended.");
+        }
+        if (endEpochSecond > nowEpochSecond + settings.maxAdvanceDays() * 86_400L) {
+            throw new IllegalArgumentException("Reservations can only be made " + settings.maxAdvanceDays() + " days ahead.");
+        }
+        long id = nextId.getAndIncrement();
+        Booking booking = new Booking(new Reservation(id, plate, size, startEpochSecond, endEpochSecond));
+        if (openByPlate.computeIfAbsent(booking.plateLow, booking.plateHigh, () -> booking) != booking) {
+            return null;
+        }
+        boolean startsNow = startEpochSecond <= nowEpochSecond;
+        BookingTimeline timeline = timelines[size.ordinal()];
+        synchronized (timeline) {
+            rebaseIfDue(size, nowEpochSecond);
+            int from = slotIndex(size, Math.max(startEpochSecond, nowEpochSecond));
+            int to = slotIndexRoundedUp(size, endEpochSecond);
+            // a booking that starts right away also needs a spot that's actually free now, past the other holds
+            boolean full = timeline.maxOver(from, to) >= capacityBySize[size.ordinal()]
+                    || startsNow && freeSpots.applyAsInt(size) <= activeHolds.get(size.ordinal());
+            if (full) {
+                forget(booking);
+                return null;
+            }
+            timeline.add(from, to, 1);
+            bookings.put(id, booking);
+            if (startsNow) {
+                // activated while still holding the lock, so two immediate bookings can't both see the same free spot
+                activate(booking);
+            }
+        }
+        if (!startsNow) {
+            schedule(new Event(startEpochSecond, EventKind.ACTIVATE, booking));
+        }
+        long noShowAt = Math.min(Math.max(startEpochSecond, nowEpochSecond) + settings.noShowGraceSeconds(), endEpochSecond);
+        schedule(new Event(noShowAt, EventKind.NO_SHOW, booking));
+        schedule(new Event(endEpochSecond, EventKind.END, booking));
+        return booking.reservation;
+    }
+
+    /**
+     * Cancels a booking that hasn't been used, freeing its place in the timeline from now on.
+     *
+     * @return false if there's no such booking or its car already parked.
+     */
+    public boolean cancel(long reservationId) {
+        return cancel(reservationId, clock.millis() / 1000);
+    }
+
+    boolean cancel(long reservationId, long nowEpochSecond) {
+        Booking booking = bookings.get(reservationId);
+        if (booking == null) {
+            return false;
+        }
+        boolean wasHolding;
+        synchronized (timelines[booking.reservation.size().ordinal()]) {
+            wasHolding = !booking.state.compareAndSet(State.PENDING, State.RELEASED);
+            if (wasHolding && !releaseHold(booking)) {
+                return false;
+            }
+            unbook(booking, nowEpochSecond);
+        }
+        bookings.remove(reservationId);
+        if (wasHolding) {
+            onHoldReleased.run();
+        }
+        return true;
+    }
+
+    /**
+     * How many more bookings of {@code size} would fit everywhere in the window.
+     */
+    public int available(SpotSize size, long startEpochSecond, long endEpochSecond) {
+        return available(size, startEpochSecond, endEpochSecond, clock.millis() / 1000);
+    }
+
+    int available(SpotSize size, long startEpochSecond, long endEpochSecond, long nowEpochSecond) {
+        BookingTimeline timeline = timelines[size.ordinal()];
+        synchronized (timeline) {
+            if (originSlots[size.ordinal()] < 0) {
+                return capacityBySize[size.ordinal()];
+            }
+            int booked = timeline.maxOver(slotIndex(size, Math.max(startEpochSecond, nowEpochSecond)),
+                    slotIndexRoundedUp(size, endEpochSecond));
+            return Math.max(0, capacityBySize[size.ordinal()] - booked);
+        }
+    }
+
+    // the lot calls this after a layout change; bookings already made stay, even if they now add up to more than
+    // the new capacity — a smaller size just takes no new bookings until enough of them are over
+    void setCapacity(SpotSize size, int capacity) {
+        synchronized (timelines[size.ordinal()]) {
+            capacityBySize[size.ordinal()] = capacity;
+        }
+    }
+
+    /**
+     * Holds that have started but whose car hasn't parked yet.
+     */
+    public int getActiveHolds(SpotSize size) {
+        return activeHolds.get(size.ordinal());
+    }
+
+    public int getBookedCount() {
+        return bookings.size();
+    }
+
+    /**
+     * The booking the plate has that hasn't been used yet, or null.
+     */
+    public Reservation findOpen(String licensePlate) {
+        Booking booking = openByPlate.get(PlateCodec.low(licensePlate), PlateCodec.high(licensePlate));
+        return booking == null ? null : booking.reservation;
+    }
+
+    // the size this plate holds right now, or null; one volatile read when no hold is active anywhere
+    SpotSize heldSize(Vehicle vehicle) {
+        if (activeHoldTotal.get() == 0) {
+            return null;
+        }
+        Booking booking = openByPlate.get(vehicle.plateLow(), vehicle.plateHigh());
+        return booking != null && booking.state.get() == State.ACTIVE ? booking.reservation.size() : null;
+    }
+
+    // called once the plate's car has a spot of its held size; losing the race to a no-show just means it parked anyway
+    void redeem(Vehicle vehicle) {
+        Booking booking = openByPlate.get(vehicle.plateLow(), vehicle.plateHigh());
+        if (booking != null && booking.state.compareAndSet(State.ACTIVE, State.REDEEMED)) {
+            dropHold(booking);
+            redeemed.increment();
+        }
+    }
+
+    /**
+     * Whether a walk-in leaving {@code freeAfterClaim} spots of this size would eat into active holds.
+     */
+    boolean blocksWalkIn(SpotSize size, int freeAfterClaim) {
+        int holds = activeHolds.get(size.ordinal());
+        return holds > 0 && freeAfterClaim < holds;
+    }
+
+    boolean hasActiveHolds(SpotSize size) {
+        return activeHolds.get(size.ordinal()) > 0;
+    }
+
+    /**
+     * Runs every start, no-show and end that is due at {@code nowEpochSecond}. The sweeper calls this on its own;
+     * tests call it with their own clock.
+     */
+    void sweep(long nowEpochSecond) {
+        while (true) {
+            Event event;
+            synchronized (events) {
+                event = events.peek();
+                if (event == null || event.atEpochSecond() > nowEpochSecond) {
+                    break;
+                }
+                events.poll();
+            }
+            run(event, nowEpochSecond);
+        }
+        for (SpotSize size : SIZES) {
+            synchronized (timelines[size.ordinal()]) {
+                rebaseIfDue(size, nowEpochSecond);
+            }
+        }
+    }
+
+    private void run(Event event, long nowEpochSecond) {
+        Booking booking = event.booking();
+        switch (event.kind()) {
+            case ACTIVATE -> {
+                BookingTimeline timeline = timelines[booking.reservation.size().ordinal()];
+                synchronized (timeline) {
+                    if (booking.state.get() == State.PENDING) {
+                        activate(booking);
+                    }
+                }
+            }
+            case NO_SHOW -> {
+                synchronized (timelines[booking.reservation.size().ordinal()]) {
+                    if (!releaseHold(booking)) {
+                        return;
+                    }
+                    unbook(booking, nowEpochSecond);
+                }
+                bookings.remove(booking.reservation.id());
+                noShows.increment();
+                onHoldReleased.run();
+            }
+            case END -> {
+                // a redeemed booking just drops out; its timeline entry ends here on its own
+                bookings.remove(booking.reservation.id());
+                forget(booking);
+            }
+        }
+    }
+
+    private void activate(Booking booking) {
+        if (booking.state.compareAndSet(State.PENDING, State.ACTIVE)) {
+            activeHolds.incrementAndGet(booking.reservation.size().ordinal());
+            activeHoldTotal.incrementAndGet();
+        }
+    }
+
+    private boolean releaseHold(Booking booking) {
+        if (!booking.state.compareAndSet(State.ACTIVE, State.RELEASED)) {
+            return false;
+        }
+        dropHold(booking);
+        return true;
+    }
+
+    private void dropHold(Booking booking) {
+        activeHolds.decrementAndGet(booking.reservation.size().ordinal());
+        activeHoldTotal.decrementAndGet();
+        forget(booking);
+    }
+
+    // only if the plate's open booking is still this one; a later booking for the same plate stays
+    private void forget(Booking booking) {
+        openByPlate.computeIfPresent(booking.plateLow, booking.plateHigh, open -> open == booking ? null : open);
+    }
+
+    // gives back whatever part of the window is still ahead; caller holds the size's timeline lock
+    private void unbook(Booking booking, long nowEpochSecond) {
+        Reservation reservation = booking.reservation;
+        forget(booking);
+        timelines[reservation.size().ordinal()].add(
+                slotIndex(reservation.size(), Math.max(reservation.startEpochSecond(), nowEpochSecond)),
+                slotIndexRoundedUp(reservation.size(), reservation.endEpochSecond()), -1);
+    }
+
+    // caller holds the size's timeline lock
+    private void rebaseIfDue(SpotSize size, long nowEpochSecond) {
+        int ordinal = size.ordinal();
+        long nowSlot = nowEpochSecond / settings.slotSeconds();
+        if (originSlots[ordinal] >= 0 && nowSlot - originSlots[ordinal] <= timelines[ordinal].slots() / 2) {
+            return;
+        }
+        originSlots[ordinal] = nowSlot;
+        BookingTimeline timeline = timelines[ordinal];
+        timeline.clear();
+        for (Booking booking : bookings.values()) {
+            Reservation reservation = booking.reservation;
+            if (reservation.size() == size && booking.state.get() != State.RELEASED
+                    && reservation.endEpochSecond() > nowEpochSecond) {
+                timeline.add(slotIndex(size, Math.max(reservation.startEpochSecond(), nowEpochSecond)),
+                        slotIndexRoundedUp(size, reservation.endEpochSecond()), 1);
+            }
+        }
+    }
+
+    private int slotIndex(SpotSize size, long epochSecond) {
+        return (int) (epochSecond / settings.slotSeconds() - originSlots[size.ordinal()]);
+    }
+
+    private int slotIndexRoundedUp(SpotSize size, long epochSecond) {
+        long slot = (epochSecond + settings.slotSeconds() - 1) / settings.slotSeconds();
+        return (int) (slot - originSlots[size.ordinal()]);
+    }
+
+    // only ever moves the single pending wakeup earlier; the sweep re-arms it for whatever is next
+    private void schedule(Event event) {
+        synchronized (events) {
+            events.add(event);
+            if (event.atEpochSecond() < wakeupAtEpochSecond) {
+                armWakeup(event.atEpochSecond());
+            }
+        }
+    }
+
+    private void sweepNow() {
+        sweep(clock.millis() / 1000);
+        synchronized (events) {
+            Event next = events.peek();
+            wakeupAtEpochSecond = Long.MAX_VALUE;
+            if (next != null) {
+                armWakeup(next.atEpochSecond());
+            }
+        }
+    }
+
+    // caller holds the events lock
+    private void armWakeup(long atEpochSecond) {
+        if (clock instanceof VirtualClock) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAtEpochSecond = atEpochSecond;
+        long delayMillis = Math.max(0, atEpochSecond * 1000 - clock.millis());
+        wakeup = SWEEPER.schedule(this::sweepNow, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
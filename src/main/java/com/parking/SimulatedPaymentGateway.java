@@ -0,0 +1,140 @@
+package com.parking;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// stand-in for a real terminal: answers after a bit of latency, sometimes errors, sometimes hangs, sometimes declines
+// every knob is a rate so tests and load runs can dial in exactly how badly the "network" behaves
+//
+// like a real processor's idempotency keys, a decision is remembered for decisionRetentionMillis or until maxDecisions
+// newer ones push it out; the defaults match PaymentPipeline's, so the gateway never forgets a payment the pipeline
+// could still retry, and a long simulator or load run doesn't keep every payment it ever saw
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    /**
+     * @param latencyMillis usual time to answer
+     * @param jitterMillis  up to this much extra on top of the latency
+     * @param failureRate   share of attempts that throw an IOException (unreachable terminal)
+     * @param hangRate      share of attempts that stall for {@code hangMillis} before answering
+     * @param hangMillis    how long a stalled attempt takes; set it past the pipeline timeout to exercise retries
+     * @param declineRate   share of new charges that get declined
+     * @param decisionRetentionMillis how long a decision is remembered after it was last made
+     * @param maxDecisions  most decisions remembered at once; the oldest are forgotten first
+     */
+    public record Settings(int latencyMillis, int jitterMillis, double failureRate, double hangRate, int hangMillis,
+                           double declineRate, long decisionRetentionMillis, int maxDecisions) {
+
+        // as long as the pipeline remembers a settled payment
+        private static final long DEFAULT_RETENTION_MILLIS = PaymentPipeline.Settings.defaults().settledRetentionMillis();
+        private static final int DEFAULT_MAX_DECISIONS = PaymentPipeline.Settings.defaults().maxSettled();
+
+        public Settings {
+            if (latencyMillis < 0 || jitterMillis < 0 || hangMillis < 0) {
+                throw new IllegalArgumentException("Simulated gateway times can't be negative.");
+            }
+            if (decisionRetentionMillis <= 0 || maxDecisions <= 0) {
+                throw new IllegalArgumentException("Simulated gateway retention must be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(150, 100, 0.02, 0.01, 10_000, 0.0, DEFAULT_RETENTION_MILLIS, DEFAULT_MAX_DECISIONS);
+        }
+
+        // answers straight away and never misbehaves — for tests and load runs that aren't about payments
+        public static Settings instant() {
+            return new Settings(0, 0, 0, 0, 0, 0, DEFAULT_RETENTION_MILLIS, DEFAULT_MAX_DECISIONS);
+        }
+
+        // answers after latencyMillis plus up to jitterMillis, and never errors, hangs or declines
+        public static Settings steady(int latencyMillis, int jitterMillis) {
+            return new Settings(latencyMillis, jitterMillis, 0, 0, 0, 0, DEFAULT_RETENTION_MILLIS, DEFAULT_MAX_DECISIONS);
+        }
+    }
+
+    private record Remembered(Decision decision, long decidedNanos) {
+    }
+
+    private final Settings settings;
+    // latest decision per paymentId, oldest first; an approval sticks, so later attempts get it back without charging
+    // again. guarded by itself
+    private final LinkedHashMap<String, Remembered> decisions = new LinkedHashMap<>();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong charges = new AtomicLong();
+
+    public SimulatedPaymentGateway(Settings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public Decision charge(PaymentRequest request) throws IOException, InterruptedException {
+        attempts.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.failureRate()) {
+            throw new IOException("Payment terminal unreachable");
+        }
+        // decide before the wait, so an attempt that times out on our side still counts as charged on theirs
+        Decision decision = decide(request.paymentId(), random);
+        long wait = random.nextDouble() < settings.hangRate()
+                ? settings.hangMillis()
+                : settings.latencyMillis() + (settings.jitterMillis() == 0 ? 0 : random.nextInt(settings.jitterMillis() + 1));
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+        return decision;
+    }
+
+    /**
+     * Charges the gateway has decided on (approved or declined), not counting attempts that got an approval back.
+     */
+    public long getChargeCount() {
+        return charges.get();
+    }
+
+    /**
+     * Decisions still remembered for answering retries.
+     */
+    public int getRememberedCount() {
+        synchronized (decisions) {
+            return decisions.size();
+        }
+    }
+
+    public long getAttemptCount() {
+        return attempts.get();
+    }
+
+    private Decision decide(String paymentId, ThreadLocalRandom random) {
+        long now = System.nanoTime();
+        synchronized (decisions) {
+            Remembered previous = decisions.remove(paymentId);
+            if (previous != null && previous.decision() == Decision.APPROVED) {
+                // a retry moves to the back too, so a payment still being retried isn't the next one forgotten
+                decisions.put(paymentId, new Remembered(previous.decision(), now));
+                return previous.decision();
+            }
+            Decision decision = random.nextDouble() < settings.declineRate() ? Decision.DECLINED : Decision.APPROVED;
+            decisions.put(paymentId, new Remembered(decision, now));
+            charges.incrementAndGet();
+            forgetOldest(now);
+            return decision;
+        }
+    }
+
+    // drops decisions past the retention window or over the cap, oldest first; caller holds decisions
+    private void forgetOldest(long now) {
+        long cutoff = now - settings.decisionRetentionMillis() * 1_000_000;
+        Iterator<Map.Entry<String, Remembered>> oldest = decisions.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Map.Entry<String, Remembered> entry = oldest.next();
+            if (decisions.size() <= settings.maxDecisions() && entry.getValue().decidedNanos() - cutoff > 0) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+}
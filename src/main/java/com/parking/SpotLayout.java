@@ -0,0 +1,50 @@
+package com.parking;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// how many bays of each size a lot has; spot ids are handed out bike bays first, then compact, then large
+public final class SpotLayout {
+
+    private final Map<SpotSize, Integer> counts;
+
+    private SpotLayout(Map<SpotSize, Integer> counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Every spot large, which is what a plain spot count in config.txt has always meant (anything fits).
+     */
+    public static SpotLayout uniform(int spotCount) {
+        return new SpotLayout(new EnumMap<>(SpotSize.class)).with(SpotSize.LARGE, spotCount);
+    }
+
+    public static SpotLayout of(int bikeSpots, int compactSpots, int largeSpots) {
+        return new SpotLayout(new EnumMap<>(SpotSize.class))
+                .with(SpotSize.BIKE, bikeSpots)
+                .with(SpotSize.COMPACT, compactSpots)
+                .with(SpotSize.LARGE, largeSpots);
+    }
+
+    public SpotLayout with(SpotSize size, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Spot count for " + size + " cannot be negative.");
+        }
+        Map<SpotSize, Integer> copy = new EnumMap<>(SpotSize.class);
+        copy.putAll(counts);
+        copy.put(size, count);
+        return new SpotLayout(copy);
+    }
+
+    public int count(SpotSize size) {
+        return counts.getOrDefault(size, 0);
+    }
+
+    public int totalSpots() {
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
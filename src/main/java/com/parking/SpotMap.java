@@ -0,0 +1,108 @@
+package com.parking;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// which zone and size every spot id belongs to, kept in lot_layout.txt next to the state files
+// config.txt only says how many bays of each size a zone has; once bays have been added, closed or repainted while
+// the lot was running, spot ids no longer follow from it, and saved cars are stored by spot id. so the lot writes its
+// actual map here after every layout change, rebuilds from it on the next start and applies config.txt on top
+//
+// one line per run of consecutive ids with the same zone, size and state, covering 1..N with no gaps:
+//   1-20|L1.A|COMPACT
+//   21-22|L1.A|COMPACT|closed
+final class SpotMap {
+
+    static final String FILE_NAME = "lot_layout.txt";
+    private static final String CLOSED = "closed";
+
+    record Run(int firstId, int lastId, String levelId, String zoneId, SpotSize size, boolean closed) {
+    }
+
+    private SpotMap() {
+    }
+
+    /**
+     * @return the runs in id order, or null if the file doesn't exist.
+     * @throws IOException if it can't be read or doesn't describe every id from 1 up exactly once.
+     */
+    static List<Run> read(Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        List<Run> runs = new ArrayList<>();
+        int expectedId = 1;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                Run run;
+                try {
+                    run = parse(trimmed);
+                } catch (RuntimeException ex) {
+                    throw new IOException("Bad line in " + file + ": " + trimmed);
+                }
+                if (run.firstId() != expectedId) {
+                    throw new IOException(file + " skips or repeats spot ids at " + trimmed);
+                }
+                runs.add(run);
+                expectedId = run.lastId() + 1;
+            }
+        }
+        return runs;
+    }
+
+    // written to a temp file and moved over, same as the journal's snapshot, so a crash leaves the old map or the new
+    static void write(Path file, List<Run> runs) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (Run run : runs) {
+                writer.write(format(run));
+                writer.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // one line of the file; replication ships the map in the same form
+    static String format(Run run) {
+        return run.firstId() + "-" + run.lastId() + "|" + run.levelId() + "." + run.zoneId() + "|" + run.size()
+                + (run.closed() ? "|" + CLOSED : "");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the line isn't one {@link #format} could have written.
+     */
+    static Run parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length != 3 && parts.length != 4) {
+            throw new IllegalArgumentException(line);
+        }
+        String[] ids = parts[0].split("-", 2);
+        int firstId = Integer.parseInt(ids[0].trim());
+        int lastId = ids.length > 1 ? Integer.parseInt(ids[1].trim()) : firstId;
+        String[] names = parts[1].trim().split("\\.", 2);
+        if (lastId < firstId || names.length != 2) {
+            throw new IllegalArgumentException(line);
+        }
+        boolean closed = parts.length == 4 && CLOSED.equalsIgnoreCase(parts[3].trim());
+        return new Run(firstId, lastId, names[0], names[1], SpotSize.valueOf(parts[2].trim().toUpperCase()), closed);
+    }
+}
@@ -0,0 +1,342 @@
+package com.parking;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+// all spots of one size in one zone, in the order they were added (ascending ids, except bays repainted from
+// another size later on), plus the free index over them
+// each pool is its own lock, so a car lane and a bike lane (or two zones) don't wait on each other
+// the lock is tried first and only timed when that fails, so an uncontended claim pays nothing for lockWait
+//
+// a layout change works pool by pool under this same lock (see ParkingLot.applyLayout), so it holds up at most the
+// lanes claiming this one size in this one zone, for about as long as a claim takes per 64 spots added
+// a closed slot is out of service: if it was free it's retired on the spot (kept claimed in the index, so nobody
+// can take it), if a car is in it the slot drains — it stays the car's until it leaves and is retired then
+// instead of going back into the index. a slot handed over to another pool (a retyped bay) leaves a null behind
+final class SpotPool {
+
+    private final ParkingZone zone;
+    private final SpotSize size;
+    private ParkingSpot[] spots;
+    private final FreeSpotIndex free;
+    private final BitSet closed = new BitSet();
+    private final BitSet retired = new BitSet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LatencyHistogram lockWait;
+    // slots that still hold a spot (not handed to another pool), and how many of those are closed / retired
+    private int present;
+    private int closedCount;
+    private int retiredCount;
+    // copies of free.freeCount() and the counts above published after every change, so availability reads never
+    // take the lock
+    private volatile int available;
+    private volatile int inService;
+    private volatile int draining;
+    private volatile int closedSlots;
+
+    SpotPool(ParkingZone zone, SpotSize size, ParkingSpot[] spots, LatencyHistogram lockWait) {
+        this.zone = zone;
+        this.lockWait = lockWait;
+        this.size = size;
+        this.spots = spots;
+        this.free = new BitSetFreeSpotIndex(spots.length);
+        this.present = spots.length;
+        publishCounts();
+    }
+
+    ParkingZone getZone() {
+        return zone;
+    }
+
+    SpotSize getSize() {
+        return size;
+    }
+
+    /**
+     * Takes the lowest-id free spot out of the index, or returns null when the pool is full.
+     */
+    ParkingSpot claimLowest() {
+        lock();
+        try {
+            int slot = free.claimLowest();
+            available = free.freeCount();
+            return slot < 0 ? null : spots[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a restored car in a closed slot makes the slot drain rather than stay retired
+    boolean claim(int slot) {
+        lock();
+        try {
+            if (retired.get(slot)) {
+                retired.clear(slot);
+                retiredCount--;
+                publishCounts();
+                return true;
+            }
+            boolean claimed = free.claim(slot);
+            available = free.freeCount();
+            return claimed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives a slot back: into the free index, or straight into retirement if it was closed while taken.
+     *
+     * @return false if the slot was retired instead of freed.
+     */
+    boolean release(int slot) {
+        lock();
+        try {
+            if (closed.get(slot)) {
+                if (!retired.get(slot)) {
+                    retired.set(slot);
+                    retiredCount++;
+                    publishCounts();
+                }
+                return false;
+            }
+            free.release(slot);
+            available = free.freeCount();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a remove asks this before handing its spot to the waitlist; while nothing in the pool is closed that's one
+    // volatile read. a slot closed right after this says false just drains after its next car instead
+    boolean isClosed(int slot) {
+        if (closedSlots == 0) {
+            return false;
+        }
+        lock();
+        try {
+            return closed.get(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isRetired(int slot) {
+        lock();
+        try {
+            return retired.get(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the spots as new free slots; the caller has already made their ids known to the rest of the lot.
+     *
+     * @return the slot of the first one.
+     */
+    int add(ParkingSpot[] added) {
+        lock();
+        try {
+            int first = spots.length;
+            spots = Arrays.copyOf(spots, first + added.length);
+            System.arraycopy(added, 0, spots, first, added.length);
+            free.grow(spots.length);
+            present += added.length;
+            publishCounts();
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to {@code count} slots out of service, highest slots first: free ones before occupied ones, so
+     * cars only keep a closed slot busy when there aren't enough empty ones to close.
+     *
+     * @return how many were closed.
+     */
+    int close(int count) {
+        lock();
+        try {
+            int done = 0;
+            for (int slot = spots.length - 1; slot >= 0 && done < count; slot--) {
+                if (spots[slot] != null && !closed.get(slot) && free.claim(slot)) {
+                    markClosed(slot, true);
+                    done++;
+                }
+            }
+            for (int slot = spots.length - 1; slot >= 0 && done < count; slot--) {
+                if (spots[slot] != null && !closed.get(slot)) {
+                    markClosed(slot, false);
+                    done++;
+                }
+            }
+            publishCounts();
+            return done;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts up to {@code count} closed slots back in service, lowest first; a draining one just stops draining.
+     *
+     * @return how many were reopened.
+     */
+    int reopen(int count) {
+        lock();
+        try {
+            int done = 0;
+            for (int slot = closed.nextSetBit(0); slot >= 0 && done < count; slot = closed.nextSetBit(slot + 1)) {
+                if (spots[slot] == null) {
+                    continue;
+                }
+                reopenLocked(slot);
+                done++;
+            }
+            publishCounts();
+            return done;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // one particular slot, for a follower copying the primary's map (see ParkingLot.mirrorLayout); same rules as
+    // close/reopen, so a free slot retires and a taken one drains
+    void setClosed(int slot, boolean close) {
+        lock();
+        try {
+            if (spots[slot] == null || closed.get(slot) == close) {
+                return;
+            }
+            if (close) {
+                markClosed(slot, free.claim(slot));
+            } else {
+                reopenLocked(slot);
+            }
+            publishCounts();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands one retired spot over for another pool to reuse, e.g. a compact bay repainted as a large one.
+     *
+     * @return the spot, or null if nothing here is retired.
+     */
+    ParkingSpot giveUpRetired() {
+        lock();
+        try {
+            for (int slot = retired.nextSetBit(0); slot >= 0; slot = retired.nextSetBit(slot + 1)) {
+                if (spots[slot] != null) {
+                    return giveUpLocked(slot);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands over one particular slot, closing it first if it's still open and free.
+     *
+     * @return the spot, or null if a car is in it (or it was handed over already).
+     */
+    ParkingSpot giveUp(int slot) {
+        lock();
+        try {
+            if (spots[slot] == null) {
+                return null;
+            }
+            if (!closed.get(slot)) {
+                if (!free.claim(slot)) {
+                    return null;
+                }
+                markClosed(slot, true);
+            }
+            return retired.get(slot) ? giveUpLocked(slot) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int freeCount() {
+        return available;
+    }
+
+    // slots ever added, including closed ones and ones handed to another pool; the next add starts here
+    int slotCount() {
+        lock();
+        try {
+            return spots.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slots open for parking, taken or not; closed ones don't count, even while a car is still draining out.
+     */
+    int capacity() {
+        return inService;
+    }
+
+    int drainingCount() {
+        return draining;
+    }
+
+    // lock held; a slot only retires here if it's already claimed in the index and empty
+    private void markClosed(int slot, boolean retire) {
+        closed.set(slot);
+        closedCount++;
+        if (retire) {
+            retired.set(slot);
+            retiredCount++;
+        }
+    }
+
+    // lock held
+    private void reopenLocked(int slot) {
+        closed.clear(slot);
+        closedCount--;
+        if (retired.get(slot)) {
+            retired.clear(slot);
+            retiredCount--;
+            free.release(slot);
+        }
+    }
+
+    // lock held, slot retired
+    private ParkingSpot giveUpLocked(int slot) {
+        ParkingSpot spot = spots[slot];
+        // stays closed and retired, so the slot is never claimed, reopened or counted again
+        spots[slot] = null;
+        present--;
+        closedCount--;
+        retiredCount--;
+        publishCounts();
+        return spot;
+    }
+
+    // lock held
+    private void publishCounts() {
+        available = free.freeCount();
+        draining = closedCount - retiredCount;
+        inService = present - closedCount;
+        closedSlots = closedCount;
+    }
+
+    private void lock() {
+        if (lock.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        lockWait.recordSince(start);
+    }
+}
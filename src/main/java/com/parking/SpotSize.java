@@ -0,0 +1,8 @@
+package com.parking;
+
+// rough physical size of a bay; a vehicle can use anything at least as big as it needs (see FittingPolicy)
+public enum SpotSize {
+    BIKE,
+    COMPACT,
+    LARGE
+}
@@ -0,0 +1,116 @@
+package com.parking;
+
+// every spot of the lot as of one instant: who is parked where, and since when
+// unlike OccupancySnapshot this one is a true atomic cut (see SpotStateTable), so a plate shows up at most once and
+// the occupied count always matches the spots listed; meant to be reused like OccupancySnapshot — ParkingLot
+// .spotStates(into) only allocates when the lot size differs from the last fill
+public final class SpotStateSnapshot {
+
+    private long[] words = new long[0];
+    private Vehicle[] vehicles = new Vehicle[0];
+    private long version;
+    private int occupied;
+    private long takenAtMillis;
+
+    void reset(int spotCount) {
+        if (words.length != spotCount) {
+            words = new long[spotCount];
+            vehicles = new Vehicle[spotCount];
+        }
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    Vehicle[] vehicles() {
+        return vehicles;
+    }
+
+    // called once a copy has been validated, so the derived numbers only ever describe a consistent one
+    void publish(long version, long takenAtMillis) {
+        this.version = version;
+        this.takenAtMillis = takenAtMillis;
+        int count = 0;
+        for (long word : words) {
+            if (word != 0) {
+                count++;
+            }
+        }
+        this.occupied = count;
+    }
+
+    /**
+     * How many parks and removes the lot had published when this was taken; a later snapshot with the same
+     * version saw exactly the same lot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSpotCount() {
+        return words.length;
+    }
+
+    public int getOccupied() {
+        return occupied;
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public boolean isOccupied(int spotId) {
+        return words[spotId - 1] != 0;
+    }
+
+    /**
+     * @return the vehicle in that spot, or null if it was free.
+     */
+    public Vehicle getVehicle(int spotId) {
+        return vehicles[spotId - 1];
+    }
+
+    /**
+     * @return the entry time of the spot's ticket, or 0 if it was free.
+     */
+    public long getEntryEpochSecond(int spotId) {
+        return SpotStateTable.entryOf(words[spotId - 1]);
+    }
+
+    /**
+     * Where a plate was parked; a linear scan, which is fine for a sweep but not for a gate.
+     *
+     * @return the spot id, or -1 if the plate wasn't in the lot.
+     */
+    public int findPlate(String licensePlate) {
+        // packed once, then two long compares per occupied spot
+        long low = PlateCodec.low(licensePlate);
+        if (low == PlateCodec.INVALID) {
+            return -1;
+        }
+        long high = PlateCodec.high(licensePlate);
+        for (int index = 0; index < vehicles.length; index++) {
+            Vehicle vehicle = vehicles[index];
+            if (vehicle != null && vehicle.plateLow() == low && vehicle.plateHigh() == high) {
+                return index + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Vehicles of that type parked in this snapshot; unknown type names share the "Other" counter like
+     * {@link OccupancySnapshot#getOccupied(String)}.
+     */
+    public int getOccupied(String vehicleType) {
+        int slot = OccupancySnapshot.typeSlot(vehicleType);
+        int count = 0;
+        for (long word : words) {
+            if (word != 0 && SpotStateTable.typeSlotOf(word) == slot) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
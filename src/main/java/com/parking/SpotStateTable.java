@@ -0,0 +1,161 @@
+package com.parking;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// the published copy of every spot's state, for readers that need the whole lot as of one instant
+// (status pages, enforcement sweeps, journal compaction) — reading ParkingSpot one by one can show a car that
+// moved as being in neither spot, or in both
+//
+// one long per spot (occupied bit | type slot | entry second) plus the vehicle reference, guarded by a seqlock
+// that never blocks writers: a writer bumps `begun`, stores, then bumps `ended`; a reader copies everything and
+// keeps the copy only if no write began or was still running while it copied. park/remove in different zones
+// still don't wait on each other, since writers only ever touch the two counters, never a lock
+//
+// if writes are so dense that copies keep failing, the reader raises a flag that holds new writes back for the
+// length of one copy (microseconds even for a big lot), so a dashboard can't be starved forever
+//
+// the arrays come in chunks of 1024 spots, like OpenTicketStore, so the lot can grow without a writer's store
+// landing in an array that's about to be replaced; a new spot only gets its first car after the grow is published
+final class SpotStateTable {
+
+    static final long OCCUPIED = 1L << 56;
+    private static final int TYPE_SHIFT = 48;
+    private static final long ENTRY_MASK = (1L << TYPE_SHIFT) - 1;
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // swapped as a whole on growth, so the spot count a reader sees always matches the chunks it copies
+    private static final class Chunks {
+        final long[][] words;
+        final Vehicle[][] vehicles;
+        final int spotCount;
+
+        Chunks(long[][] words, Vehicle[][] vehicles, int spotCount) {
+            this.words = words;
+            this.vehicles = vehicles;
+            this.spotCount = spotCount;
+        }
+    }
+
+    private volatile Chunks chunks = new Chunks(new long[0][], new Vehicle[0][], 0);
+    private final AtomicLong begun = new AtomicLong();
+    private final AtomicLong ended = new AtomicLong();
+    private final ReentrantLock slowReaders = new ReentrantLock();
+    private volatile boolean readerWaiting;
+    private final LongAdder retries;
+
+    SpotStateTable(int spotCount, LongAdder retries) {
+        this.retries = retries;
+        ensureCapacity(spotCount);
+    }
+
+    // one thread at a time (the lot's layout lock); chunks already in use are carried over, not copied
+    void ensureCapacity(int spotCount) {
+        Chunks current = chunks;
+        if (spotCount <= current.spotCount) {
+            return;
+        }
+        int needed = (spotCount + CHUNK_MASK) >>> CHUNK_BITS;
+        long[][] words = Arrays.copyOf(current.words, needed);
+        Vehicle[][] vehicles = Arrays.copyOf(current.vehicles, needed);
+        for (int chunk = current.words.length; chunk < needed; chunk++) {
+            words[chunk] = new long[CHUNK_SIZE];
+            vehicles[chunk] = new Vehicle[CHUNK_SIZE];
+        }
+        chunks = new Chunks(words, vehicles, spotCount);
+    }
+
+    static long word(VehicleType vehicleType, long entryEpochSecond) {
+        return OCCUPIED | (long) OccupancySnapshot.typeSlot(vehicleType) << TYPE_SHIFT | (entryEpochSecond & ENTRY_MASK);
+    }
+
+    static int typeSlotOf(long word) {
+        return (int) (word >>> TYPE_SHIFT) & 0xFF;
+    }
+
+    static long entryOf(long word) {
+        return word & ENTRY_MASK;
+    }
+
+    // callers serialize writes per spot already (the plate's compute, or startup), so no CAS on the words
+    void publishPark(int spotId, Vehicle vehicle, long entryEpochSecond) {
+        Chunks current = chunks;
+        int index = spotId - 1;
+        beginWrite();
+        current.words[index >>> CHUNK_BITS][index & CHUNK_MASK] = word(vehicle.getType(), entryEpochSecond);
+        current.vehicles[index >>> CHUNK_BITS][index & CHUNK_MASK] = vehicle;
+        ended.incrementAndGet();
+    }
+
+    void publishRemove(int spotId) {
+        Chunks current = chunks;
+        int index = spotId - 1;
+        beginWrite();
+        current.words[index >>> CHUNK_BITS][index & CHUNK_MASK] = 0;
+        current.vehicles[index >>> CHUNK_BITS][index & CHUNK_MASK] = null;
+        ended.incrementAndGet();
+    }
+
+    /**
+     * Copies every spot into {@code into} as of a single instant and returns it.
+     */
+    SpotStateSnapshot read(SpotStateSnapshot into, long takenAtMillis) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            if (tryCopy(into, takenAtMillis)) {
+                return into;
+            }
+            retries.increment();
+            Thread.onSpinWait();
+        }
+        // one slow reader at a time, otherwise two of them could hand the flag back and forth
+        slowReaders.lock();
+        readerWaiting = true;
+        try {
+            // only writes that got past the flag before it went up can still get in the way, and there are few
+            while (!tryCopy(into, takenAtMillis)) {
+                retries.increment();
+                Thread.onSpinWait();
+            }
+            return into;
+        } finally {
+            readerWaiting = false;
+            slowReaders.unlock();
+        }
+    }
+
+    // ended is read before begun: if they match, nothing was mid-write at that moment and nothing started since
+    // the chunks are read after that, so a car parked in a freshly added spot before then is in the copy too
+    private boolean tryCopy(SpotStateSnapshot into, long takenAtMillis) {
+        long version = ended.get();
+        if (begun.get() != version) {
+            return false;
+        }
+        Chunks current = chunks;
+        into.reset(current.spotCount);
+        for (int chunk = 0, from = 0; from < current.spotCount; chunk++, from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, current.spotCount - from);
+            System.arraycopy(current.words[chunk], 0, into.words(), from, length);
+            System.arraycopy(current.vehicles[chunk], 0, into.vehicles(), from, length);
+        }
+        // keeps the array reads above from drifting past the re-check, same trick as StampedLock.validate
+        VarHandle.acquireFence();
+        if (begun.get() != version) {
+            return false;
+        }
+        into.publish(version, takenAtMillis);
+        return true;
+    }
+
+    private void beginWrite() {
+        while (readerWaiting) {
+            Thread.onSpinWait();
+        }
+        begun.incrementAndGet();
+    }
+}
@@ -1,12 +1,59 @@
 package com.parking;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
 
 // tossing in a scrappy test harness so we can sanity check flows without dragging JUnit into the mix
 public final class SystemTest {
 
+    // checks that printed FAIL so far; only the main thread prints results
+    private static int failures;
+
     private SystemTest() {
         // no instances — just static helpers for quick console demos
     }
@@ -29,18 +76,35 @@ public final class SystemTest {
     }
 
     public static void testTicketGeneration() {
+        // a virtual clock ages the ticket by 90 minutes without the test waiting for it
         Vehicle tempCar = new Car("TICKET1");
-        Ticket ticket = Ticket.generateTicket(tempCar);
+        VirtualClock clock = new VirtualClock(Instant.parse("2024-03-04T09:00:00Z"), ZoneOffset.UTC);
+        TariffEngine tariffs = TariffEngine.getDefault();
+        Ticket ticket = Ticket.generateTicket(tempCar, tariffs, clock);
+        clock.advance(Duration.ofMinutes(90));
+        double cost = ticket.closeTicket();
+        long expected = tariffs.priceCents(VehicleType.CAR, ticket.getEntryTime(), ticket.getEntryTime().plusMinutes(90));
+        boolean passed = cost >= 5.0 && ticket.getCostCents() == expected
+                && ticket.getExitTime().equals(ticket.getEntryTime().plusMinutes(90));
+        String details = String.format("computed cost $%.2f after a 90 minute virtual stay", cost);
+
+        // saved to a scratch ledger, so the real tickets.txt never gets a made-up 2024 ticket
+        Path scratch = null;
         try {
-            Thread.sleep(150);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            scratch = Files.createTempDirectory("parking-ticket");
+            Path ledgerFile = scratch.resolve("tickets.txt");
+            TicketLedger ledger = new TicketLedger(ledgerFile, new TicketLedger.Settings(1_000_000, false, 1, 60_000, false));
+            ticket.saveTo(ledger);
+            ledger.close();
+            List<String> saved = Files.readAllLines(ledgerFile);
+            passed &= saved.size() == 1 && saved.get(0).startsWith("TICKET1 | 2024-03-04 09:00:00 | 2024-03-04 10:30:00");
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
         }
-        double cost = ticket.closeTicket();
-        ticket.saveToFile();
-        boolean passed = cost >= 5.0;
-        printResult("Ticket generation", passed,
-                String.format("computed cost $%.2f after quick stay", cost));
+        printResult("Ticket generation", passed, details);
     }
 
     public static void testPaymentFlow() {
@@ -59,17 +123,1924 @@ public final class SystemTest {
                 passed ? "automated scanner input hit the happy path" : "payment helper threw an exception");
     }
 
+    public static void testLargeLotAllocation() {
+        // 100k spots split into 10 batches; with the old linear scan the last batch was ~10x the first
+        int spotCount = 100_000;
+        int batches = 10;
+        int perBatch = spotCount / batches;
+        ParkingLot lot = ParkingLot.createEphemeralLot(spotCount);
+        long[] batchNanos = new long[batches];
+        for (int batch = 0; batch < batches; batch++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < perBatch; i++) {
+                lot.parkVehicle(new Car("BULK" + (batch * perBatch + i)));
+            }
+            batchNanos[batch] = System.nanoTime() - start;
+        }
+
+        // freeing a couple of spots out of order should still hand back the lowest id first
+        lot.removeVehicle("BULK499");
+        lot.removeVehicle("BULK41");
+        boolean lowestFirst = lot.parkVehicle(new Car("ORDER1"))
+                && lot.parkVehicle(new Car("ORDER2"))
+                && !lot.parkVehicle(new Car("ORDER3"))
+                && lot.findSpotByPlate("ORDER1").getId() == 42
+                && lot.findSpotByPlate("ORDER2").getId() == 500;
+
+        long first = batchNanos[0];
+        long last = batchNanos[batches - 1];
+        // the first batch still carries JIT warmup, so this is a loose "didn't grow with occupancy" check
+        boolean flat = last <= first * 3;
+        boolean passed = lowestFirst && flat;
+        printResult("Large lot allocation", passed,
+                String.format("first batch %.2f us/entry, last batch %.2f us/entry%s",
+                        first / 1000.0 / perBatch,
+                        last / 1000.0 / perBatch,
+                        lowestFirst ? "" : ", freed spots were not reused lowest-id first"));
+    }
+
+    public static void testPlateLookup() {
+        ParkingLot lot = ParkingLot.createEphemeralLot(3);
+        lot.parkVehicle(new Car("abc123"));
+        lot.parkVehicle(new Truck("XYZ789"));
+        boolean duplicateRejected = !lot.parkVehicle(new Bike("ABC123"));
+        ParkingSpot found = lot.findSpotByPlate(" abc123 ");
+        boolean lookupWorks = found != null && found.getId() == 1;
+        boolean removed = lot.removeVehicle("abc123");
+        boolean goneAfterRemove = lot.findSpotByPlate("ABC123") == null;
+        boolean othersIntact = lot.findSpotByPlate("xyz789") != null;
+
+        boolean passed = duplicateRejected && lookupWorks && removed && goneAfterRemove && othersIntact;
+        printResult("Plate lookup", passed,
+                passed ? "plate index tracked park/remove" : "plate index drifted from the spots");
+    }
+
+    public static void testConcurrentParkRemove() {
+        // a dozen lanes hammering a small lot with a shared plate pool so plates and spots both collide
+        int lanes = 12;
+        int opsPerLane = 20_000;
+        int plateCount = 96;
+        ParkingLot lot = ParkingLot.createEphemeralLot(48);
+        AtomicIntegerArray netParks = new AtomicIntegerArray(plateCount);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            workers[lane] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int op = 0; op < opsPerLane; op++) {
+                    int plate = random.nextInt(plateCount);
+                    if (random.nextBoolean()) {
+                        if (lot.parkVehicle(new Car("STRESS" + plate))) {
+                            netParks.incrementAndGet(plate);
+                        }
+                    } else if (lot.removeVehicle("STRESS" + plate)) {
+                        netParks.decrementAndGet(plate);
+                    }
+                }
+            });
+            workers[lane].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // a plate parked twice would show up as net parks of 2, a double-booked spot as a missing plate
+        boolean plateCountsSane = true;
+        int expectedOccupied = 0;
+        for (int plate = 0; plate < plateCount; plate++) {
+            int net = netParks.get(plate);
+            plateCountsSane &= net == 0 || net == 1;
+            expectedOccupied += net;
+        }
+        Set<String> seenPlates = new HashSet<>();
+        boolean spotsConsistent = true;
+        int occupied = 0;
+        for (ParkingSpot spot : lot.getSpots()) {
+            Vehicle vehicle = spot.getVehicle();
+            if (vehicle == null) {
+                continue;
+            }
+            occupied++;
+            spotsConsistent &= seenPlates.add(vehicle.getLicensePlate());
+            spotsConsistent &= lot.findSpotByPlate(vehicle.getLicensePlate()) == spot;
+        }
+        OccupancySnapshot snapshot = lot.snapshot();
+        boolean countsMatch = occupied == expectedOccupied
+                && lot.getFreeSpotCount() == lot.getSpots().size() - occupied
+                && snapshot.getOccupied() == occupied
+                && snapshot.getOccupied("Car") == occupied;
+
+        boolean passed = plateCountsSane && spotsConsistent && countsMatch;
+        printResult("Concurrent park/remove", passed,
+                String.format("%d lanes x %d ops, %d spots occupied at the end", lanes, opsPerLane, occupied));
+    }
+
+    public static void testJournalRecovery() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-journal");
+            // huge thresholds so nothing compacts behind our back; we only flush via shutdown
+            LotJournal.Settings settings = new LotJournal.Settings(60_000, 10_000, 10_000);
+            ParkingLot lot = ParkingLot.createPersistentLot(5, scratch, settings);
+            lot.parkVehicle(new Car("JRN1"));
+            lot.parkVehicle(new Bike("JRN2"));
+            lot.parkVehicle(new Truck("JRN3"));
+            lot.removeVehicle("JRN2");
+            lot.shutdownPersistence();
+
+            // simulate dying halfway through writing the next record
+            Path journalFile = scratch.resolve("lot_journal.txt");
+            long intactLength = Files.size(journalFile);
+            Files.writeString(journalFile, "PARK|2|Car|TOR", StandardOpenOption.APPEND);
+
+            ParkingLot recovered = ParkingLot.createPersistentLot(5, scratch, settings);
+            boolean tornIgnored = recovered.findSpotByPlate("TOR") == null;
+            boolean stateMatches = recovered.findSpotByPlate("JRN1").getId() == 1
+                    && recovered.findSpotByPlate("JRN2") == null
+                    && recovered.findSpotByPlate("JRN3").getId() == 3
+                    && recovered.getFreeSpotCount() == 3;
+            // startup folds the replayed journal into lot_state.txt, so the journal should be empty again
+            boolean compacted = Files.size(journalFile) == 0 && intactLength > 0
+                    && Files.readAllLines(scratch.resolve("lot_state.txt")).size() == 2;
+            recovered.parkVehicle(new Car("JRN4"));
+            recovered.shutdownPersistence();
+
+            // a record whose checksum no longer matches is treated like a torn one
+            Files.writeString(journalFile, "REMOVE|1|JRN1|deadbeef\n", StandardOpenOption.APPEND);
+            ParkingLot again = ParkingLot.createPersistentLot(5, scratch, settings);
+            boolean corruptIgnored = again.findSpotByPlate("JRN1") != null
+                    && again.findSpotByPlate("JRN4").getId() == 2;
+            again.shutdownPersistence();
+
+            passed = tornIgnored && stateMatches && compacted && corruptIgnored;
+            details = passed ? "snapshot + journal replay survived torn and corrupt tails" : "recovered lot did not match what was parked";
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Journal recovery", passed, details);
+    }
+
+    public static void testAuditLogger() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-audit");
+            int events = 20_000;
+
+            // blocking mode: a tiny buffer just slows callers down, nothing goes missing
+            Path blockingLog = scratch.resolve("blocking.txt");
+            AuditLogger blocking = new AuditLogger(blockingLog, 16, AuditLogger.OverflowPolicy.BLOCK);
+            for (int i = 0; i < events; i++) {
+                blocking.log("PARK", "car %d", i);
+            }
+            blocking.flush();
+            blocking.close();
+            boolean nothingLost = Files.readAllLines(blockingLog).size() == events && blocking.getDroppedCount() == 0;
+
+            // dropping mode: whatever didn't fit must be accounted for in the dropped count
+            Path droppingLog = scratch.resolve("dropping.txt");
+            AuditLogger dropping = new AuditLogger(droppingLog, 8, AuditLogger.OverflowPolicy.DROP);
+            for (int i = 0; i < events; i++) {
+                dropping.log("PARK", "car %d", i);
+            }
+            dropping.flush();
+            dropping.close();
+            long writtenEvents = Files.readAllLines(droppingLog).stream()
+                    .filter(line -> line.contains("| PARK |"))
+                    .count();
+            boolean dropsAccounted = writtenEvents + dropping.getDroppedCount() == events;
+
+            // a gate still logging after close (shutdown hooks run in any order) must not hang on the full buffer
+            AuditLogger closed = new AuditLogger(scratch.resolve("closed.txt"), 1, AuditLogger.OverflowPolicy.BLOCK);
+            closed.close();
+            Thread lateGate = new Thread(() -> {
+                for (int i = 0; i < 5; i++) {
+                    closed.log("PARK", "late car %d", i);
+                }
+            }, "late-gate");
+            lateGate.setDaemon(true);
+            lateGate.start();
+            lateGate.join(5_000);
+            boolean closedDoesNotBlock = !lateGate.isAlive() && closed.getDroppedCount() == 5;
+
+            passed = nothingLost && dropsAccounted && closedDoesNotBlock;
+            details = String.format("blocking kept all %d, dropping wrote %d and dropped %d",
+                    events, writtenEvents, dropping.getDroppedCount());
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            passed = false;
+            details = "interrupted waiting for a late log call";
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Audit logger", passed, details);
+    }
+
+    public static void testTicketLedgerRotation() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-ledger");
+            Path ledgerFile = scratch.resolve("tickets.txt");
+            // ~50 records per file, quiet so the console doesn't fill up
+            TicketLedger ledger = new TicketLedger(ledgerFile,
+                    new TicketLedger.Settings(2_500, true, 8, 60_000, false));
+            int tickets = 200;
+            for (int i = 0; i < tickets; i++) {
+                Ticket ticket = Ticket.generateTicket(new Car("LEDGER" + i));
+                ticket.closeTicket();
+                ticket.saveTo(ledger);
+            }
+            ledger.close();
+
+            long files;
+            long lines = 0;
+            try (Stream<Path> ledgerFiles = Files.list(scratch)) {
+                files = ledgerFiles.count();
+            }
+            try (Stream<Path> ledgerFiles = Files.list(scratch)) {
+                for (Path file : (Iterable<Path>) ledgerFiles::iterator) {
+                    lines += Files.readAllLines(file).size();
+                }
+            }
+
+            // daily rotation follows the ledger's clock: crossing a virtual midnight rolls the file over
+            VirtualClock clock = new VirtualClock(Instant.parse("2024-03-04T23:30:00Z"), ZoneOffset.UTC);
+            Path dailyFile = Files.createDirectories(scratch.resolve("daily")).resolve("tickets.txt");
+            TicketLedger daily = new TicketLedger(dailyFile, new TicketLedger.Settings(1_000_000, true, 1, 60_000, false), clock);
+            daily.append("BEFORE | 2024-03-04 23:00:00 | 2024-03-04 23:30:00 | $5.00 | Car" + System.lineSeparator());
+            clock.advance(Duration.ofHours(1));
+            daily.append("AFTER | 2024-03-05 00:00:00 | 2024-03-05 00:30:00 | $5.00 | Car" + System.lineSeparator());
+            daily.close();
+            Path rolled = dailyFile.resolveSibling("tickets-2024-03-04.1.txt");
+            boolean rolledOnVirtualDay = Files.exists(rolled) && Files.readAllLines(rolled).get(0).startsWith("BEFORE")
+                    && Files.readAllLines(dailyFile).size() == 1;
+
+            passed = files > 1 && lines == tickets && rolledOnVirtualDay;
+            details = String.format("%d tickets spread over %d files", lines, files);
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Ticket ledger rotation", passed, details);
+    }
+
+    public static void testMappedStateRoundTrip() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-mapped");
+            Files.writeString(scratch.resolve("lot_state.txt"), "2|Car|MAP1\n4|Truck|MAP2\n");
+            Files.writeString(scratch.resolve("lot_journal.txt"), "");
+            int converted = MappedLotState.convertFromText(scratch.resolve("lot_state.txt"),
+                    scratch.resolve("lot_journal.txt"),
+                    scratch.resolve(MappedLotState.FILE_NAME),
+                    6);
+
+            LotJournal.Settings settings = LotJournal.Settings.defaults();
+            ParkingLot lot = ParkingLot.createPersistentLot(6, scratch, settings);
+            boolean convertedRight = converted == 2
+                    && lot.findSpotByPlate("MAP1").getId() == 2
+                    && lot.findSpotByPlate("MAP2").getId() == 4;
+            lot.parkVehicle(new Bike("MAP3"));
+            lot.removeVehicle("MAP2");
+            lot.shutdownPersistence();
+
+            // the text snapshot is stale now; the restart has to come from the binary file
+            ParkingLot reopened = ParkingLot.createPersistentLot(6, scratch, settings);
+            boolean updatedInPlace = reopened.findSpotByPlate("MAP3").getId() == 1
+                    && reopened.findSpotByPlate("MAP2") == null
+                    && reopened.findSpotByPlate("MAP1").getId() == 2;
+            reopened.shutdownPersistence();
+
+            passed = convertedRight && updatedInPlace;
+            details = passed ? "converted text state and reloaded in-place updates" : "binary state did not round-trip";
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Mapped lot state", passed, details);
+    }
+
+    public static void testSpotFitting() {
+        // ids: 1-2 bike bays, 3-4 compact, 5 large
+        SpotLayout layout = SpotLayout.of(2, 2, 1);
+        ParkingLot overflow = ParkingLot.createEphemeralLot(layout, FittingPolicy.bestFitWithOverflow());
+        overflow.parkVehicle(new Bike("FIT1"));
+        overflow.parkVehicle(new Bike("FIT2"));
+        overflow.parkVehicle(new Bike("FIT3"));
+        overflow.parkVehicle(new Truck("FIT4"));
+        boolean carGetsLastCompact = overflow.parkVehicle(new Car("FIT5"));
+        boolean nothingLeftForCars = !overflow.parkVehicle(new Car("FIT6"));
+        boolean overflowRight = overflow.findSpotByPlate("FIT1").getId() == 1
+                && overflow.findSpotByPlate("FIT3").getId() == 3
+                && overflow.findSpotByPlate("FIT4").getId() == 5
+                && overflow.findSpotByPlate("FIT5").getId() == 4
+                && carGetsLastCompact && nothingLeftForCars;
+        // freeing the bike bay means the next bike goes back there instead of eating another car spot
+        overflow.removeVehicle("FIT2");
+        overflow.removeVehicle("FIT5");
+        overflow.parkVehicle(new Bike("FIT7"));
+        boolean bestFitFirst = overflow.findSpotByPlate("FIT7").getId() == 2
+                && overflow.getFreeSpotCount(SpotSize.COMPACT) == 1;
+
+        ParkingLot strict = ParkingLot.createEphemeralLot(layout, FittingPolicy.strict());
+        strict.parkVehicle(new Bike("STR1"));
+        strict.parkVehicle(new Bike("STR2"));
+        boolean strictRejects = !strict.parkVehicle(new Bike("STR3"))
+                && strict.parkVehicle(new Car("STR4"))
+                && strict.findSpotByPlate("STR4").getSize() == SpotSize.COMPACT;
+
+        boolean passed = overflowRight && bestFitFirst && strictRejects;
+        printResult("Spot fitting", passed,
+                passed ? "best-fit with overflow and strict policies placed vehicles as expected" : "vehicles landed in the wrong size class");
+    }
+
+    public static void testZoneRouting() {
+        // L1 is A(1-2) B(3-4) C(5-7) in a row, L2.A(8-9) sits one floor up
+        LotConfig config = LotConfig.parse(String.join("\n",
+                "zone.L1.A=compact:2",
+                "zone.L1.B=compact:2",
+                "zone.L1.C=compact:3",
+                "zone.L2.A=compact:2",
+                "gate.MID=L1.B",
+                "gate.UP=L2.A"));
+        ParkingLot lot = ParkingLot.createEphemeralLot(config);
+        for (int i = 1; i <= 3; i++) {
+            lot.parkVehicle(new Car("ZR" + i), "MID");
+        }
+        // B fills first, then A and C are equally close and C has more room
+        boolean nearestFirst = lot.findSpotByPlate("ZR1").getId() == 3
+                && lot.findSpotByPlate("ZR2").getId() == 4
+                && lot.findSpotByPlate("ZR3").getId() == 5;
+        lot.parkVehicle(new Car("ZR4"), "UP");
+        boolean ownLevel = lot.findSpotByPlate("ZR4").getId() == 8;
+
+        int zoneFree = 0;
+        for (ParkingZone zone : lot.getZones()) {
+            zoneFree += zone.freeCount();
+        }
+        boolean countsAdd = lot.getZones().size() == 4
+                && lot.getFreeSpotCount() == 5
+                && zoneFree == 5
+                && lot.getZones().get(1).freeCount() == 0;
+
+        boolean unknownGateRejected;
+        try {
+            lot.parkVehicle(new Car("ZR5"), "NOPE");
+            unknownGateRejected = false;
+        } catch (IllegalArgumentException expected) {
+            unknownGateRejected = lot.findSpotByPlate("ZR5") == null;
+        }
+
+        boolean passed = nearestFirst && ownLevel && countsAdd && unknownGateRejected;
+        printResult("Zone routing", passed,
+                passed ? "gates routed to their nearest zones and per-zone counts added up" : "zone routing or per-zone counts were off");
+    }
+
+    public static void testOccupancySnapshot() {
+        // L1.A = bike 1-2, compact 3-4, large 5; L1.B = compact 6-7
+        LotConfig config = LotConfig.parse(String.join("\n",
+                "zone.L1.A=bike:2,compact:2,large:1",
+                "zone.L1.B=compact:2"));
+        ParkingLot lot = ParkingLot.createEphemeralLot(config);
+        lot.parkVehicle(new Bike("OCC1"));
+        lot.parkVehicle(new Car("OCC2"));
+        lot.parkVehicle(new Car("OCC3"));
+        lot.parkVehicle(new Car("OCC4"));
+        lot.parkVehicle(new Truck("OCC5"));
+        lot.removeVehicle("OCC3");
+
+        OccupancySnapshot snapshot = lot.snapshot(new OccupancySnapshot());
+        boolean totals = snapshot.getCapacity() == 7
+                && snapshot.getOccupied() == 4
+                && snapshot.getFree() == 3
+                && snapshot.getOccupied("Car") == 2
+                && snapshot.getOccupied("Bike") == 1
+                && snapshot.getOccupied("Truck") == 1
+                && snapshot.getFree(SpotSize.BIKE) == 1
+                && snapshot.getFree(SpotSize.COMPACT) == 2
+                && snapshot.getFree(SpotSize.LARGE) == 0;
+        // OCC4 spilled into L1.B once OCC2/OCC3 took A's compacts
+        boolean perZone = snapshot.getZoneCount() == 2
+                && "L1.B".equals(snapshot.getZoneId(1))
+                && snapshot.getOccupied(1, "Car") == 1
+                && snapshot.getFree(1, SpotSize.COMPACT) == 1
+                && snapshot.getFree(0) == 2;
+
+        // refilling the same object must not allocate; skipped where the JVM can't count allocations
+        boolean allocationFree = true;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            for (int i = 0; i < 20_000; i++) {
+                lot.snapshot(snapshot);
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 20_000; i++) {
+                lot.snapshot(snapshot);
+            }
+            // leaves room for the measuring call itself
+            allocationFree = threads.getThreadAllocatedBytes(threadId) - before < 4_096;
+        }
+
+        ParkingLot big = ParkingLot.createEphemeralLot(120);
+        String lastPage = big.renderStatus(99, 50);
+        boolean paged = lastPage.contains("Page 3 of 3")
+                && lastPage.contains("Spot 101 ")
+                && !lastPage.contains("Spot 100 ")
+                && big.getStatusPageCount() == 3;
+
+        boolean passed = totals && perZone && allocationFree && paged;
+        printResult("Occupancy snapshot", passed,
+                passed ? "counters matched the lot and refilling the snapshot allocated nothing" : "snapshot counters or status pages were off");
+    }
+
+    public static void testTariffEngine() {
+        long day = 20_000L * 24 * 60; // some midnight, in wall-clock minutes
+        TariffEngine standard = TariffEngine.standard();
+        // old behaviour: one hour minimum, then 5.00/h pro rata
+        boolean matchesOldRate = standard.priceCents("Car", day, day + 10) == 500
+                && standard.priceCents("Car", day, day + 90) == 750
+                && standard.priceCents("Truck", day + 100, day + 101) == 500;
+
+        TariffEngine engine = TariffEngine.parse(String.join("\n",
+                "default.hourly=4.00",
+                "Car.rate.08-18=7.00",
+                "Car.cap=30.00",
+                "Truck.hourly=10.00",
+                "Bike.minimum=0"));
+        // 07:00-09:00 straddles the peak window: 4.00 + 7.00
+        boolean timeOfDay = engine.priceCents("Car", day + 7 * 60, day + 9 * 60) == 1_100;
+        // a full weekday for a car would be 14 * 4 + 10 * 7 = 126.00, capped to 30 per calendar day;
+        // 20:00 to 02:00 two days later = 4 hours (16.00) + one capped day + 2 hours (8.00)
+        boolean capped = engine.priceCents("Car", day, day + 24 * 60) == 3_000
+                && engine.priceCents("Car", day + 20 * 60, day + 2 * 24 * 60 + 2 * 60) == 1_600 + 3_000 + 800;
+        boolean perType = engine.priceCents("Truck", day, day + 60) == 1_000
+                && engine.priceCents("Bike", day, day + 15) == 100
+                && engine.priceCents("Van", day, day + 15) == 400;
+
+        Ticket ticket = Ticket.generateTicket(new Truck("TARIFF1"), engine);
+        boolean ticketUsesEngine = ticket.closeTicketCents() == 1_000 && ticket.getCost() == 10.0;
+
+        boolean passed = matchesOldRate && timeOfDay && capped && perType && ticketUsesEngine;
+        printResult("Tariff engine", passed,
+                passed ? "minimums, peak windows, daily caps and per-type rates priced as expected" : "a tariff rule priced wrong");
+    }
+
+    public static void testOpenTicketStore() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-tickets");
+            // the pre-entry-time snapshot format still loads, with the restart standing in as the entry time
+            Files.writeString(scratch.resolve("lot_state.txt"), "3|Car|OLD1\n");
+            LotJournal.Settings settings = new LotJournal.Settings(60_000, 10_000, 10_000);
+            ParkingLot lot = ParkingLot.createPersistentLot(4, scratch, settings);
+            lot.parkVehicle(new Car("OTK1"));
+            lot.parkVehicle(new Truck("OTK2"));
+            LocalDateTime entry = lot.findOpenTicket("OTK1").getEntryTime();
+            boolean legacyLoaded = lot.findOpenTicket("OLD1") != null
+                    && lot.findOpenTicket("OLD1").getEntryTime().toEpochSecond(ZoneOffset.UTC) > 0;
+            lot.shutdownPersistence();
+
+            // the journal replay has to bring the entry time back, not just the spot
+            ParkingLot journaled = ParkingLot.createPersistentLot(4, scratch, settings);
+            Ticket reloaded = journaled.findOpenTicket("OTK1");
+            boolean survivedJournal = reloaded != null && reloaded.getEntryTime().equals(entry);
+            Ticket closed = journaled.checkOut("OTK2");
+            boolean checkedOut = closed != null
+                    && "Truck".equals(closed.getVehicleType())
+                    && closed.closeTicketCents() == 500
+                    && journaled.findSpotByPlate("OTK2") == null
+                    && journaled.findOpenTicket("OTK2") == null
+                    && journaled.checkOut("OTK2") == null;
+            journaled.shutdownPersistence();
+
+            // same again through the binary state file, which keeps the entry time in the slot
+            MappedLotState.convertFromText(scratch.resolve("lot_state.txt"), scratch.resolve("lot_journal.txt"),
+                    scratch.resolve(MappedLotState.FILE_NAME), 4);
+            ParkingLot mapped = ParkingLot.createPersistentLot(4, scratch, settings);
+            boolean survivedMapped = mapped.findOpenTicket("OTK1").getEntryTime().equals(entry)
+                    && mapped.findOpenTicket("OTK2") == null;
+            mapped.shutdownPersistence();
+
+            passed = legacyLoaded && survivedJournal && checkedOut && survivedMapped;
+            details = passed ? "open tickets survived journal and binary restarts and closed on checkout" : "open ticket entry times were lost or wrong";
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Open ticket store", passed, details);
+    }
+
+    public static void testGateEventIngestor() {
+        ParkingLot lot = ParkingLot.createEphemeralLot(2);
+        GateEventIngestor ingestor = new GateEventIngestor(lot, TariffEngine.standard(), new GateEventIngestor.Settings(1_024, 8));
+        long t0 = 1_700_000_000_000L;
+        List<CompletableFuture<GateEventIngestor.Result>> results = List.of(
+                ingestor.submit(GateEvent.enter("", "Car", "GATE1", t0)),
+                ingestor.submit(GateEvent.enter("MAIN", "Truck", "GATE2", t0)),
+                ingestor.submit(GateEvent.enter("", "Car", "GATE3", t0)),
+                ingestor.submit(GateEvent.enter("", "Car", "GATE1", t0)),
+                ingestor.submit(GateEvent.exit("", "GATE1", t0 + 90 * 60_000L)),
+                ingestor.submit(GateEvent.exit("", "NOBODY", t0)),
+                ingestor.submit(GateEvent.enter("", "Boat", "GATE4", t0)),
+                ingestor.submit(GateEvent.enter("WEST", "Car", "GATE5", t0)));
+        GateEventIngestor.Outcome[] expected = {
+                GateEventIngestor.Outcome.PARKED,
+                GateEventIngestor.Outcome.PARKED,
+                GateEventIngestor.Outcome.LOT_FULL,
+                GateEventIngestor.Outcome.ALREADY_PARKED,
+                GateEventIngestor.Outcome.CHECKED_OUT,
+                GateEventIngestor.Outcome.NOT_PARKED,
+                GateEventIngestor.Outcome.REJECTED,
+                GateEventIngestor.Outcome.REJECTED};
+        boolean outcomesRight = true;
+        for (int i = 0; i < expected.length; i++) {
+            outcomesRight &= results.get(i).join().outcome() == expected[i];
+        }
+        // priced at the gate's timestamps, not at whenever the worker got to it: 90 minutes = 7.50
+        GateEventIngestor.Result exit = results.get(4).join();
+        boolean pricedAtGateTime = exit.spotId() == 1 && exit.ticket().getCostCents() == 750;
+
+        // several gates at once: every future completes and the lot ends up empty again
+        ParkingLot busyLot = ParkingLot.createEphemeralLot(500);
+        GateEventIngestor busy = new GateEventIngestor(busyLot, TariffEngine.standard(), GateEventIngestor.Settings.defaults());
+        int gates = 4;
+        int carsPerGate = 2_000;
+        List<CompletableFuture<GateEventIngestor.Result>> busyResults = Collections.synchronizedList(new ArrayList<>());
+        Thread[] feeds = new Thread[gates];
+        for (int gate = 0; gate < gates; gate++) {
+            int gateIndex = gate;
+            feeds[gate] = new Thread(() -> {
+                for (int car = 0; car < carsPerGate; car++) {
+                    String plate = "FEED" + gateIndex + "X" + car;
+                    busyResults.add(busy.submit(GateEvent.enter("", "Car", plate, t0), 5, TimeUnit.SECONDS));
+                    busyResults.add(busy.submit(GateEvent.exit("", plate, t0), 5, TimeUnit.SECONDS));
+                }
+            });
+            feeds[gate].start();
+        }
+        for (Thread feed : feeds) {
+            try {
+                feed.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long checkedOut = busyResults.stream()
+                .map(CompletableFuture::join)
+                .filter(result -> result.outcome() == GateEventIngestor.Outcome.CHECKED_OUT)
+                .count();
+        busy.close();
+        boolean feedsApplied = checkedOut == (long) gates * carsPerGate
+                && busy.getProcessedCount() == 2L * gates * carsPerGate
+                && busy.getBatchCount() < busy.getProcessedCount()
+                && busyLot.getFreeSpotCount() == 500;
+
+        ingestor.close();
+        boolean rejectsAfterClose;
+        try {
+            ingestor.submit(GateEvent.exit("", "LATE", t0)).join();
+            rejectsAfterClose = false;
+        } catch (CompletionException ex) {
+            rejectsAfterClose = ex.getCause() instanceof RejectedExecutionException;
+        }
+
+        boolean passed = outcomesRight && pricedAtGateTime && feedsApplied && rejectsAfterClose;
+        printResult("Gate event ingestor", passed,
+                String.format("%d feed events applied in %d batches", busy.getProcessedCount(), busy.getBatchCount()));
+    }
+
+    public static void testGateServer() {
+        ParkingLot lot = ParkingLot.createEphemeralLot(400);
+        boolean conversationRight;
+        boolean loadRight;
+        boolean busyRight;
+        GateLoadGenerator.Report report;
+        try (PaymentPipeline payments = new PaymentPipeline(lot, null,
+                new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.instant()), PaymentPipeline.Settings.defaults());
+             GateServer server = new GateServer(lot, TariffEngine.standard(), payments, new GateServer.Settings(0, 400, 10_000))) {
+            // one kiosk walking through the whole conversation, mistakes included; an hour minimum = 5.00
+            List<String> replies = converse(server.getPort(), "PARK KIOSK1 Car", "PARK KIOSK1 Car", "PARK KIOSK2 Boat",
+                    "PAY CARD", "EXIT KIOSK1", "EXIT KIOSK1", "PAY CARD", "EXIT KIOSK1", "STATUS", "QUIT");
+            conversationRight = replies.equals(List.of("OK PARKED 1", "ERR ALREADY_PARKED 1", "ERR BAD_TYPE",
+                    "ERR NOTHING_DUE", "OK DUE 500", "ERR UNPAID", "OK PAID 500", "ERR NOT_PARKED", "OK FREE 400 400", "BYE"));
+
+            // a few hundred kiosks connected at once, mostly sitting idle between requests
+            report = GateLoadGenerator.run(server.getPort(), 300, 2, 20);
+            loadRight = report.errors() == 0 && report.requests() == 300L * 2 * 3 && lot.getFreeSpotCount() == 400;
+        } catch (IOException ex) {
+            printResult("Gate server", false, ex.getMessage());
+            return;
+        }
+
+        // past the session limit a kiosk is told so instead of hanging
+        ParkingLot smallLot = ParkingLot.createEphemeralLot(4);
+        try (PaymentPipeline smallPayments = new PaymentPipeline(smallLot, null,
+                new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.instant()), PaymentPipeline.Settings.defaults());
+             GateServer small = new GateServer(smallLot, TariffEngine.standard(), smallPayments,
+                     new GateServer.Settings(0, 2, 10_000));
+             Socket first = new Socket(InetAddress.getLoopbackAddress(), small.getPort());
+             Socket second = new Socket(InetAddress.getLoopbackAddress(), small.getPort())) {
+            // a STATUS round trip on each proves both sessions are really being served before the third knocks
+            boolean bothServed = statusOk(first) && statusOk(second);
+            List<String> turnedAway = converse(small.getPort());
+            busyRight = bothServed && turnedAway.equals(List.of("ERR BUSY")) && small.getActiveSessions() == 2;
+        } catch (IOException ex) {
+            busyRight = false;
+        }
+
+        boolean passed = conversationRight && loadRight && busyRight;
+        printResult("Gate server", passed, String.format("%d kiosk requests, p99 %.1f ms (%s threads)",
+                report.requests(), report.percentileNanos(0.99) / 1e6,
+                GateServer.virtualThreadsAvailable() ? "virtual" : "platform"));
+    }
+
+    // sends each request on one connection and collects the replies; with no requests it just reads what the server says
+    private static List<String> converse(int port, String... requests) throws IOException {
+        List<String> replies = new ArrayList<>();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+            socket.setSoTimeout(5_000);
+            if (requests.length == 0) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    replies.add(line);
+                }
+            }
+            for (String request : requests) {
+                out.write(request + "\n");
+                out.flush();
+                replies.add(in.readLine());
+            }
+        }
+        return replies;
+    }
+
+    private static boolean statusOk(Socket socket) throws IOException {
+        socket.setSoTimeout(5_000);
+        socket.getOutputStream().write("STATUS\n".getBytes(StandardCharsets.US_ASCII));
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String reply = in.readLine();
+        return reply != null && reply.startsWith("OK FREE");
+    }
+
+    public static void testPaymentPipeline() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-payments");
+            Path ledgerFile = scratch.resolve("tickets.txt");
+            TicketLedger ledger = new TicketLedger(ledgerFile, new TicketLedger.Settings(1_000_000, false, 1, 60_000, false));
+            ParkingLot lot = ParkingLot.createEphemeralLot(40);
+
+            // a scripted gateway: per payment, the first attempt errors, the second hangs past the timeout,
+            // the third goes through; plates starting with NO get declined
+            Map<String, AtomicInteger> attemptsById = new ConcurrentHashMap<>();
+            PaymentGateway flaky = request -> {
+                int attempt = attemptsById.computeIfAbsent(request.paymentId(),
+                        id -> new AtomicInteger()).incrementAndGet();
+                if (request.licensePlate().startsWith("NO")) {
+                    return PaymentGateway.Decision.DECLINED;
+                }
+                if (attempt == 1) {
+                    throw new IOException("terminal offline");
+                }
+                if (attempt == 2) {
+                    Thread.sleep(2_000);
+                }
+                return PaymentGateway.Decision.APPROVED;
+            };
+            PaymentPipeline pipeline = new PaymentPipeline(lot, ledger, flaky, new PaymentPipeline.Settings(64, 4, 100, 3, 10, 60_000, 1_000));
+
+            // the exit path only queues the charge: all 30 spots are free again long before anything settles
+            List<CompletableFuture<PaymentPipeline.Settlement>> settlements = new ArrayList<>();
+            List<Ticket> tickets = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                lot.parkVehicle(new Car("PAY" + i));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 30; i++) {
+                Ticket ticket = lot.checkOut("PAY" + i);
+                ticket.closeTicket();
+                tickets.add(ticket);
+                settlements.add(pipeline.submit(ticket, PaymentRequest.Method.CARD));
+                // a double tap on the same ticket must not start a second charge
+                settlements.add(pipeline.submit(ticket, PaymentRequest.Method.CARD));
+            }
+            long queueMillis = (System.nanoTime() - start) / 1_000_000;
+            boolean exitsDidNotWait = lot.getFreeSpotCount() == 40 && settlements.stream().noneMatch(CompletableFuture::isDone);
+
+            boolean retriedToApproval = true;
+            for (int i = 0; i < settlements.size(); i += 2) {
+                PaymentPipeline.Settlement settlement = settlements.get(i).join();
+                retriedToApproval &= settlements.get(i) == settlements.get(i + 1)
+                        && settlement.status() == PaymentPipeline.Status.APPROVED && settlement.attempts() == 3;
+            }
+
+            // an approved ticket is never charged again, not even by the other method
+            boolean approvedSticks = pipeline.submit(tickets.get(0), PaymentRequest.Method.CASH) == settlements.get(0);
+
+            lot.parkVehicle(new Car("NOFUNDS"));
+            Ticket declinedTicket = lot.checkOut("NOFUNDS");
+            declinedTicket.closeTicket();
+            CompletableFuture<PaymentPipeline.Settlement> byCard = pipeline.submit(declinedTicket, PaymentRequest.Method.CARD);
+            PaymentPipeline.Settlement declined = byCard.join();
+            boolean declineRecorded = declined.status() == PaymentPipeline.Status.DECLINED && declined.attempts() == 1;
+            // trying cash instead is a new attempt at the same payment, not a second one
+            CompletableFuture<PaymentPipeline.Settlement> byCash = pipeline.submit(declinedTicket, PaymentRequest.Method.CASH);
+            PaymentPipeline.Settlement cashTry = byCash.join();
+            boolean declineRetried = byCash != byCard && cashTry.request().method() == PaymentRequest.Method.CASH
+                    && cashTry.request().paymentId().equals(declined.request().paymentId())
+                    && attemptsById.get(declined.request().paymentId()).get() == 2;
+            pipeline.close();
+            // the counts are the lot's, so read them before the pipelines below add to them
+            long approvedCount = pipeline.getApprovedCount();
+            long retryCount = pipeline.getRetryCount();
+            boolean exported = lot.getMetrics().render().contains("parking_payments_approved_total 30");
+
+            // settled tickets are forgotten past the cap or the retention window, so the map doesn't grow forever
+            PaymentPipeline forgetful = new PaymentPipeline(lot, null, request -> PaymentGateway.Decision.APPROVED,
+                    new PaymentPipeline.Settings(8, 1, 100, 1, 0, 200, 2));
+            List<CompletableFuture<PaymentPipeline.Settlement>> kept = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                kept.add(forgetful.submit(tickets.get(i), PaymentRequest.Method.CARD));
+                kept.get(i).join();
+            }
+            boolean capped = forgetful.getRememberedCount() == 2
+                    && forgetful.submit(tickets.get(2), PaymentRequest.Method.CARD) == kept.get(2);
+            Thread.sleep(300);
+            forgetful.submit(tickets.get(1), PaymentRequest.Method.CARD).join();
+            boolean expired = forgetful.getRememberedCount() == 1;
+            forgetful.close();
+
+            // the simulated gateway forgets its decisions the same way, but answers a remembered approval again
+            SimulatedPaymentGateway bounded = new SimulatedPaymentGateway(new SimulatedPaymentGateway.Settings(
+                    0, 0, 0, 0, 0, 0, 200, 2));
+            for (int i = 0; i < 3; i++) {
+                bounded.charge(PaymentRequest.forTicket(tickets.get(i), PaymentRequest.Method.CARD));
+            }
+            bounded.charge(PaymentRequest.forTicket(tickets.get(2), PaymentRequest.Method.CASH));
+            boolean gatewayCapped = bounded.getRememberedCount() == 2 && bounded.getChargeCount() == 3;
+            Thread.sleep(300);
+            bounded.charge(PaymentRequest.forTicket(tickets.get(3), PaymentRequest.Method.CARD));
+            boolean gatewayExpired = bounded.getRememberedCount() == 1 && bounded.getChargeCount() == 4;
+
+            // a gateway that is never reachable: the payment fails after its attempts and can be submitted again
+            PaymentPipeline unreachable = new PaymentPipeline(lot, ledger, request -> {
+                throw new IOException("no route to terminal");
+            }, new PaymentPipeline.Settings(8, 1, 100, 2, 0, 60_000, 1_000));
+            lot.parkVehicle(new Car("OFFLINE"));
+            Ticket offlineTicket = lot.checkOut("OFFLINE");
+            offlineTicket.closeTicket();
+            CompletableFuture<PaymentPipeline.Settlement> firstTry = unreachable.submit(offlineTicket, PaymentRequest.Method.CASH);
+            PaymentPipeline.Settlement gaveUp = firstTry.join();
+            boolean failureRetryable = gaveUp.status() == PaymentPipeline.Status.FAILED && gaveUp.attempts() == 2
+                    && unreachable.submit(offlineTicket, PaymentRequest.Method.CASH) != firstTry;
+            unreachable.close();
+            ledger.close();
+
+            // exactly one ledger line per approved ticket, nothing for the declined or failed ones
+            long ledgerLines = Files.readAllLines(ledgerFile).size();
+            passed = exitsDidNotWait && retriedToApproval && approvedSticks && declineRecorded && declineRetried
+                    && failureRetryable && capped && expired && gatewayCapped && gatewayExpired && ledgerLines == 30 && approvedCount == 30 && retryCount == 60
+                    && exported;
+            details = String.format("30 exits queued in %d ms, %d retries, %d ledger lines", queueMillis,
+                    retryCount, ledgerLines);
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            passed = false;
+            details = "interrupted while waiting for settled payments to expire";
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Payment pipeline", passed, details);
+    }
+
+    public static void testParkingReport() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-report");
+            Path tickets = scratch.resolve("tickets.txt");
+            Path logs = scratch.resolve("logs.txt");
+            Path checkpoint = scratch.resolve("report.checkpoint");
+            ReportHistory history = new ReportHistory();
+            history.write(tickets, logs, 0, 3_000);
+
+            // tiny slices so one small file still gets split into a few hundred fork-join leaves
+            ParkingReport.Totals first = ParkingReport.run(tickets, logs, checkpoint, 4, 4_096);
+            boolean fullScanRight = history.matches(first);
+
+            // more history arrives, the last line only half written; the rerun must count just the complete lines
+            history.write(tickets, logs, 3_000, 4_000);
+            Files.writeString(tickets, "HALF | 2025-03-0", StandardOpenOption.APPEND);
+            ParkingReport.Totals resumed = ParkingReport.run(tickets, logs, checkpoint, 4, 4_096);
+            boolean resumeRight = history.matches(resumed);
+
+            // the half line gets finished, then logs.txt is rotated away and a new one started
+            Files.writeString(tickets, "3 10:00:00 | 2025-03-03 11:00:00 | $5.00 | Car" + System.lineSeparator(), StandardOpenOption.APPEND);
+            history.addTicket("2025-03-03 10:00:00", "2025-03-03 11:00:00", 500, "Car");
+            Files.move(logs, scratch.resolve("logs-old.txt"));
+            history.write(null, logs, 4_000, 4_500);
+            ParkingReport.Totals rotated = ParkingReport.run(tickets, logs, checkpoint, 4, 4_096);
+            boolean rotationRight = history.matches(rotated);
+
+            // and a run from scratch over the same files agrees with the incremental one on the tickets
+            ParkingReport.Totals fresh = ParkingReport.run(tickets, scratch.resolve("logs-old.txt"), null, 1, 1 << 20);
+            boolean freshAgrees = fresh.revenueByDay.keySet().equals(rotated.revenueByDay.keySet())
+                    && Arrays.equals(fresh.dwellTickets, rotated.dwellTickets);
+
+            passed = fullScanRight && resumeRight && rotationRight && freshAgrees;
+            details = String.format("%d lines over %d days, peak %d", rotated.lines, rotated.revenueByDay.size(),
+                    rotated.peakOccupancy().values().stream().mapToLong(Long::longValue).max().orElse(0));
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Parking report", passed, details);
+    }
+
+    public static void testParkingReportRotation() {
+        Path scratch = null;
+        boolean passed;
+        String details;
+        try {
+            scratch = Files.createTempDirectory("parking-report-rotation");
+            Path tickets = scratch.resolve("tickets.txt");
+            Path logs = scratch.resolve("logs.txt");
+            Path checkpoint = scratch.resolve("report.checkpoint");
+            long day = LocalDate.of(2025, 3, 1).toEpochDay();
+            int car = OccupancySnapshot.typeSlot(VehicleType.CAR);
+            String newline = System.lineSeparator();
+            String a = "ROTA | 2025-03-01 09:00:00 | 2025-03-01 10:00:00 | $5.00 | Car" + newline;
+            String b = "ROTB | 2025-03-01 09:30:00 | 2025-03-01 11:00:00 | $7.00 | Car" + newline;
+            String c = "ROTC | 2025-03-01 10:00:00 | 2025-03-01 12:00:00 | $5.00 | Car" + newline;
+            // room for two records, so the third rolls the file over; every record flushed right away
+            TicketLedger ledger = new TicketLedger(tickets, new TicketLedger.Settings(a.length() * 2L, false, 1, 60_000, false));
+            ledger.append(a);
+            long firstCents = ParkingReport.run(tickets, logs, checkpoint, 2, 4_096).revenueCents(day, car);
+
+            // B lands in the file the checkpoint already read A from, which is then rotated away before C
+            ledger.append(b);
+            ledger.append(c);
+            ledger.close();
+            long rotatedFiles = TicketLedger.rotatedFiles(tickets).size();
+            long incrementalCents = ParkingReport.run(tickets, logs, checkpoint, 2, 4_096).revenueCents(day, car);
+
+            // what --full does: drop the checkpoint and read every file again
+            Files.delete(checkpoint);
+            ParkingReport.Totals full = ParkingReport.run(tickets, logs, checkpoint, 2, 4_096);
+            long fullCents = full.revenueCents(day, car);
+
+            passed = rotatedFiles == 1 && firstCents == 500 && incrementalCents == 1_700 && fullCents == 1_700
+                    && full.lines == 3;
+            details = String.format("$%d.%02d before rotation, $%d.%02d after, $%d.%02d from scratch over %d rotated file(s)",
+                    firstCents / 100, firstCents % 100, incrementalCents / 100, incrementalCents % 100,
+                    fullCents / 100, fullCents % 100, rotatedFiles);
+        } catch (IOException ioException) {
+            passed = false;
+            details = "scratch files failed: " + ioException.getMessage();
+        } finally {
+            deleteQuietly(scratch);
+        }
+        printResult("Parking report across rotation", passed, details);
+    }
+
+    // writes a synthetic ticket ledger and audit log while working out the expected report the slow, obvious way
+    private static final class ReportHistory {
+        private static final String[] TYPES = {"Car", "Car", "Bike", "Truck", "Van"};
+        private static final DateTimeFormatter LEDGER_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        private final ParkingReport.Totals expected = new ParkingReport.Totals();
+        private int parked;
+
+        // a null tickets file writes (and expects) only the audit log
+        void write(Path tickets, Path logs, int from, int to) throws IOException {
+            StringBuilder ticketLines = new StringBuilder();
+            StringBuilder logLines = new StringBuilder();
+            String newline = System.lineSeparator();
+            for (int i = from; i < to; i++) {
+                LocalDateTime entry = LocalDateTime.of(2025, 3, 1, 0, 0).plusMinutes(i * 2L);
+                LocalDateTime exit = entry.plusMinutes(30 + i % 90);
+                long cents = 100L * (i % 13) + i % 7;
+                String type = TYPES[i % TYPES.length];
+                // every 500th ticket predates the type field
+                boolean legacy = i % 500 == 0;
+                ticketLines.append("P").append(i).append(" | ").append(format(entry)).append(" | ").append(format(exit))
+                        .append(" | $").append(cents / 100).append('.').append(String.format("%02d", cents % 100))
+                        .append(legacy ? "" : " | " + type).append(newline);
+                if (tickets != null) {
+                    addTicket(format(entry), format(exit), cents, legacy ? "" : type);
+                }
+                // arrivals in bursts, departures trailing behind, so occupancy has real peaks
+                int arrivals = 1 + i % 3;
+                for (int car = 0; car < arrivals; car++) {
+                    logLines.append(format(entry)).append(" | PARK | Car (P").append(i).append(") grabbed spot 1").append(newline);
+                    expected.addOccupancy(entry.toLocalDate().toEpochDay(), 1);
+                    parked++;
+                }
+                logLines.append(format(entry)).append(" | PAYMENT | P").append(i).append(" settled $1.00").append(newline);
+                while (parked > 2 + i % 17) {
+                    logLines.append(format(entry)).append(" | REMOVE | P").append(i).append(" left spot 1").append(newline);
+                    expected.addOccupancy(entry.toLocalDate().toEpochDay(), -1);
+                    parked--;
+                }
+                if (tickets != null && i % 1_000 == 999) {
+                    ticketLines.append("not a ticket at all").append(newline);
+                    expected.lines++;
+                    expected.malformed++;
+                }
+            }
+            if (tickets != null) {
+                Files.writeString(tickets, ticketLines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            Files.writeString(logs, logLines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            expected.lines += logLines.chars().filter(c -> c == '\n').count();
+        }
+
+        void addTicket(String entry, String exit, long cents, String type) {
+            LocalDateTime entryTime = LocalDateTime.parse(entry, LEDGER_TIME);
+            LocalDateTime exitTime = LocalDateTime.parse(exit, LEDGER_TIME);
+            long dwell = Duration.between(entryTime, exitTime).getSeconds();
+            expected.addTicket(exitTime.toLocalDate().toEpochDay(), OccupancySnapshot.typeSlot(type), cents, dwell);
+            expected.lines++;
+        }
+
+        boolean matches(ParkingReport.Totals actual) {
+            boolean revenue = expected.revenueByDay.size() == actual.revenueByDay.size()
+                    && expected.revenueByDay.entrySet().stream()
+                    .allMatch(day -> Arrays.equals(day.getValue(), actual.revenueByDay.get(day.getKey())));
+            return revenue
+                    && Arrays.equals(expected.dwellSeconds, actual.dwellSeconds)
+                    && Arrays.equals(expected.dwellTickets, actual.dwellTickets)
+                    && expected.peakOccupancy().equals(actual.peakOccupancy())
+                    && expected.lines == actual.lines
+                    && expected.malformed == actual.malformed;
+        }
+
+        private static String format(LocalDateTime time) {
+            return LEDGER_TIME.format(time);
+        }
+    }
+
+    public static void testMetrics() {
+        // bucket edges: every value lands in a bucket whose top is within ~3% above it
+        boolean bucketsTight = true;
+        for (long value = 0; value < 5_000_000; value = value * 3 / 2 + 1) {
+            long top = LatencyHistogram.highestInBucket(LatencyHistogram.bucketOf(value));
+            bucketsTight &= top >= value && top - value <= value / 32;
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        boolean percentilesClose = Math.abs(snapshot.valueAt(0.5) - 50_000_000L) <= 50_000_000L / 32
+                && Math.abs(snapshot.valueAt(0.99) - 99_000_000L) <= 99_000_000L / 32
+                && snapshot.getMax() == 100_000_000L && snapshot.getCount() == 100_000;
+
+        ParkingLot lot = ParkingLot.createEphemeralLot(512);
+        for (int i = 0; i < 400; i++) {
+            lot.parkVehicle(new Car("MET" + i));
+        }
+        for (int i = 0; i < 400; i++) {
+            lot.removeVehicle("MET" + i);
+        }
+        lot.removeVehicle("NOBODY");
+        LotMetrics metrics = lot.getMetrics();
+        String page = metrics.render();
+        // counters are exact, the park/remove timings are a sample of them
+        long timedParks = metrics.histogram("lot.park").getCount();
+        boolean lotCounted = metrics.counter("lot.parked").sum() == 400
+                && metrics.counter("lot.removed").sum() == 400
+                && metrics.counter("lot.remove_missed").sum() == 1
+                && timedParks > 0 && timedParks < 400
+                && page.contains("parking_lot_park_ns_count " + timedParks)
+                && page.contains("parking_lot_free_spots 512")
+                && page.contains("parking_lot_park_ns{quantile=\"0.99\"}");
+
+        boolean httpServed;
+        try (MetricsExporter http = MetricsExporter.http(metrics, 0)) {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http://127.0.0.1:" + http.getPort() + "/metrics").openConnection();
+            String body = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            httpServed = connection.getResponseCode() == 200 && body.contains("parking_lot_parked_total 400");
+            connection.disconnect();
+        } catch (IOException ioException) {
+            httpServed = false;
+        }
+
+        Path scratch = null;
+        boolean fileWritten = false;
+        try {
+            scratch = Files.createTempDirectory("parking-metrics");
+            Path file = scratch.resolve("metrics.txt");
+            MetricsExporter exporter = MetricsExporter.toFile(metrics, file, 20);
+            try {
+                for (int wait = 0; wait < 100 && !Files.exists(file); wait++) {
+                    Thread.sleep(20);
+                }
+            } finally {
+                exporter.close();
+            }
+            fileWritten = Files.exists(file) && Files.readString(file).contains("parking_lot_removed_total 400");
+        } catch (IOException ioException) {
+            fileWritten = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deleteQuietly(scratch);
+        }
+
+        boolean passed = bucketsTight && percentilesClose && lotCounted && httpServed && fileWritten;
+        LatencyHistogram.Snapshot park = metrics.histogram("lot.park").snapshot();
+        printResult("Metrics", passed, String.format("park p50 %d ns, p99 %d ns over %d sampled parks",
+                park.valueAt(0.5), park.valueAt(0.99), park.getCount()));
+    }
+
+    public static void testSpotStateSnapshots() {
+        // every lane shuffles one car between two plates (park the other, then remove this one), so at any real
+        // instant each lane has one or two plates in the lot; a torn read would catch a lane with none
+        int lanes = 6;
+        int movesPerLane = 20_000;
+        ParkingLot lot = ParkingLot.createEphemeralLot(lanes * 2 + 4);
+        for (int lane = 0; lane < lanes; lane++) {
+            lot.parkVehicle(new Car("SEQ" + lane + "A"));
+        }
+        AtomicInteger runningLanes = new AtomicInteger(lanes);
+        AtomicInteger writerFailures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            String[] plates = {"SEQ" + lane + "A", "SEQ" + lane + "B"};
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int move = 0; move < movesPerLane; move++) {
+                        String from = plates[move & 1];
+                        String to = plates[(move + 1) & 1];
+                        if (!lot.parkVehicle(new Car(to)) || !lot.removeVehicle(from)) {
+                            writerFailures.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    runningLanes.decrementAndGet();
+                }
+            }));
+        }
+        AtomicInteger views = new AtomicInteger();
+        AtomicInteger badViews = new AtomicInteger();
+        AtomicInteger tornNaiveScans = new AtomicInteger();
+        for (int reader = 0; reader < 2; reader++) {
+            threads.add(new Thread(() -> {
+                SpotStateSnapshot states = new SpotStateSnapshot();
+                long lastVersion = -1;
+                while (runningLanes.get() > 0) {
+                    lot.spotStates(states);
+                    int[] perLane = new int[lanes];
+                    int listed = 0;
+                    for (int spotId = 1; spotId <= states.getSpotCount(); spotId++) {
+                        Vehicle vehicle = states.getVehicle(spotId);
+                        if (vehicle != null) {
+                            listed++;
+                            perLane[vehicle.getLicensePlate().charAt(3) - '0']++;
+                        }
+                    }
+                    boolean consistent = states.getVersion() >= lastVersion && listed == states.getOccupied();
+                    for (int count : perLane) {
+                        consistent &= count == 1 || count == 2;
+                    }
+                    if (!consistent) {
+                        badViews.incrementAndGet();
+                    }
+                    lastVersion = states.getVersion();
+                    views.incrementAndGet();
+
+                    // the same check spot by spot, just to show what the table is protecting against
+                    int[] naive = new int[lanes];
+                    for (ParkingSpot spot : lot.getSpots()) {
+                        Vehicle vehicle = spot.getVehicle();
+                        if (vehicle != null) {
+                            naive[vehicle.getLicensePlate().charAt(3) - '0']++;
+                        }
+                    }
+                    for (int count : naive) {
+                        if (count == 0) {
+                            tornNaiveScans.incrementAndGet();
+                            break;
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // once everything is quiet the copy has to agree with the spots themselves
+        SpotStateSnapshot settled = lot.spotStates();
+        boolean matchesSpots = settled.getOccupied() == lanes && settled.getOccupied("Car") == lanes;
+        for (ParkingSpot spot : lot.getSpots()) {
+            matchesSpots &= settled.getVehicle(spot.getId()) == spot.getVehicle();
+        }
+        String lastPlate = "SEQ0" + (movesPerLane % 2 == 0 ? "A" : "B");
+        matchesSpots &= settled.findPlate(lastPlate.toLowerCase()) == lot.findSpotByPlate(lastPlate).getId()
+                && settled.getEntryEpochSecond(settled.findPlate(lastPlate)) > 0
+                && settled.findPlate("NOPE") == -1;
+
+        boolean passed = writerFailures.get() == 0 && views.get() > 0 && badViews.get() == 0 && matchesSpots;
+        printResult("Spot state snapshots", passed, String.format(
+                "%d consistent views during %d moves (%d bad); a spot-by-spot scan caught a missing car %d times",
+                views.get() - badViews.get(), lanes * movesPerLane, badViews.get(), tornNaiveScans.get()));
+    }
+
+    public static void testReservations() {
+        ParkingLot lot = ParkingLot.createEphemeralLot(LotConfig.parse("zone.L1.A=compact:3"));
+        ReservationBook book = lot.getReservations();
+        long base = 1_900_000_000L / 3_600 * 3_600;
+        long twoPm = base + 14 * 3_600;
+        long fivePm = base + 17 * 3_600;
+        Reservation first = book.reserve("res1", SpotSize.COMPACT, twoPm, fivePm, base);
+        Reservation second = book.reserve("RES2", SpotSize.COMPACT, twoPm, fivePm, base);
+        Reservation third = book.reserve("RES3", SpotSize.COMPACT, twoPm, fivePm, base);
+        boolean booking = first != null && second != null && third != null
+                && "RES1".equals(first.licensePlate())
+                && book.reserve("RES4", SpotSize.COMPACT, twoPm + 3_600, twoPm + 7_200, base) == null
+                && book.reserve("RES1", SpotSize.COMPACT, base + 20 * 3_600, base + 21 * 3_600, base) == null
+                && book.available(SpotSize.COMPACT, twoPm + 3_600, twoPm + 7_200, base) == 0
+                && book.reserve("RES5", SpotSize.COMPACT, fivePm, fivePm + 3_600, base) != null
+                && book.cancel(third.id(), base)
+                && book.available(SpotSize.COMPACT, twoPm, fivePm, base) == 1
+                && (third = book.reserve("RES3", SpotSize.COMPACT, twoPm, fivePm, base)) != null;
+
+        // 14:00 — all three spots are held, so a walk-in is turned away but a booked car gets in
+        book.sweep(twoPm);
+        boolean holdsHonored = book.getActiveHolds(SpotSize.COMPACT) == 3
+                && !lot.parkVehicle(new Car("WALKIN"))
+                && lot.parkVehicle(new Car("RES1"))
+                && book.getActiveHolds(SpotSize.COMPACT) == 2
+                && !lot.parkVehicle(new Car("WALKIN"));
+        // 14:15 — the other two never showed, so their spots go back to everyone
+        book.sweep(twoPm + ReservationBook.Settings.defaults().noShowGraceSeconds());
+        boolean noShowsReleased = book.getActiveHolds(SpotSize.COMPACT) == 0
+                && book.findOpen("RES2") == null
+                && lot.parkVehicle(new Car("WALKIN"))
+                && lot.getMetrics().counter("reservations.no_shows").sum() == 2
+                && lot.getMetrics().counter("reservations.redeemed").sum() == 1;
+
+        // tens of thousands of bookings on one size, checked against a plain per-slot count
+        int capacity = 2_000;
+        int slotSeconds = ReservationBook.Settings.defaults().slotSeconds();
+        int horizonSlots = 7 * 86_400 / slotSeconds;
+        int[] capacityBySize = new int[SpotSize.values().length];
+        capacityBySize[SpotSize.LARGE.ordinal()] = capacity;
+        ReservationBook big = new ReservationBook(capacityBySize, size -> capacity, () -> { }, ReservationBook.Settings.defaults(),
+                new LotMetrics(), Clock.systemDefaultZone());
+        int[] bookedPerSlot = new int[horizonSlots];
+        List<Reservation> accepted = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = base;
+        for (int i = 0; i < 60_000; i++) {
+            int from = random.nextInt(1, horizonSlots - 16);
+            int to = from + random.nextInt(1, 16);
+            Reservation reservation = big.reserve("BIG" + i, SpotSize.LARGE, now + (long) from * slotSeconds, now + (long) to * slotSeconds, now);
+            int most = 0;
+            for (int slot = from; slot < to; slot++) {
+                most = Math.max(most, bookedPerSlot[slot]);
+            }
+            booking &= (reservation != null) == (most < capacity);
+            if (reservation != null) {
+                for (int slot = from; slot < to; slot++) {
+                    bookedPerSlot[slot]++;
+                }
+                accepted.add(reservation);
+            }
+        }
+        for (int i = 0; i < accepted.size(); i += 3) {
+            Reservation reservation = accepted.get(i);
+            big.cancel(reservation.id(), now);
+            for (long slot = (reservation.startEpochSecond() - now) / slotSeconds; slot < (reservation.endEpochSecond() - now) / slotSeconds; slot++) {
+                bookedPerSlot[(int) slot]--;
+            }
+        }
+        int queries = 20_000;
+        int[] queryFrom = new int[queries];
+        int[] queryTo = new int[queries];
+        int[] answers = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            queryFrom[i] = random.nextInt(1, horizonSlots - 16);
+            queryTo[i] = queryFrom[i] + random.nextInt(1, 16);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            answers[i] = big.available(SpotSize.LARGE, now + (long) queryFrom[i] * slotSeconds, now + (long) queryTo[i] * slotSeconds, now);
+        }
+        long nanosPerQuery = (System.nanoTime() - started) / queries;
+        boolean availabilityExact = true;
+        for (int i = 0; i < queries; i++) {
+            int most = 0;
+            for (int slot = queryFrom[i]; slot < queryTo[i]; slot++) {
+                most = Math.max(most, bookedPerSlot[slot]);
+            }
+            availabilityExact &= answers[i] == capacity - most;
+        }
+
+        boolean passed = booking && holdsHonored && noShowsReleased && availabilityExact;
+        printResult("Reservations", passed, String.format("%d bookings live, availability check ~%d ns",
+                big.getBookedCount(), nanosPerQuery));
+    }
+
+    public static void testWaitlist() {
+        // one compact and one large spot, both taken
+        ParkingLot lot = ParkingLot.createEphemeralLot(LotConfig.parse("zone.L1.A=compact:1,large:1"));
+        lot.parkVehicle(new Car("WLCAR"));
+        lot.parkVehicle(new Truck("WLTRUCK"));
+        String gate = lot.getDefaultGate();
+        Waitlist.Entry truck = lot.joinWaitlist(new Truck("WL1"), gate, 0);
+        Waitlist.Entry car = lot.joinWaitlist(new Car("WL2"), gate, 0);
+        Waitlist.Entry permitCar = lot.joinWaitlist(new Car("WL3"), gate, 5);
+        boolean queued = lot.getWaitlist().size() == 3 && !truck.getSpot().isDone();
+
+        // the compact can't take the truck, and the permit holder outranks the earlier car
+        lot.removeVehicle("WLCAR");
+        boolean priorityServed = permitCar.getSpot().getNow(null) == lot.findSpotByPlate("WL3")
+                && !car.getSpot().isDone() && !truck.getSpot().isDone();
+        // the large fits both that are left; the truck has waited longer
+        lot.removeVehicle("WLTRUCK");
+        boolean fifoServed = truck.getSpot().getNow(null) == lot.findSpotByPlate("WL1") && !car.getSpot().isDone();
+        boolean cancelled = car.cancel() && lot.getWaitlist().isEmpty() && car.getSpot().isCancelled() && !permitCar.cancel();
+        boolean measured = lot.getMetrics().counter("waitlist.admitted").sum() == 2
+                && lot.getMetrics().histogram("waitlist.wait").getCount() == 2
+                && lot.getFreeSpotCount() == 0;
+
+        // lanes that either get in or queue and block on their entry; a lost handoff shows up as a timeout
+        int lanes = 8;
+        int rounds = 2_000;
+        ParkingLot busy = ParkingLot.createEphemeralLot(3);
+        AtomicInteger viaWaitlist = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            Car vehicle = new Car("WLLANE" + lane);
+            workers.add(new Thread(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    if (!busy.parkVehicle(vehicle)) {
+                        try {
+                            busy.joinWaitlist(vehicle, busy.getDefaultGate(), 0).getSpot().get(5, TimeUnit.SECONDS);
+                            viaWaitlist.incrementAndGet();
+                        } catch (Exception ex) {
+                            failures.incrementAndGet();
+                            return;
+                        }
+                    }
+                    // stay parked for a moment so the other lanes find the lot full
+                    Thread.yield();
+                    if (!busy.removeVehicle(vehicle.getLicensePlate())) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean stressHeld = failures.get() == 0 && busy.getFreeSpotCount() == 3 && busy.getWaitlist().isEmpty();
+
+        // and over the wire: WAIT only answers once the parked car has left
+        boolean gateWaits;
+        ParkingLot gateLot = ParkingLot.createEphemeralLot(1);
+        try (PaymentPipeline payments = new PaymentPipeline(gateLot, null,
+                new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.instant()), PaymentPipeline.Settings.defaults());
+             GateServer server = new GateServer(gateLot, TariffEngine.standard(), payments, new GateServer.Settings(0, 8, 10_000))) {
+            gateLot.parkVehicle(new Car("GWFIRST"));
+            CompletableFuture<List<String>> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return converse(server.getPort(), "WAIT GWSECOND Car");
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (gateLot.getWaitlist().isEmpty() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            List<String> exit = converse(server.getPort(), "EXIT GWFIRST", "PAY CASH");
+            gateWaits = exit.get(0).startsWith("OK DUE")
+                    && waiting.get(5, TimeUnit.SECONDS).equals(List.of("OK PARKED 1"));
+        } catch (Exception ex) {
+            gateWaits = false;
+        }
+
+        boolean passed = queued && priorityServed && fifoServed && cancelled && measured && stressHeld && gateWaits;
+        LatencyHistogram.Snapshot waits = busy.getMetrics().histogram("waitlist.wait").snapshot();
+        printResult("Waitlist", passed, String.format("%d of %d lane parks came off the waitlist, wait p50 %.1f us, p99 %.1f us",
+                viaWaitlist.get(), lanes * rounds, waits.valueAt(0.5) / 1e3, waits.valueAt(0.99) / 1e3));
+    }
+
+    public static void testSimulator() {
+        // a week of a small lot under commuter demand; the same seed has to replay exactly, event for event
+        ParkingSimulator.Settings defaults = ParkingSimulator.Settings.defaults();
+        ParkingSimulator.Settings settings = new ParkingSimulator.Settings(defaults.profiles(), defaults.hourlyDemand(),
+                7, 7L, 0, 15);
+        ParkingSimulator.Report first = new ParkingSimulator(settings, LotConfig.defaults(120), TariffEngine.standard()).run();
+        ParkingSimulator.Report second = new ParkingSimulator(settings, LotConfig.defaults(120), TariffEngine.standard()).run();
+        boolean replayed = first.events() == second.events() && first.revenueCents() == second.revenueCents()
+                && first.parked() == second.parked() && Arrays.equals(first.occupancySamples(), second.occupancySamples());
+        boolean accounted = first.arrivals() == first.parked() + first.rejected()
+                && first.departures() <= first.parked() && first.revenueCents() > 0
+                && first.peakOccupancy() <= first.capacity();
+        // 120 spots can't hold the morning peak, so some drivers are turned away
+        boolean overloaded = first.rejected() > 0 && first.peakOccupancy() == first.capacity();
+
+        // with patience the turned-away drivers queue instead: each one is either admitted later or gives up
+        ParkingSimulator.Settings patient = new ParkingSimulator.Settings(defaults.profiles(), defaults.hourlyDemand(),
+                7, 7L, 20, 15);
+        ParkingSimulator.Report waited = new ParkingSimulator(patient, LotConfig.defaults(120), TariffEngine.standard()).run();
+        boolean queued = waited.rejected() == 0 && waited.waitlisted() > 0 && waited.abandoned() <= waited.waitlisted()
+                && waited.parked() > first.parked() && waited.parked() + waited.abandoned() <= waited.arrivals();
+
+        boolean passed = replayed && accounted && overloaded && queued;
+        printResult("Simulator", passed, String.format("%d events at %.0f events/s, %.1f%% rejected, %.1f%% with a 20 min waitlist",
+                first.events(), first.eventsPerSecond(), first.rejectionRate() * 100, waited.rejectionRate() * 100));
+    }
+
+    public static void testPlateCodec() {
+        // packing: separators and case don't matter, both halves round-trip, junk is rejected
+        String canonical = "AB123";
+        boolean normalized = PlateCodec.normalize("ab-12 3").equals("AB123")
+                && PlateCodec.low("ab-12 3") == PlateCodec.low("AB123")
+                && PlateCodec.high("AB123") == 0
+                && PlateCodec.normalize(canonical) == canonical;
+        String[] plates = {"A", "0", "Z9", "ABCDEFGHIJKL", "ABCDEFGHIJKLM", "ZZZZZZZZZZZZZZZZZZZZZZZZ", "000000000001"};
+        boolean roundTrips = true;
+        for (String plate : plates) {
+            roundTrips &= PlateCodec.decode(PlateCodec.low(plate), PlateCodec.high(plate)).equals(plate);
+        }
+        boolean rejected = !PlateCodec.isValid("") && !PlateCodec.isValid(" - ") && !PlateCodec.isValid("AB_12")
+                && !PlateCodec.isValid("A".repeat(PlateCodec.MAX_LENGTH + 1)) && !PlateCodec.isValid(null)
+                && ParkingLot.recreateVehicle("Car", "BAD*PLATE") == null
+                && PlateCodec.low("AB") != PlateCodec.low("BA") && PlateCodec.low("A0") != PlateCodec.low("A");
+        boolean types = VehicleType.parse(" truck ") == VehicleType.TRUCK && VehicleType.parse("Boat") == null
+                && VehicleType.fromCode(VehicleType.BIKE.getCode()) == VehicleType.BIKE
+                && VehicleType.CAR.getCode() == 1 && VehicleType.BIKE.getCode() == 2 && VehicleType.TRUCK.getCode() == 3
+                && new Truck("t-1").getVehicleType().equals("Truck");
+
+        // the striped index against a HashMap under random puts and removes; removes shift probe chains around
+        PlateIndex<Integer> index = new PlateIndex<>();
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(23);
+        boolean indexMatches = true;
+        for (int op = 0; op < 200_000; op++) {
+            String plate = "P" + random.nextInt(5_000);
+            long low = PlateCodec.low(plate);
+            long high = PlateCodec.high(plate);
+            if (random.nextInt(3) == 0) {
+                indexMatches &= Objects.equals(index.remove(low, high), expected.remove(plate));
+            } else {
+                indexMatches &= Objects.equals(index.put(low, high, op), expected.put(plate, op));
+            }
+        }
+        for (int plate = 0; plate < 5_000; plate++) {
+            String text = "P" + plate;
+            indexMatches &= Objects.equals(index.get(PlateCodec.low(text), PlateCodec.high(text)), expected.get(text));
+        }
+        indexMatches &= index.size() == expected.size();
+
+        // a gate lookup packs the typed plate and probes the index; nothing should be allocated on the way
+        ParkingLot lot = ParkingLot.createEphemeralLot(2_000);
+        String[] lookups = new String[2_000];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = "look-" + i;
+            lot.parkVehicle(new Car(lookups[i]));
+        }
+        boolean lookupsRight = lot.findSpotByPlate("LOOK7") != null && lot.findSpotByPlate("look 7") == lot.findSpotByPlate("LOOK7")
+                && lot.findSpotByPlate("NOPE1") == null && lot.findSpotByPlate("?!") == null;
+        long lookupNanos = 0;
+        boolean allocationFree = true;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            for (int i = 0; i < 200_000; i++) {
+                lot.findSpotByPlate(lookups[i % lookups.length]);
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < 200_000; i++) {
+                lookupsRight &= lot.findSpotByPlate(lookups[i % lookups.length]) != null;
+            }
+            lookupNanos = (System.nanoTime() - start) / 200_000;
+            allocationFree = threads.getThreadAllocatedBytes(threadId) - before < 4_096;
+        }
+
+        // a lot_state.bin from before packed plates gets converted on open and keeps its cars
+        boolean upgraded;
+        Path scratch = null;
+        try {
+            scratch = Files.createTempDirectory("parking-plates");
+            ByteBuffer legacy = ByteBuffer.allocate(16 + 3 * 32);
+            legacy.putInt(0, 0x4C4F5453).putInt(4, 1).putInt(8, 3).putInt(12, 32);
+            int slot = 16 + 32;
+            legacy.put(slot, (byte) 3).put(slot + 1, (byte) 7).put(slot + 2, "OLD2024".getBytes(StandardCharsets.US_ASCII))
+                    .putLong(slot + 24, 1_700_000_000L);
+            Files.write(scratch.resolve(MappedLotState.FILE_NAME), legacy.array());
+            ParkingLot reopened = ParkingLot.createPersistentLot(3, scratch, LotJournal.Settings.defaults());
+            ParkingSpot spot = reopened.findSpotByPlate("old-2024");
+            upgraded = spot != null && spot.getId() == 2
+                    && spot.getVehicle().getType() == VehicleType.TRUCK
+                    && reopened.spotStates().getEntryEpochSecond(2) == 1_700_000_000L;
+            reopened.shutdownPersistence();
+            upgraded &= ByteBuffer.wrap(Files.readAllBytes(scratch.resolve(MappedLotState.FILE_NAME))).getInt(4) == 2;
+        } catch (IOException ioException) {
+            upgraded = false;
+        } finally {
+            deleteQuietly(scratch);
+        }
+
+        boolean passed = normalized && roundTrips && rejected && types && indexMatches && lookupsRight && allocationFree && upgraded;
+        printResult("Plate codec", passed, String.format("plates packed and round-tripped, index matched a HashMap, lookup ~%d ns with %s",
+                lookupNanos, allocationFree ? "no allocation" : "allocation"));
+    }
+
+    public static void testLayoutChanges() {
+        // free index growth keeps what was claimed and adds free slots after it
+        BitSetFreeSpotIndex index = new BitSetFreeSpotIndex(100);
+        for (int slot = 0; slot < 100; slot++) {
+            index.claimLowest();
+        }
+        index.grow(300);
+        boolean indexGrew = index.claimLowest() == 100 && index.freeCount() == 199 && !index.isFree(5);
+        index.release(5);
+        indexGrew &= index.claimLowest() == 5 && index.capacity() == 300;
+
+        // shrinking under parked cars drains them instead of evicting anyone
+        ParkingLot lot = ParkingLot.createEphemeralLot(LotConfig.parse("zone.L1.A=compact:4,large:2\nzone.L1.B=large:2"));
+        for (int car = 1; car <= 4; car++) {
+            lot.parkVehicle(new Car("LC" + car));
+        }
+        ParkingLot.LayoutChange shrink = lot.applyLayout(LotConfig.parse("zone.L1.A=compact:2,large:2\nzone.L1.B=large:2"));
+        boolean drained = shrink.closed() == 2 && shrink.draining() == 2
+                && lot.getCapacity(SpotSize.COMPACT) == 2 && lot.getDrainingCount() == 2
+                && lot.findSpotByPlate("LC3") != null && lot.findSpotByPlate("LC4") != null;
+        // the car leaving a closed bay retires it rather than freeing it
+        lot.removeVehicle("LC4");
+        drained &= lot.getDrainingCount() == 1 && lot.getFreeSpotCount(SpotSize.COMPACT) == 0;
+        lot.parkVehicle(new Car("LC5"));
+        drained &= lot.findSpotByPlate("LC5").getSize() == SpotSize.LARGE;
+
+        // one more large bay in zone A: the retired compact bay gets repainted instead of a new spot id
+        int idsBefore = lot.getSpots().size();
+        ParkingLot.LayoutChange repaint = lot.applyLayout(LotConfig.parse("zone.L1.A=compact:2,large:3\nzone.L1.B=large:2"));
+        boolean repainted = repaint.retyped() == 1 && repaint.added() == 0
+                && lot.getSpots().size() == idsBefore + 1
+                && lot.getSpots().stream().anyMatch(spot -> spot.getId() == 4 && spot.getSize() == SpotSize.LARGE)
+                && lot.getCapacity() == 7;
+
+        // a new zone and gate come online, and the waitlist gets first go at them
+        ParkingLot small = ParkingLot.createEphemeralLot(LotConfig.parse("zone.L1.A=large:1"));
+        small.parkVehicle(new Car("WLA"));
+        Waitlist.Entry waiting = small.joinWaitlist(new Car("WLB"), small.getDefaultGate(), 0);
+        ParkingLot.LayoutChange grow = small.applyLayout(LotConfig.parse("zone.L1.A=large:1\nzone.L2.A=large:2\ngate.NORTH=L2.A"));
+        boolean grew = grow.added() == 2
+                && waiting.getSpot().getNow(null) != null && waiting.getSpot().getNow(null).getId() == 2
+                && small.parkVehicle(new Car("WLC"), "NORTH") && small.findSpotByPlate("WLC").getId() == 3;
+        small.applyLayout(LotConfig.parse("zone.L1.A=large:1"));
+        grew &= small.getCapacity() == 1 && small.getDrainingCount() == 2 && small.findSpotByPlate("WLC") != null;
+
+        // lanes keep parking while the layout flips between shrinking, growing and repainting underneath them
+        ParkingLot busy = ParkingLot.createEphemeralLot(LotConfig.parse("zone.L1.A=compact:1000,large:1000"));
+        String[] shapes = {
+                "zone.L1.A=compact:500,large:600",
+                "zone.L1.A=compact:1200,large:1100",
+                "zone.L1.A=compact:1500,large:500",
+                "zone.L1.A=compact:1000,large:1000"};
+        int lanes = 4;
+        int carsPerLane = 200;
+        AtomicInteger failures = new AtomicInteger();
+        AtomicBoolean reshaping = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            int laneId = lane;
+            workers.add(new Thread(() -> {
+                Car[] cars = new Car[carsPerLane];
+                boolean[] parked = new boolean[carsPerLane];
+                for (int car = 0; car < carsPerLane; car++) {
+                    cars[car] = new Car("RS" + laneId + "X" + car);
+                }
+                try {
+                    for (int round = 0; reshaping.get() || round < 20_000; round++) {
+                        int car = round % carsPerLane;
+                        if (parked[car]) {
+                            parked[car] = !busy.removeVehicle(cars[car].getLicensePlate());
+                        } else {
+                            // at most 800 cars against at least 1100 open bays, so a rejection means a lost spot
+                            parked[car] = busy.parkVehicle(cars[car]);
+                            if (!parked[car]) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    for (int car = 0; car < carsPerLane; car++) {
+                        if (parked[car] && !busy.removeVehicle(cars[car].getLicensePlate())) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (RuntimeException ex) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (int change = 0; change < 200; change++) {
+            busy.applyLayout(LotConfig.parse(shapes[change % shapes.length]));
+        }
+        reshaping.set(false);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        busy.applyLayout(LotConfig.parse(shapes[shapes.length - 1]));
+        boolean survived = failures.get() == 0
+                && busy.getCapacity() == 2_000 && busy.getFreeSpotCount() == 2_000 && busy.getDrainingCount() == 0
+                && busy.spotStates().getOccupied() == 0 && busy.getSpots().size() == 2_000;
+
+        // spot ids, closed bays and draining cars survive a restart; without the saved map, a car beyond the
+        // configured lot is kept in a closed spot instead of being dropped
+        Path scratch = null;
+        boolean restarted;
+        try {
+            scratch = Files.createTempDirectory("parking-layout");
+            LotJournal.Settings settings = new LotJournal.Settings(60_000, 10_000, 10_000);
+            LotConfig reshaped = LotConfig.parse("zone.L1.A=large:4\nzone.L2.A=large:2");
+            ParkingLot first = ParkingLot.createPersistentLot(LotConfig.parse("zone.L1.A=large:6"), scratch, settings);
+            for (int car = 1; car <= 6; car++) {
+                first.parkVehicle(new Car("PS" + car));
+            }
+            first.applyLayout(reshaped);
+            first.removeVehicle("PS1");
+            first.parkVehicle(new Car("PS7"));
+            first.shutdownPersistence();
+
+            ParkingLot second = ParkingLot.createPersistentLot(reshaped, scratch, settings);
+            restarted = second.findSpotByPlate("PS5").getId() == 5 && second.findSpotByPlate("PS7").getId() == 1
+                    && second.getDrainingCount() == 2 && second.getCapacity() == 6
+                    && second.getFreeSpotCount() == 2;
+            second.removeVehicle("PS5");
+            restarted &= second.getDrainingCount() == 1;
+            second.shutdownPersistence();
+
+            Files.delete(scratch.resolve(SpotMap.FILE_NAME));
+            ParkingLot third = ParkingLot.createPersistentLot(LotConfig.parse("zone.L1.A=large:4"), scratch, settings);
+            restarted &= third.findSpotByPlate("PS6") != null && third.findSpotByPlate("PS6").getId() == 6
+                    && third.getDrainingCount() == 1 && third.getCapacity() == 4
+                    && Files.exists(scratch.resolve(SpotMap.FILE_NAME));
+            third.shutdownPersistence();
+        } catch (IOException | RuntimeException ex) {
+            restarted = false;
+        } finally {
+            deleteQuietly(scratch);
+        }
+
+        // and the watcher: a saved edit is applied, one that doesn't parse leaves the layout alone
+        Path watched = null;
+        boolean reloaded;
+        try {
+            watched = Files.createTempDirectory("parking-config");
+            Path configFile = watched.resolve("config.txt");
+            Files.writeString(configFile, "zone.L1.A=large:2");
+            ParkingLot watchedLot = ParkingLot.createEphemeralLot(LotConfig.load(configFile));
+            try (LotConfigWatcher watcher = LotConfigWatcher.start(watchedLot, configFile, new LotConfigWatcher.Settings(50))) {
+                Files.writeString(configFile, "zone.L1.A=large:5");
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (watcher.getAppliedCount() == 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                reloaded = watcher.getAppliedCount() == 1 && watchedLot.getCapacity() == 5;
+                Files.writeString(configFile, "zone.L1.A=large:lots");
+                Thread.sleep(500);
+                reloaded &= watcher.getAppliedCount() == 1 && watchedLot.getCapacity() == 5;
+            }
+        } catch (IOException | InterruptedException ex) {
+            reloaded = false;
+        } finally {
+            deleteQuietly(watched);
+        }
+
+        boolean passed = indexGrew && drained && repainted && grew && survived && restarted && reloaded;
+        LatencyHistogram.Snapshot parks = busy.getMetrics().histogram("lot.park").snapshot();
+        LatencyHistogram.Snapshot applies = busy.getMetrics().histogram("layout.apply").snapshot();
+        printResult("Layout changes", passed, String.format(
+                "201 live reshapes (p50 %.2f ms) under 4 lanes, park p99 %.1f us meanwhile; drained, repainted and restarted as expected",
+                applies.valueAt(0.5) / 1e6, parks.valueAt(0.99) / 1e3));
+    }
+
+    public static void testReplication() {
+        LotConfig config = LotConfig.parse("zone.L1.A=compact:300,large:300\nzone.L1.B=large:200");
+        ParkingLot primary = ParkingLot.createEphemeralLot(config);
+        // cars from before replication started only reach followers through their first snapshot
+        for (int car = 0; car < 50; car++) {
+            primary.parkVehicle(new Car("RP" + car));
+        }
+        ReplicationLog log = primary.startReplication(new ReplicationLog.Settings(4_096));
+        ParkingLot followerLot = ParkingLot.createEphemeralLot(config);
+        InProcessTransport toPrimary = new InProcessTransport(log);
+        LotFollower follower = LotFollower.start(followerLot, toPrimary, new LotFollower.Settings(512, 50, 20));
+
+        // lanes churn the primary while its layout shrinks, grows and gets repainted, and the follower is read from
+        int lanes = 4;
+        int carsPerLane = 150;
+        AtomicInteger failures = new AtomicInteger();
+        AtomicBoolean churning = new AtomicBoolean(true);
+        AtomicInteger views = new AtomicInteger();
+        AtomicInteger badViews = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            int laneId = lane;
+            workers.add(new Thread(() -> {
+                Car[] cars = new Car[carsPerLane];
+                boolean[] parked = new boolean[carsPerLane];
+                for (int car = 0; car < carsPerLane; car++) {
+                    cars[car] = new Car("RL" + laneId + "X" + car);
+                }
+                try {
+                    for (int round = 0; round < 20_000; round++) {
+                        int car = (round * 7) % carsPerLane;
+                        if (parked[car]) {
+                            parked[car] = !primary.removeVehicle(cars[car].getLicensePlate());
+                        } else if (!(parked[car] = primary.parkVehicle(cars[car]))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (RuntimeException ex) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        waitUntil(() -> follower.getAppliedSequence() > 0 || followerLot.findSpotByPlate("RP0") != null, 5_000);
+        Thread reader = new Thread(() -> {
+            while (churning.get()) {
+                SpotStateSnapshot view = followerLot.spotStates();
+                views.incrementAndGet();
+                // RP0 never moves, and there are never more cars than plates
+                if (view.findPlate("RP0") < 1 || view.getOccupied() > 50 + lanes * carsPerLane) {
+                    badViews.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        workers.forEach(Thread::start);
+        String[] shapes = {
+                "zone.L1.A=compact:200,large:300\nzone.L1.B=large:200",
+                "zone.L1.A=compact:200,large:300\nzone.L1.B=large:300",
+                "zone.L1.A=compact:150,large:350\nzone.L1.B=large:300"};
+        for (String shape : shapes) {
+            primary.applyLayout(LotConfig.parse(shape));
+        }
+        primary.logPaymentSuccess("RP1", 12.5);
+        joinAll(workers);
+        long lastChange = System.nanoTime();
+        boolean caughtUp = waitUntil(() -> follower.getAppliedSequence() == log.getHeadSequence(), 10_000);
+        long catchUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastChange);
+        churning.set(false);
+        joinAll(List.of(reader));
+        boolean followed = caughtUp && failures.get() == 0 && badViews.get() == 0 && sameState(primary, followerLot);
+
+        // a follower too far behind for the retained records gets a snapshot instead of a gap
+        boolean lapped;
+        try {
+            lapped = log.getHeadSequence() > 4_096 && log.fetch(log.getLogId(), 1, 10, 0).snapshot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lapped = false;
+        }
+
+        // the follower's lot only answers questions, over the API and at its kiosks
+        boolean readOnly;
+        try {
+            followerLot.parkVehicle(new Car("NOPE1"));
+            readOnly = false;
+        } catch (IllegalStateException expected) {
+            readOnly = followerLot.isReadOnly() && followerLot.findSpotByPlate("NOPE1") == null;
+        }
+        try (PaymentPipeline payments = new PaymentPipeline(followerLot, null,
+                new SimulatedPaymentGateway(SimulatedPaymentGateway.Settings.instant()), PaymentPipeline.Settings.defaults());
+             GateServer kiosk = new GateServer(followerLot, TariffEngine.standard(), payments, new GateServer.Settings(0, 4, 10_000))) {
+            List<String> replies = converse(kiosk.getPort(), "PARK NOPE2 Car", "EXIT RP0", "WHERE RP0", "WHERE NOPE2", "QUIT");
+            readOnly &= replies.equals(List.of("ERR READ_ONLY", "ERR READ_ONLY",
+                    "OK SPOT " + primary.findSpotByPlate("RP0").getId(), "ERR NOT_PARKED", "BYE"));
+        } catch (IOException ex) {
+            readOnly = false;
+        }
+
+        // the primary dies: the follower is promoted, and a second follower (with files of its own) switches to it
+        Path scratch = null;
+        boolean failedOver;
+        try {
+            scratch = Files.createTempDirectory("parking-follower");
+            LotJournal.Settings settings = new LotJournal.Settings(20, 64, 10_000);
+            ParkingLot standbyLot = ParkingLot.createPersistentLot(config, scratch, settings);
+            LotFollower standby = LotFollower.start(standbyLot, new InProcessTransport(log), new LotFollower.Settings(512, 50, 20));
+            waitUntil(() -> standby.getAppliedSequence() == log.getHeadSequence(), 10_000);
+            toPrimary.disconnect();
+
+            ParkingLot promoted = follower.promote();
+            ReplicationLog promotedLog = promoted.startReplication(ReplicationLog.Settings.defaults());
+            standby.switchPrimary(new InProcessTransport(promotedLog));
+            failedOver = !promoted.isReadOnly() && promoted.parkVehicle(new Car("NP1"))
+                    && promoted.removeVehicle("RP2") && promoted.findSpotByPlate("RP2") == null;
+            failedOver &= waitUntil(() -> standbyLot.findSpotByPlate("NP1") != null
+                    && standby.getAppliedSequence() == promotedLog.getHeadSequence(), 10_000);
+            // payments are events, not state, so only a follower already on the log gets them
+            promoted.logPaymentSuccess("NP1", 7.5);
+            failedOver &= waitUntil(() -> standby.getAppliedSequence() == promotedLog.getHeadSequence(), 10_000)
+                    && standbyLot.isReadOnly() && sameState(promoted, standbyLot);
+            standby.close();
+            standbyLot.shutdownPersistence();
+
+            // the standby wrote everything down as it went: its log has the payment, and a restart (with config.txt
+            // matching the layout the primary ended up on) has the same cars in the same bays
+            failedOver &= Files.readString(scratch.resolve("logs.txt")).contains("NP1 settled $7.50");
+            ParkingLot restarted = ParkingLot.createPersistentLot(LotConfig.parse(shapes[shapes.length - 1]), scratch, settings);
+            failedOver &= sameState(promoted, restarted);
+            restarted.shutdownPersistence();
+        } catch (IOException | InterruptedException ex) {
+            failedOver = false;
+        } finally {
+            deleteQuietly(scratch);
+        }
+
+        boolean passed = followed && lapped && readOnly && failedOver;
+        LatencyHistogram.Snapshot applies = followerLot.getMetrics().histogram("replication.apply").snapshot();
+        printResult("Replication", passed, String.format(
+                "%d records shipped, follower caught up %d ms after the last change (batch apply p99 %.2f ms), "
+                        + "%d follower views mid-churn; promoted follower took over with a second follower on it",
+                log.getHeadSequence(), catchUpMillis, applies.valueAt(0.99) / 1e6, views.get()));
+    }
+
+    // true once the condition holds, false if it still doesn't after the timeout
+    private static boolean waitUntil(BooleanSupplier condition, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void joinAll(List<Thread> threads) {
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // same cars in the same spots with the same tickets, and the same bays open, closed and draining
+    private static boolean sameState(ParkingLot expected, ParkingLot actual) {
+        SpotStateSnapshot want = expected.spotStates();
+        SpotStateSnapshot got = actual.spotStates();
+        if (want.getSpotCount() != got.getSpotCount() || want.getOccupied() != got.getOccupied()) {
+            return false;
+        }
+        for (int spotId = 1; spotId <= want.getSpotCount(); spotId++) {
+            Vehicle wanted = want.getVehicle(spotId);
+            Vehicle found = got.getVehicle(spotId);
+            if (wanted == null ? found != null
+                    : found == null || !wanted.getLicensePlate().equals(found.getLicensePlate())
+                    || want.getEntryEpochSecond(spotId) != got.getEntryEpochSecond(spotId)) {
+                return false;
+            }
+        }
+        for (SpotSize size : SpotSize.values()) {
+            if (expected.getCapacity(size) != actual.getCapacity(size)
+                    || expected.getFreeSpotCount(size) != actual.getFreeSpotCount(size)) {
+                return false;
+            }
+        }
+        List<String> wantedSpots = expected.getSpots().stream().map(spot -> spot.getId() + ":" + spot.getSize()).toList();
+        List<String> foundSpots = actual.getSpots().stream().map(spot -> spot.getId() + ":" + spot.getSize()).toList();
+        return expected.getDrainingCount() == actual.getDrainingCount() && wantedSpots.equals(foundSpots);
+    }
+
     public static void runAll() {
         testParkingLotFilling();
         testTicketGeneration();
         testPaymentFlow();
+        testLargeLotAllocation();
+        testPlateLookup();
+        testConcurrentParkRemove();
+        testJournalRecovery();
+        testAuditLogger();
+        testTicketLedgerRotation();
+        testMappedStateRoundTrip();
+        testSpotFitting();
+        testZoneRouting();
+        testOccupancySnapshot();
+        testTariffEngine();
+        testOpenTicketStore();
+        testGateEventIngestor();
+        testPaymentPipeline();
+        testGateServer();
+        testParkingReport();
+        testMetrics();
+        testSpotStateSnapshots();
+        testReservations();
+        testWaitlist();
+        testSimulator();
+        testPlateCodec();
+        testLayoutChanges();
+        testReplication();
+        testParkingReportRotation();
     }
 
     public static void main(String[] args) {
         runAll();
+        // a non-zero exit is what fails the build's systemTest task
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ignored) {
+            // leftover temp files aren't worth failing a test run over
+        }
     }
 
     private static void printResult(String testName, boolean passed, String details) {
+        if (!passed) {
+            failures++;
+        }
         System.out.printf("[%s] %s - %s%n", passed ? "PASS" : "FAIL", testName, details);
     }
 }
@@ -0,0 +1,83 @@
+package com.parking;
+
+import java.util.Arrays;
+
+// pricing rules for one vehicle type: an hourly rate per hour of the day, a minimum stay and a daily cap
+// this is just the human-friendly description; TariffEngine compiles it into lookup tables
+public final class Tariff {
+
+    private final int[] hourlyCentsByHour;
+    private final int minimumMinutes;
+    private final long dailyCapCents;
+
+    private Tariff(int[] hourlyCentsByHour, int minimumMinutes, long dailyCapCents) {
+        this.hourlyCentsByHour = hourlyCentsByHour;
+        this.minimumMinutes = minimumMinutes;
+        this.dailyCapCents = dailyCapCents;
+    }
+
+    /**
+     * Same rate around the clock, one hour minimum, no cap — the old HOURLY_RATE behaviour.
+     */
+    public static Tariff flat(int hourlyCents) {
+        int[] rates = new int[24];
+        Arrays.fill(rates, checkRate(hourlyCents));
+        return new Tariff(rates, 60, 0);
+    }
+
+    /**
+     * Returns a copy charging {@code hourlyCents} from {@code fromHour} up to (not including) {@code toHour}.
+     * A window like 22 to 6 wraps past midnight.
+     */
+    public Tariff withRate(int fromHour, int toHour, int hourlyCents) {
+        if (fromHour < 0 || fromHour > 23 || toHour < 0 || toHour > 24 || fromHour == toHour) {
+            throw new IllegalArgumentException("Rate window must be two different hours between 0 and 24, got " + fromHour + "-" + toHour);
+        }
+        int[] rates = hourlyCentsByHour.clone();
+        int span = Math.floorMod(toHour - fromHour, 24);
+        // only 0-24 lands on zero here, since equal hours were rejected above
+        if (span == 0) {
+            span = 24;
+        }
+        for (int offset = 0; offset < span; offset++) {
+            rates[(fromHour + offset) % 24] = checkRate(hourlyCents);
+        }
+        return new Tariff(rates, minimumMinutes, dailyCapCents);
+    }
+
+    public Tariff withMinimumMinutes(int minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException("Minimum stay cannot be negative.");
+        }
+        return new Tariff(hourlyCentsByHour, minutes, dailyCapCents);
+    }
+
+    /**
+     * Returns a copy that never charges more than {@code capCents} for one calendar day; 0 means no cap.
+     */
+    public Tariff withDailyCap(long capCents) {
+        if (capCents < 0) {
+            throw new IllegalArgumentException("Daily cap cannot be negative.");
+        }
+        return new Tariff(hourlyCentsByHour, minimumMinutes, capCents);
+    }
+
+    public int hourlyCents(int hourOfDay) {
+        return hourlyCentsByHour[hourOfDay];
+    }
+
+    public int getMinimumMinutes() {
+        return minimumMinutes;
+    }
+
+    public long getDailyCapCents() {
+        return dailyCapCents;
+    }
+
+    private static int checkRate(int hourlyCents) {
+        if (hourlyCents < 0) {
+            throw new IllegalArgumentException("Hourly rate cannot be negative.");
+        }
+        return hourlyCents;
+    }
+}
@@ -0,0 +1,253 @@
+package com.parking;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// turns per-vehicle-type Tariffs into cumulative price tables once, so pricing an exit is a few array reads
+//
+// money inside the tables is in "cent-minutes": an hourly rate in cents, added once per minute.
+// dividing by 60 at the very end gives cents, so a 5.00/h rate stays exact instead of 8.333... cents a minute
+public final class TariffEngine {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final Path DEFAULT_FILE = Paths.get("src", "resources", "tariffs.txt");
+
+    // loaded on the first getDefault(); the holder makes that thread-safe without a lock on every closeTicket
+    private static final class DefaultHolder {
+        static final TariffEngine ENGINE = loadDefault();
+    }
+
+    // compiled form of one Tariff; cumulative[m] = cent-minutes charged from midnight up to minute m
+    private static final class Table {
+        final long[] cumulative = new long[MINUTES_PER_DAY + 1];
+        final long capCentMinutes;
+        final int minimumMinutes;
+
+        Table(Tariff tariff) {
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                cumulative[minute + 1] = cumulative[minute] + tariff.hourlyCents(minute / 60);
+            }
+            long cap = tariff.getDailyCapCents() * 60;
+            // a cap above the full-day price never kicks in, so just drop it
+            capCentMinutes = cap == 0 || cap >= cumulative[MINUTES_PER_DAY] ? Long.MAX_VALUE : cap;
+            minimumMinutes = tariff.getMinimumMinutes();
+        }
+
+        long capped(long centMinutes) {
+            return Math.min(centMinutes, capCentMinutes);
+        }
+    }
+
+    private final Tariff fallbackTariff;
+    private final Map<VehicleType, Tariff> tariffs;
+    private final Table fallback;
+    // indexed by VehicleType.ordinal(), same as FittingPolicy; types without their own tariff share the fallback
+    private final Table[] tables;
+
+    private TariffEngine(Tariff fallbackTariff, Map<VehicleType, Tariff> tariffs) {
+        this.fallbackTariff = fallbackTariff;
+        this.tariffs = tariffs;
+        this.fallback = new Table(fallbackTariff);
+        this.tables = new Table[VehicleType.count()];
+        for (int type = 0; type < tables.length; type++) {
+            Tariff tariff = tariffs.get(VehicleType.ofOrdinal(type));
+            tables[type] = tariff == null ? fallback : new Table(tariff);
+        }
+    }
+
+    /**
+     * One tariff for every vehicle type until {@link #with} says otherwise.
+     */
+    public static TariffEngine of(Tariff defaultTariff) {
+        return new TariffEngine(defaultTariff, new EnumMap<>(VehicleType.class));
+    }
+
+    /**
+     * 5.00 an hour for everyone with a one hour minimum, which is what Ticket always charged.
+     */
+    public static TariffEngine standard() {
+        return of(Tariff.flat(500));
+    }
+
+    /**
+     * Returns a copy (recompiled) where {@code vehicleType} is priced by {@code tariff}.
+     */
+    public TariffEngine with(VehicleType vehicleType, Tariff tariff) {
+        Map<VehicleType, Tariff> copy = new EnumMap<>(tariffs);
+        copy.put(vehicleType, tariff);
+        return new TariffEngine(fallbackTariff, copy);
+    }
+
+    /**
+     * Same as {@link #with(VehicleType, Tariff)} with the type given by name, as in tariff files.
+     *
+     * @throws IllegalArgumentException for a type name the lot doesn't know.
+     */
+    public TariffEngine with(String vehicleType, Tariff tariff) {
+        VehicleType type = VehicleType.parse(vehicleType);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown vehicle type in tariffs: " + vehicleType);
+        }
+        return with(type, tariff);
+    }
+
+    /**
+     * The engine new tickets use: tariffs.txt from the resources folder when it parses, otherwise {@link #standard()}.
+     */
+    public static TariffEngine getDefault() {
+        return DefaultHolder.ENGINE;
+    }
+
+    private static TariffEngine loadDefault() {
+        TariffEngine loaded = null;
+        try {
+            loaded = load(DEFAULT_FILE);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Tariff file unreadable, using the standard rate: " + ex.getMessage());
+        }
+        return loaded == null ? standard() : loaded;
+    }
+
+    /**
+     * Reads a tariff file, or returns null when it doesn't exist or has no rules.
+     */
+    public static TariffEngine load(Path tariffFile) throws IOException {
+        if (Files.notExists(tariffFile)) {
+            return null;
+        }
+        return parse(Files.readString(tariffFile));
+    }
+
+    /**
+     * Parses {@code <type>.<setting>=<value>} lines, e.g.
+     * <pre>
+     * default.hourly=5.00
+     * Truck.hourly=8.00
+     * Truck.rate.08-18=10.00
+     * Car.cap=30.00
+     * Bike.minimum=30
+     * </pre>
+     * "default" covers every type without its own lines, and each type starts from the default's rules.
+     *
+     * @return the engine, or null when the text holds no rules at all.
+     * @throws IllegalArgumentException if a line can't be parsed.
+     */
+    public static TariffEngine parse(String text) {
+        Map<String, List<String[]>> settingsByType = new LinkedHashMap<>();
+        for (String line : text.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] keyValue = trimmed.split("=", 2);
+            String[] typeSetting = keyValue[0].trim().split("\\.", 2);
+            if (keyValue.length != 2 || typeSetting.length != 2) {
+                throw new IllegalArgumentException("Tariff lines look like <type>.<setting>=<value>: " + trimmed);
+            }
+            settingsByType.computeIfAbsent(typeSetting[0], type -> new ArrayList<>())
+                    .add(new String[] {typeSetting[1].trim(), keyValue[1].trim()});
+        }
+        if (settingsByType.isEmpty()) {
+            return null;
+        }
+        Tariff base = applySettings(Tariff.flat(500), settingsByType.getOrDefault("default", List.of()));
+        TariffEngine engine = of(base);
+        for (Map.Entry<String, List<String[]>> entry : settingsByType.entrySet()) {
+            if (!"default".equals(entry.getKey())) {
+                engine = engine.with(entry.getKey(), applySettings(base, entry.getValue()));
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Price in cents for a stay between two wall-clock minutes (minutes since 1970-01-01T00:00 local time).
+     * Works purely off the precomputed tables and allocates nothing.
+     */
+    public long priceCents(VehicleType vehicleType, long entryMinute, long exitMinute) {
+        return price(tables[vehicleType.ordinal()], entryMinute, exitMinute);
+    }
+
+    /**
+     * Unknown type names are priced by the default tariff.
+     */
+    public long priceCents(String vehicleType, long entryMinute, long exitMinute) {
+        VehicleType type = VehicleType.parse(vehicleType);
+        return price(type == null ? fallback : tables[type.ordinal()], entryMinute, exitMinute);
+    }
+
+    private static long price(Table table, long entryMinute, long exitMinute) {
+        long end = Math.max(exitMinute, entryMinute + table.minimumMinutes);
+        long startDay = Math.floorDiv(entryMinute, MINUTES_PER_DAY);
+        long endDay = Math.floorDiv(end, MINUTES_PER_DAY);
+        int startOfStay = Math.floorMod(entryMinute, MINUTES_PER_DAY);
+        int endOfStay = Math.floorMod(end, MINUTES_PER_DAY);
+        long[] cumulative = table.cumulative;
+        long centMinutes;
+        if (startDay == endDay) {
+            centMinutes = table.capped(cumulative[endOfStay] - cumulative[startOfStay]);
+        } else {
+            // first partial day + whole days in between + last partial day, each capped on its own
+            centMinutes = table.capped(cumulative[MINUTES_PER_DAY] - cumulative[startOfStay])
+                    + (endDay - startDay - 1) * table.capped(cumulative[MINUTES_PER_DAY])
+                    + table.capped(cumulative[endOfStay]);
+        }
+        // round half up once, at the end
+        return (centMinutes + 30) / 60;
+    }
+
+    public long priceCents(VehicleType vehicleType, LocalDateTime entryTime, LocalDateTime exitTime) {
+        long entrySecond = localSecond(entryTime);
+        // whole minutes stayed, truncated like Duration.toMinutes() used to be
+        long minutesStayed = Math.max(0, (localSecond(exitTime) - entrySecond) / 60);
+        long entryMinute = Math.floorDiv(entrySecond, 60);
+        return priceCents(vehicleType, entryMinute, entryMinute + minutesStayed);
+    }
+
+    // wall-clock seconds, so a DST jump doesn't bill an hour that never showed on the gate clock
+    private static long localSecond(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * 86_400L + time.toLocalTime().toSecondOfDay();
+    }
+
+    private static Tariff applySettings(Tariff tariff, List<String[]> settings) {
+        Tariff result = tariff;
+        for (String[] setting : settings) {
+            String name = setting[0];
+            String value = setting[1];
+            if ("hourly".equals(name)) {
+                result = result.withRate(0, 24, (int) parseCents(value));
+            } else if (name.startsWith("rate.")) {
+                String[] hours = name.substring("rate.".length()).split("-", 2);
+                if (hours.length != 2) {
+                    throw new IllegalArgumentException("Rate windows look like rate.<from>-<to>, got " + name);
+                }
+                result = result.withRate(Integer.parseInt(hours[0]), Integer.parseInt(hours[1]), (int) parseCents(value));
+            } else if ("cap".equals(name)) {
+                result = result.withDailyCap(parseCents(value));
+            } else if ("minimum".equals(name)) {
+                result = result.withMinimumMinutes(Integer.parseInt(value));
+            } else {
+                System.err.println("Ignoring unknown tariff setting: " + name);
+            }
+        }
+        return result;
+    }
+
+    // "5.00" -> 500, without a trip through double
+    private static long parseCents(String amount) {
+        try {
+            return new BigDecimal(amount).movePointRight(2).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Amounts can have at most two decimals: " + amount);
+        }
+    }
+}
@@ -1,77 +1,130 @@
 package com.parking;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.time.Duration;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 // acting as a stub logger right now so I can swap in real persistence later
 // finally wiring it up to behave like a proper ticket while keeping things approachable
+// "now" comes from the ticket's clock (the lot's, usually), so a VirtualClock can age a ticket without waiting
 public class Ticket {
 
-    private static final double HOURLY_RATE = 5.0; // just a flat rate for now — real pricing can plug in later
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private final String licensePlate;
+    private final VehicleType vehicleType;
+    private final TariffEngine tariffEngine;
+    private final Clock clock;
+    private final int spotId;
     private final LocalDateTime entryTime;
     private LocalDateTime exitTime;
-    private double cost;
+    private long costCents;
 
-    private Ticket(Vehicle vehicle) {
+    private Ticket(Vehicle vehicle, TariffEngine tariffEngine, Clock clock, int spotId, LocalDateTime entryTime) {
         this.licensePlate = vehicle.getLicensePlate();
-        this.entryTime = LocalDateTime.now();
-        // timestamping here keeps the calling code nice and short
+        this.vehicleType = vehicle.getType();
+        this.tariffEngine = tariffEngine;
+        this.clock = clock;
+        this.spotId = spotId;
+        this.entryTime = entryTime;
     }
 
     public static Ticket generateTicket(Vehicle vehicle) {
         // keeping the factory so callers don't have to remember to set timestamps themselves
-        return new Ticket(vehicle);
+        // timestamping here keeps the calling code nice and short
+        return generateTicket(vehicle, TariffEngine.getDefault());
+    }
+
+    /**
+     * Same as {@link #generateTicket(Vehicle)} but priced by the given engine instead of the default one.
+     */
+    public static Ticket generateTicket(Vehicle vehicle, TariffEngine tariffEngine) {
+        return generateTicket(vehicle, tariffEngine, Clock.systemDefaultZone());
+    }
+
+    /**
+     * A ticket stamped, and later closed, by {@code clock} instead of the system clock.
+     */
+    public static Ticket generateTicket(Vehicle vehicle, TariffEngine tariffEngine, Clock clock) {
+        return new Ticket(vehicle, tariffEngine, clock, 0, LocalDateTime.now(clock));
     }
 
+    // the lot only keeps entry times (see OpenTicketStore); this turns one back into a ticket at the exit
+    static Ticket reopen(Vehicle vehicle, int spotId, long entryEpochSecond, TariffEngine tariffEngine, Clock clock) {
+        LocalDateTime entryTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(entryEpochSecond), clock.getZone());
+        return new Ticket(vehicle, tariffEngine, clock, spotId, entryTime);
+    }
+
+    /**
+     * Closes the ticket (once) and returns what's owed in dollars. Kept for callers that still think in doubles.
+     */
     public double closeTicket() {
-        if (exitTime != null) {
-            return cost;
+        return closeTicketCents() / 100.0;
+    }
+
+    /**
+     * Closes the ticket (once) as of its clock's current time and returns what's owed in cents.
+     */
+    public long closeTicketCents() {
+        return closeTicketCents(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Closes the ticket (once) as of the given exit time, e.g. the timestamp a gate reported.
+     */
+    public long closeTicketCents(LocalDateTime exitTime) {
+        if (this.exitTime != null) {
+            return costCents;
         }
-        exitTime = LocalDateTime.now();
-        long minutes = Duration.between(entryTime, exitTime).toMinutes();
-        double billableHours = Math.max(1.0, minutes / 60.0); // minimum one hour to keep the math simple
-        cost = Math.round(billableHours * HOURLY_RATE * 100.0) / 100.0;
-        return cost;
+        this.exitTime = exitTime;
+        costCents = tariffEngine.priceCents(vehicleType, entryTime, exitTime);
+        return costCents;
     }
 
+    /**
+     * Closes the ticket if needed and appends it to the shared ticket ledger.
+     */
     public void saveToFile() {
-        Path resourcesDir = Paths.get("src", "resources");
-        Path ticketsFile = resourcesDir.resolve("tickets.txt");
-        double finalCost = (exitTime == null) ? closeTicket() : cost;
-
-        try {
-            Files.createDirectories(resourcesDir);
-            String record = String.format("%s | %s | %s | $%.2f%n",
-                    licensePlate,
-                    FORMATTER.format(entryTime),
-                    FORMATTER.format(exitTime),
-                    finalCost);
-            // still printing to console so I can see activity while developing
-            System.out.printf("Saving ticket: %s", record);
-            // using BufferedWriter here just to keep it simple and append-friendly
-            try (BufferedWriter writer = Files.newBufferedWriter(
-                    ticketsFile,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND)) {
-                writer.write(record);
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to persist ticket data: " + e.getMessage());
-        }
+        saveTo(TicketLedger.getDefault());
+    }
+
+    void saveTo(TicketLedger ledger) {
+        ledger.append(toRecord(closeTicketCents()));
+    }
+
+    // "PLATE | entry | exit | $cost | type" without String.format on every exit; the type came last so older
+    // readers that only look at the first four fields keep working
+    private String toRecord(long cents) {
+        long fraction = cents % 100;
+        return new StringBuilder(64)
+                .append(licensePlate).append(" | ")
+                .append(FORMATTER.format(entryTime)).append(" | ")
+                .append(FORMATTER.format(exitTime)).append(" | $")
+                .append(cents / 100).append('.')
+                .append(fraction < 10 ? "0" : "").append(fraction)
+                .append(" | ").append(vehicleType.getDisplayName())
+                .append(System.lineSeparator())
+                .toString();
     }
 
     public double getCost() {
-        return cost;
+        return costCents / 100.0;
+    }
+
+    public long getCostCents() {
+        return costCents;
+    }
+
+    /**
+     * The spot the ticket was issued for, or 0 for tickets made outside the lot.
+     */
+    public int getSpotId() {
+        return spotId;
+    }
+
+    public String getVehicleType() {
+        return vehicleType.getDisplayName();
     }
 
     public LocalDateTime getEntryTime() {
@@ -0,0 +1,252 @@
+package com.parking;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// closed tickets used to reopen tickets.txt once per ticket; this keeps one writer open for the whole run,
+// flushes in batches, and rolls the file over by size or by day so it doesn't grow forever
+// the day comes from a Clock, so a ledger fed by a lot on a VirtualClock rolls over on the lot's days, not the wall's
+public class TicketLedger implements Closeable {
+
+    /**
+     * @param maxFileBytes        rotate once the active file would grow past this
+     * @param rotateDaily         also rotate when the calendar day changes
+     * @param flushBatchSize      buffered records that force a flush
+     * @param flushIntervalMillis longest a record may sit in the buffer
+     * @param echoToConsole       print each record to stdout like the old saveToFile did
+     */
+    public record Settings(long maxFileBytes, boolean rotateDaily, int flushBatchSize,
+                           long flushIntervalMillis, boolean echoToConsole) {
+
+        public Settings {
+            if (maxFileBytes <= 0 || flushBatchSize <= 0 || flushIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Ledger sizes and intervals must be positive.");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(10L * 1024 * 1024, true, 32, 1_000, true);
+        }
+    }
+
+    private static final Path DEFAULT_FILE = Paths.get("src", "resources", "tickets.txt");
+    private static TicketLedger defaultLedger;
+
+    private final Path ledgerFile;
+    private final Settings settings;
+    private final Clock clock;
+    private final ScheduledExecutorService flusher;
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private BufferedWriter writer;
+    private LocalDate currentDay;
+    private long currentBytes;
+    private int unflushedRecords;
+
+    public TicketLedger(Path ledgerFile, Settings settings) {
+        this(ledgerFile, settings, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock decides which day a record belongs to for daily rotation, and names the rotated files.
+     */
+    public TicketLedger(Path ledgerFile, Settings settings, Clock clock) {
+        this.ledgerFile = ledgerFile;
+        this.settings = settings;
+        this.clock = clock;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush,
+                settings.flushIntervalMillis(),
+                settings.flushIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The ledger behind {@link Ticket#saveToFile()}; created on first use and flushed on JVM exit.
+     */
+    public static synchronized TicketLedger getDefault() {
+        if (defaultLedger == null) {
+            defaultLedger = new TicketLedger(DEFAULT_FILE, Settings.defaults());
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultLedger::close, "ticket-ledger-shutdown"));
+        }
+        return defaultLedger;
+    }
+
+    /**
+     * Appends one already formatted record (including its line break).
+     */
+    public synchronized void append(String record) {
+        if (settings.echoToConsole()) {
+            // still printing to console so I can see activity while developing
+            System.out.print("Saving ticket: " + record);
+        }
+        try {
+            // chars rather than encoded bytes — plates and timestamps are ASCII so it's close enough
+            rotateIfNeeded(record.length());
+            writer.write(record);
+            currentBytes += record.length();
+            if (++unflushedRecords >= settings.flushBatchSize()) {
+                flushWriter();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to persist ticket data: " + e.getMessage());
+        }
+    }
+
+    public synchronized void flush() {
+        boolean anything = unflushedRecords > 0;
+        long start = System.nanoTime();
+        try {
+            flushWriter();
+            if (anything) {
+                flushLatency.recordSince(start);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to flush ticket data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * How long each flush of buffered records took.
+     */
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        synchronized (this) {
+            flush();
+            closeWriter();
+        }
+    }
+
+    private void rotateIfNeeded(int incomingBytes) throws IOException {
+        if (writer == null) {
+            open();
+        }
+        LocalDate today = LocalDate.now(clock);
+        boolean dayChanged = settings.rotateDaily() && !today.equals(currentDay);
+        boolean tooBig = currentBytes > 0 && currentBytes + incomingBytes > settings.maxFileBytes();
+        if (!dayChanged && !tooBig) {
+            return;
+        }
+        flushWriter();
+        closeWriter();
+        Path rotated = nextRotatedName(currentDay);
+        Files.move(ledgerFile, rotated);
+        open();
+    }
+
+    private void open() throws IOException {
+        Path parent = ledgerFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        LocalDate today = LocalDate.now(clock);
+        if (Files.exists(ledgerFile)) {
+            currentBytes = Files.size(ledgerFile);
+            // an existing file belongs to the day it was last written, so a restart tomorrow still rotates it; the
+            // file time is the wall clock's, so one ahead of this ledger's clock (a simulated past) counts as today
+            LocalDate modified = LocalDate.ofInstant(Files.getLastModifiedTime(ledgerFile).toInstant(), clock.getZone());
+            currentDay = modified.isAfter(today) ? today : modified;
+        } else {
+            currentBytes = 0;
+            currentDay = today;
+        }
+        writer = Files.newBufferedWriter(ledgerFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * The files {@code ledgerFile} has been rotated into so far, oldest first: by day, then by sequence number, so
+     * {@code .10} comes after {@code .9}.
+     */
+    public static List<Path> rotatedFiles(Path ledgerFile) throws IOException {
+        Path directory = ledgerFile.toAbsolutePath().getParent();
+        List<Path> rotated = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return rotated;
+        }
+        String fileName = ledgerFile.getFileName().toString();
+        Pattern name = Pattern.compile(Pattern.quote(stem(fileName)) + "-(\\d{4}-\\d{2}-\\d{2})\\.(\\d+)"
+                + Pattern.quote(extension(fileName)));
+        try (Stream<Path> siblings = Files.list(directory)) {
+            siblings.filter(file -> name.matcher(file.getFileName().toString()).matches()).forEach(rotated::add);
+        }
+        rotated.sort(Comparator.comparing((Path file) -> rotatedPart(name, file, 1))
+                .thenComparingLong(file -> Long.parseLong(rotatedPart(name, file, 2))));
+        // back next to ledgerFile, relative or not
+        rotated.replaceAll(file -> ledgerFile.resolveSibling(file.getFileName()));
+        return rotated;
+    }
+
+    private static String rotatedPart(Pattern name, Path file, int group) {
+        Matcher matcher = name.matcher(file.getFileName().toString());
+        matcher.matches();
+        return matcher.group(group);
+    }
+
+    private static String stem(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot);
+    }
+
+    // tickets.txt -> tickets-2025-11-11.1.txt, .2, ... whichever is free
+    private Path nextRotatedName(LocalDate day) {
+        String fileName = ledgerFile.getFileName().toString();
+        String stem = stem(fileName);
+        String extension = extension(fileName);
+        for (int sequence = 1; ; sequence++) {
+            Path candidate = ledgerFile.resolveSibling(stem + "-" + day + "." + sequence + extension);
+            if (Files.notExists(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private void flushWriter() throws IOException {
+        if (writer != null && unflushedRecords > 0) {
+            writer.flush();
+        }
+        unflushedRecords = 0;
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Could not close ticket ledger: " + e.getMessage());
+        }
+        writer = null;
+    }
+}
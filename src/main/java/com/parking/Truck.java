@@ -4,6 +4,6 @@ package com.parking;
 public class Truck extends Vehicle {
 
     public Truck(String licensePlate) {
-        super(licensePlate, "Truck");
+        super(licensePlate, VehicleType.TRUCK);
     }
 }
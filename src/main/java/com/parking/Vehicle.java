@@ -1,24 +1,46 @@
 package com.parking;
 
 // keeping this abstract so cars/bikes/trucks can just plug in their type strings later
+// the plate is also kept packed (see PlateCodec) and the type as a VehicleType, so indexes and stores key on
+// numbers; the String forms are only for printing
 public abstract class Vehicle {
     private final String licensePlate;
-    private final String vehicleType;
+    private final long plateLow;
+    private final long plateHigh;
+    private final VehicleType type;
 
-    protected Vehicle(String licensePlate, String vehicleType) {
+    protected Vehicle(String licensePlate, VehicleType type) {
         if (licensePlate == null || licensePlate.isBlank()) {
             throw new IllegalArgumentException("License plate cannot be empty.");
         }
         // forcing uppercase mostly for simple comparisons — proper locale handling can come later
-        this.licensePlate = licensePlate.trim().toUpperCase();
-        this.vehicleType = vehicleType;
+        // ^ PlateCodec does the normalizing now: letters and digits only, spaces and hyphens dropped
+        this.plateLow = PlateCodec.low(licensePlate);
+        if (plateLow == PlateCodec.INVALID) {
+            throw new IllegalArgumentException("License plate must be 1-" + PlateCodec.MAX_LENGTH + " letters and digits: " + licensePlate);
+        }
+        this.plateHigh = PlateCodec.high(licensePlate);
+        this.licensePlate = PlateCodec.normalize(licensePlate);
+        this.type = type;
     }
 
     public String getLicensePlate() {
         return licensePlate;
     }
 
+    long plateLow() {
+        return plateLow;
+    }
+
+    long plateHigh() {
+        return plateHigh;
+    }
+
+    public VehicleType getType() {
+        return type;
+    }
+
     public String getVehicleType() {
-        return vehicleType;
+        return type.getDisplayName();
     }
 }
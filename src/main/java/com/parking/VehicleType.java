@@ -0,0 +1,85 @@
+package com.parking;
+
+// the vehicle types the lot knows, each with a one-byte code that is stable across releases
+// the code is what goes to disk (lot_state.bin) and into packed words, so never renumber one — add new types with a
+// new code at the end; ordinal() is fine for in-memory tables since those never outlive the process
+public enum VehicleType {
+    CAR(1, "Car"),
+    BIKE(2, "Bike"),
+    TRUCK(3, "Truck");
+
+    // values() clones its array on every call
+    private static final VehicleType[] TYPES = values();
+    private static final VehicleType[] BY_CODE = new VehicleType[128];
+
+    static {
+        for (VehicleType type : TYPES) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+    private final String displayName;
+
+    VehicleType(int code, String displayName) {
+        this.code = (byte) code;
+        this.displayName = displayName;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * The name used in files, logs and the console: "Car", "Bike", "Truck".
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the type with that code, or null for 0 (empty) and codes this version doesn't know.
+     */
+    public static VehicleType fromCode(byte code) {
+        return code > 0 ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Case-insensitive match on the display name; allocates nothing unless the name has surrounding spaces.
+     *
+     * @return the type, or null if the name isn't one.
+     */
+    public static VehicleType parse(String name) {
+        if (name == null) {
+            return null;
+        }
+        String trimmed = name.strip();
+        for (VehicleType type : TYPES) {
+            if (type.displayName.equalsIgnoreCase(trimmed)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    static int count() {
+        return TYPES.length;
+    }
+
+    static VehicleType ofOrdinal(int ordinal) {
+        return TYPES[ordinal];
+    }
+
+    /**
+     * A vehicle of this type.
+     *
+     * @throws IllegalArgumentException if the plate isn't a valid plate (see {@link PlateCodec}).
+     */
+    public Vehicle newVehicle(String licensePlate) {
+        return switch (this) {
+            case CAR -> new Car(licensePlate);
+            case BIKE -> new Bike(licensePlate);
+            case TRUCK -> new Truck(licensePlate);
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.parking;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a java.time.Clock that only moves when told to, so a day of traffic can be replayed in a second and a test can
+// age a ticket by two hours without sleeping; hand it to ParkingLot (and through it to tickets) instead of the
+// system clock
+//
+// withZone() copies share the same time, so moving one moves them all
+public final class VirtualClock extends Clock {
+
+    private final AtomicLong epochMillis;
+    private final ZoneId zone;
+
+    public VirtualClock(Instant start, ZoneId zone) {
+        this(new AtomicLong(start.toEpochMilli()), zone);
+    }
+
+    private VirtualClock(AtomicLong epochMillis, ZoneId zone) {
+        this.epochMillis = epochMillis;
+        this.zone = zone;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new VirtualClock(epochMillis, zone);
+    }
+
+    @Override
+    public long millis() {
+        return epochMillis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(epochMillis.get());
+    }
+
+    public void advance(Duration duration) {
+        advanceMillis(duration.toMillis());
+    }
+
+    public void advanceMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("A virtual clock only moves forward.");
+        }
+        epochMillis.addAndGet(millis);
+    }
+
+    /**
+     * Moves the clock forward to {@code epochMillis}; a time that has already passed leaves it where it is.
+     */
+    public void advanceTo(long epochMillis) {
+        this.epochMillis.accumulateAndGet(epochMillis, Math::max);
+    }
+}
@@ -0,0 +1,172 @@
+package com.parking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// drivers waiting for a full lot, so they queue once instead of retrying the gate in a loop
+// first come first served within a priority (higher goes first — permits, accessibility), kept per vehicle type:
+// a freed compact spot goes to whichever waiting car, bike or truck that fits it joined earliest, not to a truck at
+// the head of one big queue that could never use it
+//
+// ParkingLot hands a freed spot straight to the entry picked here (see ParkingLot.depart), so nobody polls;
+// the entry's future completes with the spot once the car is in it
+public final class Waitlist {
+
+    private static final int WAITING = 0;
+    private static final int TAKEN = 1;
+    private static final int CANCELLED = 2;
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt((Entry entry) -> -entry.priority)
+            .thenComparingLong(entry -> entry.sequence);
+
+    /**
+     * One driver's place in line.
+     */
+    public static final class Entry {
+        private final Vehicle vehicle;
+        private final String gateId;
+        private final int priority;
+        private final long sequence;
+        private final long joinedNanos;
+        private final CompletableFuture<ParkingSpot> spot = new CompletableFuture<>();
+        // WAITING -> TAKEN when a spot is being handed over, WAITING -> CANCELLED when the driver gives up
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final Waitlist owner;
+
+        private Entry(Waitlist owner, Vehicle vehicle, String gateId, int priority, long sequence) {
+            this.owner = owner;
+            this.vehicle = vehicle;
+            this.gateId = gateId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.joinedNanos = System.nanoTime();
+        }
+
+        public Vehicle getVehicle() {
+            return vehicle;
+        }
+
+        String getGateId() {
+            return gateId;
+        }
+
+        long getJoinedNanos() {
+            return joinedNanos;
+        }
+
+        /**
+         * Completes with the spot once the car has been parked in it. Fails if the plate turned out to be parked
+         * already by the time its turn came.
+         */
+        public CompletableFuture<ParkingSpot> getSpot() {
+            return spot;
+        }
+
+        /**
+         * Leaves the line.
+         *
+         * @return false if a spot was already being handed over — {@link #getSpot()} will complete with it.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            owner.remove(this);
+            spot.cancel(false);
+            return true;
+        }
+    }
+
+    // indexed by VehicleType.ordinal()
+    @SuppressWarnings("unchecked")
+    private final PriorityQueue<Entry>[] queuesByType = (PriorityQueue<Entry>[]) new PriorityQueue<?>[VehicleType.count()];
+    private final AtomicLong nextSequence = new AtomicLong();
+    // read without the lock on every remove, so an empty waitlist costs one volatile read
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    Waitlist() {
+        for (int type = 0; type < queuesByType.length; type++) {
+            queuesByType[type] = new PriorityQueue<>(ORDER);
+        }
+    }
+
+    Entry join(Vehicle vehicle, String gateId, int priority) {
+        Entry entry = new Entry(this, vehicle, gateId, priority, nextSequence.getAndIncrement());
+        synchronized (this) {
+            queueOf(entry).add(entry);
+        }
+        waiting.incrementAndGet();
+        return entry;
+    }
+
+    public int size() {
+        return waiting.get();
+    }
+
+    public boolean isEmpty() {
+        return waiting.get() == 0;
+    }
+
+    /**
+     * Takes the first waiting entry whose vehicle fits {@code size}, or returns null. The caller owns the entry from
+     * here on: it either parks the car and completes the future, or puts it back with {@link #putBack(Entry)}.
+     */
+    synchronized Entry takeFor(SpotSize size, FittingPolicy fittingPolicy) {
+        PriorityQueue<Entry> best = null;
+        for (int type = 0; type < queuesByType.length; type++) {
+            Entry head = queuesByType[type].peek();
+            if (head != null && fittingPolicy.fits(VehicleType.ofOrdinal(type), size)
+                    && (best == null || ORDER.compare(head, best.peek()) < 0)) {
+                best = queuesByType[type];
+            }
+        }
+        return best == null ? null : take(best.peek());
+    }
+
+    /**
+     * Takes a specific entry if it is still waiting.
+     */
+    synchronized Entry take(Entry entry) {
+        if (!entry.state.compareAndSet(WAITING, TAKEN)) {
+            return null;
+        }
+        queueOf(entry).remove(entry);
+        waiting.decrementAndGet();
+        return entry;
+    }
+
+    // a taken entry whose car couldn't be parked after all keeps its original place in line
+    synchronized void putBack(Entry entry) {
+        if (entry.state.compareAndSet(TAKEN, WAITING)) {
+            queueOf(entry).add(entry);
+            waiting.incrementAndGet();
+        }
+    }
+
+    /**
+     * Everyone still waiting, in the order they'd be served.
+     */
+    synchronized List<Entry> inOrder() {
+        List<Entry> all = new ArrayList<>(waiting.get());
+        for (PriorityQueue<Entry> queue : queuesByType) {
+            all.addAll(queue);
+        }
+        all.sort(ORDER);
+        return all;
+    }
+
+    private synchronized void remove(Entry entry) {
+        if (queueOf(entry).remove(entry)) {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private PriorityQueue<Entry> queueOf(Entry entry) {
+        return queuesByType[entry.vehicle.getType().ordinal()];
+    }
+}
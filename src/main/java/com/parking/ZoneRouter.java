@@ -0,0 +1,10 @@
+package com.parking;
+
+// picks which zones an arrival should try, best first; ParkingLot takes the first one with room
+public interface ZoneRouter {
+
+    /**
+     * @return zones to try for a vehicle entering at {@code gateId} that wants a {@code size} spot.
+     */
+    ParkingZone[] route(String gateId, SpotSize size);
+}